@@ -0,0 +1,123 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa;
+
+import de.richtercloud.reflection.form.builder.jpa.storage.DerbyEmbeddedPersistenceStorage;
+import de.richtercloud.reflection.form.builder.jpa.storage.TestEntity;
+import de.richtercloud.reflection.form.builder.jpa.storage.TestStorages;
+import de.richtercloud.reflection.form.builder.storage.StorageCreationException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures ID allocation of {@link SequentialIdGenerator} (backed by a Derby
+ * sequence) and {@link MemorySequentialIdGenerator} (backed by a checkpoint
+ * file) for single instances and batches.
+ *
+ * @author richter
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IdGeneratorBenchmark {
+    @Param({"sequential", "sequential-per-entity-hierarchy", "memory"})
+    public String idGeneratorType;
+    @Param({"16"})
+    public int batchSize;
+    private final TestEntity instance = new TestEntity("entity");
+    private List<TestEntity> batch;
+    private DerbyEmbeddedPersistenceStorage storage;
+    private File checkpointFile;
+    private MemorySequentialIdGenerator memoryIdGenerator;
+    private IdGenerator<Long> idGenerator;
+
+    @Setup
+    public void setup() throws IOException,
+            StorageCreationException,
+            IdGenerationException {
+        batch = new ArrayList<>(batchSize);
+        for(int i=0; i<batchSize; i++) {
+            batch.add(instance);
+        }
+        switch(idGeneratorType) {
+            case "sequential":
+                storage = TestStorages.createDerbyEmbeddedStorage();
+                idGenerator = new SequentialIdGenerator(storage);
+                break;
+            case "sequential-per-entity-hierarchy":
+                storage = TestStorages.createDerbyEmbeddedStorage();
+                idGenerator = new SequentialIdGenerator(storage,
+                        SequentialIdGenerator::perEntityHierarchySequenceName);
+                break;
+            case "memory":
+                checkpointFile = Files.createTempFile(IdGeneratorBenchmark.class.getSimpleName(), null).toFile();
+                memoryIdGenerator = new MemorySequentialIdGenerator(checkpointFile);
+                idGenerator = memoryIdGenerator;
+                break;
+            default:
+                throw new IllegalArgumentException(String.format("id generator type '%s' isn't supported",
+                        idGeneratorType));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        if(storage != null) {
+            TestStorages.shutdownDerbyEmbeddedStorage(storage);
+        }
+        if(memoryIdGenerator != null) {
+            memoryIdGenerator.close();
+        }
+        if(checkpointFile != null) {
+            Files.delete(checkpointFile.toPath());
+        }
+    }
+
+    @Benchmark
+    public Long getNextId() throws IdGenerationException {
+        return idGenerator.getNextId(instance);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Long getNextIdContended() throws IdGenerationException {
+        return idGenerator.getNextId(instance);
+    }
+
+    @Benchmark
+    public List<Long> getNextIds() throws IdGenerationException {
+        return idGenerator.getNextIds(batch);
+    }
+}
@@ -0,0 +1,287 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.panels;
+
+import de.richtercloud.reflection.form.builder.jpa.storage.DerbyEmbeddedPersistenceStorage;
+import de.richtercloud.reflection.form.builder.jpa.storage.TestEntity;
+import de.richtercloud.reflection.form.builder.jpa.storage.TestStorages;
+import de.richtercloud.reflection.form.builder.storage.StorageCreationException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+internal implementation notes:
+- the storages are provided by states rather than the benchmark class because
+persist only applies to file based storages and would be run with every
+storage type parameter of the benchmark class otherwise; the parameters of
+FileStorage have distinct names because JMH parameter names are global
+- the database storage of FreshStorage uses the persistence storage of
+HistoryStorage, so the table keeps the entries of previous invocations which
+are updated rather than inserted because the query texts repeat
+*/
+/**
+ * Measures storing and retrieving of {@link QueryHistoryEntry}s in the
+ * {@link QueryHistoryEntryStorage}s as well as the persistence of the
+ * complete history to file which occurs asynchronously after every
+ * {@link QueryHistoryEntryStorage#store(java.lang.Class, QueryHistoryEntry) }
+ * in file based storages. The database storage runs on embedded Derby.
+ *
+ * @author richter
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryHistoryEntryStorageBenchmark {
+    /**
+     * The seed for the generation of query texts which makes them comparable
+     * between runs.
+     */
+    private final static long QUERY_TEXT_SEED = 1L;
+
+    private static List<QueryHistoryEntry> createEntries(int queryTextCount) {
+        Random random = new Random(QUERY_TEXT_SEED);
+        List<QueryHistoryEntry> retValue = new ArrayList<>(queryTextCount);
+        for(int i=0; i<queryTextCount; i++) {
+            String queryText = String.format("SELECT t FROM TestEntity t WHERE t.id < %d",
+                    random.nextInt(1000));
+            retValue.add(new QueryHistoryEntry(queryText,
+                    1+random.nextInt(100), //usageCount
+                    new Date()));
+        }
+        return retValue;
+    }
+
+    private static AbstractFileQueryHistoryEntryStorage createFileStorage(String storageType,
+            File file) throws IOException,
+            ClassNotFoundException {
+        switch(storageType) {
+            case "xml":
+                return new XMLFileQueryHistoryEntryStorage(file,
+                        null //issueHandler
+                );
+            case "serializing":
+                return new SerializingFileQueryHistoryEntryStorage(file,
+                        null //issueHandler
+                );
+            case "journal":
+                return new JournalFileQueryHistoryEntryStorage(file,
+                        null //issueHandler
+                );
+            case "binary":
+                return new BinaryFileQueryHistoryEntryStorage(file,
+                        null //issueHandler
+                );
+            default:
+                throw new IllegalArgumentException(String.format("storage type '%s' isn't supported",
+                        storageType));
+        }
+    }
+
+    /**
+     * Creates a temporary file and deletes it so that the storage creates it.
+     */
+    private static File createMissingFile(String prefix) throws IOException {
+        File retValue = Files.createTempFile(prefix, null).toFile();
+        Files.delete(retValue.toPath());
+        return retValue;
+    }
+
+    /**
+     * Stores {@code storeCount} entries and shuts the storage down which
+     * waits until all entries have been persisted, i.e. measures the complete
+     * cost of storing including the asynchronous persistence (measuring
+     * {@link QueryHistoryEntryStorage#store(java.lang.Class, QueryHistoryEntry) }
+     * in throughput mode would queue copies of the history faster than they
+     * can be persisted).
+     * @param historyStorage the storage providing the query texts
+     * @param freshStorage a new storage for every invocation
+     * @throws QueryHistoryEntryStorageException if the storage fails
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    public void storeAndShutdown(HistoryStorage historyStorage,
+            FreshStorage freshStorage) throws QueryHistoryEntryStorageException {
+        for(int i=0; i<freshStorage.storeCount; i++) {
+            QueryHistoryEntry entry = historyStorage.entries.get(ThreadLocalRandom.current().nextInt(historyStorage.queryTextCount));
+            freshStorage.storage.store(TestEntity.class,
+                    new QueryHistoryEntry(entry.getText()));
+        }
+        freshStorage.storage.shutdown();
+    }
+
+    @Benchmark
+    public List<QueryHistoryEntry> retrieve(HistoryStorage historyStorage) {
+        return historyStorage.storage.retrieve(TestEntity.class);
+    }
+
+    @Benchmark
+    public QueryHistoryEntry getInitialEntry(HistoryStorage historyStorage) {
+        return historyStorage.storage.getInitialEntry(TestEntity.class);
+    }
+
+    /**
+     * Writes a history of {@code fileQueryTextCount} entries to file which is
+     * what the file store thread does after every store.
+     * @param fileStorage the file based storage
+     * @throws IOException if writing fails
+     */
+    @Benchmark
+    public void persist(FileStorage fileStorage) throws IOException {
+        fileStorage.storage.store(fileStorage.history);
+    }
+
+    /**
+     * A storage of every type containing {@code queryTextCount} entries.
+     */
+    @State(Scope.Benchmark)
+    public static class HistoryStorage {
+        @Param({"xml", "serializing", "journal", "binary", "database"})
+        public String storageType;
+        /**
+         * The number of distinct query texts which are stored.
+         */
+        @Param({"50"})
+        public int queryTextCount;
+        private File file;
+        private DerbyEmbeddedPersistenceStorage persistenceStorage;
+        private QueryHistoryEntryStorage storage;
+        private List<QueryHistoryEntry> entries;
+
+        @Setup
+        public void setup() throws IOException,
+                ClassNotFoundException,
+                StorageCreationException,
+                QueryHistoryEntryStorageException {
+            if("database".equals(storageType)) {
+                persistenceStorage = TestStorages.createDerbyEmbeddedStorage();
+                storage = new DatabaseQueryHistoryEntryStorage(persistenceStorage,
+                        null //issueHandler
+                );
+            }else {
+                file = createMissingFile(HistoryStorage.class.getSimpleName());
+                storage = createFileStorage(storageType,
+                        file);
+            }
+            entries = createEntries(queryTextCount);
+            for(QueryHistoryEntry entry : entries) {
+                storage.store(TestEntity.class,
+                        entry);
+            }
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            storage.shutdown();
+            if(persistenceStorage != null) {
+                TestStorages.shutdownDerbyEmbeddedStorage(persistenceStorage);
+            }
+            if(file != null) {
+                Files.delete(file.toPath());
+            }
+        }
+    }
+
+    /**
+     * A file based storage of every type and a history of
+     * {@code fileQueryTextCount} entries to persist.
+     */
+    @State(Scope.Benchmark)
+    public static class FileStorage {
+        @Param({"xml", "serializing", "journal", "binary"})
+        public String fileStorageType;
+        @Param({"50"})
+        public int fileQueryTextCount;
+        private File file;
+        private AbstractFileQueryHistoryEntryStorage storage;
+        private Map<Class<?>, List<QueryHistoryEntry>> history;
+
+        @Setup
+        public void setup() throws IOException,
+                ClassNotFoundException {
+            file = createMissingFile(FileStorage.class.getSimpleName());
+            storage = createFileStorage(fileStorageType,
+                    file);
+            history = new HashMap<>();
+            history.put(TestEntity.class,
+                    createEntries(fileQueryTextCount));
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            storage.shutdown();
+            Files.delete(file.toPath());
+        }
+    }
+
+    /**
+     * A storage which is created before and removed after every invocation.
+     */
+    @State(Scope.Thread)
+    public static class FreshStorage {
+        @Param({"100"})
+        public int storeCount;
+        private File file;
+        private QueryHistoryEntryStorage storage;
+
+        @Setup(Level.Invocation)
+        public void setup(HistoryStorage historyStorage) throws IOException,
+                ClassNotFoundException,
+                QueryHistoryEntryStorageException {
+            if("database".equals(historyStorage.storageType)) {
+                storage = new DatabaseQueryHistoryEntryStorage(historyStorage.persistenceStorage,
+                        null //issueHandler
+                );
+                return;
+            }
+            file = createMissingFile(FreshStorage.class.getSimpleName());
+            storage = createFileStorage(historyStorage.storageType,
+                    file);
+        }
+
+        @TearDown(Level.Invocation)
+        public void tearDown() throws IOException {
+            if(file != null) {
+                Files.delete(file.toPath());
+                file = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.storage;
+
+import de.richtercloud.reflection.form.builder.storage.StorageCreationException;
+import de.richtercloud.reflection.form.builder.storage.StorageException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures store, update and query throughput of
+ * {@link DerbyEmbeddedPersistenceStorage} on a database containing
+ * {@code fixtureSize} generated {@link TestEntity}s.
+ *
+ * @author richter
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PersistenceStorageBenchmark {
+    private final static int QUERY_LIMIT = 100;
+    /**
+     * The seed for fixture generation which makes fixtures comparable between
+     * runs.
+     */
+    private final static long FIXTURE_SEED = 1L;
+    @Param({"100", "10000"})
+    public int fixtureSize;
+    @Param({"4"})
+    public int parallelQueryCount;
+    private DerbyEmbeddedPersistenceStorage storage;
+    /**
+     * The fixture entities with the IDs assigned by the database.
+     */
+    private List<TestEntity> fixtures;
+
+    @Setup
+    public void setup() throws IOException,
+            StorageCreationException,
+            StorageException {
+        storage = TestStorages.createDerbyEmbeddedStorage(parallelQueryCount);
+        Random random = new Random(FIXTURE_SEED);
+        fixtures = new ArrayList<>(fixtureSize);
+        for(int i=0; i<fixtureSize; i++) {
+            TestEntity fixture = createEntity(random);
+            storage.store(fixture);
+            fixtures.add(fixture);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        TestStorages.shutdownDerbyEmbeddedStorage(storage);
+    }
+
+    private static TestEntity createEntity(Random random) {
+        return new TestEntity(createName(random));
+    }
+
+    private static String createName(Random random) {
+        return "entity-"+Integer.toHexString(random.nextInt());
+    }
+
+    @Benchmark
+    public TestEntity store() throws StorageException {
+        TestEntity entity = createEntity(ThreadLocalRandom.current());
+        storage.store(entity);
+        return entity;
+    }
+
+    /**
+     * Updates the name of a random fixture entity.
+     * @return the updated entity
+     * @throws StorageException if the update fails
+     */
+    @Benchmark
+    public TestEntity update() throws StorageException {
+        Random random = ThreadLocalRandom.current();
+        TestEntity entity = fixtures.get(random.nextInt(fixtureSize));
+        entity.setName(createName(random));
+        storage.update(entity);
+        return entity;
+    }
+
+    /**
+     * Queries the entities whose name is less than a random name which
+     * matches half of the entities on average.
+     * @return the query result
+     * @throws StorageException if the query fails
+     */
+    @Benchmark
+    public List<TestEntity> runQuery() throws StorageException {
+        return storage.runQuery(String.format("SELECT t FROM TestEntity t WHERE t.name < '%s'",
+                        createName(ThreadLocalRandom.current())),
+                TestEntity.class,
+                QUERY_LIMIT);
+    }
+
+    /**
+     * {@link #runQuery() } with more threads than {@code parallelQueryCount}
+     * which causes contention on the query semaphore and the access lock.
+     * @return the query result
+     * @throws StorageException if the query fails
+     */
+    @Benchmark
+    @Threads(8)
+    public List<TestEntity> runQueryContended() throws StorageException {
+        return runQuery();
+    }
+
+    @Benchmark
+    public TestEntity retrieve() {
+        return storage.retrieve(fixtures.get(ThreadLocalRandom.current().nextInt(fixtureSize)).getId(),
+                TestEntity.class);
+    }
+}
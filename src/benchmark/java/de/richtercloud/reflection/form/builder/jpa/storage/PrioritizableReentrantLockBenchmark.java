@@ -0,0 +1,172 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.storage;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures lock acquisition of {@link PrioritizableReentrantLock} and
+ * {@link PrioritizableReentrantReadWriteLock} without and under contention
+ * with {@link ReentrantLock} as baseline.
+ *
+ * @author richter
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrioritizableReentrantLockBenchmark {
+    private final static int PRIORITY_HIGH = PrioritizableReentrantLock.PRIORITY_DEFAULT+10;
+
+    @Benchmark
+    @Threads(1)
+    public void uncontended(SingleLock singleLock) {
+        lockUnlock(singleLock.lock,
+                singleLock.work);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void contended(SingleLock singleLock) {
+        lockUnlock(singleLock.lock,
+                singleLock.work);
+    }
+
+    /**
+     * One thread acquiring with a high priority while three threads acquire
+     * with the default priority.
+     * @param locks the locks
+     */
+    @Benchmark
+    @Group("priorities")
+    @GroupThreads(1)
+    public void prioritiesHigh(PriorityLocks locks) {
+        locks.prioritizableLock.lock(PRIORITY_HIGH);
+        try {
+            Blackhole.consumeCPU(locks.work);
+        }finally {
+            locks.prioritizableLock.unlock();
+        }
+    }
+
+    @Benchmark
+    @Group("priorities")
+    @GroupThreads(3)
+    public void prioritiesDefault(PriorityLocks locks) {
+        lockUnlock(locks.prioritizableLock,
+                locks.work);
+    }
+
+    /**
+     * Three threads sharing the read lock while one thread acquires the write
+     * lock with a higher priority (the usage pattern of
+     * {@link AbstractPersistenceStorage#getAccessLock() }).
+     * @param locks the locks
+     */
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public void readWriteRead(PriorityLocks locks) {
+        lockUnlock(locks.readWriteLock.readLock(),
+                locks.work);
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public void readWriteWrite(PriorityLocks locks) {
+        locks.readWriteLock.writeLock().lock(PRIORITY_HIGH);
+        try {
+            Blackhole.consumeCPU(locks.work);
+        }finally {
+            locks.readWriteLock.writeLock().unlock();
+        }
+    }
+
+    private static void lockUnlock(Lock lock,
+            long work) {
+        lock.lock();
+        try {
+            Blackhole.consumeCPU(work);
+        }finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The lock compared in {@link #uncontended(SingleLock) } and
+     * {@link #contended(SingleLock) }.
+     */
+    @State(Scope.Benchmark)
+    public static class SingleLock {
+        /**
+         * The amount of work done while holding the lock (in units of
+         * {@link Blackhole#consumeCPU(long) }).
+         */
+        @Param({"0", "100"})
+        public long work;
+        @Param({"prioritizable", "prioritizable-aging", "reentrant"})
+        public String lockType;
+        private Lock lock;
+
+        @Setup
+        public void setup() {
+            switch(lockType) {
+                case "prioritizable":
+                    lock = new PrioritizableReentrantLock();
+                    break;
+                case "prioritizable-aging":
+                    lock = new PrioritizableReentrantLock(1,
+                            TimeUnit.MILLISECONDS);
+                    break;
+                case "reentrant":
+                    lock = new ReentrantLock();
+                    break;
+                default:
+                    throw new IllegalArgumentException(String.format("lock type '%s' isn't supported",
+                            lockType));
+            }
+        }
+    }
+
+    /**
+     * The locks shared by the threads of the group benchmarks.
+     */
+    @State(Scope.Group)
+    public static class PriorityLocks {
+        @Param({"0", "100"})
+        public long work;
+        private final PrioritizableReentrantLock prioritizableLock = new PrioritizableReentrantLock();
+        private final PrioritizableReentrantReadWriteLock readWriteLock = new PrioritizableReentrantReadWriteLock();
+    }
+}
@@ -14,6 +14,9 @@
  */
 package de.richtercloud.reflection.form.builder.jpa;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /*
 internal implementation notes:
 - passing instances to components only requires reflection based creation which
@@ -23,6 +26,8 @@ programmatic ID generation (with the option of manual ID assignment), but it
 will be kept in the reflection-form-builder library
 - could be handled in PersistenceStorage, but a separate interface follows
 composition-over-inheritance
+- getNextIds is a default method in order to keep implementations which can't
+reserve multiple IDs at once (like GeneratedValueIdGenerator) unchanged
 */
 /**
  *
@@ -41,4 +46,22 @@ public interface IdGenerator<T> {
      *     generation
      */
     T getNextId(Object instance) throws IdGenerationException;
+
+    /**
+     * Get the next available IDs for all entities in {@code instances}. The
+     * default implementation invokes {@link #getNextId(java.lang.Object) } for
+     * every instance, implementations which can reserve multiple IDs at once
+     * should override it.
+     * @param instances the instances to get the next ids for
+     * @return the next ids in the order of {@code instances}
+     * @throws IdGenerationException wraps any exception which occurs during ID
+     *     generation
+     */
+    default List<T> getNextIds(List<?> instances) throws IdGenerationException {
+        List<T> retValue = new ArrayList<>(instances.size());
+        for(Object instance : instances) {
+            retValue.add(getNextId(instance));
+        }
+        return retValue;
+    }
 }
@@ -14,25 +14,159 @@
  */
 package de.richtercloud.reflection.form.builder.jpa;
 
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+internal implementation notes:
+- the checkpoint isn't written after a time interval, but ahead of the issued
+IDs (every checkpointInterval IDs) because a time based checkpoint might lag
+behind the issued IDs after a crash which would cause duplicates after the
+restart
+- writes to the checkpoint are serialized with a monitor because they have to
+occur in the order of increasing values and have to be completed before the
+covered IDs are handed out, the monitor is only acquired once per
+checkpointInterval IDs
+- the mapped buffer remains valid after the channel has been closed
+- Java 8 doesn't provide an API to unmap a buffer, so close only drops the
+reference to it and the mapping is released when the buffer is garbage
+collected
+- close sets checkpointed to Long.MIN_VALUE before reading the high-water mark
+so that every reservation which isn't covered by the final checkpoint reaches
+the monitor and fails there instead of handing out IDs which might be reissued
+after a restart
+*/
 /**
- * Generates IDs starting from 0 at every start of the JVM. This should be used
- * for testing purposes only which involve entities which are deleted after the
- * test(s) end.
+ * Generates IDs without locking. Every thread reserves a block of
+ * {@code blockSize} IDs from a shared {@link AtomicLong} and hands them out
+ * without further synchronization, so that IDs are unique, but only ascending
+ * per thread if {@code blockSize} is greater than 1.
  *
- * This class is a singleton and a reference ought to be retrieved through
- * {@link #getInstance() }.
+ * The instance retrieved through {@link #getInstance() } generates IDs
+ * starting from 1 at every start of the JVM and should be used for testing
+ * purposes only which involve entities which are deleted after the test(s)
+ * end. Instances created with a checkpoint file persist the high-water mark of
+ * reserved IDs in a memory-mapped file ahead of the issued IDs and continue
+ * after it after a restart. {@link #close() } writes the exact high-water mark
+ * to the checkpoint so that no IDs are skipped after a regular shutdown.
  *
  * @author richter
  */
-public class MemorySequentialIdGenerator implements IdGenerator<Long> {
+public class MemorySequentialIdGenerator implements IdGenerator<Long>, Closeable {
+    private final static Logger LOGGER = LoggerFactory.getLogger(MemorySequentialIdGenerator.class);
     private final static MemorySequentialIdGenerator INSTANCE = new MemorySequentialIdGenerator();
-    private long nextId;
+    public final static int BLOCK_SIZE_DEFAULT = 16;
+    public final static long CHECKPOINT_INTERVAL_DEFAULT = 1024;
+    /**
+     * The size of the checkpoint file (one {@code long}).
+     */
+    private final static int CHECKPOINT_SIZE = Long.BYTES;
+    /**
+     * The highest ID which has been reserved by any thread.
+     */
+    private final AtomicLong highWaterMark;
+    private final int blockSize;
+    /**
+     * The next ID and the last ID of the block reserved by the current thread.
+     */
+    private final ThreadLocal<long[]> threadBlock = ThreadLocal.withInitial(() -> new long[] {1, 0});
+    /**
+     * The highest ID which is covered by the checkpoint ({@link Long#MAX_VALUE}
+     * if no checkpoint is used).
+     */
+    private volatile long checkpointed;
+    private final long checkpointInterval;
+    /**
+     * The mapped checkpoint file ({@code null} if no checkpoint is used or
+     * after {@link #close() }). Guarded by {@code checkpointLock}.
+     */
+    private MappedByteBuffer checkpointBuffer;
+    private final Object checkpointLock = new Object();
+    private boolean closed = false;
 
     public static MemorySequentialIdGenerator getInstance() {
         return INSTANCE;
     }
 
     protected MemorySequentialIdGenerator() {
+        this.highWaterMark = new AtomicLong(0);
+        this.blockSize = 1;
+        this.checkpointed = Long.MAX_VALUE;
+        this.checkpointInterval = 0;
+        this.checkpointBuffer = null;
+    }
+
+    /**
+     * Creates a {@code MemorySequentialIdGenerator} which persists its
+     * high-water mark in {@code checkpointFile} using
+     * {@link #BLOCK_SIZE_DEFAULT} and {@link #CHECKPOINT_INTERVAL_DEFAULT}.
+     * @param checkpointFile the checkpoint file
+     * @throws IdGenerationException if the checkpoint file can't be read or
+     *     created
+     */
+    public MemorySequentialIdGenerator(File checkpointFile) throws IdGenerationException {
+        this(checkpointFile,
+                BLOCK_SIZE_DEFAULT,
+                CHECKPOINT_INTERVAL_DEFAULT);
+    }
+
+    /**
+     * Creates a {@code MemorySequentialIdGenerator} which persists its
+     * high-water mark in {@code checkpointFile}.
+     * @param checkpointFile the checkpoint file which is created if it doesn't
+     *     exist
+     * @param blockSize the number of IDs every thread reserves at once
+     * @param checkpointInterval the number of IDs which are covered by the
+     *     checkpoint ahead of the high-water mark (IDs up to this number are
+     *     lost after every restart)
+     * @throws IdGenerationException if the checkpoint file can't be read or
+     *     created
+     * @throws IllegalArgumentException if {@code blockSize} or
+     *     {@code checkpointInterval} are less than 1
+     */
+    public MemorySequentialIdGenerator(File checkpointFile,
+            int blockSize,
+            long checkpointInterval) throws IdGenerationException {
+        if(checkpointFile == null) {
+            throw new IllegalArgumentException("checkpointFile mustn't be null");
+        }
+        if(blockSize < 1) {
+            throw new IllegalArgumentException("blockSize has to be >= 1");
+        }
+        if(checkpointInterval < 1) {
+            throw new IllegalArgumentException("checkpointInterval has to be >= 1");
+        }
+        this.blockSize = blockSize;
+        this.checkpointInterval = checkpointInterval;
+        long checkpoint;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(checkpointFile, "rw");
+                FileChannel channel = randomAccessFile.getChannel()) {
+            boolean checkpointExists = channel.size() >= CHECKPOINT_SIZE;
+            this.checkpointBuffer = channel.map(FileChannel.MapMode.READ_WRITE,
+                    0, //position
+                    CHECKPOINT_SIZE);
+            if(checkpointExists) {
+                checkpoint = checkpointBuffer.getLong(0);
+                LOGGER.debug(String.format("continuing after checkpoint %d read from '%s'",
+                        checkpoint,
+                        checkpointFile.getAbsolutePath()));
+            }else {
+                checkpoint = 0;
+            }
+        } catch (IOException ex) {
+            throw new IdGenerationException(ex);
+        }
+        this.highWaterMark = new AtomicLong(checkpoint);
+        this.checkpointed = checkpoint;
     }
 
     /**
@@ -43,7 +177,84 @@ public class MemorySequentialIdGenerator implements IdGenerator<Long> {
      */
     @Override
     public Long getNextId(Object instance) {
-        this.nextId += 1;
-        return nextId;
+        long[] block = threadBlock.get();
+        if(block[0] > block[1]) {
+            long last = highWaterMark.addAndGet(blockSize);
+            checkpoint(last);
+            block[0] = last-blockSize+1;
+            block[1] = last;
+        }
+        long retValue = block[0];
+        block[0] += 1;
+        return retValue;
+    }
+
+    /**
+     * Reserves a contiguous range of IDs for all {@code instances} at once
+     * (bypassing the block of the current thread).
+     * @param instances the instances to get the next ids for
+     * @return the next ids in the order of {@code instances}
+     */
+    @Override
+    public List<Long> getNextIds(List<?> instances) {
+        int count = instances.size();
+        List<Long> retValue = new ArrayList<>(count);
+        if(count == 0) {
+            return retValue;
+        }
+        long last = highWaterMark.addAndGet(count);
+        checkpoint(last);
+        for(long id = last-count+1; id <= last; id++) {
+            retValue.add(id);
+        }
+        return retValue;
+    }
+
+    /**
+     * Makes sure that the checkpoint covers {@code last} before IDs up to
+     * {@code last} are handed out.
+     * @param last the highest reserved ID
+     */
+    private void checkpoint(long last) {
+        if(last <= checkpointed) {
+            return;
+        }
+        synchronized(checkpointLock) {
+            if(closed) {
+                throw new IllegalStateException("generator has been closed");
+            }
+            if(last <= checkpointed) {
+                //written by another thread in the meantime
+                return;
+            }
+            long checkpoint = last+checkpointInterval;
+            checkpointBuffer.putLong(0, checkpoint);
+            checkpointBuffer.force();
+            checkpointed = checkpoint;
+        }
+    }
+
+    /**
+     * Writes the high-water mark to the checkpoint and releases the mapped
+     * checkpoint file. Requesting IDs which aren't covered by the checkpoint
+     * anymore afterwards causes an {@link IllegalStateException}. Has no
+     * effect if no checkpoint is used or the generator has already been
+     * closed.
+     */
+    @Override
+    public void close() {
+        synchronized(checkpointLock) {
+            if(checkpointBuffer == null || closed) {
+                return;
+            }
+            closed = true;
+            checkpointed = Long.MIN_VALUE;
+            long checkpoint = highWaterMark.get();
+            checkpointBuffer.putLong(0, checkpoint);
+            checkpointBuffer.force();
+            checkpointBuffer = null;
+            LOGGER.debug(String.format("wrote final checkpoint %d",
+                    checkpoint));
+        }
     }
 }
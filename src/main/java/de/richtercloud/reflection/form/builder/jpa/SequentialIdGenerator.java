@@ -16,45 +16,233 @@ package de.richtercloud.reflection.form.builder.jpa;
 
 import de.richtercloud.reflection.form.builder.jpa.sequence.SequenceManagementException;
 import de.richtercloud.reflection.form.builder.jpa.storage.PersistenceStorage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import javax.persistence.Entity;
 
+/*
+internal implementation notes:
+- the mapping from class to sequence name is cached after the existence of the
+sequence has been ensured, so that the storage is only asked once per class
+whether the sequence exists
+- creation of sequences is synchronized because two threads checking for the
+same non-existing sequence would both try to create it
+- sequences created for a sequence name mapping start at the next value of
+SEQUENCE_NAME_DEFAULT (if it exists) because entities which already have been
+persisted got their IDs from it; the value is reserved from
+SEQUENCE_NAME_DEFAULT so that it's assigned only once, the values retrieved from
+SEQUENCE_NAME_DEFAULT afterwards can still collide with the ones of the new
+sequence, though, which is why all instances sharing a database have to switch
+to the mapping at the same time
+- seeding from MAX(id) of the entity tables would cover manually assigned IDs,
+but would require the mapped tables and ID columns of all classes of a
+hierarchy which aren't available here
+*/
 /**
  * An ID generator which delegates sequence retrieval to a
  * {@link PersistenceStorage}.
  *
+ * By default all IDs are retrieved from the sequence
+ * {@link #SEQUENCE_NAME_DEFAULT}. Since every ID allocation contends on the
+ * same sequence (or table row in case the database doesn't support sequences)
+ * a mapping from entity class to sequence name can be specified, e.g.
+ * {@link #perEntityHierarchySequenceName(java.lang.Class) }, in which case
+ * sequences are created lazily when the first ID for a class is requested.
+ *
+ * In order to migrate a database whose IDs have been generated with
+ * {@link #SEQUENCE_NAME_DEFAULT}, the sequences created for a mapping start
+ * after the current value of {@link #SEQUENCE_NAME_DEFAULT}. All instances
+ * of the application using the database have to switch to the mapping at the
+ * same time because IDs retrieved from {@link #SEQUENCE_NAME_DEFAULT} after the
+ * creation of a mapped sequence can collide with IDs of the mapped sequence.
+ *
  * @author richter
  */
 public class SequentialIdGenerator implements IdGenerator<Long> {
     public final static String SEQUENCE_NAME_DEFAULT = "sequential-id";
-    private final String sequenceName = SEQUENCE_NAME_DEFAULT;
+    /**
+     * The sequence used for all classes or {@code null} if sequence names are
+     * retrieved from {@code sequenceNameMapping}.
+     */
+    private final String sequenceName;
+    private final Function<Class<?>, String> sequenceNameMapping;
+    private final Map<Class<?>, String> sequenceNameCache = new ConcurrentHashMap<>();
+    /**
+     * Sequences which are known to exist. Guarded by itself.
+     */
+    private final Set<String> existingSequences = new HashSet<>();
     private final PersistenceStorage<Long> storage;
 
     /**
-     * Creates a new {@code SequentialIdGenerator}.
+     * Creates a new {@code SequentialIdGenerator} which uses the sequence
+     * {@link #SEQUENCE_NAME_DEFAULT} for all classes.
      * @param storage the persistence storage providing the sequence
      * @throws IdGenerationException indicates that an exception during the
      *     generation of the ID occured
      */
     public SequentialIdGenerator(PersistenceStorage<Long> storage) throws IdGenerationException {
         this.storage = storage;
+        this.sequenceName = SEQUENCE_NAME_DEFAULT;
+        this.sequenceNameMapping = null;
         init();
     }
 
+    /**
+     * Creates a new {@code SequentialIdGenerator} which uses the sequence
+     * returned by {@code sequenceNameMapping} for the class of the instance
+     * passed to {@link #getNextId(java.lang.Object) }. Sequences are created
+     * when they're used for the first time.
+     * @param storage the persistence storage providing the sequences
+     * @param sequenceNameMapping the mapping from entity class to sequence name
+     *     (classes which share an ID, e.g. in an inheritance hierarchy, need to
+     *     be mapped to the same sequence)
+     */
+    public SequentialIdGenerator(PersistenceStorage<Long> storage,
+            Function<Class<?>, String> sequenceNameMapping) {
+        if(sequenceNameMapping == null) {
+            throw new IllegalArgumentException("sequenceNameMapping mustn't be null");
+        }
+        this.storage = storage;
+        this.sequenceName = null;
+        this.sequenceNameMapping = sequenceNameMapping;
+    }
+
+    /**
+     * Maps {@code clazz} to a sequence named after the entity name of the
+     * topmost superclass annotated with {@link Entity} so that all classes of
+     * an entity inheritance hierarchy share one sequence. Entity names are
+     * unique in a persistence unit (unlike simple class names) and short
+     * enough for the identifier length limits of databases (unlike fully
+     * qualified class names). The name is used in lower case, so entity
+     * names which differ only in case are mapped to the same sequence.
+     * @param clazz the class to map
+     * @return the sequence name
+     */
+    public static String perEntityHierarchySequenceName(Class<?> clazz) {
+        Class<?> root = clazz;
+        Class<?> superclass = clazz.getSuperclass();
+        while(superclass != null) {
+            if(superclass.isAnnotationPresent(Entity.class)) {
+                root = superclass;
+            }
+            superclass = superclass.getSuperclass();
+        }
+        Entity rootEntity = root.getAnnotation(Entity.class);
+        String entityName = rootEntity != null && !rootEntity.name().isEmpty()
+                ? rootEntity.name()
+                : root.getSimpleName();
+            //the default entity name is the unqualified class name
+        return String.format("%s-%s",
+                SEQUENCE_NAME_DEFAULT,
+                entityName.toLowerCase(Locale.ENGLISH));
+            //lower case avoids mismatches on databases which don't preserve the
+            //case of table names (e.g. MySQL on some platforms)
+    }
+
     private void init() throws IdGenerationException {
-        try {
-            if(!storage.checkSequenceExists(sequenceName)) {
-                storage.createSequence(sequenceName);
+        ensureSequenceExists(sequenceName);
+    }
+
+    private void ensureSequenceExists(String name) throws IdGenerationException {
+        synchronized(existingSequences) {
+            if(existingSequences.contains(name)) {
+                return;
             }
-        } catch (SequenceManagementException ex) {
-            throw new IdGenerationException(ex);
+            try {
+                if(!storage.checkSequenceExists(name)) {
+                    if(sequenceName == null
+                            && !SEQUENCE_NAME_DEFAULT.equals(name)
+                            && storage.checkSequenceExists(SEQUENCE_NAME_DEFAULT)) {
+                        storage.createSequence(name,
+                                storage.getNextSequenceValue(SEQUENCE_NAME_DEFAULT));
+                    }else {
+                        storage.createSequence(name);
+                    }
+                }
+            } catch (SequenceManagementException ex) {
+                throw new IdGenerationException(ex);
+            }
+            existingSequences.add(name);
+        }
+    }
+
+    private String retrieveSequenceName(Object instance) throws IdGenerationException {
+        if(sequenceName != null) {
+            return sequenceName;
+        }
+        if(instance == null) {
+            throw new IllegalArgumentException("instance mustn't be null if "
+                    + "sequences are mapped per class");
         }
+        Class<?> clazz = instance.getClass();
+        String retValue = sequenceNameCache.get(clazz);
+        if(retValue == null) {
+            retValue = sequenceNameMapping.apply(clazz);
+            ensureSequenceExists(retValue);
+            sequenceNameCache.put(clazz,
+                    retValue);
+        }
+        return retValue;
     }
 
     @Override
     public Long getNextId(Object instance) throws IdGenerationException {
+        String instanceSequenceName = retrieveSequenceName(instance);
         try {
-            return storage.getNextSequenceValue(sequenceName);
+            return storage.getNextSequenceValue(instanceSequenceName);
         } catch (SequenceManagementException ex) {
             throw new IdGenerationException(ex);
         }
     }
+
+    /**
+     * Reserves the IDs for all instances mapped to the same sequence with one
+     * call to
+     * {@link PersistenceStorage#getNextSequenceValues(java.lang.String, int) }.
+     * @param instances the instances to get the next ids for
+     * @return the next ids in the order of {@code instances}
+     * @throws IdGenerationException wraps any exception which occurs during ID
+     *     generation
+     */
+    @Override
+    public List<Long> getNextIds(List<?> instances) throws IdGenerationException {
+        Map<String, List<Integer>> sequenceIndices = new LinkedHashMap<>();
+        int index = 0;
+        for(Object instance : instances) {
+            String instanceSequenceName = retrieveSequenceName(instance);
+            List<Integer> indices = sequenceIndices.get(instanceSequenceName);
+            if(indices == null) {
+                indices = new LinkedList<>();
+                sequenceIndices.put(instanceSequenceName,
+                        indices);
+            }
+            indices.add(index);
+            index++;
+        }
+        Long[] retValue = new Long[instances.size()];
+        for(Map.Entry<String, List<Integer>> sequenceIndex : sequenceIndices.entrySet()) {
+            List<Long> sequenceValues;
+            try {
+                sequenceValues = storage.getNextSequenceValues(sequenceIndex.getKey(),
+                        sequenceIndex.getValue().size());
+            } catch (SequenceManagementException ex) {
+                throw new IdGenerationException(ex);
+            }
+            int valueIndex = 0;
+            for(int instanceIndex : sequenceIndex.getValue()) {
+                retValue[instanceIndex] = sequenceValues.get(valueIndex);
+                valueIndex++;
+            }
+        }
+        return new ArrayList<>(Arrays.asList(retValue));
+    }
 }
@@ -14,6 +14,7 @@
  */
 package de.richtercloud.reflection.form.builder.jpa.idapplier;
 
+import java.util.Map;
 import java.util.Set;
 import javax.swing.JComponent;
 
@@ -48,4 +49,27 @@ public interface IdApplier<C extends JComponent> {
      *     the ID occured
      */
     void applyId(Object entity, Set<C> idFieldComponents) throws IdApplicationException;
+
+    /**
+     * Applies IDs to all entities in {@code idFieldComponents} like
+     * {@link #applyId(java.lang.Object, java.util.Set) }, but allows
+     * implementations to retrieve the IDs for all entities without an ID at
+     * once (e.g. in one sequence reservation) which is useful if a form
+     * creates many new entities at once. The default implementation invokes
+     * {@link #applyId(java.lang.Object, java.util.Set) } for every entity.
+     * Callers should pass an {@link java.util.IdentityHashMap} because
+     * entities without an ID might be equal if they implement
+     * {@code equals} based on their ID.
+     *
+     * @param idFieldComponents the sets of id field components mapped to their
+     *     entity
+     * @throws IdApplicationException if an exception during the application of
+     *     the IDs occured
+     */
+    default void applyIds(Map<Object, Set<C>> idFieldComponents) throws IdApplicationException {
+        for(Map.Entry<Object, Set<C>> idFieldComponent : idFieldComponents.entrySet()) {
+            applyId(idFieldComponent.getKey(),
+                    idFieldComponent.getValue());
+        }
+    }
 }
@@ -17,6 +17,9 @@ package de.richtercloud.reflection.form.builder.jpa.idapplier;
 import de.richtercloud.reflection.form.builder.jpa.IdGenerationException;
 import de.richtercloud.reflection.form.builder.jpa.IdGenerator;
 import de.richtercloud.reflection.form.builder.jpa.panels.LongIdPanel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -57,4 +60,46 @@ public class LongIdPanelIdApplier implements IdApplier<LongIdPanel> {
         }
         component.setValue(nextId);
     }
+
+    /**
+     * Retrieves the IDs for all entities in {@code idFieldComponents} whose
+     * component doesn't have a value yet with one call to
+     * {@link IdGenerator#getNextIds(java.util.List) }. Only supports one value
+     * in every set of {@code idFieldComponents}.
+     * @param idFieldComponents the sets of id field components mapped to their
+     *     entity
+     * @throws IllegalArgumentException if a set in {@code idFieldComponents}
+     *     contains more than one value
+     */
+    @Override
+    public void applyIds(Map<Object, Set<LongIdPanel>> idFieldComponents) throws IdApplicationException,
+            IllegalArgumentException {
+        List<Object> entities = new ArrayList<>(idFieldComponents.size());
+        List<LongIdPanel> components = new ArrayList<>(idFieldComponents.size());
+        for(Map.Entry<Object, Set<LongIdPanel>> idFieldComponent : idFieldComponents.entrySet()) {
+            if(idFieldComponent.getValue().size() != 1) {
+                throw new IllegalArgumentException("more than one item in idFieldComponents not supported yet");
+            }
+            LongIdPanel component = idFieldComponent.getValue().iterator().next();
+            if(component.getValue() != null) {
+                //id already set -> skip in order to avoid another id being
+                //assigned during persisting
+                continue;
+            }
+            entities.add(idFieldComponent.getKey());
+            components.add(component);
+        }
+        if(entities.isEmpty()) {
+            return;
+        }
+        List<Long> nextIds;
+        try {
+            nextIds = idGenerator.getNextIds(entities);
+        } catch (IdGenerationException ex) {
+            throw new IdApplicationException(ex);
+        }
+        for(int i=0; i<components.size(); i++) {
+            components.get(i).setValue(nextIds.get(i));
+        }
+    }
 }
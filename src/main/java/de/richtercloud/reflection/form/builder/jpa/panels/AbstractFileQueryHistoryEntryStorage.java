@@ -20,16 +20,19 @@ import de.richtercloud.message.handler.Message;
 import java.io.File;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.swing.JOptionPane;
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
@@ -46,52 +49,128 @@ public abstract class AbstractFileQueryHistoryEntryStorage implements QueryHisto
      * The maximum of entries per class.
      */
     private final static int ENTRY_MAX = 20;
+    /**
+     * The default time the file store thread waits for further changes before
+     * storing.
+     */
+    public final static long DEBOUNCE_INTERVAL_DEFAULT = 500;
+    /**
+     * The capacity of {@code fileStoreThreadQueue}.
+     */
+    private final static int FILE_STORE_THREAD_QUEUE_CAPACITY = 16;
     private final File file;
-    private final Map<Class<?>, List<QueryHistoryEntry>> cache;
+    /**
+     * The history per class. Classes which are loaded lazily with
+     * {@link #initEntries(java.lang.Class) } are added when they're accessed
+     * for the first time.
+     */
+    private final ConcurrentMap<Class<?>, ClassQueryHistory> cache = new ConcurrentHashMap<>();
     private final IssueHandler issueHandler;
     /**
-     * Accepts pointers to {@code cache} which trigger the synchronization to
-     * {@code file} asynchronously in {@code fileStoreThread}. Sending
-     * {@code null} indicates that the thread ought to shut down.
+     * Accepts copies of {@code cache} and signals which trigger the
+     * synchronization to {@code file} asynchronously in
+     * {@code fileStoreThread}. Sending {@code poison} indicates that the thread
+     * ought to shut down. The oldest element is dropped if the queue is full
+     * because it's superseded by newer ones.
      */
-    private final BlockingQueue<Map<Class<?>, List<QueryHistoryEntry>>> fileStoreThreadQueue = new LinkedBlockingQueue<>();
+    private final BlockingQueue<Map<Class<?>, List<QueryHistoryEntry>>> fileStoreThreadQueue = new ArrayBlockingQueue<>(FILE_STORE_THREAD_QUEUE_CAPACITY);
     private final Thread fileStoreThread;
+    private final Signal poison = new Signal();
+    /**
+     * Indicates that {@code dirty} has been set and the file store thread
+     * ought to store a copy of {@code cache}.
+     */
+    private final Signal dirtySignal = new Signal();
+    /**
+     * Whether {@code cache} has been changed since the file store thread
+     * created its last copy. Allows to copy {@code cache} at most once per
+     * storage to file.
+     */
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+    /**
+     * The time in milliseconds the file store thread waits for further
+     * changes before storing so that bursts of changes cause only one storage.
+     */
+    private final long debounceInterval;
     /**
-     * It's not sufficient to create a swallow copy of {@code cache} because it
-     * only contains references to lists which remain the same and still can
-     * cause {@link ConcurrentModificationException}s when being persisted
-     * asynchronously.
+     * Whether {@link #shutdown() } has been called after which changes can't
+     * be stored anymore.
      */
-    private final Lock cacheCopyLock = new ReentrantLock();
+    private volatile boolean shutdown = false;
 
     public AbstractFileQueryHistoryEntryStorage(File file,
             IssueHandler issueHandler) throws ClassNotFoundException, IOException {
+        this(file,
+                issueHandler,
+                DEBOUNCE_INTERVAL_DEFAULT);
+    }
+
+    /**
+     * Creates a new {@code AbstractFileQueryHistoryEntryStorage}.
+     * @param file the file to store in
+     * @param issueHandler the issue handler to report exceptions which occur
+     *     during asynchronous storage to
+     * @param debounceInterval the time in milliseconds to wait for further
+     *     changes before storing ({@code 0} stores without waiting)
+     * @throws ClassNotFoundException if {@link #init() } or
+     *     {@link #initMissingFile() } throws it
+     * @throws IOException if {@code file} can't be created or
+     *     {@link #init() } or {@link #initMissingFile() } throws it
+     * @throws IllegalArgumentException if {@code debounceInterval} is
+     *     negative
+     */
+    public AbstractFileQueryHistoryEntryStorage(File file,
+            IssueHandler issueHandler,
+            long debounceInterval) throws ClassNotFoundException, IOException {
         if(file == null) {
             throw new IllegalArgumentException("file mustn't be null");
         }
+        if(debounceInterval < 0) {
+            throw new IllegalArgumentException("debounceInterval mustn't be negative");
+        }
         this.file = file;
         this.issueHandler = issueHandler;
+        this.debounceInterval = debounceInterval;
+        Map<Class<?>, List<QueryHistoryEntry>> cache0;
         if(!file.exists()) {
             FileUtils.touch(file);
-            this.cache = new HashMap<>();
+            cache0 = initMissingFile();
         }else {
-            Map<Class<?>, List<QueryHistoryEntry>> cache0 = init();
-            if(cache0 != null) {
-                cache = cache0;
-            }else {
-                cache = new HashMap<>();
+            cache0 = init();
+        }
+        if(cache0 != null) {
+            for(Map.Entry<Class<?>, List<QueryHistoryEntry>> cacheEntry : cache0.entrySet()) {
+                cache.put(cacheEntry.getKey(),
+                        new ClassQueryHistory(ENTRY_MAX,
+                                cacheEntry.getValue()));
             }
         }
         this.fileStoreThread = new Thread(() -> {
             try {
-                Map<Class<?>, List<QueryHistoryEntry>> head = fileStoreThreadQueue.take();
-                while(!(head instanceof Poison)) {
-                    try {
-                        store(head);
-                    } catch (IOException ex) {
-                        issueHandler.handle(new Message(ex, JOptionPane.ERROR_MESSAGE));
+                boolean shutdown = false;
+                while(!shutdown) {
+                    Map<Class<?>, List<QueryHistoryEntry>> head = fileStoreThreadQueue.take();
+                    List<Map<Class<?>, List<QueryHistoryEntry>>> heads = new LinkedList<>();
+                    heads.add(head);
+                    if(head != poison) {
+                        //wait for further changes unless shutting down
+                        long deadline = System.currentTimeMillis()+debounceInterval;
+                        long remaining = debounceInterval;
+                        while(remaining > 0) {
+                            head = fileStoreThreadQueue.poll(remaining,
+                                    TimeUnit.MILLISECONDS);
+                            if(head != null) {
+                                heads.add(head);
+                                if(head == poison) {
+                                    break;
+                                }
+                            }
+                            remaining = deadline-System.currentTimeMillis();
+                        }
                     }
-                    head = fileStoreThreadQueue.take();
+                    fileStoreThreadQueue.drainTo(heads);
+                    shutdown = heads.contains(poison);
+                    storeLatest(heads);
                 }
             } catch (InterruptedException ex) {
                 LOGGER.error("unexpected exception during storing values occured",
@@ -104,9 +183,40 @@ public abstract class AbstractFileQueryHistoryEntryStorage implements QueryHisto
         fileStoreThread.start();
     }
 
+    /**
+     * Stores the latest copy in {@code heads} and a new copy of {@code cache}
+     * if it has changed in the file store thread.
+     * @param heads the elements taken from {@code fileStoreThreadQueue}
+     */
+    private void storeLatest(List<Map<Class<?>, List<QueryHistoryEntry>>> heads) {
+        Map<Class<?>, List<QueryHistoryEntry>> latest = null;
+        for(Map<Class<?>, List<QueryHistoryEntry>> head : heads) {
+            if(!(head instanceof Signal)) {
+                latest = head;
+            }
+        }
+        try {
+            if(latest != null) {
+                store(latest);
+            }
+            if(dirty.getAndSet(false)) {
+                //resetting before copying makes sure that changes after the
+                //copy are stored again
+                store(createCacheCopy());
+            }
+        } catch (IOException ex) {
+            issueHandler.handle(new Message(ex, JOptionPane.ERROR_MESSAGE));
+        }
+    }
+
+    /**
+     * Stores all pending changes and stops the file store thread. Storing
+     * entries afterwards fails with {@link IllegalStateException}.
+     */
     @Override
     public void shutdown() {
-        fileStoreThreadQueue.add(new Poison());
+        shutdown = true;
+        offer(poison);
         try {
             fileStoreThread.join();
         } catch (InterruptedException ex) {
@@ -116,23 +226,88 @@ public abstract class AbstractFileQueryHistoryEntryStorage implements QueryHisto
         }
     }
 
+    /**
+     * Adds {@code head} to {@code fileStoreThreadQueue} and drops the oldest
+     * elements if it's full.
+     */
+    private void offer(Map<Class<?>, List<QueryHistoryEntry>> head) {
+        while(!fileStoreThreadQueue.offer(head)) {
+            fileStoreThreadQueue.poll();
+        }
+    }
+
     protected abstract void store(Map<Class<?>, List<QueryHistoryEntry>> head) throws IOException;
 
     protected abstract Map<Class<?>, List<QueryHistoryEntry>> init() throws IOException, ClassNotFoundException;
 
+    /**
+     * Called instead of {@link #init() } if the storage file didn't exist and
+     * has been created empty. Allows subclasses which keep parts of the
+     * history in other files to load them. The default implementation returns
+     * {@code null}.
+     * @return the loaded history or {@code null} if there's none
+     * @throws IOException if an I/O exception occurs during loading
+     * @throws ClassNotFoundException if a class of the history can't be
+     *     loaded
+     */
+    protected Map<Class<?>, List<QueryHistoryEntry>> initMissingFile() throws IOException, ClassNotFoundException {
+        return null;
+    }
+
     public File getFile() {
         return file;
     }
 
+    protected IssueHandler getIssueHandler() {
+        return issueHandler;
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws IllegalStateException if the storage has been shut down
+     */
     @Override
     public void store(Class<?> clazz, QueryHistoryEntry entry) throws QueryHistoryEntryStorageException {
-        List<QueryHistoryEntry> entries = cache.get(clazz);
+        if(shutdown) {
+            throw new IllegalStateException("storage has been shut down");
+        }
+        ClassQueryHistory history = cache.computeIfAbsent(clazz,
+                key -> {
+                    List<QueryHistoryEntry> entries = initEntries(key);
+                    return entries != null
+                            ? new ClassQueryHistory(ENTRY_MAX, entries)
+                            : new ClassQueryHistory(ENTRY_MAX);
+                });
+        history.store(entry);
+        onStored(clazz,
+                entry);
+    }
+
+    /**
+     * Stores {@code entry} for {@code clazz} in {@code history} according to
+     * the rules described in
+     * {@link QueryHistoryEntryStorage#store(java.lang.Class, QueryHistoryEntry) }
+     * and removes the least used entry if a new entry is added and there're
+     * more than the maximum number of entries per class. Used to replay
+     * histories, {@link #store(java.lang.Class, QueryHistoryEntry) } uses a
+     * more efficient structure with the same behaviour.
+     * @param history the history to store in
+     * @param clazz the class to store for
+     * @param entry the entry to store
+     */
+    protected static void storeInto(Map<Class<?>, List<QueryHistoryEntry>> history,
+            Class<?> clazz,
+            QueryHistoryEntry entry) {
+        List<QueryHistoryEntry> entries = history.get(clazz);
         if(entries == null) {
             entries = new LinkedList<>();
-            cache.put(clazz,
+            history.put(clazz,
                     entries);
         }
-        if(entries.size() > ENTRY_MAX) {
+        if(entries.contains(entry)) {
+            entries.remove(entry);
+                //otherwise usageCount and lastUsage aren't updated
+        }else if(entries.size() > ENTRY_MAX) {
             Iterator<QueryHistoryEntry> entriesItr = entries.iterator();
             QueryHistoryEntry leastUsed = entriesItr.next();
             while(entriesItr.hasNext()) {
@@ -143,63 +318,127 @@ public abstract class AbstractFileQueryHistoryEntryStorage implements QueryHisto
             }
             entries.remove(leastUsed);
         }
-        if(entries.contains(entry)) {
-            entries.remove(entry);
-                //otherwise usageCount and lastUsage aren't updated
-        }
         entries.add(entry);
+    }
 
-        //copy cache (see field comment for cacheCopyLock for explanation)
-        Map<Class<?>, List<QueryHistoryEntry>> cacheCopy;
-        cacheCopyLock.lock();
-        try {
-            cacheCopy = copyCache();
-        }finally {
-            cacheCopyLock.unlock();
+    /**
+     * Called after {@code entry} has been stored in the cache. The default
+     * implementation marks the cache as changed so that the file store thread
+     * persists a copy of the complete cache after the debounce interval (the
+     * copy is created in the file store thread once for all changes during the
+     * interval).
+     * @param clazz the class {@code entry} has been stored for
+     * @param entry the stored entry
+     * @throws QueryHistoryEntryStorageException if an exception occurs during
+     *     persisting the entry
+     */
+    protected void onStored(Class<?> clazz,
+            QueryHistoryEntry entry) throws QueryHistoryEntryStorageException {
+        if(dirty.compareAndSet(false, true)) {
+            offer(dirtySignal);
         }
-        fileStoreThreadQueue.offer(new HashMap<>(cacheCopy));
     }
 
+    /**
+     * Schedules {@code head} to be passed to {@link #store(java.util.Map) } in
+     * the file store thread. If further copies are scheduled during the
+     * debounce interval only the latest is stored.
+     * @param head the history to store
+     */
+    protected void scheduleStore(Map<Class<?>, List<QueryHistoryEntry>> head) {
+        offer(head);
+    }
+
+    /**
+     * Creates a copy of the cache which can be persisted asynchronously.
+     * @return the copy
+     */
     @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
-    private Map<Class<?>, List<QueryHistoryEntry>> copyCache() {
+    protected Map<Class<?>, List<QueryHistoryEntry>> createCacheCopy() {
         Map<Class<?>, List<QueryHistoryEntry>> retValue = new HashMap<>();
-        for(Class<?> key : cache.keySet()) {
-            List<QueryHistoryEntry> value = cache.get(key);
-            List<QueryHistoryEntry> copy = new LinkedList<>(value);
-            retValue.put(key,
-                    copy);
+        for(Map.Entry<Class<?>, ClassQueryHistory> cacheEntry : cache.entrySet()) {
+            retValue.put(cacheEntry.getKey(),
+                    new LinkedList<>(cacheEntry.getValue().getEntries()));
+                //copy the immutable snapshot into a LinkedList in order to
+                //keep the format of serialized histories
         }
         return retValue;
     }
 
-    @Override
-    public List<QueryHistoryEntry> retrieve(Class<?> clazz) {
-        List<QueryHistoryEntry> retValue = cache.get(clazz);
+    /**
+     * Gets the history of {@code clazz} from the cache and loads it with
+     * {@link #initEntries(java.lang.Class) } if it's accessed for the first
+     * time.
+     * @param clazz the class to get the history for
+     * @return the history or {@code null} if there're no entries
+     */
+    private ClassQueryHistory getHistory(Class<?> clazz) {
+        ClassQueryHistory retValue = cache.get(clazz);
         if(retValue == null) {
-            retValue = new LinkedList<>();
+            List<QueryHistoryEntry> entries = initEntries(clazz);
+            if(entries != null) {
+                retValue = cache.computeIfAbsent(clazz,
+                        key -> new ClassQueryHistory(ENTRY_MAX, entries));
+            }
         }
         return retValue;
     }
 
+    /**
+     * Allows subclasses to load the entries of {@code clazz} lazily when
+     * they're accessed for the first time instead of loading all entries in
+     * {@link #init() }. Classes which haven't been loaded aren't contained in
+     * the copies passed to {@link #store(java.util.Map) }. Might be called
+     * concurrently for the same class. The default implementation returns
+     * {@code null}.
+     * @param clazz the class to load the entries for
+     * @return the loaded entries or {@code null} if there're none
+     */
+    protected List<QueryHistoryEntry> initEntries(Class<?> clazz) {
+        return null;
+    }
+
+    /**
+     * Retrieves the list of stored entries for {@code clazz}.
+     * @param clazz the class to retrieve for
+     * @return an immutable snapshot of the stored entries in the order in
+     *     which they've been stored
+     */
+    @Override
+    public List<QueryHistoryEntry> retrieve(Class<?> clazz) {
+        ClassQueryHistory history = getHistory(clazz);
+        if(history == null) {
+            return Collections.emptyList();
+        }
+        return history.getEntries();
+    }
+
+    @Override
+    public List<QueryHistoryEntry> find(Class<?> clazz,
+            String text,
+            int limit) {
+        ClassQueryHistory history = getHistory(clazz);
+        if(history == null) {
+            return Collections.emptyList();
+        }
+        return history.find(text,
+                limit);
+    }
+
     @Override
     public QueryHistoryEntry getInitialEntry(Class<?> clazz) {
-        List<QueryHistoryEntry> entries = cache.get(clazz);
-        if(entries == null) {
+        ClassQueryHistory history = getHistory(clazz);
+        if(history == null) {
             return null;
         }
-        Iterator<QueryHistoryEntry> entriesItr = entries.iterator();
-        QueryHistoryEntry mostUsed = entriesItr.next();
-        while(entriesItr.hasNext()) {
-            QueryHistoryEntry entriesNxt = entriesItr.next();
-            if(entriesNxt.getUsageCount() > mostUsed.getUsageCount()) {
-                mostUsed = entriesNxt;
-            }
-        }
-        return mostUsed;
+        return history.getMostUsed();
     }
 
+    /**
+     * Signals to the file store thread which aren't stored.
+     */
     @SuppressWarnings("PMD.AccessorMethodGeneration")
-    private class Poison implements Map<Class<?>, List<QueryHistoryEntry>> {
+    private class Signal implements Map<Class<?>, List<QueryHistoryEntry>> {
 
         @Override
         public int size() {
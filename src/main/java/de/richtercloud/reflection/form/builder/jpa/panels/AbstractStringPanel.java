@@ -14,7 +14,9 @@
  */
 package de.richtercloud.reflection.form.builder.jpa.panels;
 
+import de.richtercloud.reflection.form.builder.jpa.storage.AbstractPersistenceStorage;
 import de.richtercloud.reflection.form.builder.jpa.storage.PersistenceStorage;
+import de.richtercloud.reflection.form.builder.jpa.storage.StringFieldValueIndex;
 import de.richtercloud.reflection.form.builder.storage.StorageException;
 import java.util.Collections;
 import java.util.HashSet;
@@ -33,6 +35,7 @@ public abstract class AbstractStringPanel extends JPanel {
     private final Class<?> entityClass;
     private final String fieldName;
     private final Set<StringPanelUpdateListener> updateListeners = new HashSet<>();
+    private final AutoCompleteResultCache resultCache = new AutoCompleteResultCache();
 
     public AbstractStringPanel(PersistenceStorage storage,
             Class<?> entityClass,
@@ -58,24 +61,90 @@ public abstract class AbstractStringPanel extends JPanel {
     }
 
     /**
-     * Queries the database to check if there's entities which match the current
-     * value of the text field with a LIKE query.
+     * Checks if there's entities which match the current value of the text
+     * field with the {@link StringFieldValueIndex} of the field which serves
+     * the matches of a {@code LIKE '%text%'} query (which can't use database
+     * indices and thus causes a full table scan) from memory. Results are
+     * cached so that refinements of a previous text are answered by filtering
+     * its result. If a trigram index of the field has been enabled in the
+     * storage with
+     * {@link PersistenceStorage#enableTrigramIndex(java.lang.Class, java.lang.String) }
+     * it's queried instead of loading all values into memory and its results
+     * are cached as well if the storage is an
+     * {@link AbstractPersistenceStorage} which counts its changes. Storages
+     * which don't provide indices are queried with
+     * {@link PersistenceStorage#runTrigramIndexQuery(java.lang.Class, java.lang.String, java.lang.String, int) }
+     * without caching.
      * @param textFieldText the text field text to check
-     * @return the list of suggestions
+     * @return the list of distinct suggestions with values starting with
+     *     {@code textFieldText} first
      */
-    /*
-    internal implementation notes:
-    - retrieving Query.getResultList is the shortest, maybe only way of getting
-    the size of the result set
-    */
     protected List<String> check(String textFieldText) throws StorageException {
-        String queryText = generateQueryText(textFieldText);
-        List<String> retValue = storage.runQuery(queryText,
-                String.class, //clazz
+        if(storage.isTrigramIndexEnabled(entityClass,
+                fieldName)) {
+            if(storage instanceof AbstractPersistenceStorage) {
+                return resultCache.find(storage,
+                        ((AbstractPersistenceStorage<?>)storage).getModificationCount(),
+                        (text, limit) -> storage.runTrigramIndexQuery(entityClass,
+                                fieldName,
+                                text,
+                                limit),
+                        textFieldText,
+                        this.initialQueryLimit);
+            }
+            //changes can't be detected
+            return storage.runTrigramIndexQuery(entityClass,
+                    fieldName,
+                    textFieldText,
+                    this.initialQueryLimit);
+        }
+        StringFieldValueIndex index = storage.getStringFieldValueIndex(entityClass,
+                fieldName);
+        if(index == null) {
+            //storage doesn't provide indices
+            return storage.runTrigramIndexQuery(entityClass,
+                    fieldName,
+                    textFieldText,
+                    this.initialQueryLimit);
+        }
+        List<String> retValue = resultCache.find(index,
+                textFieldText,
                 this.initialQueryLimit);
         return retValue;
     }
 
+    /**
+     * Finds values which are similar to {@code textFieldText} within the edit
+     * distance {@code maxDistance} with the {@link StringFieldValueIndex} of
+     * the field. Not supported for fields with a trigram index because they're
+     * too large to be kept in memory.
+     * @param textFieldText the text field text to check
+     * @param maxDistance the maximum edit distance
+     * @param latencyBudgetNanos the time in nanoseconds after which the values
+     *     found so far are returned
+     * @return the similar values ranked by distance and usage or an empty list
+     *     if the field has a trigram index or the storage doesn't provide
+     *     indices
+     * @throws StorageException if loading the index fails
+     */
+    protected List<String> checkSimilar(String textFieldText,
+            int maxDistance,
+            long latencyBudgetNanos) throws StorageException {
+        if(storage.isTrigramIndexEnabled(entityClass,
+                fieldName)) {
+            return Collections.emptyList();
+        }
+        StringFieldValueIndex index = storage.getStringFieldValueIndex(entityClass,
+                fieldName);
+        if(index == null) {
+            return Collections.emptyList();
+        }
+        return index.findSimilar(textFieldText,
+                maxDistance,
+                this.initialQueryLimit,
+                latencyBudgetNanos);
+    }
+
     /**
      * Since there's no converter between text and criteria API or JPA Query
      * instances<ref>http://stackoverflow.com/questions/6276122/can-i-get-the-sql-string-from-a-jpa-query-object</ref>
@@ -113,6 +182,18 @@ public abstract class AbstractStringPanel extends JPanel {
         return retValue;
     }
 
+    /**
+     * The cache of check results which provides hit ratio metrics.
+     * @return the result cache
+     */
+    public AutoCompleteResultCache getResultCache() {
+        return resultCache;
+    }
+
+    public int getInitialQueryLimit() {
+        return initialQueryLimit;
+    }
+
     public Class<?> getEntityClass() {
         return entityClass;
     }
@@ -0,0 +1,281 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.panels;
+
+import de.richtercloud.reflection.form.builder.jpa.storage.StringFieldValueIndex;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+internal implementation notes:
+- results are requested with one more value than the limit in order to know
+whether they're complete (a result with less than limit+1 values contains all
+matching values and every value matching a refinement is contained in it)
+- all entries are invalidated at once when the modification count of the source
+changes or another source is passed (e.g. after the storage recreated its
+indices or a trigram index has been enabled) because a change might affect any
+cached result
+- refinements are filtered with String.contains which is case sensitive, so
+lookups which match case insensitively (e.g. trigram index queries on MySQL)
+might return more values for a refinement than the filtered cached result
+*/
+/**
+ * Caches the results of {@link StringFieldValueIndex#find(java.lang.String, int) }
+ * or any other {@link ValueLookup} and answers refinements of a cached text
+ * (i.e. texts containing it) by filtering the cached result if it's complete.
+ * The most recently used {@code capacity} results are kept.
+ *
+ * @author richter
+ */
+public class AutoCompleteResultCache {
+    public final static int CAPACITY_DEFAULT = 32;
+    private final int capacity;
+    private final Map<String, Entry> entries;
+    private Object source;
+    private long modificationCount;
+    private long hitCount;
+    private long refinementHitCount;
+    private long missCount;
+    private long invalidationCount;
+
+    public AutoCompleteResultCache() {
+        this(CAPACITY_DEFAULT);
+    }
+
+    /**
+     * Creates a new cache.
+     * @param capacity the maximum number of cached results
+     * @throws IllegalArgumentException if {@code capacity} is less than
+     *     {@code 1}
+     */
+    public AutoCompleteResultCache(int capacity) {
+        if(capacity < 1) {
+            throw new IllegalArgumentException("capacity has to be > 0");
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<String, Entry>(16,
+                0.75f,
+                true //accessOrder
+        ) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > AutoCompleteResultCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Finds the values matching {@code text} in {@code index} or in a cached
+     * result.
+     * @param index the index to search
+     * @param text the text to search
+     * @param limit the maximum number of values to return
+     * @return the matching values in the order of
+     *     {@link StringFieldValueIndex#find(java.lang.String, int) }
+     */
+    public List<String> find(StringFieldValueIndex index,
+            String text,
+            int limit) {
+        return find(index,
+                index.getModificationCount(),
+                    //retrieve before searching so that changes during the
+                    //search invalidate the result
+                index::find,
+                text,
+                limit);
+    }
+
+    /**
+     * Finds the values matching {@code text} with {@code lookup} or in a
+     * cached result. Cached results are discarded if {@code source} or
+     * {@code modificationCount} differ from the ones of the previous
+     * invocation.
+     * @param <E> the type of exception thrown by {@code lookup}
+     * @param source the object which identifies the data searched by
+     *     {@code lookup}
+     * @param modificationCount the modification count of the data searched by
+     *     {@code lookup} which has to be retrieved before the invocation
+     * @param lookup the lookup to invoke if there's no usable cached result
+     * @param text the text to search
+     * @param limit the maximum number of values to return
+     * @return the matching values in the order of {@code lookup} which has to
+     *     return values starting with {@code text} first and the rest in
+     *     their natural order
+     * @throws E if {@code lookup} throws it
+     */
+    public synchronized <E extends Exception> List<String> find(Object source,
+            long modificationCount,
+            ValueLookup<E> lookup,
+            String text,
+            int limit) throws E {
+        if(limit <= 0) {
+            throw new IllegalArgumentException("limit has to be > 0");
+        }
+        if(source != this.source || modificationCount != this.modificationCount) {
+            if(!entries.isEmpty()) {
+                invalidationCount += 1;
+                entries.clear();
+            }
+            this.source = source;
+            this.modificationCount = modificationCount;
+        }
+        Entry exactEntry = entries.get(text);
+        if(exactEntry != null && (exactEntry.complete || exactEntry.limit >= limit)) {
+            hitCount += 1;
+            return truncate(exactEntry.values,
+                    limit);
+        }
+        Entry superset = retrieveSuperset(text);
+        if(superset != null) {
+            hitCount += 1;
+            refinementHitCount += 1;
+            List<String> values = filter(superset.values,
+                    text);
+            entries.put(text,
+                    new Entry(values,
+                            true, //complete
+                            limit));
+            return truncate(values,
+                    limit);
+        }
+        missCount += 1;
+        List<String> values = lookup.find(text,
+                limit+1);
+        boolean complete = values.size() <= limit;
+        if(!complete) {
+            values = values.subList(0, limit);
+        }
+        List<String> retValue = Collections.unmodifiableList(new ArrayList<>(values));
+        entries.put(text,
+                new Entry(retValue,
+                        complete,
+                        limit));
+        return retValue;
+    }
+
+    /**
+     * Retrieves the complete cached result of the longest text contained in
+     * {@code text}.
+     * @return the entry or {@code null} if there's no such result
+     */
+    private Entry retrieveSuperset(String text) {
+        Entry retValue = null;
+        int retValueTextLength = -1;
+        for(Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if(entry.getValue().complete
+                    && entry.getKey().length() > retValueTextLength
+                    && text.contains(entry.getKey())) {
+                retValue = entry.getValue();
+                retValueTextLength = entry.getKey().length();
+            }
+        }
+        return retValue;
+    }
+
+    private static List<String> filter(List<String> values,
+            String text) {
+        List<String> retValue = new ArrayList<>();
+        for(String value : values) {
+            if(value.contains(text)) {
+                retValue.add(value);
+            }
+        }
+        retValue.sort(Comparator.comparing((String value) -> !value.startsWith(text))
+                .thenComparing(Comparator.naturalOrder()));
+            //prefix matches first like StringFieldValueIndex.find
+        return Collections.unmodifiableList(retValue);
+    }
+
+    private static List<String> truncate(List<String> values,
+            int limit) {
+        if(values.size() <= limit) {
+            return values;
+        }
+        return values.subList(0, limit);
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Gets the number of hits which have been answered by filtering the
+     * result of a shorter text.
+     * @return the number of refinement hits
+     */
+    public synchronized long getRefinementHitCount() {
+        return refinementHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Gets the number of times the cached results have been discarded because
+     * the index changed.
+     * @return the number of invalidations
+     */
+    public synchronized long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    /**
+     * Gets the ratio of hits and requests.
+     * @return the hit ratio between {@code 0} and {@code 1} or {@code 0} if
+     *     nothing has been requested yet
+     */
+    public synchronized double getHitRatio() {
+        long requestCount = hitCount+missCount;
+        if(requestCount == 0) {
+            return 0;
+        }
+        return (double) hitCount/requestCount;
+    }
+
+    /**
+     * A lookup of the values matching a text.
+     * @param <E> the type of exception thrown by the lookup
+     */
+    @FunctionalInterface
+    public interface ValueLookup<E extends Exception> {
+
+        List<String> find(String text,
+                int limit) throws E;
+    }
+
+    private static class Entry {
+        private final List<String> values;
+        /**
+         * Whether {@code values} contains all matching values.
+         */
+        private final boolean complete;
+        private final int limit;
+
+        Entry(List<String> values,
+                boolean complete,
+                int limit) {
+            this.values = values;
+            this.complete = complete;
+            this.limit = limit;
+        }
+    }
+}
@@ -0,0 +1,365 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.panels;
+
+import de.richtercloud.message.handler.IssueHandler;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+internal implementation notes:
+- the index is read at creation without loading any class, the entries of a
+class are decoded from the contents of the file when they're accessed for the
+first time
+- classes which haven't been accessed aren't contained in the copies passed to
+store(Map) -> their encoded blocks are copied from the contents when writing
+- the contents and the index are replaced together after every write and
+guarded by indexLock
+- the file is read into a heap buffer instead of being memory-mapped because a
+mapped file can't be replaced on Windows and Java 8 doesn't provide an API to
+unmap a buffer, so that the mapping would remain until the buffer is garbage
+collected and the atomic move of the next write would fail
+*/
+/**
+ * Storage in a compact versioned binary format which is read at once and
+ * decoded lazily per class on the first access.
+ *
+ * The file starts with a header consisting of the magic number
+ * {@link #MAGIC}, the format version and the number of classes (all
+ * {@code int}) followed by an index entry per class (the length of the class
+ * name in bytes and the UTF-8 encoded name, the offset and the length of the
+ * block of the class in the file and the number of entries in the block) and
+ * the blocks. A block contains the entries of the class, each consisting of the
+ * length of the query text in bytes, the UTF-8 encoded query text, the usage
+ * count and the last usage in milliseconds since the epoch or {@code -1}. All
+ * numbers are big-endian {@code int}s except the last usage which is a
+ * {@code long}.
+ *
+ * Histories stored by {@link XMLFileQueryHistoryEntryStorage} and
+ * {@link SerializingFileQueryHistoryEntryStorage} can be converted with
+ * {@link QueryHistoryEntryFileConverter}.
+ *
+ * @author richter
+ */
+public class BinaryFileQueryHistoryEntryStorage extends AbstractFileQueryHistoryEntryStorage {
+    private final static Logger LOGGER = LoggerFactory.getLogger(BinaryFileQueryHistoryEntryStorage.class);
+    /**
+     * The magic number at the beginning of the file ({@code QHIB} in ASCII).
+     */
+    public final static int MAGIC = 0x51484942;
+    public final static int VERSION = 1;
+    /**
+     * The length of magic number, version and class count.
+     */
+    private final static int HEADER_LENGTH = 3*Integer.BYTES;
+    private final Object indexLock = new Object();
+    /**
+     * The contents of the file ({@code null} if the file is empty).
+     */
+    private ByteBuffer contents;
+    /**
+     * The index entries of the contents by class name.
+     */
+    private Map<String, IndexEntry> index;
+
+    public BinaryFileQueryHistoryEntryStorage(File file,
+            IssueHandler issueHandler) throws ClassNotFoundException, IOException {
+        this(file,
+                issueHandler,
+                DEBOUNCE_INTERVAL_DEFAULT);
+    }
+
+    public BinaryFileQueryHistoryEntryStorage(File file,
+            IssueHandler issueHandler,
+            long debounceInterval) throws ClassNotFoundException, IOException {
+        super(file,
+                issueHandler,
+                debounceInterval);
+        synchronized(indexLock) {
+            read();
+        }
+    }
+
+    /**
+     * Returns {@code null} because entries are loaded lazily in
+     * {@link #initEntries(java.lang.Class) }.
+     * @return {@code null}
+     */
+    @Override
+    protected Map<Class<?>, List<QueryHistoryEntry>> init() {
+        return null;
+    }
+
+    @Override
+    protected List<QueryHistoryEntry> initEntries(Class<?> clazz) {
+        synchronized(indexLock) {
+            IndexEntry indexEntry = index.get(clazz.getName());
+            if(indexEntry == null) {
+                return null;
+            }
+            try {
+                return decodeBlock(contents,
+                        indexEntry);
+            }catch(BufferUnderflowException ex) {
+                LOGGER.error(String.format("block of class '%s' in '%s' is corrupted, skipping it",
+                        clazz.getName(),
+                        getFile().getAbsolutePath()),
+                        ex);
+                return null;
+            }
+        }
+    }
+
+    @Override
+    protected void store(Map<Class<?>, List<QueryHistoryEntry>> head) throws IOException {
+        synchronized(indexLock) {
+            List<Block> blocks = new ArrayList<>(head.size()+index.size());
+            for(Map.Entry<Class<?>, List<QueryHistoryEntry>> headEntry : head.entrySet()) {
+                blocks.add(encodeBlock(headEntry.getKey().getName(),
+                        headEntry.getValue()));
+            }
+            for(IndexEntry indexEntry : index.values()) {
+                if(!containsClassName(head, indexEntry.className)) {
+                    byte[] data = new byte[indexEntry.length];
+                    ByteBuffer block = contents.duplicate();
+                    block.position(indexEntry.offset);
+                    block.get(data);
+                    blocks.add(new Block(indexEntry.className,
+                            data,
+                            indexEntry.entryCount));
+                }
+            }
+            write(blocks,
+                    getFile());
+            read();
+        }
+    }
+
+    private static boolean containsClassName(Map<Class<?>, List<QueryHistoryEntry>> history,
+            String className) {
+        for(Class<?> clazz : history.keySet()) {
+            if(clazz.getName().equals(className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes {@code history} to {@code file} in the format of this storage.
+     * @param history the history to write
+     * @param file the file to write to
+     * @throws IOException if an I/O exception occurs
+     */
+    public static void write(Map<Class<?>, List<QueryHistoryEntry>> history,
+            File file) throws IOException {
+        List<Block> blocks = new ArrayList<>(history.size());
+        for(Map.Entry<Class<?>, List<QueryHistoryEntry>> historyEntry : history.entrySet()) {
+            blocks.add(encodeBlock(historyEntry.getKey().getName(),
+                    historyEntry.getValue()));
+        }
+        write(blocks,
+                file);
+    }
+
+    /**
+     * Writes {@code blocks} to a temporary file which then replaces
+     * {@code file} atomically.
+     */
+    private static void write(List<Block> blocks,
+            File file) throws IOException {
+        ByteArrayOutputStream headerOutputStream = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerOutputStream);
+        int headerLength = HEADER_LENGTH;
+        for(Block block : blocks) {
+            headerLength += block.className.length+4*Integer.BYTES;
+        }
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        header.writeInt(blocks.size());
+        int offset = headerLength;
+        for(Block block : blocks) {
+            header.writeInt(block.className.length);
+            header.write(block.className);
+            header.writeInt(offset);
+            header.writeInt(block.data.length);
+            header.writeInt(block.entryCount);
+            offset += block.data.length;
+        }
+        assert header.size() == headerLength;
+        File tmpFile = new File(file.getPath()+".tmp");
+        try (FileOutputStream fileOutputStream = new FileOutputStream(tmpFile);
+                BufferedOutputStream outputStream = new BufferedOutputStream(fileOutputStream)) {
+            headerOutputStream.writeTo(outputStream);
+            for(Block block : blocks) {
+                outputStream.write(block.data);
+            }
+            outputStream.flush();
+            fileOutputStream.getFD().sync();
+        }
+        Files.move(tmpFile.toPath(),
+                file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the file into {@code contents} and reads its index. Needs to be
+     * called with {@code indexLock} held.
+     */
+    private void read() throws IOException {
+        assert Thread.holdsLock(indexLock);
+        byte[] fileContents = Files.readAllBytes(getFile().toPath());
+        if(fileContents.length == 0) {
+            contents = null;
+            index = Collections.emptyMap();
+            return;
+        }
+        contents = ByteBuffer.wrap(fileContents);
+        try {
+            index = readIndex(contents);
+        }catch(BufferUnderflowException ex) {
+            throw new IOException(String.format("index of '%s' is corrupted",
+                    getFile().getAbsolutePath()),
+                    ex);
+        }
+    }
+
+    private static Map<String, IndexEntry> readIndex(ByteBuffer contents) throws IOException {
+        ByteBuffer header = contents.duplicate();
+        int magic = header.getInt();
+        if(magic != MAGIC) {
+            throw new IOException("file isn't a binary query history file");
+        }
+        int version = header.getInt();
+        if(version != VERSION) {
+            throw new IOException(String.format("binary query history format "
+                    + "version %d isn't supported (only version %d is)",
+                    version,
+                    VERSION));
+        }
+        int classCount = header.getInt();
+        Map<String, IndexEntry> retValue = new HashMap<>(classCount*2);
+        for(int i=0; i<classCount; i++) {
+            byte[] className = new byte[header.getInt()];
+            header.get(className);
+            IndexEntry indexEntry = new IndexEntry(new String(className, StandardCharsets.UTF_8),
+                    header.getInt(), //offset
+                    header.getInt(), //length
+                    header.getInt() //entryCount
+            );
+            if(indexEntry.offset < 0 || indexEntry.length < 0
+                    || (long) indexEntry.offset+indexEntry.length > contents.capacity()) {
+                throw new IOException(String.format("index entry of class '%s' points outside of the file",
+                        indexEntry.className));
+            }
+            retValue.put(indexEntry.className,
+                    indexEntry);
+        }
+        return retValue;
+    }
+
+    private static Block encodeBlock(String className,
+            List<QueryHistoryEntry> entries) throws IOException {
+        ByteArrayOutputStream dataOutputStream = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(dataOutputStream);
+        for(QueryHistoryEntry entry : entries) {
+            byte[] text = entry.getText().getBytes(StandardCharsets.UTF_8);
+            data.writeInt(text.length);
+            data.write(text);
+            data.writeInt(entry.getUsageCount());
+            data.writeLong(entry.getLastUsage() != null
+                    ? entry.getLastUsage().getTime()
+                    : -1);
+        }
+        return new Block(className,
+                dataOutputStream.toByteArray(),
+                entries.size());
+    }
+
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    private static List<QueryHistoryEntry> decodeBlock(ByteBuffer contents,
+            IndexEntry indexEntry) {
+        ByteBuffer block = contents.duplicate();
+        block.position(indexEntry.offset);
+        block.limit(indexEntry.offset+indexEntry.length);
+        List<QueryHistoryEntry> retValue = new LinkedList<>();
+        for(int i=0; i<indexEntry.entryCount; i++) {
+            byte[] text = new byte[block.getInt()];
+            block.get(text);
+            int usageCount = block.getInt();
+            long lastUsage = block.getLong();
+            retValue.add(new QueryHistoryEntry(new String(text, StandardCharsets.UTF_8),
+                    usageCount,
+                    lastUsage != -1 ? new Date(lastUsage) : null));
+        }
+        return retValue;
+    }
+
+    /**
+     * The location of the block of a class in the file.
+     */
+    private static class IndexEntry {
+        private final String className;
+        private final int offset;
+        private final int length;
+        private final int entryCount;
+
+        IndexEntry(String className,
+                int offset,
+                int length,
+                int entryCount) {
+            this.className = className;
+            this.offset = offset;
+            this.length = length;
+            this.entryCount = entryCount;
+        }
+    }
+
+    /**
+     * The encoded entries of a class which are about to be written.
+     */
+    private static class Block {
+        private final byte[] className;
+        private final byte[] data;
+        private final int entryCount;
+
+        Block(String className,
+                byte[] data,
+                int entryCount) {
+            this.className = className.getBytes(StandardCharsets.UTF_8);
+            this.data = data;
+            this.entryCount = entryCount;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.panels;
+
+import de.richtercloud.message.handler.IssueHandler;
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates a {@link BinaryFileQueryHistoryEntryStorage} with default queries.
+ * If a legacy file is specified and the binary file doesn't exist or is empty,
+ * the legacy file is converted with {@link QueryHistoryEntryFileConverter}
+ * before the storage is created.
+ *
+ * @author richter
+ */
+public class BinaryFileQueryHistoryEntryStorageFactory extends AbstractQueryHistoryEntryStorageFactory<BinaryFileQueryHistoryEntryStorage> {
+    private final static Logger LOGGER = LoggerFactory.getLogger(BinaryFileQueryHistoryEntryStorageFactory.class);
+    private final File file;
+    private final File legacyFile;
+
+    public BinaryFileQueryHistoryEntryStorageFactory(File file,
+            Set<Class<?>> entityClasses,
+            boolean forbidSubtypes,
+            IssueHandler issueHandler) {
+        this(file,
+                null, //legacyFile
+                entityClasses,
+                forbidSubtypes,
+                issueHandler);
+    }
+
+    /**
+     * Creates a new {@code BinaryFileQueryHistoryEntryStorageFactory}.
+     * @param file the file of the storage
+     * @param legacyFile a file written by
+     *     {@link XMLFileQueryHistoryEntryStorage} or
+     *     {@link SerializingFileQueryHistoryEntryStorage} which is converted if
+     *     {@code file} doesn't exist or is empty (might be {@code null})
+     * @param entityClasses the entity classes to store default queries for
+     * @param forbidSubtypes whether to forbid subtypes in default queries
+     * @param issueHandler the issue handler passed to the storage
+     */
+    public BinaryFileQueryHistoryEntryStorageFactory(File file,
+            File legacyFile,
+            Set<Class<?>> entityClasses,
+            boolean forbidSubtypes,
+            IssueHandler issueHandler) {
+        super(entityClasses,
+                forbidSubtypes,
+                issueHandler);
+        this.file = file;
+        this.legacyFile = legacyFile;
+    }
+
+    @Override
+    protected BinaryFileQueryHistoryEntryStorage create0() throws QueryHistoryEntryStorageCreationException {
+        BinaryFileQueryHistoryEntryStorage retValue;
+        try {
+            if(legacyFile != null && legacyFile.exists()
+                    && (!file.exists() || file.length() == 0)) {
+                LOGGER.info(String.format("converting query history '%s' into '%s'",
+                        legacyFile.getAbsolutePath(),
+                        file.getAbsolutePath()));
+                QueryHistoryEntryFileConverter.convertToBinary(legacyFile,
+                        file);
+            }
+            retValue = new BinaryFileQueryHistoryEntryStorage(file,
+                    getIssueHandler());
+        } catch (ClassNotFoundException | IOException ex) {
+            throw new QueryHistoryEntryStorageCreationException(ex);
+        }
+        return retValue;
+    }
+}
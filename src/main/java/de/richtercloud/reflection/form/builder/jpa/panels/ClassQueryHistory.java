@@ -0,0 +1,375 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.panels;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeSet;
+
+/*
+internal implementation notes:
+- the score of an entry is the sum of its uses weighted with
+exp(LAMBDA*time of use) (forward decay with the epoch as landmark); decaying
+all scores to the current time divides them by the same factor, so the order of
+entries never changes with time and can be kept in a TreeSet which is only
+updated for the stored entry; scores are kept as natural logarithms because the
+weights overflow doubles after a few decades
+- entries loaded from files only have a usage count and a last usage, so their
+uses are assumed to have occured at the last usage; scores of entries stored
+afterwards are exact for the uses since then
+- the score under which a node is ranked is kept in the node because
+QueryHistoryEntry is mutable and callers change the usage count of an entry
+before storing it again
+- the ranking is a TreeSet (O(log n) per store and eviction) rather than the
+linked frequency buckets of an O(1) LFU cache because buckets require integer
+frequencies which increase by one, whereas callers pass absolute usage counts
+and the ranking is by decayed scores which are real numbers
+- entries and the highest ranked entry are published together in an immutable
+snapshot after every modification so that readers never lock, the copy is
+linear in the number of entries which is bounded by the small entryMax;
+building the snapshot lazily on read would require readers to lock
+- the n-gram index contains all distinct substrings of the lower case query
+text up to GRAM_LENGTH_MAX characters, so that typed text up to that length is
+looked up directly and longer text is verified against the candidates of its
+rarest n-gram only; the index and the ranking are mutable and read under the
+monitor because maintaining them in immutable snapshots would copy them at
+every store
+*/
+/**
+ * The query history of one class. Ranks entries by their usage decayed
+ * exponentially with the time since every use (with a half-life of
+ * {@link #HALF_LIFE}), so that queries which have been used often a long time
+ * ago don't crowd out queries used recently. Stores entries, evicts the lowest
+ * ranked entry and retrieves the highest ranked entries in logarithmic time
+ * and publishes a snapshot of the at most {@code entryMax+1} entries after
+ * every modification. Modifications are synchronized, {@link #getEntries() } and
+ * {@link #getMostUsed() } return immutable snapshots without locking. Entries
+ * containing a text can be found through an n-gram index without iterating
+ * over all entries.
+ *
+ * @author richter
+ */
+final class ClassQueryHistory {
+    /**
+     * The time in milliseconds after which the weight of a use is halved.
+     */
+    final static long HALF_LIFE = 30L*24*60*60*1000;
+    private final static double LAMBDA = Math.log(2)/HALF_LIFE;
+    /**
+     * Compares entries by their {@link #score(QueryHistoryEntry) score}, i.e.
+     * the order in which they're ranked when they're stored.
+     */
+    final static Comparator<QueryHistoryEntry> SCORE_COMPARATOR = Comparator
+            .comparingDouble(ClassQueryHistory::score);
+    /**
+     * The maximum length of the n-grams of query texts which are indexed.
+     */
+    private final static int GRAM_LENGTH_MAX = 3;
+    /**
+     * The number of entries above which the lowest ranked entry is evicted
+     * before a new entry is added.
+     */
+    private final int entryMax;
+    /**
+     * The nodes by query text in the order in which they've been stored.
+     */
+    private final LinkedHashMap<String, Node> nodes = new LinkedHashMap<>();
+    /**
+     * The nodes in ascending order of their rank, i.e. by score and (for
+     * equal scores) in descending order of storage.
+     */
+    private final TreeSet<Node> ranking = new TreeSet<>(Comparator
+            .comparingDouble((Node node) -> node.score)
+            .thenComparing(Comparator.comparingLong((Node node) -> node.sequence).reversed()));
+    /**
+     * The nodes by the n-grams of their lower case query text.
+     */
+    private final Map<String, Set<Node>> grams = new HashMap<>();
+    /**
+     * The sequence number of the next node which determines the order of
+     * nodes with the same score.
+     */
+    private long nodeSequence;
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptyList(),
+            null);
+
+    /**
+     * Calculates the score of {@code entry} assuming that all of its uses
+     * occured at its last usage.
+     * @param entry the entry
+     * @return the natural logarithm of the score
+     */
+    static double score(QueryHistoryEntry entry) {
+        return score(Math.max(entry.getUsageCount(), 1),
+                entry.getLastUsage());
+    }
+
+    private static double score(int usageCount,
+            Date lastUsage) {
+        long time = lastUsage != null ? lastUsage.getTime() : 0;
+            //entries without last usage are treated as used at the epoch
+        return Math.log(usageCount)+LAMBDA*time;
+    }
+
+    /**
+     * Adds two scores.
+     * @return the natural logarithm of the sum of the scores whose natural
+     *     logarithms are {@code score0} and {@code score1}
+     */
+    private static double addScores(double score0,
+            double score1) {
+        double max = Math.max(score0, score1);
+        return max+Math.log1p(Math.exp(-Math.abs(score0-score1)));
+    }
+
+    ClassQueryHistory(int entryMax) {
+        this.entryMax = entryMax;
+    }
+
+    /**
+     * Creates a {@code ClassQueryHistory} and stores {@code entries} in their
+     * order.
+     * @param entryMax the number of entries above which the lowest ranked entry
+     *     is evicted
+     * @param entries the initial entries
+     */
+    ClassQueryHistory(int entryMax,
+            List<QueryHistoryEntry> entries) {
+        this(entryMax);
+        for(QueryHistoryEntry entry : entries) {
+            store0(entry);
+        }
+        publish();
+    }
+
+    /**
+     * Stores {@code entry} after entries which have been stored before. An
+     * entry with the same query text is replaced and the increase of the usage
+     * count is added to its score at the last usage of {@code entry},
+     * otherwise the lowest ranked entry is evicted if there're more than
+     * {@code entryMax} entries.
+     * @param entry the entry to store
+     */
+    synchronized void store(QueryHistoryEntry entry) {
+        store0(entry);
+        publish();
+    }
+
+    private void store0(QueryHistoryEntry entry) {
+        double score = score(entry);
+        Node existing = nodes.remove(entry.getText());
+        if(existing != null) {
+            remove(existing);
+            int usageCountIncrease = entry.getUsageCount()-existing.usageCount;
+            if(usageCountIncrease > 0) {
+                score = addScores(existing.score,
+                        score(usageCountIncrease,
+                                entry.getLastUsage()));
+            }else if(usageCountIncrease == 0) {
+                score = existing.score;
+            }
+            //a decreased usage count is scored from scratch
+        }else if(nodes.size() > entryMax) {
+            Node lowestRanked = ranking.first();
+            nodes.remove(lowestRanked.text);
+            remove(lowestRanked);
+        }
+        Node node = new Node(entry,
+                score,
+                nodeSequence++);
+        nodes.put(entry.getText(),
+                node);
+        ranking.add(node);
+        for(String gram : getGrams(node.lowerCaseText)) {
+            grams.computeIfAbsent(gram,
+                    key -> new HashSet<>()).add(node);
+        }
+    }
+
+    /**
+     * Removes {@code node} from the ranking and the n-gram index.
+     * @param node the node to remove
+     */
+    private void remove(Node node) {
+        ranking.remove(node);
+        for(String gram : getGrams(node.lowerCaseText)) {
+            Set<Node> gramNodes = grams.get(gram);
+            gramNodes.remove(node);
+            if(gramNodes.isEmpty()) {
+                grams.remove(gram);
+            }
+        }
+    }
+
+    /**
+     * Gets all distinct substrings of {@code text} with a length between
+     * {@code 1} and {@link #GRAM_LENGTH_MAX}.
+     * @param text the text to split
+     * @return the n-grams
+     */
+    private static Set<String> getGrams(String text) {
+        Set<String> retValue = new HashSet<>();
+        for(int i=0; i<text.length(); i++) {
+            for(int length=1; length<=GRAM_LENGTH_MAX && i+length<=text.length(); length++) {
+                retValue.add(text.substring(i, i+length));
+            }
+        }
+        return retValue;
+    }
+
+    private void publish() {
+        List<QueryHistoryEntry> entries = new ArrayList<>(nodes.size());
+        for(Node node : nodes.values()) {
+            entries.add(node.entry);
+        }
+        QueryHistoryEntry mostUsed = ranking.isEmpty() ? null : ranking.last().entry;
+        snapshot = new Snapshot(Collections.unmodifiableList(entries),
+                mostUsed);
+    }
+
+    /**
+     * Gets the entries in the order in which they've been stored.
+     * @return an immutable snapshot of the entries
+     */
+    List<QueryHistoryEntry> getEntries() {
+        return snapshot.entries;
+    }
+
+    /**
+     * Gets the highest ranked entry (the one which has been stored first if
+     * there're multiple with the same score).
+     * @return the highest ranked entry or {@code null} if there're no entries
+     */
+    QueryHistoryEntry getMostUsed() {
+        return snapshot.mostUsed;
+    }
+
+    /**
+     * Finds the entries which contain {@code text} ignoring case. An entry
+     * with exactly {@code text} is ranked first and entries starting with
+     * {@code text} are ranked before other matches, matches are ranked by
+     * their decayed usage afterwards. Only the candidates of the rarest n-gram
+     * of {@code text} are examined.
+     * @param text the text to search
+     * @param limit the maximum number of entries to return
+     * @return the best matches in the order of their rank
+     */
+    synchronized List<QueryHistoryEntry> find(String text,
+            int limit) {
+        if(limit <= 0) {
+            return Collections.emptyList();
+        }
+        String lowerCaseText = text.toLowerCase(Locale.ROOT);
+        if(lowerCaseText.isEmpty()) {
+            //every entry matches -> take the highest ranked
+            List<QueryHistoryEntry> retValue = new LinkedList<>();
+            Iterator<Node> rankingItr = ranking.descendingIterator();
+            while(rankingItr.hasNext() && retValue.size() < limit) {
+                retValue.add(rankingItr.next().entry);
+            }
+            return retValue;
+        }
+        Collection<Node> candidates;
+        if(lowerCaseText.length() <= GRAM_LENGTH_MAX) {
+            candidates = grams.getOrDefault(lowerCaseText,
+                    Collections.emptySet());
+        }else {
+            candidates = null;
+            for(int i=0; i+GRAM_LENGTH_MAX<=lowerCaseText.length(); i++) {
+                Set<Node> gramNodes = grams.get(lowerCaseText.substring(i, i+GRAM_LENGTH_MAX));
+                if(gramNodes == null) {
+                    return Collections.emptyList();
+                }
+                if(candidates == null || gramNodes.size() < candidates.size()) {
+                    candidates = gramNodes;
+                }
+            }
+        }
+        Comparator<Node> rankComparator = Comparator
+                .comparing((Node node) -> node.text.equals(text))
+                .thenComparing(node -> node.lowerCaseText.startsWith(lowerCaseText))
+                .thenComparing(ranking.comparator());
+        PriorityQueue<Node> best = new PriorityQueue<>(limit+1,
+                rankComparator);
+            //keeps the worst of the best matches at the head
+        for(Node candidate : candidates) {
+            if(!candidate.lowerCaseText.contains(lowerCaseText)) {
+                continue;
+            }
+            best.add(candidate);
+            if(best.size() > limit) {
+                best.poll();
+            }
+        }
+        LinkedList<QueryHistoryEntry> retValue = new LinkedList<>();
+        while(!best.isEmpty()) {
+            retValue.addFirst(best.poll().entry);
+        }
+        return retValue;
+    }
+
+    private static class Node {
+        private final QueryHistoryEntry entry;
+        /**
+         * The usage count of {@code entry} when it has been stored.
+         */
+        private final int usageCount;
+        /**
+         * The natural logarithm of the score of {@code entry}.
+         */
+        private final double score;
+        private final long sequence;
+        /**
+         * The text of {@code entry} when it has been stored.
+         */
+        private final String text;
+        private final String lowerCaseText;
+
+        Node(QueryHistoryEntry entry,
+                double score,
+                long sequence) {
+            this.entry = entry;
+            this.usageCount = entry.getUsageCount();
+            this.score = score;
+            this.sequence = sequence;
+            this.text = entry.getText();
+            this.lowerCaseText = text.toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static class Snapshot {
+        private final List<QueryHistoryEntry> entries;
+        private final QueryHistoryEntry mostUsed;
+
+        Snapshot(List<QueryHistoryEntry> entries,
+                QueryHistoryEntry mostUsed) {
+            this.entries = entries;
+            this.mostUsed = mostUsed;
+        }
+    }
+}
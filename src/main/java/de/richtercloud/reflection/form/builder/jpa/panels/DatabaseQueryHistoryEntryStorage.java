@@ -0,0 +1,628 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.panels;
+
+import de.richtercloud.message.handler.ExceptionMessage;
+import de.richtercloud.message.handler.IssueHandler;
+import de.richtercloud.message.handler.Message;
+import de.richtercloud.reflection.form.builder.jpa.storage.AbstractPersistenceStorage;
+import de.richtercloud.reflection.form.builder.jpa.storage.ConnectionUtils;
+import de.richtercloud.reflection.form.builder.jpa.storage.PersistenceStorage;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+import javax.persistence.EntityManager;
+import javax.swing.JOptionPane;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+internal implementation notes:
+- usage counts are flushed as increments rather than absolute values so that
+several instances of the application sharing the database don't overwrite each
+other's counts; callers set absolute usage counts, so the increment is
+calculated from the last usage count this instance has loaded or stored for the
+entry which is kept in usageCounts because entries evicted from the read cache
+can still be stored by callers
+- the upsert is implemented as a batched UPDATE followed by a batched INSERT of
+the rows which haven't been updated because MERGE, INSERT ... ON CONFLICT and
+INSERT ... ON DUPLICATE KEY UPDATE aren't portable between Derby, PostgreSQL
+and MySQL; if another instance inserts the same entry between the UPDATE and the
+INSERT, the INSERT fails with an integrity constraint violation and the flush
+is repeated in a new transaction in which the UPDATE finds the entry
+- drivers may report Statement.SUCCESS_NO_INFO instead of the update count of
+batched statements; since the rows to insert can't be determined then, the
+transaction is rolled back and all following flushes update entries with
+single statements
+- entries are loaded outside of ConcurrentHashMap.computeIfAbsent because its
+mapping function blocks updates of other keys in the same bin while it queries
+the database; if two threads load the same class concurrently, the first
+history put into the cache is used
+- the primary key is a hash of the class name and the query text because an
+index over the complete query text exceeds the maximum key length of MySQL
+- the last usage is stored as milliseconds since the epoch because the
+semantics of nullable TIMESTAMP columns differ between the supported databases
+- every task uses the new EntityManager returned by
+PersistenceStorage.retrieveEntityManager and closes it afterwards; tasks hold
+the read lock of AbstractPersistenceStorage.getAccessLock so that
+recreateEntityManager can't close the factory during a task
+*/
+/**
+ * Stores {@link QueryHistoryEntry}s in a table of the database of a
+ * {@link PersistenceStorage} so that they're shared by all instances of the
+ * application using the same database. Entries are read into a cache when a
+ * class is accessed for the first time. Changes are applied to the cache
+ * immediately and flushed to the database asynchronously in batches.
+ * Changes of other instances become visible after a restart.
+ *
+ * @author richter
+ */
+public class DatabaseQueryHistoryEntryStorage implements QueryHistoryEntryStorage {
+    private final static Logger LOGGER = LoggerFactory.getLogger(DatabaseQueryHistoryEntryStorage.class);
+    /**
+     * The number of entries per class which are read into the cache.
+     */
+    private final static int ENTRY_MAX = 20;
+    public final static String TABLE_NAME = "QUERY_HISTORY_ENTRY";
+    /**
+     * The maximum length of query texts which can be stored.
+     */
+    public final static int QUERY_TEXT_LENGTH_MAX = 4000;
+    public final static long FLUSH_INTERVAL_DEFAULT = 1000;
+    /**
+     * The number of transactions in which a flush is tried before it's given
+     * up.
+     */
+    private final static int FLUSH_ATTEMPTS_MAX = 3;
+    private final static String UPDATE_QUERY = String.format("UPDATE %s "
+            + "SET USAGE_COUNT = USAGE_COUNT + ?, LAST_USAGE = ? "
+            + "WHERE QUERY_KEY = ?",
+            TABLE_NAME);
+    private final static String INSERT_QUERY = String.format("INSERT INTO %s "
+            + "(QUERY_KEY, CLASS_NAME, QUERY_TEXT, USAGE_COUNT, LAST_USAGE) "
+            + "VALUES (?, ?, ?, ?, ?)",
+            TABLE_NAME);
+    private final static String SELECT_QUERY = String.format("SELECT "
+            + "QUERY_TEXT, USAGE_COUNT, LAST_USAGE FROM %s "
+            + "WHERE CLASS_NAME = ? ORDER BY USAGE_COUNT DESC",
+            TABLE_NAME);
+    private final PersistenceStorage<?> storage;
+    private final IssueHandler issueHandler;
+    private final long flushInterval;
+    private final ConcurrentMap<Class<?>, ClassQueryHistory> cache = new ConcurrentHashMap<>();
+    /**
+     * The last usage count this instance has loaded or stored for an entry by
+     * its key which is used to calculate the increment of usage counts.
+     */
+    private final ConcurrentMap<String, Integer> usageCounts = new ConcurrentHashMap<>();
+    /**
+     * Whether the driver reports update counts of batched statements which is
+     * assumed until it returns {@link Statement#SUCCESS_NO_INFO}.
+     */
+    private volatile boolean batchUpdateCountsSupported = true;
+    /**
+     * The changes which haven't been flushed by their key. Guarded by its own
+     * monitor which is also used to notify the flush thread.
+     */
+    private final Map<String, PendingUpdate> pendingUpdates = new HashMap<>();
+    /**
+     * Whether {@link #shutdown() } has been requested. Guarded by the monitor
+     * of {@code pendingUpdates}.
+     */
+    private boolean shutdownRequested;
+    private final Thread flushThread;
+
+    public DatabaseQueryHistoryEntryStorage(PersistenceStorage<?> storage,
+            IssueHandler issueHandler) throws QueryHistoryEntryStorageException {
+        this(storage,
+                issueHandler,
+                FLUSH_INTERVAL_DEFAULT);
+    }
+
+    /**
+     * Creates a new {@code DatabaseQueryHistoryEntryStorage} and creates its
+     * table if it doesn't exist.
+     * @param storage the storage whose database to use
+     * @param issueHandler the issue handler to report exceptions which occur
+     *     during asynchronous flushes to
+     * @param flushInterval the time in milliseconds to collect changes before
+     *     flushing them ({@code 0} flushes without waiting)
+     * @throws QueryHistoryEntryStorageException if the table can't be created
+     * @throws IllegalArgumentException if {@code flushInterval} is negative
+     */
+    public DatabaseQueryHistoryEntryStorage(PersistenceStorage<?> storage,
+            IssueHandler issueHandler,
+            long flushInterval) throws QueryHistoryEntryStorageException {
+        if(storage == null) {
+            throw new IllegalArgumentException("storage mustn't be null");
+        }
+        if(flushInterval < 0) {
+            throw new IllegalArgumentException("flushInterval mustn't be negative");
+        }
+        this.storage = storage;
+        this.issueHandler = issueHandler;
+        this.flushInterval = flushInterval;
+        try {
+            doSQLTask(connection -> {
+                createTableIfNotExists(connection);
+                return null;
+            });
+        } catch (SQLException ex) {
+            throw new QueryHistoryEntryStorageException(ex);
+        }
+        this.flushThread = new Thread(() -> {
+            try {
+                boolean shutdown = false;
+                while(!shutdown) {
+                    Map<String, PendingUpdate> batch;
+                    synchronized(pendingUpdates) {
+                        while(pendingUpdates.isEmpty() && !shutdownRequested) {
+                            pendingUpdates.wait();
+                        }
+                        //collect further changes unless shutting down
+                        long deadline = System.currentTimeMillis()+flushInterval;
+                        long remaining = flushInterval;
+                        while(remaining > 0 && !shutdownRequested) {
+                            pendingUpdates.wait(remaining);
+                            remaining = deadline-System.currentTimeMillis();
+                        }
+                        batch = new HashMap<>(pendingUpdates);
+                        pendingUpdates.clear();
+                        shutdown = shutdownRequested;
+                    }
+                    if(!batch.isEmpty()) {
+                        flush(batch);
+                    }
+                }
+            } catch (InterruptedException ex) {
+                LOGGER.error("unexpected exception during flushing occured",
+                        ex);
+                issueHandler.handleUnexpectedException(new ExceptionMessage(ex));
+            }
+        },
+                "query-history-entry-storage-flush-thread"
+        );
+        flushThread.start();
+    }
+
+    private void createTableIfNotExists(Connection connection) throws SQLException {
+        if(checkTableExists(connection)) {
+            return;
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(String.format("CREATE TABLE %s ("
+                    + "QUERY_KEY CHAR(40) NOT NULL, "
+                    + "CLASS_NAME VARCHAR(255) NOT NULL, "
+                    + "QUERY_TEXT VARCHAR(%d) NOT NULL, "
+                    + "USAGE_COUNT INT NOT NULL, "
+                    + "LAST_USAGE BIGINT, "
+                    + "PRIMARY KEY (QUERY_KEY))",
+                    TABLE_NAME,
+                    QUERY_TEXT_LENGTH_MAX));
+            statement.executeUpdate(String.format("CREATE INDEX %s_CLASS_NAME ON %s (CLASS_NAME)",
+                    TABLE_NAME,
+                    TABLE_NAME));
+        } catch(SQLException ex) {
+            if(!checkTableExists(connection)) {
+                throw ex;
+            }
+            //created by another instance in the meantime
+            LOGGER.debug(String.format("table %s has been created concurrently",
+                    TABLE_NAME),
+                    ex);
+        }
+    }
+
+    /**
+     * Checks whether the table exists in upper or lower case because
+     * databases differ in the case they use for unquoted identifiers.
+     */
+    private boolean checkTableExists(Connection connection) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        for(String tableName : new String[] {TABLE_NAME,
+                TABLE_NAME.toLowerCase(Locale.ROOT)}) {
+            try (ResultSet resultSet = metaData.getTables(null,
+                    null,
+                    tableName,
+                    new String[] {"TABLE"})) {
+                if(resultSet.next()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs {@code task} in a transaction of a new {@link EntityManager}.
+     */
+    private <T> T doSQLTask(QuerySQLTask<T> task) throws SQLException {
+        Lock accessLock = storage instanceof AbstractPersistenceStorage
+                ? ((AbstractPersistenceStorage)storage).getAccessLock().readLock()
+                : null;
+        if(accessLock != null) {
+            accessLock.lock();
+        }
+        try {
+            EntityManager entityManager = storage.retrieveEntityManager();
+            try {
+                entityManager.getTransaction().begin();
+                try {
+                    T retValue = task.run(ConnectionUtils.unwrapConnection(entityManager));
+                    entityManager.getTransaction().commit();
+                    return retValue;
+                } catch(SQLException | RuntimeException ex) {
+                    entityManager.getTransaction().rollback();
+                    throw ex;
+                }
+            }finally {
+                entityManager.close();
+            }
+        }finally {
+            if(accessLock != null) {
+                accessLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Updates the usage counts of the entries in {@code batch} and inserts
+     * the ones which don't exist in one transaction. The transaction is
+     * repeated if it fails because another instance inserted one of the
+     * entries concurrently.
+     * @param batch the changes to flush
+     */
+    private void flush(Map<String, PendingUpdate> batch) {
+        List<PendingUpdate> updates = new ArrayList<>(batch.values());
+        for(int attempt = 1; attempt <= FLUSH_ATTEMPTS_MAX; attempt++) {
+            try {
+                doSQLTask(connection -> {
+                    flush0(connection,
+                            updates);
+                    return null;
+                });
+                return;
+            } catch (SQLException ex) {
+                if(attempt < FLUSH_ATTEMPTS_MAX
+                        && (ex instanceof UpdateCountUnknownException
+                        || checkIntegrityConstraintViolation(ex))) {
+                    LOGGER.debug(String.format("repeating flush of query history entries after attempt %d",
+                                    attempt),
+                            ex);
+                    continue;
+                }
+                LOGGER.error("flushing query history entries failed",
+                        ex);
+                issueHandler.handle(new Message(ex, JOptionPane.ERROR_MESSAGE));
+                return;
+            } catch (RuntimeException ex) {
+                LOGGER.error("flushing query history entries failed",
+                        ex);
+                issueHandler.handle(new Message(ex, JOptionPane.ERROR_MESSAGE));
+                return;
+            }
+        }
+    }
+
+    private void flush0(Connection connection,
+            List<PendingUpdate> updates) throws SQLException {
+        int[] updateCounts;
+        try (PreparedStatement statement = connection.prepareStatement(UPDATE_QUERY)) {
+            if(batchUpdateCountsSupported) {
+                for(PendingUpdate update : updates) {
+                    setUpdateParameters(statement,
+                            update);
+                    statement.addBatch();
+                }
+                updateCounts = statement.executeBatch();
+            }else {
+                updateCounts = new int[updates.size()];
+                for(int i=0; i<updates.size(); i++) {
+                    setUpdateParameters(statement,
+                            updates.get(i));
+                    updateCounts[i] = statement.executeUpdate();
+                }
+            }
+        }
+        List<PendingUpdate> inserts = new ArrayList<>();
+        for(int i=0; i<updateCounts.length; i++) {
+            if(updateCounts[i] == Statement.SUCCESS_NO_INFO) {
+                batchUpdateCountsSupported = false;
+                throw new UpdateCountUnknownException();
+            }
+            if(updateCounts[i] == 0) {
+                inserts.add(updates.get(i));
+            }
+        }
+        if(!inserts.isEmpty()) {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_QUERY)) {
+                for(PendingUpdate insert : inserts) {
+                    statement.setString(1, insert.key);
+                    statement.setString(2, insert.className);
+                    statement.setString(3, insert.queryText);
+                    statement.setInt(4, insert.usageCount);
+                    setLastUsage(statement, 5, insert.lastUsage);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+        }
+        LOGGER.debug(String.format("flushed %d query history entries (%d inserted)",
+                updates.size(),
+                inserts.size()));
+    }
+
+    private static void setUpdateParameters(PreparedStatement statement,
+            PendingUpdate update) throws SQLException {
+        statement.setInt(1, update.usageCountIncrement);
+        setLastUsage(statement, 2, update.lastUsage);
+        statement.setString(3, update.key);
+    }
+
+    /**
+     * Checks whether {@code ex} or one of the exceptions chained to it (which
+     * is how some drivers report failures of batched statements) is an
+     * integrity constraint violation (SQL state class {@code 23}).
+     */
+    private static boolean checkIntegrityConstraintViolation(SQLException ex) {
+        SQLException current = ex;
+        while(current != null) {
+            if(current instanceof SQLIntegrityConstraintViolationException
+                    || current.getSQLState() != null
+                    && current.getSQLState().startsWith("23")) {
+                return true;
+            }
+            current = current.getNextException();
+        }
+        return false;
+    }
+
+    private static void setLastUsage(PreparedStatement statement,
+            int parameterIndex,
+            Date lastUsage) throws SQLException {
+        if(lastUsage == null) {
+            statement.setNull(parameterIndex, Types.BIGINT);
+        }else {
+            statement.setLong(parameterIndex, lastUsage.getTime());
+        }
+    }
+
+    /**
+     * Reads the most used entries of {@code clazz} from the database.
+     * @param clazz the class to read the entries of
+     * @return the entries in the order of their last usage
+     */
+    private List<QueryHistoryEntry> load(Class<?> clazz) {
+        try {
+            List<QueryHistoryEntry> retValue = doSQLTask(connection -> {
+                try (PreparedStatement statement = connection.prepareStatement(SELECT_QUERY)) {
+                    statement.setString(1, clazz.getName());
+                    statement.setMaxRows(ENTRY_MAX+1);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        List<QueryHistoryEntry> entries = new ArrayList<>();
+                        while(resultSet.next()) {
+                            long lastUsage = resultSet.getLong(3);
+                            entries.add(new QueryHistoryEntry(resultSet.getString(1),
+                                    resultSet.getInt(2),
+                                    resultSet.wasNull() ? null : new Date(lastUsage)));
+                        }
+                        return entries;
+                    }
+                }
+            });
+            retValue.sort(Comparator.comparing(QueryHistoryEntry::getLastUsage,
+                    Comparator.nullsFirst(Comparator.naturalOrder())));
+                //restore the order in which entries have been stored
+            return retValue;
+        } catch (SQLException | RuntimeException ex) {
+            //the storage is unreliable by contract, so an empty history is
+            //better than failing the query component
+            LOGGER.error(String.format("loading query history entries of %s failed",
+                    clazz.getName()),
+                    ex);
+            issueHandler.handle(new Message(ex, JOptionPane.ERROR_MESSAGE));
+            return Collections.emptyList();
+        }
+    }
+
+    private ClassQueryHistory getHistory(Class<?> clazz) {
+        ClassQueryHistory retValue = cache.get(clazz);
+        if(retValue == null) {
+            List<QueryHistoryEntry> entries = load(clazz);
+            for(QueryHistoryEntry entry : entries) {
+                usageCounts.putIfAbsent(createKey(clazz,
+                                entry.getText()),
+                        entry.getUsageCount());
+            }
+            ClassQueryHistory history = new ClassQueryHistory(ENTRY_MAX,
+                    entries);
+            retValue = cache.putIfAbsent(clazz,
+                    history);
+            if(retValue == null) {
+                retValue = history;
+            }
+        }
+        return retValue;
+    }
+
+    /**
+     * Stores {@code entry} in the cache and schedules the flush of its usage
+     * count increment and its last usage.
+     * @param clazz the class to store for
+     * @param entry the entry to store
+     * @throws QueryHistoryEntryStorageException if the query text is longer
+     *     than {@link #QUERY_TEXT_LENGTH_MAX}
+     */
+    @Override
+    public void store(Class<?> clazz,
+            QueryHistoryEntry entry) throws QueryHistoryEntryStorageException {
+        if(entry.getText().length() > QUERY_TEXT_LENGTH_MAX) {
+            throw new QueryHistoryEntryStorageException(String.format("query texts longer than %d characters can't be stored",
+                    QUERY_TEXT_LENGTH_MAX));
+        }
+        getHistory(clazz).store(entry);
+        String key = createKey(clazz,
+                entry.getText());
+        Integer previousUsageCount = usageCounts.put(key,
+                entry.getUsageCount());
+        synchronized(pendingUpdates) {
+            if(shutdownRequested) {
+                LOGGER.warn(String.format("storage has been shut down, query history entry '%s' won't be flushed",
+                        entry.getText()));
+                return;
+            }
+            PendingUpdate pendingUpdate = pendingUpdates.get(key);
+            if(pendingUpdate == null) {
+                pendingUpdate = new PendingUpdate(key,
+                        clazz.getName(),
+                        entry.getText());
+                pendingUpdates.put(key,
+                        pendingUpdate);
+            }
+            pendingUpdate.usageCountIncrement += entry.getUsageCount()
+                    -(previousUsageCount == null ? 0 : previousUsageCount);
+            pendingUpdate.usageCount = entry.getUsageCount();
+            pendingUpdate.lastUsage = entry.getLastUsage();
+            if(pendingUpdates.size() == 1) {
+                pendingUpdates.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Creates the primary key of the entry with {@code queryText} of
+     * {@code clazz}.
+     * @return the hexadecimal SHA-1 hash of the class name and the query
+     *     text
+     */
+    private static String createKey(Class<?> clazz,
+            String queryText) {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            //every Java platform is required to support SHA-1
+            throw new IllegalStateException(ex);
+        }
+        messageDigest.update(clazz.getName().getBytes(StandardCharsets.UTF_8));
+        messageDigest.update((byte) 0);
+        byte[] digest = messageDigest.digest(queryText.getBytes(StandardCharsets.UTF_8));
+        StringBuilder retValue = new StringBuilder(digest.length*2);
+        for(byte digestByte : digest) {
+            retValue.append(String.format("%02x", digestByte));
+        }
+        return retValue.toString();
+    }
+
+    @Override
+    public List<QueryHistoryEntry> retrieve(Class<?> clazz) {
+        return getHistory(clazz).getEntries();
+    }
+
+    @Override
+    public List<QueryHistoryEntry> find(Class<?> clazz,
+            String text,
+            int limit) {
+        return getHistory(clazz).find(text,
+                limit);
+    }
+
+    @Override
+    public QueryHistoryEntry getInitialEntry(Class<?> clazz) {
+        return getHistory(clazz).getMostUsed();
+    }
+
+    /**
+     * Flushes all pending changes and stops the flush thread.
+     */
+    @Override
+    public void shutdown() {
+        synchronized(pendingUpdates) {
+            shutdownRequested = true;
+            pendingUpdates.notifyAll();
+        }
+        try {
+            flushThread.join();
+        } catch (InterruptedException ex) {
+            LOGGER.error("unexpected exception during shutdown occured",
+                    ex);
+            issueHandler.handleUnexpectedException(new ExceptionMessage(ex));
+        }
+    }
+
+    /**
+     * Indicates that the driver didn't report the update count of a batched
+     * statement and the transaction has to be repeated.
+     */
+    private static class UpdateCountUnknownException extends SQLException {
+        private static final long serialVersionUID = 1L;
+
+        UpdateCountUnknownException() {
+            super("the driver didn't report update counts of batched statements");
+        }
+    }
+
+    @FunctionalInterface
+    private interface QuerySQLTask<T> {
+
+        T run(Connection connection) throws SQLException;
+    }
+
+    /**
+     * The changes of one entry which haven't been flushed.
+     */
+    private static class PendingUpdate {
+        private final String key;
+        private final String className;
+        private final String queryText;
+        /**
+         * The sum of the increments of the usage count since the last flush
+         * which is added to the stored usage count.
+         */
+        private int usageCountIncrement;
+        /**
+         * The latest usage count which is used if the entry doesn't exist.
+         */
+        private int usageCount;
+        private Date lastUsage;
+
+        PendingUpdate(String key,
+                String className,
+                String queryText) {
+            this.key = key;
+            this.className = className;
+            this.queryText = queryText;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.panels;
+
+import de.richtercloud.message.handler.IssueHandler;
+import de.richtercloud.reflection.form.builder.jpa.storage.PersistenceStorage;
+import java.util.Set;
+
+/**
+ *
+ * @author richter
+ */
+public class DatabaseQueryHistoryEntryStorageFactory extends AbstractQueryHistoryEntryStorageFactory<DatabaseQueryHistoryEntryStorage> {
+    private final PersistenceStorage<?> storage;
+
+    public DatabaseQueryHistoryEntryStorageFactory(PersistenceStorage<?> storage,
+            Set<Class<?>> entityClasses,
+            boolean forbidSubtypes,
+            IssueHandler issueHandler) {
+        super(entityClasses,
+                forbidSubtypes,
+                issueHandler);
+        this.storage = storage;
+    }
+
+    @Override
+    protected DatabaseQueryHistoryEntryStorage create0() throws QueryHistoryEntryStorageCreationException {
+        DatabaseQueryHistoryEntryStorage retValue;
+        try {
+            retValue = new DatabaseQueryHistoryEntryStorage(storage,
+                    getIssueHandler());
+        } catch (QueryHistoryEntryStorageException ex) {
+            throw new QueryHistoryEntryStorageCreationException(ex);
+        }
+        return retValue;
+    }
+}
@@ -37,6 +37,10 @@ public class EmbeddableListPanelTableModel extends DefaultTableModel implements
     private final List<Object> embeddables = new ArrayList<>();
     private final Constructor<?> embeddableClassConstructor;
     private final List<Field> embeddableClassFields;
+    /**
+     * The accessors of {@code embeddableClassFields} indexed by column.
+     */
+    private final FieldAccessor[] embeddableClassFieldAccessors;
     private final IssueHandler issueHandler;
 
     /**
@@ -47,7 +51,8 @@ public class EmbeddableListPanelTableModel extends DefaultTableModel implements
      * @throws IllegalArgumentException if {@code embeddableClass} doesn't have
      *     a zero-argument constructor and raises {@link NoSuchMethodException}
      *     at retrieval of this constructor with
-     *     {@link Class#getDeclaredConstructor(java.lang.Class...) }
+     *     {@link Class#getDeclaredConstructor(java.lang.Class...) } or one of
+     *     its relevant fields is static or final
      */
     public EmbeddableListPanelTableModel(Class<?> embeddableClass,
             FieldRetriever fieldRetriever,
@@ -69,6 +74,12 @@ public class EmbeddableListPanelTableModel extends DefaultTableModel implements
         }
         this.embeddableClassConstructor.setAccessible(true);
         this.embeddableClassFields = fieldRetriever.retrieveRelevantFields(embeddableClass);
+        this.embeddableClassFieldAccessors = new FieldAccessor[embeddableClassFields.size()];
+        for(int i=0; i<embeddableClassFieldAccessors.length; i++) {
+            embeddableClassFieldAccessors[i] = new FieldAccessor(embeddableClassFields.get(i),
+                    true //writable
+            );
+        }
     }
 
     /*
@@ -148,8 +159,8 @@ public class EmbeddableListPanelTableModel extends DefaultTableModel implements
     @SuppressWarnings("PMD.AvoidThrowingRawExceptionTypes")
     public Object getValueAt(int rowIndex, int columnIndex) {
         try {
-            return this.embeddableClassFields.get(columnIndex).get(this.embeddables.get(rowIndex));
-        } catch (IllegalArgumentException | IllegalAccessException ex) {
+            return this.embeddableClassFieldAccessors[columnIndex].get(this.embeddables.get(rowIndex));
+        } catch (IllegalArgumentException ex) {
             LOGGER.error("unexpected exception during retrieval of table cell value occured",
                     ex);
             issueHandler.handleUnexpectedException(new ExceptionMessage(ex));
@@ -191,10 +202,10 @@ public class EmbeddableListPanelTableModel extends DefaultTableModel implements
             embeddable = this.embeddables.get(rowIndex);
         }
         try {
-            for(Field embeddableClassField : this.embeddableClassFields) {
-                embeddableClassField.set(embeddable, embeddableClassField.get(aValue));
+            for(FieldAccessor embeddableClassFieldAccessor : this.embeddableClassFieldAccessors) {
+                embeddableClassFieldAccessor.set(embeddable, embeddableClassFieldAccessor.get(aValue));
             }
-        } catch (IllegalArgumentException | IllegalAccessException ex) {
+        } catch (IllegalArgumentException ex) {
             LOGGER.error("unexpected exception during setting of table cell value occured",
                     ex);
             issueHandler.handleUnexpectedException(new ExceptionMessage(ex));
@@ -48,7 +48,10 @@ public class EntityTable<E> extends JTable {
         return (EntityTableModel<E>) super.getModel();
     }
 
-    private class EntityTableCellRenderer extends DefaultTableCellRenderer {
+    /**
+     * Shows the text of cells as tooltip. Shared with {@link PagedEntityTable}.
+     */
+    static class EntityTableCellRenderer extends DefaultTableCellRenderer {
         private static final long serialVersionUID = 1L;
 
         @Override
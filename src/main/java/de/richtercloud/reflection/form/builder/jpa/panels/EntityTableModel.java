@@ -54,6 +54,18 @@ public class EntityTableModel<E> extends DefaultTableModel {
      * in order to avoid unnecessary iterations.
      */
     private Set<Class<?>> entityClasses = new HashSet<>();
+    /**
+     * The accessors of the fields in {@code fields} which are created once per
+     * column configuration.
+     */
+    private final Map<Integer, FieldAccessor> fieldAccessors = new HashMap<>();
+    /**
+     * Maps entity classes to the accessors of the columns which are relevant
+     * for them (indexed by column) so that {@link #addEntity(java.lang.Object) }
+     * doesn't need to figure out relevant fields for every entity. Cleared when
+     * the columns change in {@link #updateColumns(java.util.List) }.
+     */
+    private final Map<Class<?>, FieldAccessor[]> columnAccessors = new HashMap<>();
 
     public EntityTableModel(FieldRetriever fieldRetriever) throws FieldHandlingException {
         this(new LinkedList<E>(),
@@ -128,6 +140,8 @@ public class EntityTableModel<E> extends DefaultTableModel {
         this.setColumnCount(0); //(Default)TableModel doesn't have a better way
             //to remove columns
         fields.clear();
+        fieldAccessors.clear();
+        columnAccessors.clear();
         tooltipTextMap.clear();
         //Remove all rows and add them again after the columns have been changed
         while(this.getRowCount() > 0) {
@@ -158,6 +172,9 @@ public class EntityTableModel<E> extends DefaultTableModel {
                     tooltipTextMap.put(i, "");
                 }
                 fields.put(i, field);
+                fieldAccessors.put(i, new FieldAccessor(field,
+                        false //writable
+                ));
                 i++;
             }
         }
@@ -176,54 +193,50 @@ public class EntityTableModel<E> extends DefaultTableModel {
      *     fields
      */
     public void addEntity(E entity) throws FieldHandlingException {
-        List<Class<?>> entityClassesHierarchy = new LinkedList<>(this.entityClasses);
-        Collections.sort(entityClassesHierarchy, (Class<?> o1, Class<?> o2) -> {
-            if(o1.equals(o2)) {
-                return 0;
-            }
-            if(o1.isAssignableFrom(o2)) {
-                return -1;
-            }
-            return 1;
-        }); //It's fine to just sort entityClasses because their order doesn't
-            //matter
-        Object[] fieldValues;
+        FieldAccessor[] accessors = columnAccessors.computeIfAbsent(entity.getClass(),
+                this::createColumnAccessors);
+        Object[] fieldValues = new Object[accessors.length];
             //work with Objects rather than String representation and handle
             //rendering in owning JTable
-        if(entityClasses.size() == 1) {
-            //save some comparisons
-            fieldValues = new Object[fields.size()];
-            for(Integer index : fields.keySet()) {
-                Field field = fields.get(index);
-                Object fieldValue;
+        if(entityClasses.size() > 1) {
+            fieldValues[0] = entity.getClass().getSimpleName(); //type column
+        }
+        for(int i=0; i<accessors.length; i++) {
+            if(accessors[i] != null) {
                 try {
-                    fieldValue = field.get(entity);
-                } catch (IllegalArgumentException
-                        | IllegalAccessException ex) {
+                    fieldValues[i] = accessors[i].get(entity);
+                } catch (IllegalArgumentException ex) {
                     throw new FieldHandlingException(ex);
                 }
-                fieldValues[index] = fieldValue;
+            }
+        }
+        addRow(fieldValues);
+        entities.add(entity);
+    }
+
+    /**
+     * Creates the accessors of the columns for entities of
+     * {@code entityClass} which contain {@code null} for the type column and
+     * columns of fields which aren't relevant for {@code entityClass}.
+     * @param entityClass the entity class
+     * @return the accessors indexed by column
+     */
+    private FieldAccessor[] createColumnAccessors(Class<?> entityClass) {
+        FieldAccessor[] retValue = new FieldAccessor[getColumnCount()];
+        if(entityClasses.size() == 1) {
+            //save some comparisons
+            for(Map.Entry<Integer, FieldAccessor> fieldAccessor : fieldAccessors.entrySet()) {
+                retValue[fieldAccessor.getKey()] = fieldAccessor.getValue();
             }
         }else {
-            fieldValues = new Object[fields.size()+1];
-            fieldValues[0] = entity.getClass().getSimpleName(); //type column
-            List<Field> relevantFields = this.fieldRetriever.retrieveRelevantFields(entity.getClass());
-            for(Integer index : fields.keySet()) {
-                Field field = fields.get(index);
-                if(relevantFields.contains(field)) {
-                    Object fieldValue;
-                    try {
-                        fieldValue = field.get(entity);
-                    } catch (IllegalArgumentException
-                            | IllegalAccessException ex) {
-                        throw new FieldHandlingException(ex);
-                    }
-                    fieldValues[index] = fieldValue;
+            Set<Field> relevantFields = new HashSet<>(this.fieldRetriever.retrieveRelevantFields(entityClass));
+            for(Map.Entry<Integer, FieldAccessor> fieldAccessor : fieldAccessors.entrySet()) {
+                if(relevantFields.contains(fieldAccessor.getValue().getField())) {
+                    retValue[fieldAccessor.getKey()] = fieldAccessor.getValue();
                 }
             }
         }
-        addRow(fieldValues);
-        entities.add(entity);
+        return retValue;
     }
 
     public void addAllEntities(Collection<E> entities) throws FieldHandlingException {
@@ -0,0 +1,151 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.panels;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/*
+internal implementation notes:
+- method handles are created once per field and adapted to Object signatures
+so that they can be invoked with invokeExact which avoids the access and
+argument checks of Field.get and Field.set on every access
+- LambdaMetafactory can't be used because it requires a method implementing
+the access and entities don't necessarily have getters
+- Lookup.unreflectSetter refuses final fields even if they've been made
+accessible, so final fields are written with Field.set which allows it for
+accessible non-static fields
+*/
+/**
+ * Reads and optionally writes the value of a field through method handles
+ * which are created once.
+ *
+ * @author richter
+ */
+final class FieldAccessor {
+    private final static MethodType GETTER_TYPE = MethodType.methodType(Object.class,
+            Object.class);
+    private final static MethodType SETTER_TYPE = MethodType.methodType(void.class,
+            Object.class,
+            Object.class);
+    private final Field field;
+    private final MethodHandle getter;
+    private final MethodHandle setter;
+    /**
+     * Whether the field is final and written with {@link Field#set(java.lang.Object, java.lang.Object) }
+     * instead of {@code setter}.
+     */
+    private final boolean reflectiveSetter;
+
+    /**
+     * Creates a {@code FieldAccessor}. Makes {@code field} accessible.
+     * @param field the field to access
+     * @param writable whether to create a setter (final fields are written
+     *     through reflection)
+     * @throws IllegalArgumentException if {@code field} is static
+     */
+    FieldAccessor(Field field,
+            boolean writable) {
+        if(Modifier.isStatic(field.getModifiers())) {
+            throw new IllegalArgumentException(String.format("field %s is static",
+                    field));
+        }
+        this.field = field;
+        field.setAccessible(true);
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            this.getter = lookup.unreflectGetter(field).asType(GETTER_TYPE);
+            this.reflectiveSetter = writable
+                    && Modifier.isFinal(field.getModifiers());
+            this.setter = writable && !reflectiveSetter
+                    ? lookup.unreflectSetter(field).asType(SETTER_TYPE)
+                    : null;
+        } catch (IllegalAccessException ex) {
+            throw new IllegalArgumentException(String.format("field %s can't be accessed",
+                    field),
+                    ex);
+        }
+    }
+
+    public Field getField() {
+        return field;
+    }
+
+    /**
+     * Gets the value of the field of {@code target}.
+     * @param target the object to read from
+     * @return the field value
+     * @throws IllegalArgumentException if {@code target} isn't an instance of
+     *     the declaring class of the field
+     */
+    @SuppressWarnings({"PMD.AvoidCatchingThrowable",
+        "PMD.AvoidRethrowingException"})
+    public Object get(Object target) {
+        try {
+            return (Object) getter.invokeExact(target);
+        } catch (ClassCastException ex) {
+            throw new IllegalArgumentException(ex);
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            //field access doesn't throw checked exceptions
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Sets the value of the field of {@code target}.
+     * @param target the object to write to
+     * @param value the value to set
+     * @throws IllegalArgumentException if {@code target} isn't an instance of
+     *     the declaring class of the field or {@code value} can't be assigned
+     *     to the field
+     * @throws UnsupportedOperationException if the accessor has been created
+     *     without setter
+     */
+    @SuppressWarnings({"PMD.AvoidCatchingThrowable",
+        "PMD.AvoidRethrowingException"})
+    public void set(Object target,
+            Object value) {
+        if(reflectiveSetter) {
+            try {
+                field.set(target,
+                        value);
+            } catch (IllegalAccessException ex) {
+                //field has been made accessible
+                throw new IllegalStateException(ex);
+            }
+            return;
+        }
+        if(setter == null) {
+            throw new UnsupportedOperationException(String.format("accessor of field %s isn't writable",
+                    field));
+        }
+        try {
+            setter.invokeExact(target,
+                    value);
+        } catch (ClassCastException ex) {
+            throw new IllegalArgumentException(ex);
+        } catch (RuntimeException | Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            //field access doesn't throw checked exceptions
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,445 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.panels;
+
+import de.richtercloud.message.handler.IssueHandler;
+import de.richtercloud.message.handler.Message;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import javax.swing.JOptionPane;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+internal implementation notes:
+- records contain the complete state of the stored entry rather than the
+increment of the usage count so that replaying a record twice (e.g. after a
+crash between writing a snapshot and removing the covered records from the
+journal) doesn't change the result
+- the journal is written in the thread calling store (one write of a small
+byte array without fsync which is sufficient because the storage is unreliable
+by contract), snapshots are written in the file store thread of the superclass
+- covered records are removed from the journal by writing the remaining
+records to a temporary file which replaces the journal atomically, so that a
+crash never leaves a partially rewritten journal behind
+- the journal is replayed in initMissingFile as well because a crash or manual
+intervention might leave a journal without snapshot file behind
+- journalClosed is checked under journalLock because a store which passed the
+check of the superclass might race with shutdown
+*/
+/**
+ * Storage which appends a small record for every stored entry to a journal
+ * file (named after the storage file with suffix {@link #JOURNAL_SUFFIX})
+ * instead of rewriting the complete history. The journal is compacted into a
+ * snapshot in the storage file after every {@code compactionInterval} records
+ * and at {@link #shutdown() }. At creation the snapshot is loaded and the
+ * journal is replayed.
+ *
+ * Snapshot and journal use the same format: a sequence of records consisting
+ * of the length of the payload ({@code int}), the payload (the class name as
+ * modified UTF-8, the length of the query text in bytes ({@code int}), the
+ * query text in UTF-8, the usage count ({@code int}) and the last usage in
+ * milliseconds since the epoch or {@code -1} ({@code long})) and the CRC32
+ * checksum of the payload ({@code int}). Incomplete or corrupted records at
+ * the end of the journal (e.g. after a crash) are ignored and removed. Records
+ * of classes which can't be loaded are skipped.
+ *
+ * @author richter
+ */
+public class JournalFileQueryHistoryEntryStorage extends AbstractFileQueryHistoryEntryStorage {
+    private final static Logger LOGGER = LoggerFactory.getLogger(JournalFileQueryHistoryEntryStorage.class);
+    public final static String JOURNAL_SUFFIX = ".journal";
+    public final static int COMPACTION_INTERVAL_DEFAULT = 1000;
+    /**
+     * The maximal length of a record payload which is accepted when reading
+     * in order to detect corrupted length fields.
+     */
+    private final static int PAYLOAD_LENGTH_MAX = 1024*1024;
+    /**
+     * The length of the length and checksum fields of a record.
+     */
+    private final static int RECORD_OVERHEAD = 2*Integer.BYTES;
+    private final File journalFile;
+    private final int compactionInterval;
+    /**
+     * Guards {@code journalOutputStream}, {@code journalStart},
+     * {@code journalEnd} and {@code recordsSinceCompaction}.
+     */
+    private final Object journalLock = new Object();
+    private OutputStream journalOutputStream;
+    /**
+     * The logical position of the first byte of the journal file, i.e. the
+     * number of bytes which have been removed from the journal by compaction.
+     * Logical positions never decrease so that snapshots which are scheduled
+     * before another snapshot has been written remain valid.
+     */
+    private long journalStart;
+    /**
+     * The logical position after the last byte of the journal file.
+     */
+    private long journalEnd;
+    private int recordsSinceCompaction;
+    /**
+     * Whether the journal has been closed in {@link #shutdown() }.
+     */
+    private boolean journalClosed = false;
+
+    public JournalFileQueryHistoryEntryStorage(File file,
+            IssueHandler issueHandler) throws ClassNotFoundException, IOException {
+        this(file,
+                issueHandler,
+                COMPACTION_INTERVAL_DEFAULT);
+    }
+
+    public JournalFileQueryHistoryEntryStorage(File file,
+            IssueHandler issueHandler,
+            int compactionInterval) throws ClassNotFoundException, IOException {
+        this(file,
+                issueHandler,
+                compactionInterval,
+                DEBOUNCE_INTERVAL_DEFAULT);
+    }
+
+    /**
+     * Creates a new {@code JournalFileQueryHistoryEntryStorage}.
+     * @param file the snapshot file
+     * @param issueHandler the issue handler to report exceptions which occur
+     *     during asynchronous compaction to
+     * @param compactionInterval the number of records after which the journal
+     *     is compacted into a snapshot
+     * @param debounceInterval the time in milliseconds to wait for further
+     *     snapshots before writing one
+     * @throws ClassNotFoundException declared by the superclass, never thrown
+     * @throws IOException if an I/O exception occurs during loading of the
+     *     snapshot or the journal
+     * @throws IllegalArgumentException if {@code compactionInterval} is less
+     *     than 1
+     */
+    public JournalFileQueryHistoryEntryStorage(File file,
+            IssueHandler issueHandler,
+            int compactionInterval,
+            long debounceInterval) throws ClassNotFoundException, IOException {
+        super(file,
+                issueHandler,
+                debounceInterval);
+        if(compactionInterval < 1) {
+            throw new IllegalArgumentException("compactionInterval has to be >= 1");
+        }
+        this.compactionInterval = compactionInterval;
+        this.journalFile = journalFile(file);
+        this.journalStart = 0;
+        this.journalEnd = journalFile.length();
+        this.journalOutputStream = new FileOutputStream(journalFile,
+                true //append
+        );
+    }
+
+    private static File journalFile(File file) {
+        return new File(file.getPath()+JOURNAL_SUFFIX);
+    }
+
+    public File getJournalFile() {
+        return journalFile;
+    }
+
+    @Override
+    protected void onStored(Class<?> clazz,
+            QueryHistoryEntry entry) throws QueryHistoryEntryStorageException {
+        byte[] record;
+        try {
+            record = encodeRecord(clazz,
+                    entry);
+        } catch (IOException ex) {
+            //ByteArrayOutputStream doesn't throw IOException
+            throw new QueryHistoryEntryStorageException(ex);
+        }
+        synchronized(journalLock) {
+            if(journalClosed) {
+                throw new IllegalStateException("storage has been shut down");
+            }
+            try {
+                journalOutputStream.write(record);
+            } catch (IOException ex) {
+                throw new QueryHistoryEntryStorageException(ex);
+            }
+            journalEnd += record.length;
+            recordsSinceCompaction += 1;
+            if(recordsSinceCompaction >= compactionInterval) {
+                recordsSinceCompaction = 0;
+                scheduleStore(new Snapshot(createCacheCopy(),
+                        journalEnd));
+            }
+        }
+    }
+
+    /**
+     * Writes {@code head} as snapshot and removes the records covered by it
+     * from the journal if it has been scheduled by
+     * {@link #onStored(java.lang.Class, QueryHistoryEntry) }.
+     * @param head the history to write
+     * @throws IOException if an I/O exception occurs
+     */
+    @Override
+    protected void store(Map<Class<?>, List<QueryHistoryEntry>> head) throws IOException {
+        writeSnapshot(head);
+        if(head instanceof Snapshot) {
+            synchronized(journalLock) {
+                removeJournalHead(((Snapshot)head).journalEnd);
+            }
+        }
+    }
+
+    @Override
+    protected Map<Class<?>, List<QueryHistoryEntry>> init() throws IOException {
+        Map<Class<?>, List<QueryHistoryEntry>> retValue = new HashMap<>();
+        Map<String, Class<?>> classCache = new HashMap<>();
+        readRecords(getFile(),
+                retValue,
+                classCache);
+        File journal = journalFile(getFile());
+        if(journal.exists()) {
+            long validLength = readRecords(journal,
+                    retValue,
+                    classCache);
+            if(validLength < journal.length()) {
+                LOGGER.warn(String.format("removing %d bytes of incomplete or "
+                        + "corrupted records from the end of journal '%s'",
+                        journal.length()-validLength,
+                        journal.getAbsolutePath()));
+                try (RandomAccessFile randomAccessFile = new RandomAccessFile(journal, "rw")) {
+                    randomAccessFile.setLength(validLength);
+                }
+            }
+        }
+        return retValue;
+    }
+
+    /**
+     * Replays the journal if the snapshot file didn't exist.
+     * @return the history of the journal
+     * @throws IOException if an I/O exception occurs during reading the
+     *     journal
+     */
+    @Override
+    protected Map<Class<?>, List<QueryHistoryEntry>> initMissingFile() throws IOException {
+        return init();
+    }
+
+    /**
+     * Compacts the journal into a snapshot after all scheduled snapshots have
+     * been written. Has no effect if the storage has already been shut down.
+     */
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        synchronized(journalLock) {
+            if(journalClosed) {
+                return;
+            }
+            journalClosed = true;
+            try {
+                journalOutputStream.close();
+                writeSnapshot(createCacheCopy());
+                Files.deleteIfExists(journalFile.toPath());
+                journalStart = journalEnd;
+            } catch (IOException ex) {
+                LOGGER.error("unexpected exception during compaction of journal occured",
+                        ex);
+                getIssueHandler().handle(new Message(ex, JOptionPane.ERROR_MESSAGE));
+            }
+        }
+    }
+
+    /**
+     * Writes {@code history} to a temporary file which then replaces the
+     * snapshot file atomically.
+     */
+    private void writeSnapshot(Map<Class<?>, List<QueryHistoryEntry>> history) throws IOException {
+        File tmpFile = new File(getFile().getPath()+".tmp");
+        try (FileOutputStream fileOutputStream = new FileOutputStream(tmpFile);
+                OutputStream outputStream = new BufferedOutputStream(fileOutputStream)) {
+            for(Map.Entry<Class<?>, List<QueryHistoryEntry>> historyEntry : history.entrySet()) {
+                for(QueryHistoryEntry entry : historyEntry.getValue()) {
+                    outputStream.write(encodeRecord(historyEntry.getKey(),
+                            entry));
+                }
+            }
+            outputStream.flush();
+            fileOutputStream.getFD().sync();
+        }
+        Files.move(tmpFile.toPath(),
+                getFile().toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Removes the bytes before the logical position {@code coveredEnd} from
+     * the journal. Needs to be called with {@code journalLock} held.
+     */
+    private void removeJournalHead(long coveredEnd) throws IOException {
+        assert Thread.holdsLock(journalLock);
+        if(coveredEnd <= journalStart) {
+            //already removed by a later snapshot
+            return;
+        }
+        journalOutputStream.close();
+        byte[] tail = new byte[(int) (journalEnd-coveredEnd)];
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(journalFile, "r")) {
+            randomAccessFile.seek(coveredEnd-journalStart);
+            randomAccessFile.readFully(tail);
+        }
+        File tmpFile = new File(journalFile.getPath()+".tmp");
+        Files.write(tmpFile.toPath(),
+                tail);
+        Files.move(tmpFile.toPath(),
+                journalFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        journalStart = coveredEnd;
+        journalOutputStream = new FileOutputStream(journalFile,
+                true //append
+        );
+    }
+
+    private static byte[] encodeRecord(Class<?> clazz,
+            QueryHistoryEntry entry) throws IOException {
+        ByteArrayOutputStream payloadOutputStream = new ByteArrayOutputStream(128);
+        DataOutputStream payload = new DataOutputStream(payloadOutputStream);
+        payload.writeUTF(clazz.getName());
+        byte[] text = entry.getText().getBytes(StandardCharsets.UTF_8);
+        payload.writeInt(text.length);
+        payload.write(text);
+        payload.writeInt(entry.getUsageCount());
+        payload.writeLong(entry.getLastUsage() != null
+                ? entry.getLastUsage().getTime()
+                : -1);
+        byte[] payloadBytes = payloadOutputStream.toByteArray();
+        CRC32 checksum = new CRC32();
+        checksum.update(payloadBytes);
+        ByteArrayOutputStream recordOutputStream = new ByteArrayOutputStream(payloadBytes.length+RECORD_OVERHEAD);
+        DataOutputStream record = new DataOutputStream(recordOutputStream);
+        record.writeInt(payloadBytes.length);
+        record.write(payloadBytes);
+        record.writeInt((int) checksum.getValue());
+        return recordOutputStream.toByteArray();
+    }
+
+    /**
+     * Reads records from {@code file} and stores them in {@code history} until
+     * the end of the file or an incomplete or corrupted record is reached.
+     * @return the length of the valid records read
+     */
+    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
+    private static long readRecords(File file,
+            Map<Class<?>, List<QueryHistoryEntry>> history,
+            Map<String, Class<?>> classCache) throws IOException {
+        long validLength = 0;
+        try (InputStream inputStream = new BufferedInputStream(Files.newInputStream(file.toPath()))) {
+            DataInputStream record = new DataInputStream(inputStream);
+            while(true) {
+                byte[] payloadBytes;
+                int checksumValue;
+                try {
+                    int payloadLength = record.readInt();
+                    if(payloadLength < 0 || payloadLength > PAYLOAD_LENGTH_MAX) {
+                        break;
+                    }
+                    payloadBytes = new byte[payloadLength];
+                    record.readFully(payloadBytes);
+                    checksumValue = record.readInt();
+                }catch(EOFException ex) {
+                    //end of file or incomplete record
+                    break;
+                }
+                CRC32 checksum = new CRC32();
+                checksum.update(payloadBytes);
+                if((int) checksum.getValue() != checksumValue) {
+                    break;
+                }
+                DataInputStream payload = new DataInputStream(new ByteArrayInputStream(payloadBytes));
+                String className = payload.readUTF();
+                byte[] text = new byte[payload.readInt()];
+                payload.readFully(text);
+                int usageCount = payload.readInt();
+                long lastUsage = payload.readLong();
+                validLength += payloadBytes.length+RECORD_OVERHEAD;
+                Class<?> clazz;
+                if(classCache.containsKey(className)) {
+                    clazz = classCache.get(className);
+                }else {
+                    clazz = loadClass(className);
+                    classCache.put(className,
+                            clazz);
+                        //null is cached for classes which can't be loaded
+                }
+                if(clazz == null) {
+                    continue;
+                }
+                storeInto(history,
+                        clazz,
+                        new QueryHistoryEntry(new String(text, StandardCharsets.UTF_8),
+                                usageCount,
+                                lastUsage != -1 ? new Date(lastUsage) : null));
+            }
+        }
+        return validLength;
+    }
+
+    private static Class<?> loadClass(String className) {
+        try {
+            return Class.forName(className);
+        } catch (ClassNotFoundException ex) {
+            LOGGER.warn(String.format("skipping history entries of class '%s' which can't be loaded",
+                    className),
+                    ex);
+            return null;
+        }
+    }
+
+    /**
+     * A copy of the cache which covers the journal up to the logical position
+     * {@code journalEnd}.
+     */
+    private static class Snapshot extends HashMap<Class<?>, List<QueryHistoryEntry>> {
+        private static final long serialVersionUID = 1L;
+        private final long journalEnd;
+
+        Snapshot(Map<Class<?>, List<QueryHistoryEntry>> history,
+                long journalEnd) {
+            super(history);
+            this.journalEnd = journalEnd;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.panels;
+
+import java.awt.Container;
+import java.awt.Point;
+import java.awt.Rectangle;
+import javax.swing.JTable;
+import javax.swing.JViewport;
+import javax.swing.RowSorter;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeListener;
+import javax.swing.table.TableModel;
+
+/**
+ * A table which shows a {@link PagedEntityTableModel} and reports its visible
+ * rows to the model when the enclosing viewport is scrolled so that the model
+ * can evict pages which are out of sight.
+ *
+ * Sorting with a {@link RowSorter} isn't supported because it'd require all
+ * rows, results ought to be sorted in the query.
+ *
+ * @author richter
+ * @param <E> the entity type
+ */
+public class PagedEntityTable<E> extends JTable {
+    private static final long serialVersionUID = 1L;
+    private final ChangeListener viewportListener = event -> updateVisibleRows();
+    private JViewport viewport;
+
+    public PagedEntityTable(PagedEntityTableModel<E> dm) {
+        super(dm);
+        this.setDefaultRenderer(Object.class,
+                new EntityTable.EntityTableCellRenderer());
+    }
+
+    @Override
+    public void setModel(TableModel dataModel) {
+        if(!(dataModel instanceof PagedEntityTableModel)) {
+            throw new IllegalArgumentException(String.format("dataModel has to be a %s", PagedEntityTableModel.class.getName()));
+        }
+        super.setModel(dataModel);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public PagedEntityTableModel<E> getModel() {
+        return (PagedEntityTableModel<E>) super.getModel();
+    }
+
+    /**
+     * Not supported.
+     * @param sorter the sorter
+     * @throws UnsupportedOperationException if {@code sorter} isn't
+     *     {@code null}
+     */
+    @Override
+    public void setRowSorter(RowSorter<? extends TableModel> sorter) {
+        if(sorter != null) {
+            throw new UnsupportedOperationException("sorting isn't supported, "
+                    + "sort the results in the query instead");
+        }
+        super.setRowSorter(sorter);
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        Container parent = SwingUtilities.getUnwrappedParent(this);
+        if(parent instanceof JViewport) {
+            viewport = (JViewport) parent;
+            viewport.addChangeListener(viewportListener);
+        }
+    }
+
+    @Override
+    public void removeNotify() {
+        if(viewport != null) {
+            viewport.removeChangeListener(viewportListener);
+            viewport = null;
+        }
+        super.removeNotify();
+    }
+
+    private void updateVisibleRows() {
+        Rectangle visibleRect = getVisibleRect();
+        int firstRow = rowAtPoint(new Point(0, visibleRect.y));
+        if(firstRow < 0) {
+            return;
+        }
+        int lastRow = rowAtPoint(new Point(0, visibleRect.y+visibleRect.height-1));
+        if(lastRow < 0) {
+            lastRow = getRowCount()-1;
+        }
+        getModel().setVisibleRows(firstRow,
+                lastRow);
+    }
+}
@@ -0,0 +1,433 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.panels;
+
+import de.richtercloud.message.handler.IssueHandler;
+import de.richtercloud.message.handler.Message;
+import de.richtercloud.reflection.form.builder.FieldInfo;
+import de.richtercloud.reflection.form.builder.fieldhandler.FieldHandlingException;
+import de.richtercloud.reflection.form.builder.jpa.storage.FieldInitializer;
+import de.richtercloud.reflection.form.builder.jpa.storage.PersistenceStorage;
+import de.richtercloud.reflection.form.builder.storage.StorageException;
+import de.richtercloud.validation.tools.FieldRetriever;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import javax.persistence.Id;
+import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+
+/*
+internal implementation notes:
+- pages are retrieved with offset queries because the query text is arbitrary
+JPQL which doesn't necessarily order by a unique key which keyset queries
+require
+- offset queries without ORDER BY clause don't have a stable order across
+pages, so the ID fields (annotated with @Id like in
+JPAOrderedCachedFieldRetriever.getIdFields) are appended as ORDER BY clause with
+QueryTypeRestriction.orderBy and queries which can't be rewritten are rejected;
+queries with an ORDER BY clause are used as they are and are only stable if
+they order by a unique key
+- the number of results isn't queried because that'd require rewriting
+arbitrary JPQL into a count query, instead the row count covers the loaded
+pages and one more page as long as the last loaded page was complete, so that
+scrolling to the end loads the next page (the row count shrinks to the exact
+number of results once a page is incomplete)
+- all state except the immutable configuration is only accessed on the EDT,
+pages are retrieved on the query executor of QueryComponent and handed to the
+EDT with SwingUtilities.invokeLater; results of loads requested for a previous
+query are discarded based on queryGeneration like in QueryComponent
+- cell values are read from the entities when requested rather than being
+copied into rows like in EntityTableModel
+*/
+/**
+ * A table model which retrieves the results of a query in pages when their
+ * rows are requested by the table and keeps at most {@code pageCacheSize}
+ * pages so that large results can be browsed with constant memory if
+ * {@code storage} skips the results before a page in the database (the
+ * default implementation of
+ * {@link PersistenceStorage#runQuery(java.lang.String, java.lang.Class, int, int) }
+ * retrieves them all). Pages
+ * outside of the rows reported with {@link #setVisibleRows(int, int) } and
+ * their neighbours are evicted. Rows of pages which haven't been loaded yet
+ * have {@code null} values until the page has been loaded.
+ *
+ * Queries without {@code ORDER BY} clause are ordered by the ID fields of the
+ * selected entity so that rows don't move between pages. Queries which can't
+ * be rewritten that way are rejected.
+ *
+ * The columns are the relevant fields of the entity class, fields of
+ * subclasses aren't shown because the classes of the results aren't known
+ * before they're loaded.
+ *
+ * @author richter
+ * @param <E> the entity type
+ */
+public class PagedEntityTableModel<E> extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    public final static int PAGE_SIZE_DEFAULT = 100;
+    public final static int PAGE_CACHE_SIZE_DEFAULT = 10;
+    /**
+     * The number of pages before and after the visible rows which aren't
+     * evicted in {@link #setVisibleRows(int, int) }.
+     */
+    private final static int VISIBLE_PAGE_MARGIN = 1;
+    private final PersistenceStorage storage;
+    private final Class<E> entityClass;
+    private final FieldInitializer fieldInitializer;
+    private final IssueHandler issueHandler;
+    private final int pageSize;
+    private final int pageCacheSize;
+    private final List<Field> fields = new ArrayList<>();
+    private final List<FieldAccessor> fieldAccessors = new ArrayList<>();
+    private final List<String> idFieldNames = new ArrayList<>();
+    private final Map<Integer, String> tooltipTextMap = new HashMap<>();
+    private final Map<Integer, List<E>> pages;
+    private final Map<Integer, Future<?>> pendingPages = new HashMap<>();
+    private String queryText;
+    /**
+     * {@code queryText} with a stable order which is used to retrieve pages.
+     */
+    private String orderedQueryText;
+    private long queryGeneration;
+    /**
+     * The number of rows which are known to exist.
+     */
+    private int knownRowCount;
+    /**
+     * Whether an incomplete page has been loaded which makes
+     * {@code knownRowCount} the number of results.
+     */
+    private boolean complete;
+    private int rowCount;
+    private long pageLoadCount;
+
+    public PagedEntityTableModel(PersistenceStorage storage,
+            Class<E> entityClass,
+            FieldRetriever fieldRetriever,
+            FieldInitializer fieldInitializer,
+            IssueHandler issueHandler) {
+        this(storage,
+                entityClass,
+                fieldRetriever,
+                fieldInitializer,
+                issueHandler,
+                PAGE_SIZE_DEFAULT,
+                PAGE_CACHE_SIZE_DEFAULT);
+    }
+
+    /**
+     * Creates a {@code PagedEntityTableModel}.
+     * @param storage the storage to run queries with
+     * @param entityClass the entity class
+     * @param fieldRetriever the field retriever
+     * @param fieldInitializer the field initializer which initializes every
+     *     loaded entity
+     * @param issueHandler the issue handler which handles failures of loading
+     *     pages
+     * @param pageSize the number of results per page
+     * @param pageCacheSize the maximum number of loaded pages (the visible
+     *     rows should span less than {@code pageCacheSize-2} pages)
+     * @throws IllegalArgumentException if {@code pageSize} is less than
+     *     {@code 1} or {@code pageCacheSize} is less than {@code 3}
+     */
+    public PagedEntityTableModel(PersistenceStorage storage,
+            Class<E> entityClass,
+            FieldRetriever fieldRetriever,
+            FieldInitializer fieldInitializer,
+            IssueHandler issueHandler,
+            int pageSize,
+            int pageCacheSize) {
+        super();
+        if(storage == null) {
+            throw new IllegalArgumentException("storage mustn't be null");
+        }
+        if(entityClass == null) {
+            throw new IllegalArgumentException("entityClass mustn't be null");
+        }
+        if(fieldInitializer == null) {
+            throw new IllegalArgumentException("fieldInitializer mustn't be null");
+        }
+        if(issueHandler == null) {
+            throw new IllegalArgumentException("issueHandler mustn't be null");
+        }
+        if(pageSize < 1) {
+            throw new IllegalArgumentException("pageSize has to be > 0");
+        }
+        if(pageCacheSize < 1+2*VISIBLE_PAGE_MARGIN) {
+            throw new IllegalArgumentException(String.format("pageCacheSize has to be >= %d",
+                    1+2*VISIBLE_PAGE_MARGIN));
+        }
+        this.storage = storage;
+        this.entityClass = entityClass;
+        this.fieldInitializer = fieldInitializer;
+        this.issueHandler = issueHandler;
+        this.pageSize = pageSize;
+        this.pageCacheSize = pageCacheSize;
+        this.pages = new LinkedHashMap<Integer, List<E>>(16,
+                0.75f,
+                true //accessOrder
+        ) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<E>> eldest) {
+                return size() > PagedEntityTableModel.this.pageCacheSize;
+            }
+        };
+        int i = 0;
+        for(Field field : fieldRetriever.retrieveRelevantFields(entityClass)) {
+            FieldInfo fieldInfo = field.getAnnotation(FieldInfo.class);
+            tooltipTextMap.put(i,
+                    fieldInfo != null ? fieldInfo.description() : "");
+            fields.add(field);
+            if(field.getAnnotation(Id.class) != null) {
+                idFieldNames.add(field.getName());
+            }
+            fieldAccessors.add(new FieldAccessor(field,
+                    false //writable
+            ));
+            i++;
+        }
+    }
+
+    /**
+     * Discards all loaded pages and starts loading the first page of the
+     * results of {@code queryText}. Needs to be called on the EDT. If
+     * {@code queryText} has no {@code ORDER BY} clause and can't be ordered by
+     * the ID fields of the entity class, the query is rejected with a message
+     * to the issue handler and no rows are shown.
+     * @param queryText the JPQL query to browse or {@code null} to show no
+     *     rows
+     */
+    public void setQuery(String queryText) {
+        queryGeneration += 1;
+        for(Future<?> pendingPage : pendingPages.values()) {
+            QueryComponent.getQueryExecutor().cancel(pendingPage);
+        }
+        pendingPages.clear();
+        pages.clear();
+        this.queryText = queryText;
+        knownRowCount = 0;
+        complete = false;
+        rowCount = 0;
+        fireTableDataChanged();
+        if(queryText == null) {
+            orderedQueryText = null;
+            return;
+        }
+        orderedQueryText = QueryTypeRestriction.orderBy(queryText,
+                idFieldNames);
+        if(orderedQueryText == null) {
+            issueHandler.handle(new Message(String.format("The query '%s' "
+                    + "can't be browsed in pages because it has no ORDER BY "
+                    + "clause and can't be ordered by the ID of '%s'. Add an "
+                    + "ORDER BY clause which orders by a unique key.",
+                            queryText,
+                            entityClass.getName()),
+                    JOptionPane.ERROR_MESSAGE,
+                    "Query can't be paged"));
+            return;
+        }
+        requestPage(0);
+    }
+
+    public String getQuery() {
+        return queryText;
+    }
+
+    /**
+     * Evicts the loaded pages which aren't within or adjacent to the pages of
+     * the rows from {@code firstRow} to {@code lastRow} and cancels the
+     * loading of such pages if it hasn't started yet. Called by
+     * {@link PagedEntityTable} when the visible rows change.
+     * @param firstRow the first visible row
+     * @param lastRow the last visible row
+     */
+    public void setVisibleRows(int firstRow,
+            int lastRow) {
+        int firstPage = Math.max(0, firstRow/pageSize-VISIBLE_PAGE_MARGIN);
+        int lastPage = lastRow/pageSize+VISIBLE_PAGE_MARGIN;
+        pages.keySet().removeIf(page -> page < firstPage || page > lastPage);
+        Iterator<Map.Entry<Integer, Future<?>>> pendingPagesItr = pendingPages.entrySet().iterator();
+        while(pendingPagesItr.hasNext()) {
+            Map.Entry<Integer, Future<?>> pendingPage = pendingPagesItr.next();
+            if((pendingPage.getKey() < firstPage || pendingPage.getKey() > lastPage)
+                    && QueryComponent.getQueryExecutor().cancel(pendingPage.getValue())) {
+                pendingPagesItr.remove();
+            }
+        }
+    }
+
+    /**
+     * Gets the entity of {@code row} if its page is loaded and requests the
+     * page otherwise.
+     * @param row the row
+     * @return the entity or {@code null} if its page isn't loaded
+     */
+    public E getEntity(int row) {
+        int page = row/pageSize;
+        List<E> pageEntities = pages.get(page);
+        if(pageEntities == null) {
+            requestPage(page);
+            return null;
+        }
+        int pageIndex = row-page*pageSize;
+        if(pageIndex >= pageEntities.size()) {
+            return null;
+        }
+        return pageEntities.get(pageIndex);
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return fields.size();
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        Field field = fields.get(column);
+        FieldInfo fieldInfo = field.getAnnotation(FieldInfo.class);
+        if(fieldInfo != null) {
+            return String.format("%s (%s)",
+                    fieldInfo.name(),
+                    field.getName());
+        }
+        return field.getName();
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex,
+            int columnIndex) {
+        E entity = getEntity(rowIndex);
+        if(entity == null) {
+            return null;
+        }
+        return fieldAccessors.get(columnIndex).get(entity);
+    }
+
+    public Map<Integer, String> getTooltipTextMap() {
+        return Collections.unmodifiableMap(tooltipTextMap);
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getPageCacheSize() {
+        return pageCacheSize;
+    }
+
+    /**
+     * Gets the number of loaded pages which never exceeds
+     * {@link #getPageCacheSize() }.
+     * @return the number of loaded pages
+     */
+    public int getLoadedPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * Gets the number of pages loaded since the creation of the model.
+     * @return the number of page loads
+     */
+    public long getPageLoadCount() {
+        return pageLoadCount;
+    }
+
+    private void requestPage(int page) {
+        if(orderedQueryText == null
+                || complete && page*pageSize >= knownRowCount
+                || pendingPages.containsKey(page)) {
+            return;
+        }
+        long generation = queryGeneration;
+        String pageQueryText = orderedQueryText;
+        Future<?> pendingPage = QueryComponent.getQueryExecutor().submit(() -> {
+            List<E> pageEntities;
+            try {
+                pageEntities = storage.runQuery(pageQueryText,
+                        entityClass,
+                        page*pageSize,
+                        pageSize);
+                for(E pageEntity : pageEntities) {
+                    fieldInitializer.initialize(pageEntity);
+                }
+            } catch (StorageException | FieldHandlingException ex) {
+                SwingUtilities.invokeLater(() -> {
+                    if(generation != queryGeneration) {
+                        return;
+                    }
+                    pendingPages.remove(page);
+                    issueHandler.handle(new Message(ex, JOptionPane.ERROR_MESSAGE));
+                });
+                return;
+            }
+            SwingUtilities.invokeLater(() -> onPageLoaded(generation,
+                    page,
+                    pageEntities));
+        });
+        pendingPages.put(page,
+                pendingPage);
+    }
+
+    private void onPageLoaded(long generation,
+            int page,
+            List<E> pageEntities) {
+        if(generation != queryGeneration) {
+            return;
+        }
+        pendingPages.remove(page);
+        pageLoadCount += 1;
+        int pageStart = page*pageSize;
+        if(pageEntities.size() < pageSize) {
+            complete = true;
+            knownRowCount = pageStart+pageEntities.size();
+        }else {
+            knownRowCount = Math.max(knownRowCount,
+                    pageStart+pageSize);
+        }
+        if(!pageEntities.isEmpty()) {
+            pages.put(page,
+                    new ArrayList<>(pageEntities));
+        }
+        int rowCountOld = rowCount;
+        rowCount = complete ? knownRowCount : knownRowCount+pageSize;
+        if(rowCount > rowCountOld) {
+            fireTableRowsInserted(rowCountOld,
+                    rowCount-1);
+        }else if(rowCount < rowCountOld) {
+            fireTableRowsDeleted(rowCount,
+                    rowCountOld-1);
+        }
+        int pageEnd = Math.min(rowCount, pageStart+pageSize);
+        if(pageStart < pageEnd) {
+            fireTableRowsUpdated(pageStart,
+                    pageEnd-1);
+        }
+    }
+}
@@ -21,13 +21,14 @@ import de.richtercloud.reflection.form.builder.fieldhandler.FieldHandlingExcepti
 import de.richtercloud.reflection.form.builder.jpa.storage.PersistenceStorage;
 import de.richtercloud.reflection.form.builder.storage.StorageException;
 import java.awt.event.ActionEvent;
-import java.util.Comparator;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.swing.BorderFactory;
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.GroupLayout;
@@ -50,6 +51,29 @@ import org.slf4j.LoggerFactory;
 
 /*
 internal implementation notes:
+- queryComboBoxModel doesn't sort, its order is only taken from the ranking of
+the entry storage with SortedComboBoxModel.reorder so that it can't disagree
+with the storage and changes don't cause a full sort
+- the entries matching the typed text are suggested by
+QueryHistorySuggestionPopup with QueryHistoryEntryStorage.find rather than by
+filtering queryComboBoxModel because changes of the model replace the text of
+the editor
+- asynchronous queries of all components share QUERY_EXECUTOR, a new query of
+a component cancels its previous one if it hasn't started and discards its
+results otherwise (latest wins) because a running query can't be cancelled
+safely; a superseded query doesn't store its history entry and the last query
+is only remembered on the EDT when a delta is applied
+- everything which doesn't touch Swing (subtype checks and filtering of the
+results, lookup and storage of the history entry and retrieval of the history
+ranking) runs in executeQueryNonGUI, i.e. on the query executor for
+asynchronous queries, and produces a QueryResultDelta which executeQueryGUI
+applies on the EDT without iterating the results; the Swing state needed by
+the worker (subtype mode and history items) is captured before submission
+- for SUBTYPES_FILTER the query is restricted to the exact type with
+QueryTypeRestriction so that the database filters and the limit applies to the
+shown results; the filtering of the results remains for queries which can't be
+rewritten; SUBTYPES_FORBID queries aren't restricted because that'd turn them
+into SUBTYPES_FILTER queries which never fail
 - Subtypes checkbox also easily solves the issue that a exact type switch is
 necessary to be specified at instantiation of QueryComponent which is usually
 done in type handlers which don't know about field annotations (could be fixed,
@@ -78,10 +102,9 @@ public class QueryComponent<E> extends JPanel {
      * the default value for the initial query limit (see {@link #QueryPanel(javax.persistence.EntityManager, java.lang.Class, int) } for details
      */
     public static final int INITIAL_QUERY_LIMIT_DEFAULT = 20;
-    private final static Comparator<QueryHistoryEntry> QUERY_HISTORY_COMPARATOR_USAGE =
-        (QueryHistoryEntry o1, QueryHistoryEntry o2) -> Integer.compare(o2.getUsageCount(), o1.getUsageCount());
-                //make highest usage count appear at the top
     private static final long serialVersionUID = 1L;
+    private final static QueryExecutor QUERY_EXECUTOR = new QueryExecutor(QueryExecutor.THREAD_COUNT_DEFAULT,
+            "query-thread");
     public final static String SUBTYPES_ALLOW = "Allow subtypes";
     public final static String SUBTYPES_FILTER = "Filter subtypes";
     public final static String SUBTYPES_FORBID = "Forbid/Fail on subtypes";
@@ -95,12 +118,19 @@ public class QueryComponent<E> extends JPanel {
     );
     private final SortedComboBoxModel<QueryHistoryEntry> queryComboBoxModel;
     private final QueryComboBoxEditor queryComboBoxEditor;
+    /**
+     * Suggests entries of the history which match the text typed into
+     * {@code queryComboBoxEditor}.
+     */
+    private final QueryHistorySuggestionPopup querySuggestionPopup;
     /**
      * the {@code queryLimit} arugment of the last execution of {@link #executeQuery(javax.persistence.TypedQuery, int, java.lang.String) }
+     * (only accessed on the EDT)
      */
     private int lastQueryLimit;
     /**
      * the {@code queryText} argument of the last execution of {@link #executeQuery(javax.persistence.TypedQuery, int, java.lang.String) }
+     * (only accessed on the EDT)
      */
     private String lastQueryText;
     private final JButton queryButton;
@@ -125,6 +155,22 @@ public class QueryComponent<E> extends JPanel {
      * create the text.
      */
     private final QueryHistoryEntryStorage entryStorage;
+    /**
+     * Incremented for every query so that running asynchronous queries can
+     * tell whether they've been superseded.
+     */
+    private final AtomicLong queryGeneration = new AtomicLong();
+    /**
+     * The last submitted asynchronous query. Written by callers of
+     * {@link #executeQuery(int, java.lang.String, boolean, boolean) } which
+     * is usually the EDT, but might be the thread creating the component.
+     */
+    private volatile Future<?> pendingQuery;
+    /**
+     * Whether the component has been disabled during an asynchronous query.
+     * Only accessed on the EDT.
+     */
+    private boolean disabledByQuery;
 
     public static void validateEntityClass(Class<?> entityClass,
             PersistenceStorage storage) {
@@ -186,8 +232,12 @@ public class QueryComponent<E> extends JPanel {
         //initialize with initial item in order to minimize trouble with null
         //being set as editor item in JComboBox.setEditor
         List<QueryHistoryEntry> initialHistory = entryStorage.retrieve(entityClass);
-        this.queryComboBoxModel = new SortedComboBoxModel<>(QUERY_HISTORY_COMPARATOR_USAGE,
-                new LinkedList<>(initialHistory));
+        this.queryComboBoxModel = new SortedComboBoxModel<>(new LinkedList<>(initialHistory));
+            //ordered by the storage only
+        this.queryComboBoxModel.reorder(entryStorage.find(entityClass,
+                "", //text
+                initialHistory.size() //limit
+        ));
         this.queryComboBoxEditor = new QueryComboBoxEditor();
                 //before initComponents because it's used there (yet sets item
                 //of editor to null, so statement after initComponent is
@@ -202,6 +252,10 @@ public class QueryComponent<E> extends JPanel {
                         queryComboBoxModel.addElement(entry);
                     }
                 }
+                queryComboBoxModel.reorder(entryStorage.find(entityClass,
+                        "", //text
+                        queryComboBoxModel.getSize() //limit
+                ));
             }
 
             @Override
@@ -215,6 +269,11 @@ public class QueryComponent<E> extends JPanel {
             }
         });
         this.initComponents();
+        this.querySuggestionPopup = new QueryHistorySuggestionPopup(queryComboBoxEditor.getEditorComponent(),
+                text -> entryStorage.find(entityClass,
+                        text,
+                        QueryHistorySuggestionPopup.SUGGESTION_LIMIT_DEFAULT),
+                this::selectHistoryEntry);
         QueryHistoryEntry initiallySelectedEntry = entryStorage.getInitialEntry(entityClass);
         if(initiallySelectedEntry != null) {
             if(!initialHistory.contains(initiallySelectedEntry)) {
@@ -222,8 +281,8 @@ public class QueryComponent<E> extends JPanel {
             }
             this.queryComboBox.setSelectedItem(initiallySelectedEntry);
         } else {
-            if(!initialHistory.isEmpty()) {
-                this.queryComboBox.setSelectedItem(initialHistory.get(0));
+            if(queryComboBoxModel.getSize() > 0) {
+                this.queryComboBox.setSelectedItem(queryComboBoxModel.getElementAt(0));
             }else {
                 this.queryComboBox.setSelectedItem(null);
             }
@@ -264,6 +323,22 @@ public class QueryComponent<E> extends JPanel {
         return entryStorage;
     }
 
+    QueryHistorySuggestionPopup getQuerySuggestionPopup() {
+        return querySuggestionPopup;
+    }
+
+    /**
+     * Selects the item of {@code queryComboBoxModel} which is equal to
+     * {@code entry} or {@code entry} if the model doesn't contain it (yet).
+     * @param entry the entry to select
+     */
+    private void selectHistoryEntry(QueryHistoryEntry entry) {
+        int index = queryComboBoxModel.getItems().indexOf(entry);
+        queryComboBox.setSelectedItem(index >= 0
+                ? queryComboBoxModel.getElementAt(index)
+                : entry);
+    }
+
     private void initComponents() {
 
         queryLabel.setText("Query:");
@@ -423,95 +498,187 @@ public class QueryComponent<E> extends JPanel {
             String queryText,
             boolean async,
             boolean skipHistoryEntryUsageCountIncrement) {
+        long generation = queryGeneration.incrementAndGet();
+        if(pendingQuery != null) {
+            QUERY_EXECUTOR.cancel(pendingQuery);
+        }
+        //capture the Swing state needed by the non-GUI part
+        Object subtypeMode = subtypeComboBox.getSelectedItem();
+        assert subtypeMode != null;
+        List<QueryHistoryEntry> historyItems = new ArrayList<>(queryComboBoxModel.getItems());
         if(!async) {
             try {
                 LOGGER.debug("running query synchronously");
-                List<E> queryResult = executeQueryNonGUI(queryLimit, queryText);
-                executeQueryGUI(queryResult,
+                QueryResultDelta<E> delta = executeQueryNonGUI(generation,
+                        queryLimit,
                         queryText,
+                        subtypeMode,
+                        historyItems,
                         skipHistoryEntryUsageCountIncrement);
+                if(delta != null) {
+                    executeQueryGUI(delta);
+                }
             }catch(StorageException ex) {
                 LOGGER.info("an exception occured while executing the query", ex);
                 this.queryStatusLabel.setText(generateStatusMessage(ex.getMessage()));
             }
+            enableAfterQuery();
+                //a superseded asynchronous query won't enable the component
         }else {
             LOGGER.debug("running query asynchronously");
             this.setEnabled(false);
-            Thread queryThread = new Thread(() -> {
-                List<E> queryResult;
+            disabledByQuery = true;
+            pendingQuery = QUERY_EXECUTOR.submit(() -> {
+                if(generation != queryGeneration.get()) {
+                    //superseded after the task couldn't be cancelled
+                    return;
+                }
+                QueryResultDelta<E> delta;
                 try {
-                    queryResult = executeQueryNonGUI(queryLimit, queryText);
+                    delta = executeQueryNonGUI(generation,
+                            queryLimit,
+                            queryText,
+                            subtypeMode,
+                            historyItems,
+                            skipHistoryEntryUsageCountIncrement);
                 } catch (StorageException ex) {
                     LOGGER.info("an exception occured while executing the query", ex);
-                    this.queryStatusLabel.setText(generateStatusMessage(ex.getMessage()));
+                    SwingUtilities.invokeLater(() -> {
+                        if(generation != queryGeneration.get()) {
+                            return;
+                        }
+                        this.queryStatusLabel.setText(generateStatusMessage(ex.getMessage()));
+                        enableAfterQuery();
+                    });
+                    return;
+                } catch (RuntimeException ex) {
+                    //e.g. IllegalArgumentException thrown by
+                    //EntityManager.createQuery for invalid queries which
+                    //would otherwise only end up in the Future and leave the
+                    //component disabled
+                    LOGGER.error("an unexpected exception occured during query execution",
+                            ex);
+                    SwingUtilities.invokeLater(() -> {
+                        if(generation != queryGeneration.get()) {
+                            return;
+                        }
+                        this.queryStatusLabel.setText(generateStatusMessage(ex.getMessage()));
+                        issueHandler.handleUnexpectedException(new ExceptionMessage(ex));
+                        enableAfterQuery();
+                    });
+                    return;
+                }
+                if(delta == null) {
+                    //superseded before the history entry has been stored
+                    LOGGER.debug(String.format("discarding results of superseded query '%s'",
+                            queryText));
                     return;
                 }
                 SwingUtilities.invokeLater(() -> {
+                    if(generation != queryGeneration.get()) {
+                        LOGGER.debug(String.format("discarding results of superseded query '%s'",
+                                queryText));
+                        return;
+                    }
                     try {
-                        executeQueryGUI(queryResult,
-                                queryText,
-                                skipHistoryEntryUsageCountIncrement);
-                        setEnabled(true);
+                        executeQueryGUI(delta);
+                        enableAfterQuery();
                     }catch(Throwable ex) {
                         LOGGER.error("an unexpected exception occured during query execution GUI callback",
                                 ex);
                         issueHandler.handleUnexpectedException(new ExceptionMessage(ex));
                     }
                 });
-            },
-                    "query-thread");
-            queryThread.start();
+            });
         }
     }
 
-    /**
-     * The non-GUI part of {@link #executeQuery(int, java.lang.String, boolean) }.
-     * @param queryLimit the query limit
-     * @param queryText the query text
-     * @return the list of retrieved queries
-     * @throws StorageException in case the storage access fails
-     */
-    private List<E> executeQueryNonGUI(int queryLimit,
-            String queryText) throws StorageException {
-        LOGGER.debug("executing query '{}'", queryText);
-        List<E> queryResults = storage.runQuery(queryText, entityClass, queryLimit);
-        this.lastQueryLimit = queryLimit;
-        this.lastQueryText = queryText;
-        return queryResults;
+    private void enableAfterQuery() {
+        if(disabledByQuery) {
+            disabledByQuery = false;
+            setEnabled(true);
+        }
     }
 
     /*
     internal implementation notes:
-    - contains some parts which aren't GUI-related and thus could be moved to
-    executeQueryNonGUI which would make them profit from async execution, but
-    currently there're GUI-related parts before and after them, so moving them
-    into executeQueryNonGUI requires intensive testing
+    - in order to produce QueryHistoryEntrys from every query it's necessary to pass
+    the text of the query because there's no way to retrieve text from Criteria
+    objects
+    - the usage count and last usage of an existing entry are updated in a
+    copy because the entry might be an item of queryComboBoxModel whose
+    renderer reads them on the EDT; the copy replaces the item on the EDT in
+    executeQueryGUI, so that entries are never mutated once they've been
+    passed to the model or the entry storage
     */
     /**
-     * The GUI-part of {@link #executeQuery(int, java.lang.String, boolean) }.
-     * @param queryResults the query results which should have been retrieved in
-     *     the non-GUI routine of executing queries, i.e.
-     *     {@link #executeQueryNonGUI(int, java.lang.String) }
-     * @param queryText the text used to retrieve the query results
+     * The non-GUI part of
+     * {@link #executeQuery(int, java.lang.String, boolean, boolean) } which
+     * runs the query (restricted to the exact type of {@code entityClass} if
+     * {@code subtypeMode} filters subtypes and the query can be rewritten),
+     * checks and filters the results according to
+     * {@code subtypeMode} and updates the history entry for
+     * {@code queryText} in the entry storage unless the query has been
+     * superseded by another query in the meantime.
+     * @param generation the value of {@code queryGeneration} assigned to the
+     *     query
+     * @param queryLimit the query limit
+     * @param queryText the query text
+     * @param subtypeMode the selected item of the subtype combo box at the
+     *     time the query has been requested
+     * @param historyItems a copy of the items of the query combo box model at
+     *     the time the query has been requested which is searched for entries
+     *     which have been evicted from the entry storage
      * @param skipHistoryEntryUsageCountIncrement allows to skip the increment
      *     of {@code usageCount} of the retrieved or created
      *     {@link QueryHistoryEntry} which is useful when the QueryPanel is
      *     created and the query run without the users explicit request
+     * @return the changes to apply in the GUI part or {@code null} if the
+     *     query has been superseded before the history entry has been stored
+     * @throws StorageException in case the storage access fails
      */
-    @SuppressWarnings("PMD.AvoidInstantiatingObjectsInLoops")
-    private void executeQueryGUI(List<E> queryResults,
+    private QueryResultDelta<E> executeQueryNonGUI(long generation,
+            int queryLimit,
             String queryText,
-            boolean skipHistoryEntryUsageCountIncrement) {
-        ListIterator<E> queryResultsItr = queryResults.listIterator();
-        while(queryResultsItr.hasNext()) {
-            E queryResult = queryResultsItr.next();
+            Object subtypeMode,
+            List<QueryHistoryEntry> historyItems,
+            boolean skipHistoryEntryUsageCountIncrement) throws StorageException {
+        LOGGER.debug("executing query '{}'", queryText);
+        List<E> queryResults = null;
+        String executedQueryText = queryText;
+        if(SUBTYPES_FILTER.equals(subtypeMode)) {
+            //let the database filter subtypes so that the limit applies to
+            //the shown results, the filtering below is a no-op then
+            String restrictedQueryText = QueryTypeRestriction.restrictToType(queryText,
+                    entityClass);
+            if(restrictedQueryText != null) {
+                LOGGER.debug("executing query '{}' restricted to type", restrictedQueryText);
+                try {
+                    queryResults = storage.runQuery(restrictedQueryText, entityClass, queryLimit);
+                    executedQueryText = restrictedQueryText;
+                } catch (StorageException | IllegalArgumentException ex) {
+                    //IllegalArgumentException is thrown by
+                    //EntityManager.createQuery for invalid queries
+                    LOGGER.debug("restricted query failed, falling back to the unrestricted query",
+                            ex);
+                }
+            }
+        }
+        if(queryResults == null) {
+            queryResults = storage.runQuery(queryText, entityClass, queryLimit);
+        }
+        List<E> checkedResults = SUBTYPES_FILTER.equals(subtypeMode)
+                ? new ArrayList<>(queryResults.size())
+                : queryResults;
+        for(E queryResult : queryResults) {
             //first check whether query requests are assignable from entity
             //class in order to avoid nonsense - or in the case of
             //SUBTYPES_FORBID for equality...
-            assert subtypeComboBox.getSelectedItem() != null;
-            if(subtypeComboBox.getSelectedItem().equals(SUBTYPES_FORBID)) {
+            if(SUBTYPES_FORBID.equals(subtypeMode)) {
                 if(!queryResult.getClass().equals(entityClass)) {
-                    this.issueHandler.handle(new Message("The query result "
+                    return new QueryResultDelta<>(queryLimit,
+                            queryText,
+                            new Message("The query result "
                             + "contained entities which are not of the extact "
                             + "type of this query panel (super and subclasses "
                             + "aren't allow, consider adding a "
@@ -519,72 +686,215 @@ public class QueryComponent<E> extends JPanel {
                             + "clause to the query)",
                             JOptionPane.ERROR_MESSAGE,
                             "Query error"));
-                    return;
                 }
             } else {
                 if(!entityClass.isAssignableFrom(queryResult.getClass())) {
-                    this.issueHandler.handle(new Message(String.format("The query result "
+                    return new QueryResultDelta<>(queryLimit,
+                            queryText,
+                            new Message(String.format("The query result "
                             + "contained entities which are not a subtype of "
                             + "the entity class %s.", entityClass.getSimpleName()),
                             JOptionPane.ERROR_MESSAGE,
                             "Query error"));
-                    return;
                 }
             }
             //...then eventually filter
-            if(subtypeComboBox.getSelectedItem().equals(SUBTYPES_FILTER)
-                    && !queryResult.getClass().equals(entityClass)) {
-                queryResultsItr.remove();
+            if(SUBTYPES_FILTER.equals(subtypeMode)
+                    && queryResult.getClass().equals(entityClass)) {
+                checkedResults.add(queryResult);
             }
         }
-        for(QueryComponentListener<E> listener : listeners) {
-            listener.onQueryExecuted(new QueryComponentEvent<>(queryResults));
-        }
-        this.queryStatusLabel.setText("Query executed successfully.");
         //- Rather than figuring out which (badly documented) JComboBox function
         //returns which value in which state (editing, selected, initially
         //empty, etc.) check that the value is added to the model and
         //entry storage or - if already present - that it's usage count is
         //increased
-        //- Assume that is model and store are in sync
-        QueryHistoryEntry modelEntry = null;
-        for(QueryHistoryEntry entry : queryComboBoxModel.getItems()) {
-            if(entry.getText().equals(queryText)) {
-                modelEntry = entry;
+        //- Assume that is model and store are in sync, so that the entry can
+        //be found in the index of the store and the model only needs to be
+        //searched for entries which have been evicted from the store or
+        //added to the model directly
+        QueryHistoryEntry historyEntry = null;
+        List<QueryHistoryEntry> storeEntries = entryStorage.find(entityClass,
+                queryText,
+                1 //limit
+        );
+        if(!storeEntries.isEmpty()
+                && storeEntries.get(0).getText().equals(queryText)) {
+            historyEntry = storeEntries.get(0);
+        }else {
+            for(QueryHistoryEntry entry : historyItems) {
+                if(entry.getText().equals(queryText)) {
+                    historyEntry = entry;
+                }
             }
         }
-        if(modelEntry == null) {
-            QueryHistoryEntry newEntry = new QueryHistoryEntry(queryText,
+        if(historyEntry == null) {
+            historyEntry = new QueryHistoryEntry(queryText,
                     1, //usageCount
                     new Date() //lastUsed
             );
-            this.getQueryComboBoxModel().addElement(newEntry);
-            try {
-                this.entryStorage.store(this.entityClass,
-                        newEntry);
-            } catch (QueryHistoryEntryStorageException ex) {
-                issueHandler.handle(new Message(ex, JOptionPane.ERROR_MESSAGE));
-            }
-            this.queryComboBox.setSelectedItem(newEntry);
+        }else if(!skipHistoryEntryUsageCountIncrement) {
+            historyEntry = new QueryHistoryEntry(historyEntry.getText(),
+                    historyEntry.getUsageCount()+1,
+                    new Date() //lastUsage
+            );
+        }
+        if(generation != queryGeneration.get()) {
+            //don't count the usage of a query whose results are discarded
+            return null;
+        }
+        Message historyMessage = null;
+        try {
+            this.entryStorage.store(this.entityClass,
+                    historyEntry);
+        } catch (QueryHistoryEntryStorageException ex) {
+            historyMessage = new Message(ex, JOptionPane.ERROR_MESSAGE);
+        }
+        List<QueryHistoryEntry> historyOrder = entryStorage.find(entityClass,
+                "", //text
+                historyItems.size()+1 //limit
+        );
+            //reorder no matter whether item has been added or usageCount or
+            //lastUsed has been updated, the ranking is maintained by the
+            //storage
+        return new QueryResultDelta<>(queryLimit,
+                queryText,
+                checkedResults,
+                executedQueryText,
+                historyEntry,
+                historyOrder,
+                historyMessage);
+    }
+
+    /**
+     * The GUI-part of
+     * {@link #executeQuery(int, java.lang.String, boolean, boolean) } which
+     * applies the changes computed in
+     * {@link #executeQueryNonGUI(long, int, java.lang.String, java.lang.Object, java.util.List, boolean) }
+     * to the Swing models and notifies the listeners. Doesn't iterate the
+     * query results so that the time spent on the EDT doesn't depend on their
+     * number.
+     * @param delta the changes to apply
+     */
+    private void executeQueryGUI(QueryResultDelta<E> delta) {
+        this.lastQueryLimit = delta.queryLimit;
+        this.lastQueryText = delta.queryText;
+        if(delta.errorMessage != null) {
+            this.issueHandler.handle(delta.errorMessage);
+            return;
+        }
+        for(QueryComponentListener<E> listener : listeners) {
+            listener.onQueryExecuted(new QueryComponentEvent<>(delta.queryResults,
+                    delta.executedQueryText));
+        }
+        this.queryStatusLabel.setText("Query executed successfully.");
+        if(delta.historyMessage != null) {
+            issueHandler.handle(delta.historyMessage);
+        }
+        List<QueryHistoryEntry> historyItems = queryComboBoxModel.getItems();
+        int historyEntryIndex = historyItems.indexOf(delta.historyEntry);
+        if(historyEntryIndex == -1) {
+            //new or stored by another query component and not yet added by
+            //the popup menu listener
+            queryComboBoxModel.addElement(delta.historyEntry);
         }else {
-            if(!skipHistoryEntryUsageCountIncrement) {
-                modelEntry.setUsageCount(modelEntry.getUsageCount()+1);
-            }
-            try {
-                this.entryStorage.store(this.entityClass,
-                        modelEntry);
-            } catch (QueryHistoryEntryStorageException ex) {
-                issueHandler.handle(new Message(ex, JOptionPane.ERROR_MESSAGE));
-            }
-            this.queryComboBox.setSelectedItem(modelEntry);
+            //replace with the updated copy, the change is fired by reorder
+            //below (a selected item is equal to the copy since entries are
+            //identified by their text)
+            historyItems.set(historyEntryIndex,
+                    delta.historyEntry);
         }
-        this.queryComboBoxModel.sort();
-            //sort no matter whether item has been added or usageCount or
-            //lastUsed has been updated
+        this.queryComboBox.setSelectedItem(delta.historyEntry);
+        this.queryComboBoxModel.reorder(delta.historyOrder);
         this.queryComboBoxEditor.setItem(null); //reset to indicate the need
             //to create a new item
     }
 
+    /**
+     * The changes computed off the EDT by
+     * {@link #executeQueryNonGUI(long, int, java.lang.String, java.lang.Object, java.util.List, boolean) }
+     * which are applied by {@link #executeQueryGUI(QueryResultDelta) }.
+     * @param <E> the type of the queried entities
+     */
+    private static final class QueryResultDelta<E> {
+        /**
+         * The query limit to remember for {@link #repeatLastQuery() }.
+         */
+        private final int queryLimit;
+        /**
+         * The query text to remember for {@link #repeatLastQuery() }.
+         */
+        private final String queryText;
+        /**
+         * The checked and eventually filtered query results.
+         */
+        private final List<E> queryResults;
+        /**
+         * The query text which has been run (restricted to the exact type of
+         * the entity class if subtypes are filtered by the database).
+         */
+        private final String executedQueryText;
+        /**
+         * The stored history entry of the query text to add to the model or
+         * to replace the equal item of the model with and select.
+         */
+        private final QueryHistoryEntry historyEntry;
+        /**
+         * The ranking of the history maintained by the entry storage.
+         */
+        private final List<QueryHistoryEntry> historyOrder;
+        /**
+         * The message about a failure of storing {@code historyEntry} or
+         * {@code null}.
+         */
+        private final Message historyMessage;
+        /**
+         * The message about results violating the subtype mode or
+         * {@code null}. If not {@code null} no other changes are applied.
+         */
+        private final Message errorMessage;
+
+        QueryResultDelta(int queryLimit,
+                String queryText,
+                List<E> queryResults,
+                String executedQueryText,
+                QueryHistoryEntry historyEntry,
+                List<QueryHistoryEntry> historyOrder,
+                Message historyMessage) {
+            this.queryLimit = queryLimit;
+            this.queryText = queryText;
+            this.queryResults = queryResults;
+            this.executedQueryText = executedQueryText;
+            this.historyEntry = historyEntry;
+            this.historyOrder = historyOrder;
+            this.historyMessage = historyMessage;
+            this.errorMessage = null;
+        }
+
+        QueryResultDelta(int queryLimit,
+                String queryText,
+                Message errorMessage) {
+            this.queryLimit = queryLimit;
+            this.queryText = queryText;
+            this.queryResults = null;
+            this.executedQueryText = null;
+            this.historyEntry = null;
+            this.historyOrder = null;
+            this.historyMessage = null;
+            this.errorMessage = errorMessage;
+        }
+    }
+
+    /**
+     * The executor which runs the asynchronous queries of all
+     * {@code QueryComponent}s and provides queue depth and wait time
+     * metrics.
+     * @return the shared query executor
+     */
+    public static QueryExecutor getQueryExecutor() {
+        return QUERY_EXECUTOR;
+    }
+
     public void repeatLastQuery() {
         executeQuery(lastQueryLimit,
                 lastQueryText,
@@ -605,6 +915,10 @@ public class QueryComponent<E> extends JPanel {
         return queryComboBox;
     }
 
+    public JComboBox<String> getSubtypeComboBox() {
+        return subtypeComboBox;
+    }
+
     /**
      * Allows later changes to message generation depending on the mechanism
      * used for displaying (label (might require {@code <html></html>} tags around message), textarea, dialog, etc.)
@@ -30,12 +30,37 @@ public class QueryComponentEvent<E> {
     and can be changed back in case of trouble.
     */
     private final List<E> queryResults;
+    private final String queryText;
 
     public QueryComponentEvent(List<E> queryResults) {
+        this(queryResults,
+                null //queryText
+        );
+    }
+
+    /**
+     * Creates a {@code QueryComponentEvent}.
+     * @param queryResults the query results
+     * @param queryText the query text which has been run to retrieve
+     *     {@code queryResults} or {@code null} if it's unknown
+     */
+    public QueryComponentEvent(List<E> queryResults,
+            String queryText) {
         this.queryResults = queryResults;
+        this.queryText = queryText;
     }
 
     public List<E> getQueryResults() {
         return Collections.unmodifiableList(queryResults);
     }
+
+    /**
+     * The query text which has been run which might differ from the text
+     * entered by the user if subtypes are filtered by the database and allows
+     * listeners to run the same query with a different range of results.
+     * @return the query text or {@code null} if it's unknown
+     */
+    public String getQueryText() {
+        return queryText;
+    }
 }
@@ -0,0 +1,142 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.panels;
+
+import de.richtercloud.reflection.form.builder.jpa.storage.WaitTimeHistogram;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+internal implementation notes:
+- threads are daemon threads and time out when idle because components don't
+have a lifecycle which would allow shutting the executor down
+- cancelled tasks are removed from the queue immediately so that the queue
+depth only counts tasks which will run
+- running tasks aren't interrupted because interrupting a thread which is
+blocked in JDBC might close the connection of the EntityManager
+*/
+/**
+ * Runs queries of {@link QueryComponent}s on a bounded number of threads
+ * instead of a thread per query, so that opening a form with many query
+ * components doesn't start dozens of threads contending for the query permits
+ * of the storage. Records the time tasks wait in the queue.
+ *
+ * @author richter
+ */
+public class QueryExecutor {
+    /**
+     * The number of threads of the executor shared by all
+     * {@link QueryComponent}s.
+     */
+    public final static int THREAD_COUNT_DEFAULT = 4;
+    private final static long KEEP_ALIVE_SECONDS = 60;
+    private final ThreadPoolExecutor executor;
+    private final WaitTimeHistogram waitTimeHistogram = new WaitTimeHistogram();
+
+    /**
+     * Creates a new executor.
+     * @param threadCount the maximum number of threads
+     * @param threadNamePrefix the prefix of the names of the threads which are
+     *     numbered
+     * @throws IllegalArgumentException if {@code threadCount} is less than
+     *     {@code 1}
+     */
+    public QueryExecutor(int threadCount,
+            String threadNamePrefix) {
+        if(threadCount < 1) {
+            throw new IllegalArgumentException("threadCount has to be > 0");
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threadCount,
+                threadCount,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread retValue = new Thread(runnable,
+                            String.format("%s-%d",
+                                    threadNamePrefix,
+                                    threadNumber.incrementAndGet()));
+                    retValue.setDaemon(true);
+                    return retValue;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues {@code task}.
+     * @param task the task to run
+     * @return a future which can be passed to {@link #cancel(java.util.concurrent.Future) }
+     */
+    public Future<?> submit(Runnable task) {
+        long submissionNanos = System.nanoTime();
+        FutureTask<Void> retValue = new FutureTask<>(() -> {
+            waitTimeHistogram.record(System.nanoTime()-submissionNanos);
+            task.run();
+        },
+                null //result
+        );
+        executor.execute(retValue);
+        return retValue;
+    }
+
+    /**
+     * Cancels {@code future} if it's still waiting in the queue. Running tasks
+     * aren't interrupted.
+     * @param future a future returned by {@link #submit(java.lang.Runnable) }
+     * @return {@code true} if the task has been removed and won't run,
+     *     {@code false} if it's running or has completed
+     */
+    public boolean cancel(Future<?> future) {
+        if(!(future instanceof Runnable) || !executor.remove((Runnable) future)) {
+            return false;
+        }
+        future.cancel(false //mayInterruptIfRunning
+        );
+        return true;
+    }
+
+    /**
+     * Gets the number of tasks waiting for a thread.
+     * @return the queue depth
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Gets the number of threads which are running a task.
+     * @return the number of active threads
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public long getCompletedTaskCount() {
+        return executor.getCompletedTaskCount();
+    }
+
+    /**
+     * The times tasks waited in the queue before they started.
+     * @return the wait time histogram
+     */
+    public WaitTimeHistogram getWaitTimeHistogram() {
+        return waitTimeHistogram;
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.panels;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts histories stored by {@link XMLFileQueryHistoryEntryStorage} and
+ * {@link SerializingFileQueryHistoryEntryStorage} into the format of
+ * {@link BinaryFileQueryHistoryEntryStorage}.
+ *
+ * @author richter
+ */
+public final class QueryHistoryEntryFileConverter {
+    /**
+     * The first two bytes of a Java serialization stream.
+     */
+    private final static int SERIALIZATION_MAGIC = 0xACED;
+
+    /**
+     * Reads the history in {@code source} which has been stored by
+     * {@link XMLFileQueryHistoryEntryStorage} or
+     * {@link SerializingFileQueryHistoryEntryStorage} (the format is detected
+     * from the content) and writes it to {@code target} in the format of
+     * {@link BinaryFileQueryHistoryEntryStorage}.
+     * @param source the file to convert
+     * @param target the file to write (replaced if it exists)
+     * @throws IOException if an I/O exception occurs
+     * @throws ClassNotFoundException if a class of a serialized history can't
+     *     be loaded
+     */
+    public static void convertToBinary(File source,
+            File target) throws IOException, ClassNotFoundException {
+        Map<Class<?>, List<QueryHistoryEntry>> history = read(source);
+        BinaryFileQueryHistoryEntryStorage.write(history,
+                target);
+    }
+
+    /**
+     * Reads the history in {@code source} which has been stored by
+     * {@link XMLFileQueryHistoryEntryStorage} or
+     * {@link SerializingFileQueryHistoryEntryStorage}.
+     * @param source the file to read
+     * @return the history or an empty map if {@code source} is empty
+     * @throws IOException if an I/O exception occurs
+     * @throws ClassNotFoundException if a class of a serialized history can't
+     *     be loaded
+     */
+    public static Map<Class<?>, List<QueryHistoryEntry>> read(File source) throws IOException, ClassNotFoundException {
+        int magic;
+        try (InputStream inputStream = Files.newInputStream(source.toPath())) {
+            int first = inputStream.read();
+            int second = inputStream.read();
+            if(second == -1) {
+                return new HashMap<>();
+            }
+            magic = first << 8 | second;
+        }
+        if(magic == SERIALIZATION_MAGIC) {
+            return SerializingFileQueryHistoryEntryStorage.read(source);
+        }
+        return XMLFileQueryHistoryEntryStorage.read(source);
+    }
+
+    private QueryHistoryEntryFileConverter() {
+    }
+}
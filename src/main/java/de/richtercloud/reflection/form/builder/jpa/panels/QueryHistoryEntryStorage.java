@@ -14,7 +14,11 @@
  */
 package de.richtercloud.reflection.form.builder.jpa.panels;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Locale;
 
 /**
  * Stores {@link QueryHistoryEntry}s unreliably, i.e. implementations must not
@@ -45,10 +49,50 @@ public interface QueryHistoryEntryStorage {
     /**
      * Retrieves the list of stored entries for {@code clazz}.
      * @param clazz the class to retrieve for
-     * @return the list of stored entries
+     * @return the list of stored entries which might be unmodifiable
      */
     List<QueryHistoryEntry> retrieve(Class<?> clazz);
 
+    /**
+     * Finds the stored entries for {@code clazz} which contain {@code text}
+     * ignoring case. An entry with exactly {@code text} is ranked first and
+     * entries starting with {@code text} are ranked before other matches,
+     * matches are ranked in the order of the history of the storage
+     * afterwards (e.g. by their usage count decayed by the time since their
+     * last usage). Implementations ought to answer without iterating over all
+     * stored entries so that suggestions can be provided while the user is
+     * typing.
+     *
+     * The default implementation filters and sorts the entries returned by
+     * {@link #retrieve(java.lang.Class) } and keeps their order for equally
+     * ranked matches.
+     * @param clazz the class to find entries for
+     * @param text the text to search
+     * @param limit the maximum number of entries to return
+     * @return the best matching entries in the order of their rank
+     */
+    default List<QueryHistoryEntry> find(Class<?> clazz,
+            String text,
+            int limit) {
+        if(limit <= 0) {
+            return new LinkedList<>();
+        }
+        String lowerCaseText = text.toLowerCase(Locale.ROOT);
+        List<QueryHistoryEntry> retValue = new ArrayList<>();
+        for(QueryHistoryEntry entry : retrieve(clazz)) {
+            if(entry.getText().toLowerCase(Locale.ROOT).contains(lowerCaseText)) {
+                retValue.add(entry);
+            }
+        }
+        retValue.sort(Comparator
+                .comparing((QueryHistoryEntry entry) -> !entry.getText().equals(text))
+                .thenComparing(entry -> !entry.getText().toLowerCase(Locale.ROOT).startsWith(lowerCaseText)));
+            //stable, so that the order of retrieve is kept for equally ranked
+            //entries
+        return new LinkedList<>(retValue.subList(0,
+                Math.min(limit, retValue.size())));
+    }
+
     /**
      * Get the entry which ought to be selected initially in
      * {@link QueryComponent}.
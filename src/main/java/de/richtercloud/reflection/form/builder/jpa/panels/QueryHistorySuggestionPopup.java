@@ -0,0 +1,227 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.panels;
+
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import javax.swing.DefaultListModel;
+import javax.swing.JList;
+import javax.swing.JPopupMenu;
+import javax.swing.JScrollPane;
+import javax.swing.JTextField;
+import javax.swing.ListSelectionModel;
+
+/*
+internal implementation notes:
+- suggestions are shown in a popup of their own rather than by changing the
+model of the query combo box because every change of the model makes
+BasicComboBoxUI reconfigure the editor with the selected item which replaces
+the typed text
+- suggestions are updated on key-released events which changed the text rather
+than on document changes because the document is also changed when the combo
+box editor is configured with an item which shouldn't show suggestions
+- the suggestion list isn't focusable so that typing continues in the text
+field, the navigation keys are handled in a key listener of the text field
+which consumes them so that the key bindings of the combo box don't move its
+selection at the same time
+- QueryHistoryEntryStorage.find is called on the EDT because it's answered
+from the in-memory history of the storages
+*/
+/**
+ * Shows the entries of a {@link QueryHistoryEntryStorage} which match the text
+ * typed into a text field in a popup below the text field without changing
+ * the text. A suggestion is accepted with a mouse click or with the enter key
+ * after selecting it with the arrow keys.
+ *
+ * @author richter
+ */
+class QueryHistorySuggestionPopup {
+    /**
+     * The maximum number of suggestions which are shown.
+     */
+    public final static int SUGGESTION_LIMIT_DEFAULT = 10;
+    private final JTextField textField;
+    private final Function<String, List<QueryHistoryEntry>> suggestionProvider;
+    private final Consumer<QueryHistoryEntry> suggestionAcceptor;
+    private final DefaultListModel<QueryHistoryEntry> suggestionListModel = new DefaultListModel<>();
+    private final JList<QueryHistoryEntry> suggestionList = new JList<>(suggestionListModel);
+    private final JPopupMenu popup = new JPopupMenu();
+    /**
+     * The text the suggestions have been retrieved for.
+     */
+    private String suggestionText = "";
+    /**
+     * The text of the text field when the last key has been pressed which
+     * allows to ignore key events which don't change the text.
+     */
+    private String keyPressedText = "";
+
+    /**
+     * Creates a {@code QueryHistorySuggestionPopup} and installs it on
+     * {@code textField}.
+     * @param textField the text field to suggest entries for
+     * @param suggestionProvider the function which returns the suggestions for
+     *     a text
+     * @param suggestionAcceptor the consumer which is called with an accepted
+     *     suggestion
+     */
+    QueryHistorySuggestionPopup(JTextField textField,
+            Function<String, List<QueryHistoryEntry>> suggestionProvider,
+            Consumer<QueryHistoryEntry> suggestionAcceptor) {
+        if(textField == null) {
+            throw new IllegalArgumentException("textField mustn't be null");
+        }
+        if(suggestionProvider == null) {
+            throw new IllegalArgumentException("suggestionProvider mustn't be null");
+        }
+        if(suggestionAcceptor == null) {
+            throw new IllegalArgumentException("suggestionAcceptor mustn't be null");
+        }
+        this.textField = textField;
+        this.suggestionProvider = suggestionProvider;
+        this.suggestionAcceptor = suggestionAcceptor;
+        suggestionList.setFocusable(false);
+        suggestionList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        suggestionList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                int index = suggestionList.locationToIndex(e.getPoint());
+                if(index >= 0) {
+                    accept(index);
+                }
+            }
+        });
+        popup.setFocusable(false);
+        popup.add(new JScrollPane(suggestionList));
+        textField.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                keyPressedText = textField.getText();
+                if(!popup.isVisible()) {
+                    return;
+                }
+                switch(e.getKeyCode()) {
+                    case KeyEvent.VK_DOWN:
+                        moveSelection(1);
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_UP:
+                        moveSelection(-1);
+                        e.consume();
+                        break;
+                    case KeyEvent.VK_ENTER:
+                        if(suggestionList.getSelectedIndex() >= 0) {
+                            accept(suggestionList.getSelectedIndex());
+                            e.consume();
+                        }
+                        break;
+                    case KeyEvent.VK_ESCAPE:
+                        hide();
+                        e.consume();
+                        break;
+                    default:
+                        //update in keyReleased
+                }
+            }
+
+            @Override
+            public void keyReleased(KeyEvent e) {
+                if(textField.getText().equals(keyPressedText)) {
+                    //navigation keys or modifiers
+                    return;
+                }
+                update();
+            }
+        });
+        textField.addFocusListener(new FocusAdapter() {
+            @Override
+            public void focusLost(FocusEvent e) {
+                hide();
+            }
+        });
+    }
+
+    /**
+     * Retrieves the suggestions for the text of the text field if it changed
+     * since the last retrieval and shows them if there're any and the text
+     * field is showing.
+     */
+    void update() {
+        String text = textField.getText();
+        if(text.equals(suggestionText)) {
+            return;
+        }
+        suggestionText = text;
+        suggestionListModel.clear();
+        if(text.isEmpty()) {
+            hide();
+            return;
+        }
+        for(QueryHistoryEntry suggestion : suggestionProvider.apply(text)) {
+            suggestionListModel.addElement(suggestion);
+        }
+        if(suggestionListModel.isEmpty() || !textField.isShowing()) {
+            hide();
+            return;
+        }
+        suggestionList.setVisibleRowCount(Math.min(suggestionListModel.getSize(),
+                SUGGESTION_LIMIT_DEFAULT));
+        popup.setPopupSize(textField.getWidth(),
+                popup.getPreferredSize().height);
+        popup.show(textField,
+                0,
+                textField.getHeight());
+    }
+
+    private void moveSelection(int offset) {
+        int index = suggestionList.getSelectedIndex()+offset;
+        if(index < 0 || index >= suggestionListModel.getSize()) {
+            return;
+        }
+        suggestionList.setSelectedIndex(index);
+        suggestionList.ensureIndexIsVisible(index);
+    }
+
+    /**
+     * Hides the popup and passes the suggestion at {@code index} to the
+     * suggestion acceptor.
+     * @param index the index of the suggestion
+     */
+    void accept(int index) {
+        QueryHistoryEntry suggestion = suggestionListModel.getElementAt(index);
+        hide();
+        suggestionAcceptor.accept(suggestion);
+    }
+
+    void hide() {
+        popup.setVisible(false);
+    }
+
+    /**
+     * Gets the current suggestions.
+     * @return the suggestions
+     */
+    List<QueryHistoryEntry> getSuggestions() {
+        return Collections.list(suggestionListModel.elements());
+    }
+}
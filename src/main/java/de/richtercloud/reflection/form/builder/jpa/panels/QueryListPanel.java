@@ -46,6 +46,14 @@ import javax.swing.ListSelectionModel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/*
+internal implementation notes:
+- the paged query result table is filled with the query text of the
+QueryComponentEvent, the query result table of AbstractQueryPanel is still
+filled with the limited results, but not displayed, because QueryComponent
+needs to run the query anyway in order to validate it and to check the subtypes
+of the results
+*/
 /**
  * Provides a {@link QueryComponent} and controls to add and remove stored
  * entities from a query result list to selection result list with an add and
@@ -55,6 +63,13 @@ import org.slf4j.LoggerFactory;
  *
  * Currently there're no editing facilities.
  *
+ * If {@code pagedQueryResult} is passed to the constructor, the query result
+ * is shown in a {@link PagedEntityTable} which loads all results of the query
+ * in pages while the table is scrolled instead of the limited results of the
+ * query component (the limit and the check of the subtypes then only apply to
+ * the query which validates the query text, subtypes filtered by the database
+ * are filtered in all pages).
+ *
  * @author richter
  * @param <E> the type of entities to query
  */
@@ -71,6 +86,13 @@ public class QueryListPanel<E> extends AbstractQueryPanel<E> {
     private final Set<ListPanelItemListener<E>> updateListeners = new HashSet<>();
     private final JSplitPane resultSplitPane;
     private final JPanel resultPanel;
+    /**
+     * The model of the paged query result table or {@code null} if the query
+     * result isn't paged.
+     */
+    private final PagedEntityTableModel<E> pagedQueryResultTableModel;
+    private final PagedEntityTable<E> pagedQueryResultTable;
+    private final JScrollPane pagedQueryResultTableScrollPane;
 
     private static BidirectionalControlPanel generateBidirectionalControlPanel(Class<?> entityClass,
             FieldRetriever fieldRetriever,
@@ -116,6 +138,49 @@ public class QueryListPanel<E> extends AbstractQueryPanel<E> {
             FieldInitializer fieldInitializer,
             QueryHistoryEntryStorage entryStorage) throws ResetException,
             FieldHandlingException {
+        this(storage,
+                fieldRetriever,
+                entityClass,
+                issueHandler,
+                initialValues,
+                bidirectionalHelpDialogTitle,
+                queryResultTableHeight,
+                fieldInitializer,
+                entryStorage,
+                false //pagedQueryResult
+        );
+    }
+
+    /**
+     * Creates a {@code QueryListPanel}.
+     * @param storage the storage to use
+     * @param fieldRetriever the field retriever
+     * @param entityClass the entity class
+     * @param issueHandler the issue handler to use
+     * @param initialValues the initially selected entities
+     * @param bidirectionalHelpDialogTitle the title of the help dialog of the
+     *     bidirectional control panel
+     * @param queryResultTableHeight the height of the query result table
+     * @param fieldInitializer the field initializer
+     * @param entryStorage the query history entry storage
+     * @param pagedQueryResult whether to show all results of the query in a
+     *     {@link PagedEntityTable} rather than the limited results in an
+     *     {@link EntityTable}
+     * @throws ResetException if setting the initial values fails
+     * @throws FieldHandlingException if an exception during access to fields
+     *     occurs
+     */
+    public QueryListPanel(PersistenceStorage storage,
+            FieldRetriever fieldRetriever,
+            Class<E> entityClass,
+            IssueHandler issueHandler,
+            List<E> initialValues,
+            String bidirectionalHelpDialogTitle,
+            int queryResultTableHeight,
+            FieldInitializer fieldInitializer,
+            QueryHistoryEntryStorage entryStorage,
+            boolean pagedQueryResult) throws ResetException,
+            FieldHandlingException {
         super(generateBidirectionalControlPanel(entityClass,
                 fieldRetriever,
                 bidirectionalHelpDialogTitle),
@@ -147,6 +212,29 @@ public class QueryListPanel<E> extends AbstractQueryPanel<E> {
         };
         this.resultSplitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT);
         this.resultPanel = new JPanel();
+        if(pagedQueryResult) {
+            this.pagedQueryResultTableModel = new PagedEntityTableModel<>(storage,
+                    entityClass,
+                    fieldRetriever,
+                    fieldInitializer,
+                    issueHandler);
+            this.pagedQueryResultTable = new PagedEntityTable<E>(pagedQueryResultTableModel) {
+                private static final long serialVersionUID = 1L;
+                @Override
+                public boolean isCellEditable(int row, int column) {
+                    return false;
+                }
+            };
+            this.pagedQueryResultTable.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
+            this.pagedQueryResultTableScrollPane = new JScrollPane(pagedQueryResultTable);
+            this.getQueryComponent().addListener((QueryComponentEvent<E> event) -> {
+                pagedQueryResultTableModel.setQuery(event.getQueryText());
+            });
+        }else {
+            this.pagedQueryResultTableModel = null;
+            this.pagedQueryResultTable = null;
+            this.pagedQueryResultTableScrollPane = null;
+        }
 
         this.getQueryComponent().addListener((QueryComponentEvent<E> event) -> {
             try {
@@ -212,7 +300,9 @@ public class QueryListPanel<E> extends AbstractQueryPanel<E> {
                         Short.MAX_VALUE //max
                 )
                 .addContainerGap());
-        resultSplitPane.setLeftComponent(getQueryResultTableScrollPane());
+        resultSplitPane.setLeftComponent(pagedQueryResultTableScrollPane != null
+                ? pagedQueryResultTableScrollPane
+                : getQueryResultTableScrollPane());
         resultSplitPane.setRightComponent(resultPanel);
 
         //need to reuse the layout from superclass because otherwise the
@@ -259,13 +349,29 @@ public class QueryListPanel<E> extends AbstractQueryPanel<E> {
         "PMD.AvoidInstantiatingObjectsInLoops"
     })
     private void addButtonActionPerformed(ActionEvent evt) {
-        int[] indices = this.getQueryResultTable().getSelectedRows();
+        int[] indices = pagedQueryResultTable != null
+                ? pagedQueryResultTable.getSelectedRows()
+                : this.getQueryResultTable().getSelectedRows();
         List<E> eventItems = new LinkedList<>(); //a list to pass to the item
             //event ought to be maintained before adding to resultTable's model
         for(int index : indices) {
-            int convertedIndex = this.getQueryResultTable().convertRowIndexToModel(index);
-                //necessary since sorting is possible
-            E queryResult = this.getQueryResultTable().getModel().getEntities().get(convertedIndex);
+            int convertedIndex;
+            E queryResult;
+            if(pagedQueryResultTable != null) {
+                convertedIndex = index;
+                    //sorting isn't supported
+                queryResult = pagedQueryResultTableModel.getEntity(index);
+                if(queryResult == null) {
+                    //the page of the row has been evicted after the row has
+                    //been selected and is reloaded now
+                    this.getQueryComponent().getQueryStatusLabel().setText("Some of the selected entities haven't been loaded yet, add them again after they're displayed");
+                    continue;
+                }
+            }else {
+                convertedIndex = this.getQueryResultTable().convertRowIndexToModel(index);
+                    //necessary since sorting is possible
+                queryResult = this.getQueryResultTable().getModel().getEntities().get(convertedIndex);
+            }
             eventItems.add(queryResult);
             for(ListPanelItemListener<E> updateListener : updateListeners) {
                 try {
@@ -339,6 +445,15 @@ public class QueryListPanel<E> extends AbstractQueryPanel<E> {
         }
     }
 
+    /**
+     * The table which shows the paged query result.
+     * @return the paged query result table or {@code null} if the query result
+     *     isn't paged
+     */
+    public PagedEntityTable<E> getPagedQueryResultTable() {
+        return pagedQueryResultTable;
+    }
+
     /**
      * The elements in the result table which have been previously added.
      * @return the list of selected entities of the query result
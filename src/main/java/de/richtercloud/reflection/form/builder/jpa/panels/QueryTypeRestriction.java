@@ -0,0 +1,332 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.panels;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.persistence.Entity;
+
+/*
+internal implementation notes:
+- JPQL isn't parsed completely, the query is only split into its top-level
+clauses by scanning for keywords outside of string literals and parentheses
+(which excludes subqueries) which is sufficient to recognize the queries
+generated by QueryHistoryEntryStorageFactorys and typed by users; queries with
+other shapes (constructor expressions, paths, multiple select items, etc.)
+aren't rewritten and the subtype handling falls back to checking the results
+- the entity name is used as type literal like in
+AbstractQueryHistoryEntryStorageFactory.generateInitialQueryTexts because
+Storage.runQuery doesn't support parameters
+*/
+/**
+ * Rewrites JPQL queries which select a single identification variable so
+ * that only entities of the exact type of an entity class are retrieved by
+ * adding a {@code TYPE([identifier]) = [entity name]} predicate. This allows
+ * the database to filter subtypes so that the query limit applies to the
+ * entities which are actually shown. Such queries can also be ordered by the
+ * ID of the selected entity for paging.
+ *
+ * @author richter
+ */
+final class QueryTypeRestriction {
+    private final static Pattern SELECT_CLAUSE_PATTERN = Pattern.compile("(?i)\\s*(?:DISTINCT\\s+)?([\\p{javaJavaIdentifierStart}][\\p{javaJavaIdentifierPart}]*)\\s*");
+    private final static Pattern RANGE_VARIABLE_DECLARATION_PATTERN = Pattern.compile("(?i)\\s*[\\p{javaJavaIdentifierStart}][\\p{javaJavaIdentifierPart}.]*\\s+(?:AS\\s+)?([\\p{javaJavaIdentifierStart}][\\p{javaJavaIdentifierPart}]*)(?:\\s.*)?",
+            Pattern.DOTALL);
+    private final static String[] CLAUSE_KEYWORDS = {"SELECT",
+        "FROM",
+        "WHERE",
+        "GROUP BY",
+        "HAVING",
+        "ORDER BY"};
+    private static final int SELECT_INDEX = 0;
+    private static final int FROM_INDEX = 1;
+    private static final int WHERE_INDEX = 2;
+    private static final int GROUP_BY_INDEX = 3;
+    private static final int ORDER_BY_INDEX = 5;
+
+    /**
+     * Adds a predicate to {@code queryText} which restricts the results to the
+     * exact type {@code entityClass}.
+     * @param queryText the query to rewrite
+     * @param entityClass the type to restrict to
+     * @return the rewritten query or {@code null} if {@code queryText} doesn't
+     *     have a shape which can be rewritten safely
+     */
+    static String restrictToType(String queryText,
+            Class<?> entityClass) {
+        int[] clauseStarts = findClauseStarts(queryText);
+        if(clauseStarts == null) {
+            return null;
+        }
+        String identifier = findIdentifier(queryText,
+                clauseStarts);
+        if(identifier == null) {
+            return null;
+        }
+        String predicate = String.format("TYPE(%s) = %s",
+                identifier,
+                getEntityName(entityClass));
+        StringBuilder retValue = new StringBuilder(queryText.length()+predicate.length()+16);
+        if(clauseStarts[WHERE_INDEX] >= 0) {
+            int conditionStart = clauseStarts[WHERE_INDEX]+"WHERE".length();
+            int conditionEnd = clauseEnd(queryText, clauseStarts, WHERE_INDEX);
+            retValue.append(queryText, 0, conditionStart)
+                    .append(' ').append(predicate).append(" AND (")
+                    .append(queryText.substring(conditionStart, conditionEnd).trim())
+                    .append(')');
+            appendRemainder(retValue, queryText, conditionEnd);
+        }else {
+            int fromEnd = clauseEnd(queryText, clauseStarts, FROM_INDEX);
+            retValue.append(queryText.substring(0, fromEnd).trim())
+                    .append(" WHERE ").append(predicate);
+            appendRemainder(retValue, queryText, fromEnd);
+        }
+        return retValue.toString();
+    }
+
+    /**
+     * Appends an {@code ORDER BY} clause which orders by {@code idFieldNames}
+     * to {@code queryText} if it doesn't have one so that the results have a
+     * stable order which paging with offsets requires.
+     * @param queryText the query to rewrite
+     * @param idFieldNames the names of the ID fields of the selected entity
+     * @return {@code queryText} if it already has an {@code ORDER BY} clause,
+     *     the rewritten query or {@code null} if {@code queryText} doesn't
+     *     have a shape which can be rewritten safely (including grouped
+     *     queries) or {@code idFieldNames} is empty
+     */
+    static String orderBy(String queryText,
+            List<String> idFieldNames) {
+        int[] clauseStarts = findClauseStarts(queryText);
+        if(clauseStarts == null) {
+            return null;
+        }
+        if(clauseStarts[ORDER_BY_INDEX] >= 0) {
+            return queryText;
+        }
+        if(clauseStarts[GROUP_BY_INDEX] >= 0
+                || idFieldNames.isEmpty()) {
+            return null;
+        }
+        String identifier = findIdentifier(queryText,
+                clauseStarts);
+        if(identifier == null) {
+            return null;
+        }
+        StringBuilder retValue = new StringBuilder(queryText.trim()).append(" ORDER BY ");
+        for(int i=0; i<idFieldNames.size(); i++) {
+            if(i > 0) {
+                retValue.append(", ");
+            }
+            retValue.append(identifier).append('.').append(idFieldNames.get(i));
+        }
+        return retValue.toString();
+    }
+
+    /**
+     * Finds the identification variable which is selected by
+     * {@code queryText} and declared as first range variable.
+     * @return the identification variable or {@code null} if
+     *     {@code queryText} doesn't select a single identification variable
+     *     declared as first range variable
+     */
+    private static String findIdentifier(String queryText,
+            int[] clauseStarts) {
+        if(clauseStarts[SELECT_INDEX] != skipWhitespace(queryText)
+                || clauseStarts[FROM_INDEX] < 0) {
+            return null;
+        }
+        String selectClause = queryText.substring(clauseStarts[SELECT_INDEX]+"SELECT".length(),
+                clauseEnd(queryText, clauseStarts, SELECT_INDEX));
+        Matcher selectMatcher = SELECT_CLAUSE_PATTERN.matcher(selectClause);
+        if(!selectMatcher.matches()) {
+            return null;
+        }
+        String identifier = selectMatcher.group(1);
+        String fromClause = queryText.substring(clauseStarts[FROM_INDEX]+"FROM".length(),
+                clauseEnd(queryText, clauseStarts, FROM_INDEX));
+        Matcher fromMatcher = RANGE_VARIABLE_DECLARATION_PATTERN.matcher(splitTopLevel(fromClause).get(0));
+        if(!fromMatcher.matches()
+                || !fromMatcher.group(1).equalsIgnoreCase(identifier)) {
+            //identification variables are case insensitive
+            return null;
+        }
+        return identifier;
+    }
+
+    private static void appendRemainder(StringBuilder retValue,
+            String queryText,
+            int start) {
+        if(start < queryText.length()) {
+            retValue.append(' ').append(queryText.substring(start).trim());
+        }
+    }
+
+    /**
+     * Gets the entity name of {@code entityClass}.
+     * @param entityClass the entity class
+     * @return the name specified in {@link Entity#name() } or the simple class
+     *     name if none is specified
+     */
+    static String getEntityName(Class<?> entityClass) {
+        Entity entity = entityClass.getAnnotation(Entity.class);
+        if(entity != null && !entity.name().isEmpty()) {
+            return entity.name();
+        }
+        return entityClass.getSimpleName();
+    }
+
+    private static int skipWhitespace(String queryText) {
+        int retValue = 0;
+        while(retValue < queryText.length()
+                && Character.isWhitespace(queryText.charAt(retValue))) {
+            retValue++;
+        }
+        return retValue;
+    }
+
+    /**
+     * Finds the start of the top-level clauses in {@code queryText}.
+     * @return the start indices in the order of {@link #CLAUSE_KEYWORDS} with
+     *     {@code -1} for absent clauses or {@code null} if a clause occurs
+     *     more than once, out of order or literals or parentheses are
+     *     unbalanced
+     */
+    private static int[] findClauseStarts(String queryText) {
+        int[] retValue = new int[CLAUSE_KEYWORDS.length];
+        Arrays.fill(retValue, -1);
+        String upperCaseText = queryText.toUpperCase(Locale.ROOT);
+        int depth = 0;
+        int lastClause = -1;
+        boolean inLiteral = false;
+        for(int i=0; i<queryText.length(); i++) {
+            char c = queryText.charAt(i);
+            if(inLiteral) {
+                if(c == '\'') {
+                    inLiteral = false;
+                        //'' escapes are handled as two adjacent literals
+                }
+                continue;
+            }
+            if(c == '\'') {
+                inLiteral = true;
+            }else if(c == '(') {
+                depth++;
+            }else if(c == ')') {
+                depth--;
+                if(depth < 0) {
+                    return null;
+                }
+            }else if(depth == 0
+                    && (i == 0 || !Character.isJavaIdentifierPart(queryText.charAt(i-1)))) {
+                for(int j=0; j<CLAUSE_KEYWORDS.length; j++) {
+                    int keywordEnd = matchKeyword(upperCaseText, i, CLAUSE_KEYWORDS[j]);
+                    if(keywordEnd >= 0) {
+                        if(j <= lastClause) {
+                            return null;
+                        }
+                        retValue[j] = i;
+                        lastClause = j;
+                        i = keywordEnd-1;
+                        break;
+                    }
+                }
+            }
+        }
+        if(inLiteral || depth != 0) {
+            return null;
+        }
+        return retValue;
+    }
+
+    /**
+     * Checks whether {@code keyword} starts at {@code start} with arbitrary
+     * whitespace between its words and is followed by a non-identifier
+     * character.
+     * @return the index after the keyword or {@code -1} if it doesn't match
+     */
+    private static int matchKeyword(String upperCaseText,
+            int start,
+            String keyword) {
+        int index = start;
+        String[] words = keyword.split(" ");
+        for(int k=0; k<words.length; k++) {
+            if(k > 0) {
+                int whitespaceStart = index;
+                while(index < upperCaseText.length()
+                        && Character.isWhitespace(upperCaseText.charAt(index))) {
+                    index++;
+                }
+                if(index == whitespaceStart) {
+                    return -1;
+                }
+            }
+            if(!upperCaseText.startsWith(words[k], index)) {
+                return -1;
+            }
+            index += words[k].length();
+        }
+        if(index < upperCaseText.length()
+                && Character.isJavaIdentifierPart(upperCaseText.charAt(index))) {
+            return -1;
+        }
+        return index;
+    }
+
+    private static int clauseEnd(String queryText,
+            int[] clauseStarts,
+            int clauseIndex) {
+        for(int j=clauseIndex+1; j<clauseStarts.length; j++) {
+            if(clauseStarts[j] >= 0) {
+                return clauseStarts[j];
+            }
+        }
+        return queryText.length();
+    }
+
+    /**
+     * Splits {@code clause} at commas outside of literals and parentheses.
+     */
+    private static List<String> splitTopLevel(String clause) {
+        List<String> retValue = new ArrayList<>();
+        int depth = 0;
+        boolean inLiteral = false;
+        int start = 0;
+        for(int i=0; i<clause.length(); i++) {
+            char c = clause.charAt(i);
+            if(c == '\'') {
+                inLiteral = !inLiteral;
+            }else if(!inLiteral) {
+                if(c == '(') {
+                    depth++;
+                }else if(c == ')') {
+                    depth--;
+                }else if(c == ',' && depth == 0) {
+                    retValue.add(clause.substring(start, i));
+                    start = i+1;
+                }
+            }
+        }
+        retValue.add(clause.substring(start));
+        return retValue;
+    }
+
+    private QueryTypeRestriction() {
+    }
+}
@@ -40,6 +40,14 @@ public class SerializingFileQueryHistoryEntryStorage extends AbstractFileQueryHi
                 issueHandler);
     }
 
+    public SerializingFileQueryHistoryEntryStorage(File file,
+            IssueHandler issueHandler,
+            long debounceInterval) throws ClassNotFoundException, IOException {
+        super(file,
+                issueHandler,
+                debounceInterval);
+    }
+
     @Override
     protected void store(Map<Class<?>, List<QueryHistoryEntry>> head) throws IOException {
         try(ObjectOutputStream objectOutputStream = new ObjectOutputStream(Files.newOutputStream(getFile().toPath()))) {
@@ -50,8 +58,19 @@ public class SerializingFileQueryHistoryEntryStorage extends AbstractFileQueryHi
 
     @Override
     protected Map<Class<?>, List<QueryHistoryEntry>> init() throws IOException, ClassNotFoundException {
+        return read(getFile());
+    }
+
+    /**
+     * Reads the history stored in {@code file} by this storage.
+     * @param file the file to read
+     * @return the history or an empty map if {@code file} is empty
+     * @throws IOException if an I/O exception occurs
+     * @throws ClassNotFoundException if a class of the history can't be loaded
+     */
+    public static Map<Class<?>, List<QueryHistoryEntry>> read(File file) throws IOException, ClassNotFoundException {
         Map<Class<?>, List<QueryHistoryEntry>> retValue;
-        try(ObjectInputStream objectInputStream = new ObjectInputStream(Files.newInputStream(getFile().toPath()))) {
+        try(ObjectInputStream objectInputStream = new ObjectInputStream(Files.newInputStream(file.toPath()))) {
             retValue = (Map<Class<?>, List<QueryHistoryEntry>>) objectInputStream.readObject();
         }catch(EOFException ex) {
             //if file is empty
@@ -14,9 +14,14 @@
  */
 package de.richtercloud.reflection.form.builder.jpa.panels;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import javax.swing.DefaultComboBoxModel;
 
 /*
@@ -24,6 +29,9 @@ internal implementation notes:
 - due to the fact that the interface defines index based methods, a
 PriorityQueue can't be used for item storage -> use a List and List.sort at
 every model change
+- models without comparator don't sort at all, their order is only changed by
+reorder which allows to show an order which is maintained elsewhere (e.g. the
+ranking of a QueryHistoryEntryStorage) without a full sort per change
  */
 /**
  *
@@ -34,6 +42,10 @@ public class SortedComboBoxModel<E> extends DefaultComboBoxModel<E> {
 
     private static final long serialVersionUID = 1L;
     private final List<E> items;
+    /**
+     * The comparator or {@code null} if the items are only ordered by
+     * {@link #reorder(java.util.List) }.
+     */
     private final Comparator<E> comparator;
 
     /*
@@ -49,12 +61,23 @@ public class SortedComboBoxModel<E> extends DefaultComboBoxModel<E> {
         this.items = items;
         //don't just intialize with reference, but do what addElement would
         //do, but only sort items once
-        Collections.sort(this.items, this.comparator);
+        sort();
         for (E item : items) {
             super.addElement(item);
         }
     }
 
+    /**
+     * Creates a model which doesn't sort its items, but keeps them in the order
+     * of {@code items} and of their addition until
+     * {@link #reorder(java.util.List) } is called.
+     * @param items the initial items
+     */
+    public SortedComboBoxModel(List<E> items) {
+        this(null,
+                items);
+    }
+
     @Override
     public void addElement(E item) {
         this.items.add(item);
@@ -103,7 +126,49 @@ public class SortedComboBoxModel<E> extends DefaultComboBoxModel<E> {
         return this.items.contains(element);
     }
 
+    /**
+     * Sorts the items with the comparator of the model. Has no effect if the
+     * model has been created without comparator.
+     */
     public void sort() {
+        if(this.comparator == null) {
+            return;
+        }
         Collections.sort(this.items, this.comparator);
     }
+
+    /**
+     * Moves the items which are equal to the elements of {@code order} to the
+     * beginning in the order of {@code order} and keeps the order of the
+     * remaining items which allows to apply an order maintained elsewhere
+     * without sorting.
+     * @param order the order to apply
+     */
+    public void reorder(List<E> order) {
+        Map<E, E> firstItems = new HashMap<>();
+        for(E item : this.items) {
+            firstItems.putIfAbsent(item, item);
+        }
+        List<E> reordered = new ArrayList<>(this.items.size());
+        Set<E> placed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for(E element : order) {
+            E item = firstItems.remove(element);
+            if(item != null) {
+                reordered.add(item);
+                placed.add(item);
+            }
+        }
+        for(E item : this.items) {
+            if(!placed.contains(item)) {
+                reordered.add(item);
+            }
+        }
+        this.items.clear();
+        this.items.addAll(reordered);
+        if(!this.items.isEmpty()) {
+            fireContentsChanged(this,
+                    0,
+                    this.items.size()-1);
+        }
+    }
 }
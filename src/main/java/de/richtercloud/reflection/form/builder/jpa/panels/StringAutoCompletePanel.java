@@ -32,8 +32,18 @@ import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.swing.JComboBox;
 import javax.swing.SwingUtilities;
 import javax.swing.text.JTextComponent;
@@ -48,14 +58,38 @@ model and thus can't be used for suggestions
 instead of the field values. Adding field values makes more sense.
 - removed parameter T because it didn't seem to have any use, document well when
 adding again
+- checks of all panels share one scheduled executor with CHECK_THREAD_COUNT
+daemon threads because panels don't have a lifecycle which would allow
+shutting down a per panel executor, there's more than one thread so that a
+slow check (e.g. a query which waits for a lock in the database) of one panel
+doesn't delay the checks of other panels
+- checks of the same panel overlap if a check takes longer than the debounce
+delay, that's fine because the result cache is synchronized and the results
+of the superseded check are discarded
+- a running check can't be cancelled safely because interrupting a thread
+which is blocked in JDBC might close the connection of the EntityManager, so
+superseded checks which are already running are completed and their results
+are discarded based on checkGeneration
+- suggestions of the fuzzy mode don't contain the text field text, so the
+text they've been found for is passed to the filter of the auto-complete
+support as additional filter string in order to not hide them
 */
 /**
  * Displays existing values in the database in a popup menu in order to inform
  * about similar or equal values which have already been used and persisted.
  *
- * Performance depends on {@link PersistenceStorage#runQuery(java.lang.String, java.lang.Class, int, int) }
- * and the right priority since {@code comboBox} queries for every key-pressed
- * event.
+ * Suggestions are retrieved from the
+ * {@link PersistenceStorage#getStringFieldValueIndex(java.lang.Class, java.lang.String) }
+ * and cached in {@link #getResultCache() } so that extending the text is
+ * answered by filtering the previous suggestions. Checks are delayed by a
+ * debounce delay after every key-released event and superseded by newer
+ * events, so that typing a word causes only a few checks.
+ *
+ * In fuzzy mode (see {@link #setFuzzyMatching(boolean) }) suggestions are
+ * completed with values within an edit distance of
+ * {@link #FUZZY_MAX_DISTANCE_DEFAULT} which are ranked by distance and usage,
+ * so that values are suggested despite typos. The search is limited to
+ * {@link #FUZZY_LATENCY_BUDGET_DEFAULT}.
  *
  * Uses glazedLists under the hood which sets a
  * {@link javax.swing.text.DocumentFilter} on the editor component of the
@@ -71,16 +105,57 @@ adding again
 public class StringAutoCompletePanel extends AbstractStringPanel {
     private static final long serialVersionUID = 1L;
     private final static Logger LOGGER = LoggerFactory.getLogger(StringAutoCompletePanel.class);
+    /**
+     * The default time in milliseconds to wait for further key events before
+     * checking.
+     */
+    public final static long DEBOUNCE_DELAY_DEFAULT = 200;
+    /**
+     * The maximum edit distance of suggestions in fuzzy mode.
+     */
+    public final static int FUZZY_MAX_DISTANCE_DEFAULT = 2;
+    /**
+     * The time in milliseconds after which the search for similar values in
+     * fuzzy mode returns the values found so far (about the duration of a
+     * frame at 60 Hz).
+     */
+    public final static long FUZZY_LATENCY_BUDGET_DEFAULT = 16;
+    /**
+     * The number of threads which run the checks of all panels.
+     */
+    private final static int CHECK_THREAD_COUNT = 4;
+    private final static AtomicLong CHECK_THREAD_NUMBER = new AtomicLong();
+    private final static ScheduledExecutorService CHECK_EXECUTOR = Executors.newScheduledThreadPool(CHECK_THREAD_COUNT,
+            runnable -> {
+                Thread retValue = new Thread(runnable,
+                        String.format("string-auto-complete-panel-check-thread-%d",
+                                CHECK_THREAD_NUMBER.incrementAndGet()));
+                retValue.setDaemon(true);
+                return retValue;
+            });
     private final EventList<String> comboBoxEventList = new BasicEventList<>();
     private final DefaultEventComboBoxModel<String> comboBoxModel = new DefaultEventComboBoxModel<>(comboBoxEventList);
+    /**
+     * The results of the last published check. Only accessed on the EDT.
+     */
     private List<?> lastCheckResults = new LinkedList<>();
     private final IssueHandler issueHandler;
+    private final long debounceDelay;
+    /**
+     * Incremented for every key-released event so that checks can tell
+     * whether they've been superseded.
+     */
+    private final AtomicLong checkGeneration = new AtomicLong();
     /**
-     * A flag which allows to avoid starting more than one query which
-     * is overkill and not constructive.
+     * The last scheduled check. Only accessed on the EDT.
      */
-    private boolean queryRunning;
-    private QueryThread pendingThread;
+    private Future<?> pendingCheck;
+    private volatile boolean fuzzyMatching;
+    /**
+     * The text field texts which the fuzzy suggestions in the combo box model
+     * have been found for. Only accessed on the EDT.
+     */
+    private Map<String, String> fuzzyMatchTexts = new HashMap<>();
 
     private static Field retrieveFieldByName(FieldRetriever fieldRetriever,
             Class<?> entityClass,
@@ -99,6 +174,35 @@ public class StringAutoCompletePanel extends AbstractStringPanel {
         return retValue;
     }
 
+    /**
+     * Creates new form StringAutoCompletePanel using
+     * {@link #DEBOUNCE_DELAY_DEFAULT}.
+     * @param storage the storage to use
+     * @param entityClass the entity classes
+     * @param initialValue the initial value
+     * @param fieldName the field name
+     * @param initialQueryLimit the initial query limit
+     * @param fieldRetriever the {@link FieldRetriever} to use for searching the
+     *     field with {@code fieldName}
+     * @param issueHandler the issue handler to use
+     */
+    public StringAutoCompletePanel(PersistenceStorage storage,
+            String initialValue,
+            Class<?> entityClass,
+            String fieldName,
+            int initialQueryLimit,
+            FieldRetriever fieldRetriever,
+            IssueHandler issueHandler) {
+        this(storage,
+                initialValue,
+                entityClass,
+                fieldName,
+                initialQueryLimit,
+                fieldRetriever,
+                issueHandler,
+                DEBOUNCE_DELAY_DEFAULT);
+    }
+
     /**
      * Creates new form StringAutoCompletePanel
      * @param storage the storage to use
@@ -109,6 +213,9 @@ public class StringAutoCompletePanel extends AbstractStringPanel {
      * @param fieldRetriever the {@link FieldRetriever} to use for searching the
      *     field with {@code fieldName}
      * @param issueHandler the issue handler to use
+     * @param debounceDelay the time in milliseconds to wait for further key
+     *     events before checking ({@code 0} checks without waiting)
+     * @throws IllegalArgumentException if {@code debounceDelay} is negative
      */
     @SuppressWarnings({"PMD.AvoidInstantiatingObjectsInLoops",
         "PMD.AccessorMethodGeneration"
@@ -119,12 +226,17 @@ public class StringAutoCompletePanel extends AbstractStringPanel {
             String fieldName,
             int initialQueryLimit,
             FieldRetriever fieldRetriever,
-            IssueHandler issueHandler) {
+            IssueHandler issueHandler,
+            long debounceDelay) {
         super(storage,
                 entityClass,
                 fieldName,
                 initialQueryLimit);
+        if(debounceDelay < 0) {
+            throw new IllegalArgumentException("debounceDelay mustn't be negative");
+        }
         this.issueHandler = issueHandler;
+        this.debounceDelay = debounceDelay;
         initComponents();
         this.comboBox.addActionListener((ActionEvent e) -> {
             for(StringPanelUpdateListener updateListener : getUpdateListeners()) {
@@ -163,20 +275,11 @@ public class StringAutoCompletePanel extends AbstractStringPanel {
         this.comboBox.setSelectedItem(initialValue);
         this.comboBox.getEditor().getEditorComponent().addKeyListener(new KeyAdapter() {
             /**
-             * Handles querying the storage with the text of the text field
-             * right after the update. The query happens on a separate thread.
-             * If a query is running while the method is invoked from the EDT,
-             * a reference for processing is stored and started from within the
-             * currently running query thread. This reference is overwritten by
-             * any newer key release events which happen while the first query
-             * is still running, so that the result of the last update doesn't
-             * get lost like it would if the all updates would be discarded
-             * while a query is running.
-             *
-             * The fact that the next query thread is started from within the
-             * previous one avoids the need for a separate thread polling from a
-             * queue which is more intuitive, but unnecessary and requires
-             * overriding finalize.
+             * Schedules a check of the text of the text field after
+             * {@code debounceDelay} and cancels the previously scheduled check
+             * if it hasn't started yet, so that only the last of a series of
+             * quick key events causes a query. Results of checks which have
+             * been superseded while running are discarded.
              *
              * @param keyEvent the key event passed from Swing
              */
@@ -184,28 +287,37 @@ public class StringAutoCompletePanel extends AbstractStringPanel {
             public void keyReleased(KeyEvent keyEvent) {
                 //Listen to keyReleased rather than keyPressed in order to avoid
                 //listening to Ctrl being pressed when using Ctrl+V or else.
-                //Since queries might be slow (later if the database is full or
-                //far), add skipping function which can only be realized with
-                //a thread.
                 String textFieldText = ((JTextComponent)comboBox.getEditor().getEditorComponent()).getText();
                 assert textFieldText != null;
-                LOGGER.trace(String.format("checking auto-completion for text field text '%s'",
+                LOGGER.trace(String.format("scheduling auto-completion check for text field text '%s'",
                         textFieldText));
-                pendingThread = new QueryThread(textFieldText);
-                if(!queryRunning) {
-                    queryRunning = true;
-                    pendingThread.start();
-                }else {
-                    LOGGER.trace(String.format("queuing auto-completion check "
-                            + "for text field text '%s' (will be discarded if "
-                            + "a newer update arrives before the currently "
-                            + "running query terminates)",
-                            textFieldText));
+                long generation = checkGeneration.incrementAndGet();
+                if(pendingCheck != null) {
+                    pendingCheck.cancel(false //mayInterruptIfRunning
+                    );
                 }
+                pendingCheck = CHECK_EXECUTOR.schedule(() -> runCheck(textFieldText, generation),
+                        debounceDelay,
+                        TimeUnit.MILLISECONDS);
             }
         });
     }
 
+    public boolean isFuzzyMatching() {
+        return fuzzyMatching;
+    }
+
+    /**
+     * Enables or disables the fuzzy suggestion mode which takes effect with
+     * the next check.
+     * @param fuzzyMatching whether to suggest values within an edit distance
+     *     of {@link #FUZZY_MAX_DISTANCE_DEFAULT} if there're less exact
+     *     matches than the query limit
+     */
+    public void setFuzzyMatching(boolean fuzzyMatching) {
+        this.fuzzyMatching = fuzzyMatching;
+    }
+
     public JComboBox<String> getComboBox() {
         return comboBox;
     }
@@ -225,72 +337,109 @@ public class StringAutoCompletePanel extends AbstractStringPanel {
         @Override
         public void getFilterStrings(List<String> baseList, String element) {
             baseList.add(element);
+            String fuzzyMatchText = fuzzyMatchTexts.get(element);
+            if(fuzzyMatchText != null) {
+                baseList.add(fuzzyMatchText);
+            }
         }
     }
 
     @Override
     public void reset() {
+        checkGeneration.incrementAndGet();
+            //discard results of running checks
         comboBox.setSelectedIndex(-1);
         comboBoxEventList.clear();
     }
 
     /**
-     * A thread which handles queries for auto-completion candidates after text
-     * field updates. Starts a new thread as last statement if
-     * {@code pendingThread} has been overwritten by an update event.
+     * Queries auto-completion candidates for {@code textFieldText} on the
+     * check executor and publishes them on the EDT unless the check has been
+     * superseded.
+     * @param textFieldText the text to check
+     * @param generation the value of {@code checkGeneration} when the check
+     *     has been scheduled
      */
-    @SuppressWarnings("PMD.AccessorMethodGeneration")
-    private class QueryThread extends Thread {
-        private final String textFieldText;
-
-        protected QueryThread(String textFieldText) {
-            super("string-auto-complete-panel-check-thread");
-            this.textFieldText = textFieldText;
+    @SuppressWarnings({"PMD.AvoidCatchingThrowable",
+        "PMD.AccessorMethodGeneration"
+    })
+    private void runCheck(String textFieldText,
+            long generation) {
+        if(generation != checkGeneration.get()) {
+            //superseded after the scheduled check couldn't be cancelled
+            return;
+        }
+        List<String> checkResults;
+        Map<String, String> checkFuzzyMatchTexts = new HashMap<>();
+        try {
+            List<String> exactCheckResults = check(textFieldText);
+            if(fuzzyMatching
+                    && !textFieldText.isEmpty()
+                    && exactCheckResults.size() < getInitialQueryLimit()) {
+                checkResults = completeFuzzy(textFieldText,
+                        exactCheckResults,
+                        checkFuzzyMatchTexts);
+            }else {
+                checkResults = exactCheckResults;
+            }
+        }catch(StorageException ex) {
+            LOGGER.error("an exception during storage occured", ex);
+            issueHandler.handle(new Message(ex));
+            return;
+        } catch(Throwable ex) {
+            LOGGER.error("an unexpected exception during retrieval of auto-completion check results occured",
+                    ex);
+            issueHandler.handleUnexpectedException(new ExceptionMessage(ex));
+            throw ex;
         }
+        SwingUtilities.invokeLater(() -> {
+            //avoid `IllegalStateException: Events to DefaultEventComboBoxModel must arrive on the EDT - consider adding GlazedListsSwing.swingThreadProxyList(source) somewhere in your list pipeline`
+            if(generation != checkGeneration.get()) {
+                LOGGER.trace(String.format("discarding superseded auto-completion check results for text field text '%s'",
+                        textFieldText));
+                return;
+            }
+            if(!lastCheckResults.equals(checkResults)
+                    || !fuzzyMatchTexts.equals(checkFuzzyMatchTexts)) {
+                //the list needs to be refilled for changed fuzzy match texts
+                //in order to filter with them
+                fuzzyMatchTexts = checkFuzzyMatchTexts;
+                    //before the list changes so that the filter sees them
+                comboBoxEventList.clear();
+                comboBoxEventList.addAll(checkResults);
+                lastCheckResults = checkResults;
+            }
+        });
+    }
 
-        @Override
-        @SuppressWarnings("PMD.AvoidCatchingThrowable")
-        public void run() {
-            List<String> checkResults;
-            try {
-                checkResults = check(textFieldText);
-                if(!lastCheckResults.equals(checkResults)) {
-                    try {
-                        SwingUtilities.invokeAndWait(() -> {
-                            //avoid `IllegalStateException: Events to DefaultEventComboBoxModel must arrive on the EDT - consider adding GlazedListsSwing.swingThreadProxyList(source) somewhere in your list pipeline`
-                            comboBoxEventList.clear();
-                            for(String checkResult : checkResults) {
-                                comboBoxEventList.add(checkResult);
-                            }
-                        });
-                    } catch (InterruptedException | InvocationTargetException ex) {
-                        LOGGER.error("unexpected exception during update of auto-complete component occured",
-                                ex);
-                        issueHandler.handleUnexpectedException(new ExceptionMessage(ex));
-                        return;
-                            //It's fine to return if the thread has been interrupted
-                            //which is an unexpected condition anyway and can't be
-                            //handled better than reporting an unexpected exception
-                    }
-                    lastCheckResults = checkResults;
-                }
-            }catch(StorageException ex) {
-                LOGGER.error("an exception during storage occured", ex);
-                issueHandler.handle(new Message(ex));
-            } catch(Throwable ex) {
-                LOGGER.error("an unexpected exception during retrieval of auto-completion check results occured",
-                        ex);
-                issueHandler.handleUnexpectedException(new ExceptionMessage(ex));
-                throw ex;
-            }finally {
-                if(pendingThread != null
-                        && pendingThread != this) {
-                    pendingThread.start();
-                }else {
-                    queryRunning = false;
-                }
+    /**
+     * Appends values similar to {@code textFieldText} to
+     * {@code checkResults} until the query limit is reached.
+     * @param textFieldText the text field text
+     * @param checkResults the exact matches
+     * @param checkFuzzyMatchTexts receives {@code textFieldText} for every
+     *     appended value
+     * @return the exact matches followed by the similar values
+     */
+    private List<String> completeFuzzy(String textFieldText,
+            List<String> checkResults,
+            Map<String, String> checkFuzzyMatchTexts) throws StorageException {
+        List<String> similarValues = checkSimilar(textFieldText,
+                FUZZY_MAX_DISTANCE_DEFAULT,
+                TimeUnit.MILLISECONDS.toNanos(FUZZY_LATENCY_BUDGET_DEFAULT));
+        List<String> retValue = new ArrayList<>(checkResults);
+        Set<String> retValueSet = new HashSet<>(checkResults);
+        for(String similarValue : similarValues) {
+            if(retValue.size() >= getInitialQueryLimit()) {
+                break;
+            }
+            if(retValueSet.add(similarValue)) {
+                retValue.add(similarValue);
+                checkFuzzyMatchTexts.put(similarValue,
+                        textFieldText);
             }
         }
+        return retValue;
     }
 
     /**
@@ -38,6 +38,14 @@ public class XMLFileQueryHistoryEntryStorage extends AbstractFileQueryHistoryEnt
                 issueHandler);
     }
 
+    public XMLFileQueryHistoryEntryStorage(File file,
+            IssueHandler issueHandler,
+            long debounceInterval) throws ClassNotFoundException, IOException {
+        super(file,
+                issueHandler,
+                debounceInterval);
+    }
+
     @Override
     protected void store(Map<Class<?>, List<QueryHistoryEntry>> head) throws IOException {
         XStream xStream = new XStream();
@@ -49,9 +57,20 @@ public class XMLFileQueryHistoryEntryStorage extends AbstractFileQueryHistoryEnt
 
     @Override
     protected Map<Class<?>, List<QueryHistoryEntry>> init() throws IOException, ClassNotFoundException {
+        return read(getFile());
+    }
+
+    /**
+     * Reads the history stored in {@code file} by this storage.
+     * @param file the file to read
+     * @return the history or an empty map if {@code file} is empty or not
+     *     readable
+     * @throws IOException if an I/O exception occurs
+     */
+    public static Map<Class<?>, List<QueryHistoryEntry>> read(File file) throws IOException {
         Map<Class<?>, List<QueryHistoryEntry>> retValue;
         XStream xStream = new XStream();
-        try(InputStream fileInputStream = Files.newInputStream(getFile().toPath())) {
+        try(InputStream fileInputStream = Files.newInputStream(file.toPath())) {
             retValue = (Map<Class<?>, List<QueryHistoryEntry>>) xStream.fromXML(fileInputStream);
         }catch(com.thoughtworks.xstream.io.StreamException ex) {
             //if file is empty or not readable
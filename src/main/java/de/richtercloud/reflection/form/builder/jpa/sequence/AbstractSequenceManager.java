@@ -17,6 +17,8 @@ package de.richtercloud.reflection.form.builder.jpa.sequence;
 import de.richtercloud.reflection.form.builder.jpa.storage.PersistenceStorage;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import javax.persistence.EntityManager;
 
 /**
@@ -35,6 +37,31 @@ public abstract class AbstractSequenceManager<T> implements SequenceManager<T> {
         return storage;
     }
 
+    /**
+     * Retrieves {@code count} values by invoking
+     * {@link #getNextSequenceValue(java.lang.String) } {@code count} times.
+     * Subclasses which can reserve multiple values at once should override
+     * this method.
+     *
+     * @param sequenceName the sequence name
+     * @param count the number of values to reserve
+     * @return the reserved values in the order of their retrieval
+     * @throws SequenceManagementException in case an exception during the
+     *     management of the sequence occured
+     */
+    @Override
+    public List<T> getNextSequenceValues(String sequenceName,
+            int count) throws SequenceManagementException {
+        if(count < 1) {
+            throw new IllegalArgumentException("count has to be >= 1");
+        }
+        List<T> retValue = new ArrayList<>(count);
+        for(int i=0; i<count; i++) {
+            retValue.add(getNextSequenceValue(sequenceName));
+        }
+        return retValue;
+    }
+
     protected <T> T doSQLTask(SQLTask<T> task) throws SequenceManagementException {
         EntityManager entityManager = getStorage().retrieveEntityManager();
         entityManager.getTransaction().begin();
@@ -15,7 +15,19 @@
 package de.richtercloud.reflection.form.builder.jpa.sequence;
 
 import de.richtercloud.reflection.form.builder.jpa.storage.PersistenceStorage;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
 
+/*
+internal implementation notes:
+- Derby evaluates NEXT VALUE FOR once per statement or row and can't generate
+a number of rows without a table, so getNextSequenceValues executes one
+prepared statement count times in one transaction which saves the retrieval of
+an EntityManager, the transaction and the resolution of the dialect per value
+*/
 /**
  *
  * @author richter
@@ -36,6 +48,16 @@ public class DerbySequenceManager extends HibernateWrapperSequenceManager {
         super.createSequence(sequenceName0);
     }
 
+    @Override
+    public void createSequence(String sequenceName,
+            long initialValue) throws SequenceManagementException {
+        String sequenceName0 = escapeSequenceName(sequenceName,
+                "\"",
+                "\"");
+        super.createSequence(sequenceName0,
+                initialValue);
+    }
+
     @Override
     public Long getNextSequenceValue(String sequenceName) throws SequenceManagementException {
         String sequenceName0 = escapeSequenceName(sequenceName,
@@ -43,4 +65,31 @@ public class DerbySequenceManager extends HibernateWrapperSequenceManager {
                 "\"");
         return super.getNextSequenceValue(sequenceName0);
     }
+
+    @Override
+    public List<Long> getNextSequenceValues(String sequenceName,
+            int count) throws SequenceManagementException {
+        if(count < 1) {
+            throw new IllegalArgumentException("count has to be >= 1");
+        }
+        String sequenceName0 = escapeSequenceName(sequenceName,
+                "\"",
+                "\"");
+        return doSQLTask((Connection connection) -> {
+            List<Long> retValue = new ArrayList<>(count);
+            try (PreparedStatement statement = connection.prepareStatement(String.format("VALUES NEXT VALUE FOR %s",
+                    sequenceName0))) {
+                for(int i=0; i<count; i++) {
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        if(!resultSet.next()) {
+                            throw new SequenceManagementException("sequence query result is empty");
+                        }
+                        retValue.add(resultSet.getLong(1 //only column index (1-based)
+                        ));
+                    }
+                }
+            }
+            return retValue;
+        });
+    }
 }
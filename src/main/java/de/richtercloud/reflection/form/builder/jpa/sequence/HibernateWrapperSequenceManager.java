@@ -89,12 +89,43 @@ public abstract class HibernateWrapperSequenceManager extends AbstractSequenceMa
 
     @Override
     public void createSequence(String sequenceName) throws SequenceManagementException {
+        createSequence0(sequenceName,
+                initialValue);
+    }
+
+    /**
+     * Creates the sequence {@code sequenceName} starting at
+     * {@code initialValue}.
+     * @param sequenceName the sequence name
+     * @param initialValue the first value of the sequence
+     * @throws SequenceManagementException if {@code initialValue} exceeds the
+     *     range of initial values supported by Hibernate or an exception
+     *     during the creation of the sequence occured
+     */
+    @Override
+    public void createSequence(String sequenceName,
+            long initialValue) throws SequenceManagementException {
+        if(initialValue < Integer.MIN_VALUE || initialValue > Integer.MAX_VALUE) {
+            throw new SequenceManagementException(String.format("initial value %d exceeds the range of initial values supported by Hibernate",
+                    initialValue));
+        }
+        createSequence0(sequenceName,
+                (int) initialValue);
+    }
+
+    /**
+     * Creates the sequence and allows subclasses to escape
+     * {@code sequenceName} in both public {@code createSequence} methods
+     * without escaping it twice.
+     */
+    private void createSequence0(String sequenceName,
+            int initialValue0) throws SequenceManagementException {
         doHibernateSQLTask((dialect, connection) -> {
             if ( !dialect.supportsSequences() ) {
                 throw new SequenceManagementException("The dialect of the current database doesn't support sequences");
             }
             String[] sqls = dialect.getCreateSequenceStrings(sequenceName,
-                    initialValue, //initialValue
+                    initialValue0, //initialValue
                     1 //incrementSize
             );
             if (sqls == null) {
@@ -19,6 +19,8 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -81,12 +83,30 @@ public class MySQLSequenceManager extends AbstractSequenceManager<Long> {
 
     @Override
     public void createSequence(String sequenceName) throws SequenceManagementException {
+        createSequence(sequenceName,
+                1 //initialValue
+        );
+    }
+
+    /**
+     * Creates the sequence table with a counter which is {@code 1} less than
+     * {@code initialValue} because the counter is incremented before it's
+     * returned.
+     * @param sequenceName the sequence name
+     * @param initialValue the first value of the sequence
+     * @throws SequenceManagementException in case an exception during the
+     *     management of the sequence occured
+     */
+    @Override
+    public void createSequence(String sequenceName,
+            long initialValue) throws SequenceManagementException {
         doSQLTask((Connection connection) -> {
             String query0 = String.format("CREATE TABLE `%s` (%s INT NOT NULL);",
                     sequenceName,
                     ONLY_COLUMN_NAME);
-            String query1 = String.format("INSERT INTO `%s` VALUES (0);",
-                    sequenceName);
+            String query1 = String.format("INSERT INTO `%s` VALUES (%d);",
+                    sequenceName,
+                    initialValue-1);
             LOGGER.debug(String.format("running query '%s\n%s'",
                     query0,
                     query1));
@@ -100,13 +120,6 @@ public class MySQLSequenceManager extends AbstractSequenceManager<Long> {
         });
     }
 
-    /*
-    internal implementation notes:
-    - `UPDATE child_codes SET counter_field = LAST_INSERT_ID(counter_field + 1);
-    SELECT LAST_INSERT_ID();` fails due to
-    `java.sql.SQLException: Column 'counter' not found.` which doesn't make any
-    sense
-    */
     /**
      * Retrieves the next sequence value.
      * @param sequenceName the sequence name
@@ -116,39 +129,63 @@ public class MySQLSequenceManager extends AbstractSequenceManager<Long> {
      */
     @Override
     public Long getNextSequenceValue(String sequenceName) throws SequenceManagementException {
+        return getNextSequenceValues(sequenceName,
+                1 //count
+        ).get(0);
+    }
+
+    /*
+    internal implementation notes:
+    - `UPDATE ... SET counter = LAST_INSERT_ID(counter + n)` makes MySQL
+    remember the new counter value as last insert ID of the connection which is
+    transmitted to the client with the update's response and exposed through
+    Statement.getGeneratedKeys, so that no second statement is necessary
+    - `SELECT LAST_INSERT_ID();` as second statement (and `SELECT @next;` after
+    `UPDATE ... SET counter = (@next := counter + 1)` which was used before)
+    cost a second round trip for every value
+    */
+    /**
+     * Advances the sequence table by {@code count} in one statement and returns
+     * all values of the reserved range.
+     * @param sequenceName the sequence name
+     * @param count the number of values to reserve
+     * @return the reserved values in ascending order
+     * @throws SequenceManagementException in case an exception during the
+     *     management of the sequence occured
+     */
+    @Override
+    public List<Long> getNextSequenceValues(String sequenceName,
+            int count) throws SequenceManagementException {
+        if(count < 1) {
+            throw new IllegalArgumentException("count has to be >= 1");
+        }
         return doSQLTask((Connection connection) -> {
-            String query0 = String.format("UPDATE `%s` SET %s = (@next := %s + 1);",
+            String query = String.format("UPDATE `%s` SET %s = LAST_INSERT_ID(%s + %d);",
                     sequenceName,
                     ONLY_COLUMN_NAME,
-                    ONLY_COLUMN_NAME);
-            try (PreparedStatement statement = connection.prepareStatement(query0)) {
-                LOGGER.debug(String.format("running query '%s'",
-                        query0));
-                statement.execute();
-                    //PreparedStatement.executeQuery causes `java.sql.SQLException: Can not issue data manipulation statements with executeQuery().`
-            }
-            String query1 = String.format("SELECT @next;");
-                //- following http://stackoverflow.com/questions/26578313/how-do-i-create-a-sequence-in-mysql
-                //- using Connection.createStatement.addBatch causes
-                //`java.sql.SQLException: Can not issue SELECT via executeUpdate() or executeLargeUpdate().`
-            PreparedStatement statement = null;
-            ResultSet resultSet = null;
-            try {
-                statement = connection.prepareStatement(query1);
-                LOGGER.debug(String.format("running query '%s'",
-                        query1));
-                resultSet = statement.executeQuery();
-                if(!resultSet.next()) {
-                    throw new SequenceManagementException("sequence query result is empty");
-                }
-                Long retValue = resultSet.getLong("@next");
-                return retValue;
-            }finally {
-                if(statement != null) {
-                    statement.close();
+                    ONLY_COLUMN_NAME,
+                    count);
+            LOGGER.debug(String.format("running query '%s'",
+                    query));
+            try (Statement statement = connection.createStatement()) {
+                int updateCount = statement.executeUpdate(query,
+                        Statement.RETURN_GENERATED_KEYS);
+                if(updateCount != 1) {
+                    throw new SequenceManagementException(String.format("sequence table '%s' is expected to contain exactly one row, but %d rows have been updated",
+                            sequenceName,
+                            updateCount));
                 }
-                if(resultSet != null) {
-                    resultSet.close();
+                try (ResultSet resultSet = statement.getGeneratedKeys()) {
+                    if(!resultSet.next()) {
+                        throw new SequenceManagementException("sequence query result is empty");
+                    }
+                    long last = resultSet.getLong(1 //only column index (1-based)
+                    );
+                    List<Long> retValue = new ArrayList<>(count);
+                    for(long value = last-count+1; value <= last; value++) {
+                        retValue.add(value);
+                    }
+                    return retValue;
                 }
             }
         });
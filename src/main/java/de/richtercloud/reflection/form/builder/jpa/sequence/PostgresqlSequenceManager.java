@@ -15,6 +15,12 @@
 package de.richtercloud.reflection.form.builder.jpa.sequence;
 
 import de.richtercloud.reflection.form.builder.jpa.storage.PersistenceStorage;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  *
@@ -36,6 +42,16 @@ public class PostgresqlSequenceManager extends HibernateWrapperSequenceManager {
         super.createSequence(sequenceName0);
     }
 
+    @Override
+    public void createSequence(String sequenceName,
+            long initialValue) throws SequenceManagementException {
+        String sequenceName0 = escapeSequenceName(sequenceName,
+                "\"",
+                "\"");
+        super.createSequence(sequenceName0,
+                initialValue);
+    }
+
     @Override
     public Long getNextSequenceValue(String sequenceName) throws SequenceManagementException {
         String sequenceName0 = escapeSequenceName(sequenceName,
@@ -43,4 +59,47 @@ public class PostgresqlSequenceManager extends HibernateWrapperSequenceManager {
                 "\"");
         return super.getNextSequenceValue(sequenceName0);
     }
+
+    /**
+     * Reserves {@code count} values with one query which invokes
+     * {@code nextval} for every row of {@code generate_series(1, count)}.
+     * The values aren't necessarily contiguous if other transactions use the
+     * sequence concurrently.
+     *
+     * @param sequenceName the sequence name
+     * @param count the number of values to reserve
+     * @return the reserved values in ascending order
+     * @throws SequenceManagementException in case an exception during the
+     *     management of the sequence occured
+     */
+    @Override
+    public List<Long> getNextSequenceValues(String sequenceName,
+            int count) throws SequenceManagementException {
+        if(count < 1) {
+            throw new IllegalArgumentException("count has to be >= 1");
+        }
+        String sequenceName0 = escapeSequenceName(sequenceName,
+                "\"",
+                "\"");
+        return doSQLTask((Connection connection) -> {
+            String query = String.format("SELECT nextval('%s') FROM generate_series(1, %d)",
+                    sequenceName0.replaceAll("'", "''"),
+                    count);
+            List<Long> retValue = new ArrayList<>(count);
+            try (Statement statement = connection.createStatement();
+                    ResultSet resultSet = statement.executeQuery(query)) {
+                while(resultSet.next()) {
+                    retValue.add(resultSet.getLong(1 //only column index (1-based)
+                    ));
+                }
+            }
+            if(retValue.size() != count) {
+                throw new SequenceManagementException(String.format("sequence query returned %d instead of %d values",
+                        retValue.size(),
+                        count));
+            }
+            Collections.sort(retValue);
+            return retValue;
+        });
+    }
 }
@@ -14,6 +14,8 @@
  */
 package de.richtercloud.reflection.form.builder.jpa.sequence;
 
+import java.util.List;
+
 /**
  * Provides an interface to handle database sequences for different database
  * implementations.
@@ -27,5 +29,40 @@ public interface SequenceManager<T> {
 
     void createSequence(String sequenceName) throws SequenceManagementException;
 
+    /**
+     * Creates the sequence {@code sequenceName} whose first value is
+     * {@code initialValue}, e.g. in order to continue the values of another
+     * sequence. The default implementation fails because sequences can't be
+     * advanced to an arbitrary value efficiently through the other methods of
+     * this interface.
+     *
+     * @param sequenceName the sequence name
+     * @param initialValue the first value of the sequence
+     * @throws SequenceManagementException in case an exception during the
+     *     management of the sequence occured or if the implementation doesn't
+     *     support initial values
+     */
+    default void createSequence(String sequenceName,
+            long initialValue) throws SequenceManagementException {
+        throw new SequenceManagementException(String.format("%s doesn't support creating sequences with an initial value",
+                getClass().getName()));
+    }
+
     T getNextSequenceValue(String sequenceName) throws SequenceManagementException;
+
+    /**
+     * Reserves {@code count} values of the sequence {@code sequenceName}.
+     * Implementations which are able to advance the sequence by more than one
+     * value in one statement should do so in order to avoid one round trip per
+     * value.
+     *
+     * @param sequenceName the sequence name
+     * @param count the number of values to reserve
+     * @return the reserved values in ascending order
+     * @throws SequenceManagementException in case an exception during the
+     *     management of the sequence occured
+     * @throws IllegalArgumentException if {@code count} is less than 1
+     */
+    List<T> getNextSequenceValues(String sequenceName,
+            int count) throws SequenceManagementException;
 }
@@ -23,19 +23,32 @@ import de.richtercloud.reflection.form.builder.storage.StorageException;
 import de.richtercloud.validation.tools.FieldRetriever;
 import de.richtercloud.validation.tools.OutputMode;
 import de.richtercloud.validation.tools.ValidationUtils;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.persistence.EntityExistsException;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
+import javax.persistence.PersistenceException;
 import javax.persistence.RollbackException;
 import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.ParameterExpression;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.EntityType;
 import javax.persistence.metamodel.Metamodel;
 import javax.validation.ConstraintViolationException;
 import org.slf4j.Logger;
@@ -60,6 +73,30 @@ of DB and JPA provider) even occur when running only one query at the same time
 when having one 7-page document (with ca. 100 MB binary data) in the database
 - need to limit parallel querying in order to avoid memory leak no matter
 whether large binary data is fetched lazily or not
+- accessLock is acquired before querySemaphore in order to not occupy permits
+while waiting for a maintenance operation
+- string field value indices are loaded in chunks which are selected by
+WHERE id > last id ORDER BY id with setMaxResults (keyset paging) because JPA
+2.1 doesn't provide streaming of results
+(TypedQuery.getResultStream has been added in JPA 2.2 and Hibernate's
+Query.stream in Hibernate 5.2) and are kept current after every successful
+store, update and delete; changes of the database which don't go through
+this storage aren't reflected; paging with setFirstResult would skip rows
+which are shifted by a concurrent delete and reread all previous rows for every
+chunk
+- trigram indices are maintained with native SQL on the connection of the
+EntityManager of store, update and delete before the transaction is committed,
+so that the side tables are consistent with the entities; building an index
+acquires the write lock of accessLock so that changes during the build don't
+need to be merged
+- every built trigram index of the class of a changed entity is maintained
+whether it has been enabled in this storage or not, so that the indices aren't
+left stale by changes of storages which don't use them; the side tables and the
+built indices are looked up once per entity class and cached until an index is
+enabled or the EntityManagerFactory is recreated, so that changes don't query
+the database metadata; indices which other storages build after the lookup
+aren't maintained by this storage until then and builds of other processes
+running concurrently with changes aren't synchronized
 */
 /**
  * {@link Storage} which uses any kind of JPA with any underlying database.
@@ -81,6 +118,31 @@ public abstract class AbstractPersistenceStorage<C extends AbstractPersistenceSt
     */
     private final Semaphore querySemaphore;
     private final FieldRetriever fieldRetriever;
+    /**
+     * Regular operations share the read lock, maintenance operations acquire
+     * the write lock and thereby wait for running operations to finish while
+     * new ones wait for the maintenance operation.
+     */
+    private final PrioritizableReentrantReadWriteLock accessLock = new PrioritizableReentrantReadWriteLock();
+    /**
+     * The number of rows which are retrieved per query when loading a
+     * {@link StringFieldValueIndex}.
+     */
+    private final static int INDEX_LOAD_CHUNK_SIZE = 1000;
+    private final static String LAST_ID_PARAMETER_NAME = "lastId";
+    private final ConcurrentMap<Class<?>, ConcurrentMap<String, StringFieldValueIndex>> stringFieldValueIndices = new ConcurrentHashMap<>();
+    /**
+     * The trigram indices which have been enabled with
+     * {@link #enableTrigramIndex(java.lang.Class, java.lang.String) }.
+     */
+    private final ConcurrentMap<Class<?>, ConcurrentMap<String, TrigramIndex>> trigramIndices = new ConcurrentHashMap<>();
+    /**
+     * The trigram indices which have been found to be built in the database
+     * and are maintained whether they've been enabled or not by the class of
+     * the changed entity.
+     */
+    private final ConcurrentMap<Class<?>, List<TrigramIndex>> maintainedTrigramIndices = new ConcurrentHashMap<>();
+    private final AtomicLong modificationCount = new AtomicLong();
 
     public AbstractPersistenceStorage(C storageConf,
             String persistenceUnitName,
@@ -107,28 +169,58 @@ public abstract class AbstractPersistenceStorage<C extends AbstractPersistenceSt
 
     protected abstract void init() throws StorageCreationException;
 
+    /**
+     * The lock which coordinates regular operations of this storage (which
+     * share the read lock) with maintenance operations like schema changes or
+     * bulk writes (which should acquire the write lock with a priority which
+     * is higher than the one of regular operations in order to drain them).
+     * {@link #recreateEntityManager() } acquires the write lock.
+     * @return the access lock
+     */
+    public PrioritizableReentrantReadWriteLock getAccessLock() {
+        return accessLock;
+    }
+
     @Override
     public void delete(Object object) throws StorageException {
-        EntityManager entityManager = this.retrieveEntityManager();
+        accessLock.readLock().lock();
         try {
-            Object toRemove = entityManager.merge(object);
-                //avoids `Exception in thread "AWT-EventQueue-0" java.lang.IllegalArgumentException: Entity must be managed to call remove: Test 1, try merging the detached and try the remove again`
-                //(was not an issue when using the same EntityManager for all
-                //actions)
-                //EntityManager.refresh fails due to `java.lang.IllegalArgumentException: Cannot refresh unmanaged object`
-                //need to pass the return value to EntityManager.remove because
-                //the argument isn't attached to the persistence context
-                //<ref>http://stackoverflow.com/questions/9338999/entity-must-be-managed-to-call-remove</ref>
-            entityManager.getTransaction().begin();
-            entityManager.remove(toRemove);
-            entityManager.getTransaction().commit();
-
-        }catch(EntityExistsException ex) {
-            entityManager.getTransaction().rollback();
-            throw new StorageException(ex);
-        }catch(RollbackException ex) {
-             //cannot call entityManager.getTransaction().rollback() here because transaction isn' active
-            throw new StorageException(ex);
+            EntityManager entityManager = this.retrieveEntityManager();
+            try {
+                Object toRemove = entityManager.merge(object);
+                    //avoids `Exception in thread "AWT-EventQueue-0" java.lang.IllegalArgumentException: Entity must be managed to call remove: Test 1, try merging the detached and try the remove again`
+                    //(was not an issue when using the same EntityManager for all
+                    //actions)
+                    //EntityManager.refresh fails due to `java.lang.IllegalArgumentException: Cannot refresh unmanaged object`
+                    //need to pass the return value to EntityManager.remove because
+                    //the argument isn't attached to the persistence context
+                    //<ref>http://stackoverflow.com/questions/9338999/entity-must-be-managed-to-call-remove</ref>
+                entityManager.getTransaction().begin();
+                entityManager.remove(toRemove);
+                updateTrigramIndices(entityManager,
+                        toRemove,
+                        true //removed
+                );
+                entityManager.getTransaction().commit();
+                updateStringFieldValueIndices(object,
+                        true //removed
+                );
+                modificationCount.incrementAndGet();
+            }catch(EntityExistsException | SQLException ex) {
+                entityManager.getTransaction().rollback();
+                throw new StorageException(ex);
+            }catch(RollbackException ex) {
+                 //cannot call entityManager.getTransaction().rollback() here because transaction isn' active
+                throw new StorageException(ex);
+            }catch(PersistenceException ex) {
+                //thrown by the flush of updateTrigramIndices
+                if(entityManager.getTransaction().isActive()) {
+                    entityManager.getTransaction().rollback();
+                }
+                throw new StorageException(ex);
+            }
+        }finally {
+            accessLock.readLock().unlock();
         }
     }
 
@@ -139,49 +231,73 @@ public abstract class AbstractPersistenceStorage<C extends AbstractPersistenceSt
      */
     @Override
     public void store(Object object) throws StorageException {
-        EntityManager entityManager = this.retrieveEntityManager();
+        accessLock.readLock().lock();
         try {
-            List<StorageCallback> preStoreCallbacks = getPreStoreCallbacks(object);
-            if(preStoreCallbacks != null) {
-                for(StorageCallback preStoreCallback : preStoreCallbacks) {
-                    preStoreCallback.callback(object);
+            EntityManager entityManager = this.retrieveEntityManager();
+            try {
+                List<StorageCallback> preStoreCallbacks = getPreStoreCallbacks(object);
+                if(preStoreCallbacks != null) {
+                    for(StorageCallback preStoreCallback : preStoreCallbacks) {
+                        preStoreCallback.callback(object);
+                    }
                 }
-            }
-            //- Skipping of values in collections of mapped fields in many-to-many
-            //relationships have nothing to do with EntityManager.merge because
-            //they're persisted only on one side -> use StroageCallbacks to
-            //acchieve their storage
-            //- unclear why entityManger.merge(object) and working with return
-            //value was here before (helps in delete, but seems to be
-            //unnecessary here and causes id to be not set on object, i.e.
-            //omitting EntityManager.merge avoids to return the instance with
-            //its id set from store)
-            entityManager.getTransaction().begin();
-            entityManager.persist(object);
-            entityManager.getTransaction().commit();
-            List<StorageCallback> postStoreCallbacks = getPostStoreCallbacks(object);
-            if(postStoreCallbacks != null) {
-                for(StorageCallback postStoreCallback : postStoreCallbacks) {
-                    postStoreCallback.callback(object);
+                //- Skipping of values in collections of mapped fields in many-to-many
+                //relationships have nothing to do with EntityManager.merge because
+                //they're persisted only on one side -> use StroageCallbacks to
+                //acchieve their storage
+                //- unclear why entityManger.merge(object) and working with return
+                //value was here before (helps in delete, but seems to be
+                //unnecessary here and causes id to be not set on object, i.e.
+                //omitting EntityManager.merge avoids to return the instance with
+                //its id set from store)
+                entityManager.getTransaction().begin();
+                entityManager.persist(object);
+                updateTrigramIndices(entityManager,
+                        object,
+                        false //removed
+                );
+                entityManager.getTransaction().commit();
+                updateStringFieldValueIndices(object,
+                        false //removed
+                );
+                modificationCount.incrementAndGet();
+                List<StorageCallback> postStoreCallbacks = getPostStoreCallbacks(object);
+                if(postStoreCallbacks != null) {
+                    for(StorageCallback postStoreCallback : postStoreCallbacks) {
+                        postStoreCallback.callback(object);
+                    }
+                }
+                entityManager.detach(object); //detaching necessary in
+                    //order to be able to change one single value and save again
+            }catch(EntityExistsException | SQLException ex) {
+                entityManager.getTransaction().rollback();
+                throw new StorageException(ex);
+            }catch(RollbackException ex) {
+                 //cannot call entityManager.getTransaction().rollback() here because transaction isn' active
+                throw new StorageException(ex);
+            }catch(PersistenceException ex) {
+                //thrown by the flush of updateTrigramIndices
+                if(entityManager.getTransaction().isActive()) {
+                    entityManager.getTransaction().rollback();
                 }
+                throw new StorageException(ex);
             }
-            entityManager.detach(object); //detaching necessary in
-                //order to be able to change one single value and save again
-        }catch(EntityExistsException ex) {
-            entityManager.getTransaction().rollback();
-            throw new StorageException(ex);
-        }catch(RollbackException ex) {
-             //cannot call entityManager.getTransaction().rollback() here because transaction isn' active
-            throw new StorageException(ex);
+        }finally {
+            accessLock.readLock().unlock();
         }
     }
 
     @Override
     public void refresh(Object object) throws StorageException {
-        EntityManager entityManager = this.retrieveEntityManager();
-        entityManager.getTransaction().begin();
-        entityManager.refresh(object);
-        entityManager.getTransaction().commit();
+        accessLock.readLock().lock();
+        try {
+            EntityManager entityManager = this.retrieveEntityManager();
+            entityManager.getTransaction().begin();
+            entityManager.refresh(object);
+            entityManager.getTransaction().commit();
+        }finally {
+            accessLock.readLock().unlock();
+        }
     }
 
     /**
@@ -191,39 +307,61 @@ public abstract class AbstractPersistenceStorage<C extends AbstractPersistenceSt
      */
     @Override
     public void update(Object object) throws StorageException {
-        EntityManager entityManager = this.retrieveEntityManager();
+        accessLock.readLock().lock();
         try {
-            entityManager.getTransaction().begin();
-            entityManager.merge(object);
-            entityManager.flush();
-            entityManager.getTransaction().commit();
-            entityManager.detach(object); //detaching necessary in
-                //order to be able to change one single value and save again
-        }catch(ConstraintViolationException ex) {
-            //needs to be caught here because ConstraintViolationException is
-            //so smart to not contain the violation text in its message
-            Set violations = ex.getConstraintViolations();
-            String message = ValidationUtils.buildConstraintVioloationMessage(violations,
-                    object,
-                    fieldRetriever,
-                violationField -> {
-                    FieldInfo violationFieldInfo = violationField.getAnnotation(FieldInfo.class);
-                    if(violationFieldInfo != null) {
-                        return violationFieldInfo.name();
-                    }
-                    return null;
-                },
-                    OutputMode.HTML_HTML //output mode
-            ); //@TODO: fix checkstyle indentation failure, see https://github.com/checkstyle/checkstyle/issues/3342
-                //for issue report
-            throw new StorageException(message,
-                    ex);
-        }catch(EntityExistsException ex) {
-            entityManager.getTransaction().rollback();
-            throw new StorageException(ex);
-        }catch(RollbackException ex) {
-             //cannot call entityManager.getTransaction().rollback() here because transaction isn' active
-            throw new StorageException(ex);
+            EntityManager entityManager = this.retrieveEntityManager();
+            try {
+                entityManager.getTransaction().begin();
+                Object merged = entityManager.merge(object);
+                updateTrigramIndices(entityManager,
+                        merged,
+                        false //removed
+                );
+                entityManager.getTransaction().commit();
+                updateStringFieldValueIndices(object,
+                        false //removed
+                );
+                modificationCount.incrementAndGet();
+                entityManager.detach(object); //detaching necessary in
+                    //order to be able to change one single value and save again
+            }catch(ConstraintViolationException ex) {
+                //needs to be caught here because ConstraintViolationException is
+                //so smart to not contain the violation text in its message
+                if(entityManager.getTransaction().isActive()) {
+                    //thrown by the flush of updateTrigramIndices
+                    entityManager.getTransaction().rollback();
+                }
+                Set violations = ex.getConstraintViolations();
+                String message = ValidationUtils.buildConstraintVioloationMessage(violations,
+                        object,
+                        fieldRetriever,
+                    violationField -> {
+                        FieldInfo violationFieldInfo = violationField.getAnnotation(FieldInfo.class);
+                        if(violationFieldInfo != null) {
+                            return violationFieldInfo.name();
+                        }
+                        return null;
+                    },
+                        OutputMode.HTML_HTML //output mode
+                ); //@TODO: fix checkstyle indentation failure, see https://github.com/checkstyle/checkstyle/issues/3342
+                    //for issue report
+                throw new StorageException(message,
+                        ex);
+            }catch(EntityExistsException | SQLException ex) {
+                entityManager.getTransaction().rollback();
+                throw new StorageException(ex);
+            }catch(RollbackException ex) {
+                 //cannot call entityManager.getTransaction().rollback() here because transaction isn' active
+                throw new StorageException(ex);
+            }catch(PersistenceException ex) {
+                //thrown by the flush of updateTrigramIndices
+                if(entityManager.getTransaction().isActive()) {
+                    entityManager.getTransaction().rollback();
+                }
+                throw new StorageException(ex);
+            }
+        }finally {
+            accessLock.readLock().unlock();
         }
     }
 
@@ -237,8 +375,13 @@ public abstract class AbstractPersistenceStorage<C extends AbstractPersistenceSt
      */
     @Override
     public <T> T retrieve(Object id, Class<T> clazz) {
-        EntityManager entityManager = this.retrieveEntityManager();
-        return entityManager.find(clazz, id);
+        accessLock.readLock().lock();
+        try {
+            EntityManager entityManager = this.retrieveEntityManager();
+            return entityManager.find(clazz, id);
+        }finally {
+            accessLock.readLock().unlock();
+        }
     }
 
     @Override
@@ -258,26 +401,44 @@ public abstract class AbstractPersistenceStorage<C extends AbstractPersistenceSt
         return entityManager.createQuery(queryText, entityClass);
     }
 
-    @SuppressWarnings("PMD.AvoidThrowingRawExceptionTypes")
     @Override
     public <T> List<T> runQuery(String queryString,
             Class<T> clazz,
             int queryLimit) throws StorageException {
-        LOGGER.trace(String.format("waiting for semaphore (with approx. %d "
-                + "other threads)",
-                querySemaphore.getQueueLength()));
-        querySemaphore.acquireUninterruptibly();
+        return runQuery(queryString,
+                clazz,
+                0, //firstResult
+                queryLimit);
+    }
+
+    @SuppressWarnings("PMD.AvoidThrowingRawExceptionTypes")
+    @Override
+    public <T> List<T> runQuery(String queryString,
+            Class<T> clazz,
+            int firstResult,
+            int maxResults) throws StorageException {
+        accessLock.readLock().lock();
         try {
-            LOGGER.trace(String.format("semaphore aquired (%d remaining permits)", querySemaphore.availablePermits()));
-            LOGGER.debug(String.format("running query '%s'", queryString));
-            List<T> retValue;
-            TypedQuery<T> query = createQuery(queryString,
-                    clazz);
-            retValue = query.setMaxResults(queryLimit).getResultList();
-            return retValue;
+            LOGGER.trace(String.format("waiting for semaphore (with approx. %d "
+                    + "other threads)",
+                    querySemaphore.getQueueLength()));
+            querySemaphore.acquireUninterruptibly();
+            try {
+                LOGGER.trace(String.format("semaphore aquired (%d remaining permits)", querySemaphore.availablePermits()));
+                LOGGER.debug(String.format("running query '%s'", queryString));
+                List<T> retValue;
+                TypedQuery<T> query = createQuery(queryString,
+                        clazz);
+                retValue = query.setFirstResult(firstResult)
+                        .setMaxResults(maxResults)
+                        .getResultList();
+                return retValue;
+            }finally {
+                querySemaphore.release();
+                LOGGER.trace(String.format("semaphore released (%d remaining permits)", querySemaphore.availablePermits()));
+            }
         }finally {
-            querySemaphore.release();
-            LOGGER.trace(String.format("semaphore released (%d remaining permits)", querySemaphore.availablePermits()));
+            accessLock.readLock().unlock();
         }
     }
 
@@ -285,46 +446,473 @@ public abstract class AbstractPersistenceStorage<C extends AbstractPersistenceSt
     public <T> List<T> runQuery(String attribueName,
             String attributeValue,
             Class<T> clazz) {
-        LOGGER.trace(String.format("waiting for semaphore (with approx. %d "
-                + "other threads)",
-                querySemaphore.getQueueLength()));
-        querySemaphore.acquireUninterruptibly();
+        accessLock.readLock().lock();
         try {
-            LOGGER.trace(String.format("semaphore aquired (%d remaining permits, approx. %d threads waiting)",
-                    querySemaphore.availablePermits(),
+            LOGGER.trace(String.format("waiting for semaphore (with approx. %d "
+                    + "other threads)",
                     querySemaphore.getQueueLength()));
-            EntityManager entityManager = this.retrieveEntityManager();
-            CriteriaQuery<T> criteria = entityManager.getCriteriaBuilder().createQuery(clazz);
-            Root<T> personRoot = criteria.from(clazz);
-            criteria.select( personRoot );
-            criteria.where( entityManager.getCriteriaBuilder().equal( personRoot.get(attribueName),
-                    attributeValue));
-                //attributeName Company.name was used before, unclear why (causes
-                //` java.lang.IllegalArgumentException: The attribute [Company.name] is not present in the managed type [EntityTypeImpl@553585467:Company [ javaType: class richtercloud.document.scanner.model.Company descriptor: RelationalDescriptor(richtercloud.document.scanner.model.Company --> [DatabaseTable(COMPANY)]), mappings: 8]].`)
-            return entityManager.createQuery( criteria ).getResultList();
+            querySemaphore.acquireUninterruptibly();
+            try {
+                LOGGER.trace(String.format("semaphore aquired (%d remaining permits, approx. %d threads waiting)",
+                        querySemaphore.availablePermits(),
+                        querySemaphore.getQueueLength()));
+                EntityManager entityManager = this.retrieveEntityManager();
+                CriteriaQuery<T> criteria = entityManager.getCriteriaBuilder().createQuery(clazz);
+                Root<T> personRoot = criteria.from(clazz);
+                criteria.select( personRoot );
+                criteria.where( entityManager.getCriteriaBuilder().equal( personRoot.get(attribueName),
+                        attributeValue));
+                    //attributeName Company.name was used before, unclear why (causes
+                    //` java.lang.IllegalArgumentException: The attribute [Company.name] is not present in the managed type [EntityTypeImpl@553585467:Company [ javaType: class richtercloud.document.scanner.model.Company descriptor: RelationalDescriptor(richtercloud.document.scanner.model.Company --> [DatabaseTable(COMPANY)]), mappings: 8]].`)
+                return entityManager.createQuery( criteria ).getResultList();
+            }finally {
+                querySemaphore.release();
+                LOGGER.trace(String.format("semaphore released (%d remaining permits)", querySemaphore.availablePermits()));
+            }
         }finally {
-            querySemaphore.release();
-            LOGGER.trace(String.format("semaphore released (%d remaining permits)", querySemaphore.availablePermits()));
+            accessLock.readLock().unlock();
         }
     }
 
     @Override
     public <T> List<T> runQueryAll(Class<T> clazz) {
-        LOGGER.trace(String.format("waiting for semaphore (with approx. %d "
-                + "other threads)",
-                querySemaphore.getQueueLength()));
-        querySemaphore.acquireUninterruptibly();
+        accessLock.readLock().lock();
+        try {
+            LOGGER.trace(String.format("waiting for semaphore (with approx. %d "
+                    + "other threads)",
+                    querySemaphore.getQueueLength()));
+            querySemaphore.acquireUninterruptibly();
+            try {
+                LOGGER.trace(String.format("semaphore aquired (%d remaining permits)", querySemaphore.availablePermits()));
+                EntityManager entityManager = this.retrieveEntityManager();
+                CriteriaQuery<T> criteriaQuery = entityManager.getCriteriaBuilder().createQuery(clazz);
+                Root<T> queryRoot = criteriaQuery.from(clazz);
+                criteriaQuery.select(queryRoot);
+                return entityManager.createQuery(criteriaQuery).getResultList();
+            }finally{
+                querySemaphore.release();
+                LOGGER.trace(String.format("semaphore released (%d remaining permits)", querySemaphore.availablePermits()));
+            }
+        }finally {
+            accessLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the index of the distinct values of the field {@code fieldName} of
+     * {@code entityClass}. The index is loaded on the first request and kept
+     * current by {@link #store(java.lang.Object) },
+     * {@link #update(java.lang.Object) } and
+     * {@link #delete(java.lang.Object) }.
+     * @param entityClass the entity class
+     * @param fieldName the name of a {@code String} field of
+     *     {@code entityClass}
+     * @return the loaded index
+     * @throws StorageException if loading the index fails
+     */
+    @Override
+    public StringFieldValueIndex getStringFieldValueIndex(Class<?> entityClass,
+            String fieldName) throws StorageException {
+        StringFieldValueIndex retValue = stringFieldValueIndices.computeIfAbsent(entityClass,
+                key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(fieldName,
+                        key -> new StringFieldValueIndex(entityClass,
+                                fieldName));
+            //registering the index before loading it allows changes during
+            //loading to be applied
+        if(!retValue.isLoaded()) {
+            synchronized(retValue) {
+                if(!retValue.isLoaded()) {
+                    loadStringFieldValueIndex(retValue,
+                            entityClass);
+                }
+            }
+        }
+        return retValue;
+    }
+
+    private void loadStringFieldValueIndex(StringFieldValueIndex index,
+            Class<?> entityClass) throws StorageException {
+        accessLock.readLock().lock();
+        try {
+            querySemaphore.acquireUninterruptibly();
+            try {
+                LOGGER.debug(String.format("loading index of field %s of entity class %s",
+                        index.getFieldName(),
+                        entityClass.getName()));
+                EntityManager entityManager = this.retrieveEntityManager();
+                try {
+                    index.beginLoad();
+                    readFieldValues(entityManager,
+                            entityClass,
+                            index.getFieldName(),
+                            chunk -> {
+                                for(Object[] row : chunk) {
+                                    index.load(row[0],
+                                            (String) row[1]);
+                                }
+                            });
+                    index.endLoad();
+                    LOGGER.debug(String.format("loaded %d distinct values of field %s of entity class %s",
+                            index.size(),
+                            index.getFieldName(),
+                            entityClass.getName()));
+                }finally {
+                    entityManager.close();
+                }
+            }finally {
+                querySemaphore.release();
+            }
+        }finally {
+            accessLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the IDs and the non-{@code null} values of the field
+     * {@code fieldName} of all entities of {@code entityClass} in chunks of
+     * {@link #INDEX_LOAD_CHUNK_SIZE} rows ordered by ID.
+     * @param entityManager the entity manager to use
+     * @param entityClass the entity class
+     * @param fieldName the field name
+     * @param chunkHandler handles every chunk of rows containing ID and value
+     * @throws StorageException if {@code entityClass} doesn't have a single ID
+     *     attribute or a field {@code fieldName} or if {@code chunkHandler}
+     *     fails
+     */
+    private <E> void readFieldValues(EntityManager entityManager,
+            Class<E> entityClass,
+            String fieldName,
+            FieldValueChunkHandler chunkHandler) throws StorageException {
+        try {
+            EntityType<E> entityType = entityManager.getMetamodel().entity(entityClass);
+            if(!entityType.hasSingleIdAttribute()) {
+                throw new StorageException(String.format("entity class %s doesn't have a single ID attribute which is necessary for indexing",
+                        entityClass.getName()));
+            }
+            String idAttributeName = entityType.getId(entityType.getIdType().getJavaType()).getName();
+            TypedQuery<Object[]> query = createFieldValuesQuery(entityManager,
+                    entityClass,
+                    idAttributeName,
+                    fieldName,
+                    false //afterLastId
+            );
+            TypedQuery<Object[]> nextQuery = createFieldValuesQuery(entityManager,
+                    entityClass,
+                    idAttributeName,
+                    fieldName,
+                    true //afterLastId
+            );
+            List<Object[]> chunk;
+            do {
+                chunk = query
+                        .setMaxResults(INDEX_LOAD_CHUNK_SIZE)
+                        .getResultList();
+                chunkHandler.handle(chunk);
+                if(!chunk.isEmpty()) {
+                    query = nextQuery.setParameter(LAST_ID_PARAMETER_NAME,
+                            chunk.get(chunk.size()-1)[0]);
+                }
+                entityManager.clear();
+            }while(chunk.size() == INDEX_LOAD_CHUNK_SIZE);
+        }catch(IllegalArgumentException ex) {
+            //thrown by Metamodel.entity and Path.get
+            throw new StorageException(ex);
+        }catch(SQLException ex) {
+            throw new StorageException(ex);
+        }
+    }
+
+    /**
+     * Creates a query of the IDs and the non-{@code null} values of the field
+     * {@code fieldName} of the entities of {@code entityClass} ordered by ID.
+     * @param afterLastId whether the query is restricted to IDs greater than
+     *     the parameter {@link #LAST_ID_PARAMETER_NAME}
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private <E> TypedQuery<Object[]> createFieldValuesQuery(EntityManager entityManager,
+            Class<E> entityClass,
+            String idAttributeName,
+            String fieldName,
+            boolean afterLastId) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Object[]> criteriaQuery = criteriaBuilder.createQuery(Object[].class);
+        Root<E> queryRoot = criteriaQuery.from(entityClass);
+        Path<Comparable> idPath = queryRoot.get(idAttributeName);
+        criteriaQuery.multiselect(idPath,
+                queryRoot.get(fieldName));
+        Predicate notNullPredicate = criteriaBuilder.isNotNull(queryRoot.get(fieldName));
+        if(afterLastId) {
+            ParameterExpression<Comparable> lastIdParameter = criteriaBuilder.parameter(Comparable.class,
+                    LAST_ID_PARAMETER_NAME);
+            criteriaQuery.where(notNullPredicate,
+                    criteriaBuilder.greaterThan(idPath, lastIdParameter));
+        }else {
+            criteriaQuery.where(notNullPredicate);
+        }
+        criteriaQuery.orderBy(criteriaBuilder.asc(idPath));
+            //stable order for keyset paging
+        return entityManager.createQuery(criteriaQuery);
+    }
+
+    /**
+     * Applies the value of every indexed field of {@code object} to the
+     * corresponding {@link StringFieldValueIndex}.
+     * @param object the stored, updated or deleted entity
+     * @param removed whether {@code object} has been deleted
+     */
+    private void updateStringFieldValueIndices(Object object,
+            boolean removed) {
+        Object id = null;
+        for(Map<String, StringFieldValueIndex> classIndices : stringFieldValueIndices.values()) {
+            for(StringFieldValueIndex index : classIndices.values()) {
+                if(!index.getEntityClass().isInstance(object)) {
+                    break;
+                        //all indices in classIndices have the same entity class
+                }
+                if(id == null) {
+                    id = entityManagerFactory.getPersistenceUnitUtil().getIdentifier(object);
+                }
+                if(removed) {
+                    index.remove(id);
+                }else {
+                    index.put(id,
+                            index.getValue(object));
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a trigram index of the field {@code fieldName} of
+     * {@code entityClass} in side tables of the database unless it already
+     * exists and maintains it in {@link #store(java.lang.Object) },
+     * {@link #update(java.lang.Object) } and
+     * {@link #delete(java.lang.Object) } of this storage. Building the index
+     * acquires the write lock of {@link #getAccessLock() }.
+     * @param entityClass the entity class
+     * @param fieldName the name of a {@code String} field of
+     *     {@code entityClass}
+     * @throws StorageException if building the index fails
+     */
+    @Override
+    public void enableTrigramIndex(Class<?> entityClass,
+            String fieldName) throws StorageException {
+        if(isTrigramIndexEnabled(entityClass, fieldName)) {
+            return;
+        }
+        TrigramIndex index;
+        try {
+            index = new TrigramIndex(entityClass,
+                    fieldName);
+        }catch(IllegalArgumentException ex) {
+            throw new StorageException(ex);
+        }
+        accessLock.writeLock().lock(PrioritizableReentrantLock.PRIORITY_DEFAULT+1);
+            //drain regular operations
         try {
-            LOGGER.trace(String.format("semaphore aquired (%d remaining permits)", querySemaphore.availablePermits()));
+            if(isTrigramIndexEnabled(entityClass, fieldName)) {
+                return;
+            }
             EntityManager entityManager = this.retrieveEntityManager();
-            CriteriaQuery<T> criteriaQuery = entityManager.getCriteriaBuilder().createQuery(clazz);
-            Root<T> queryRoot = criteriaQuery.from(clazz);
-            criteriaQuery.select(queryRoot);
-            return entityManager.createQuery(criteriaQuery).getResultList();
-        }finally{
-            querySemaphore.release();
-            LOGGER.trace(String.format("semaphore released (%d remaining permits)", querySemaphore.availablePermits()));
+            try {
+                entityManager.getTransaction().begin();
+                try {
+                    Connection connection = ConnectionUtils.unwrapConnection(entityManager);
+                    TrigramIndex.createTablesIfNotExist(connection);
+                    if(!index.isBuilt(connection)) {
+                        LOGGER.debug(String.format("building trigram index of field %s of entity class %s",
+                                fieldName,
+                                entityClass.getName()));
+                        index.clear(connection);
+                        readFieldValues(entityManager,
+                                entityClass,
+                                fieldName,
+                                chunk -> {
+                                    List<Object> ids = new ArrayList<>(chunk.size());
+                                    List<String> values = new ArrayList<>(chunk.size());
+                                    for(Object[] row : chunk) {
+                                        ids.add(row[0]);
+                                        values.add((String) row[1]);
+                                    }
+                                    index.add(connection,
+                                            ids,
+                                            values);
+                                });
+                        index.markBuilt(connection);
+                    }
+                    entityManager.getTransaction().commit();
+                }catch(SQLException ex) {
+                    throw new StorageException(ex);
+                }finally {
+                    if(entityManager.getTransaction().isActive()) {
+                        //not committed due to an exception
+                        entityManager.getTransaction().rollback();
+                    }
+                }
+            }finally {
+                entityManager.close();
+            }
+            maintainedTrigramIndices.clear();
+                //looked up again including the new index
+            trigramIndices.computeIfAbsent(entityClass,
+                    key -> new ConcurrentHashMap<>())
+                    .put(fieldName,
+                            index);
+        }finally {
+            accessLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the number of successful stores, updates and deletes of this
+     * storage which allows to detect changes which might affect cached query
+     * results (changes of the database which don't go through this storage
+     * aren't counted).
+     * @return the modification count
+     */
+    public long getModificationCount() {
+        return modificationCount.get();
+    }
+
+    @Override
+    public boolean isTrigramIndexEnabled(Class<?> entityClass,
+            String fieldName) {
+        Map<String, TrigramIndex> classIndices = trigramIndices.get(entityClass);
+        return classIndices != null && classIndices.containsKey(fieldName);
+    }
+
+    /**
+     * Finds the distinct values of the field {@code fieldName} of
+     * {@code entityClass} which contain {@code text} with the trigram index of
+     * the field.
+     * @param entityClass the entity class
+     * @param fieldName the field name
+     * @param text the text to search
+     * @param limit the maximum number of values to return
+     * @return the values in their natural order with values starting with
+     *     {@code text} first
+     * @throws StorageException if the query fails
+     * @throws IllegalStateException if the trigram index hasn't been enabled
+     *     with {@link #enableTrigramIndex(java.lang.Class, java.lang.String) }
+     */
+    @Override
+    public List<String> runTrigramIndexQuery(Class<?> entityClass,
+            String fieldName,
+            String text,
+            int limit) throws StorageException {
+        Map<String, TrigramIndex> classIndices = trigramIndices.get(entityClass);
+        TrigramIndex index = classIndices != null ? classIndices.get(fieldName) : null;
+        if(index == null) {
+            throw new IllegalStateException(String.format("trigram index of field %s of entity class %s hasn't been enabled",
+                    fieldName,
+                    entityClass.getName()));
+        }
+        accessLock.readLock().lock();
+        try {
+            querySemaphore.acquireUninterruptibly();
+            try {
+                EntityManager entityManager = this.retrieveEntityManager();
+                try {
+                    entityManager.getTransaction().begin();
+                    try {
+                        List<String> retValue = index.find(ConnectionUtils.unwrapConnection(entityManager),
+                                text,
+                                limit);
+                        entityManager.getTransaction().commit();
+                        return retValue;
+                    }catch(SQLException | RuntimeException ex) {
+                        entityManager.getTransaction().rollback();
+                        throw new StorageException(ex);
+                    }
+                }finally {
+                    entityManager.close();
+                }
+            }finally {
+                querySemaphore.release();
+            }
+        }finally {
+            accessLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Applies the value of every field of {@code object} which has a trigram
+     * index built in the database to the side tables in the transaction of
+     * {@code entityManager}.
+     * @param entityManager the entity manager with an active transaction
+     * @param object the stored, updated or deleted entity
+     * @param removed whether {@code object} has been deleted
+     * @throws SQLException if an exception occurs during the update of the
+     *     side tables
+     */
+    private void updateTrigramIndices(EntityManager entityManager,
+            Object object,
+            boolean removed) throws SQLException {
+        List<TrigramIndex> indices = maintainedTrigramIndices.get(object.getClass());
+        if(indices == null) {
+            indices = retrieveBuiltTrigramIndices(ConnectionUtils.unwrapConnection(entityManager),
+                    object.getClass());
+            maintainedTrigramIndices.putIfAbsent(object.getClass(),
+                    indices);
+        }
+        if(indices.isEmpty()) {
+            return;
         }
+        Connection connection = ConnectionUtils.unwrapConnection(entityManager);
+        entityManager.flush();
+            //makes the change of the entity visible on the connection before
+            //the side tables are changed and assigns generated IDs
+        Object id = entityManagerFactory.getPersistenceUnitUtil().getIdentifier(object);
+        for(TrigramIndex index : indices) {
+            index.remove(connection,
+                    id);
+            if(!removed) {
+                index.add(connection,
+                        Collections.singletonList(id),
+                        Collections.singletonList(index.getValue(object)));
+            }
+        }
+    }
+
+    /**
+     * Looks up the trigram indices which are built in the database for
+     * {@code objectClass} and its superclasses.
+     * @param connection the connection to use
+     * @param objectClass the class of a changed entity
+     * @return the built indices
+     * @throws SQLException if an exception occurs during the lookup
+     */
+    private List<TrigramIndex> retrieveBuiltTrigramIndices(Connection connection,
+            Class<?> objectClass) throws SQLException {
+        List<TrigramIndex> retValue = new ArrayList<>();
+        if(!TrigramIndex.checkTablesExist(connection)) {
+            return retValue;
+        }
+        Map<String, Class<?>> entityClasses = new HashMap<>();
+        for(Class<?> entityClass = objectClass; entityClass != null && entityClass != Object.class; entityClass = entityClass.getSuperclass()) {
+            entityClasses.put(entityClass.getName(),
+                    entityClass);
+        }
+        Map<String, List<String>> builtFieldNames = TrigramIndex.retrieveBuiltFieldNames(connection,
+                entityClasses.keySet());
+        for(Map.Entry<String, List<String>> builtFieldNamesEntry : builtFieldNames.entrySet()) {
+            Class<?> entityClass = entityClasses.get(builtFieldNamesEntry.getKey());
+            for(String fieldName : builtFieldNamesEntry.getValue()) {
+                try {
+                    retValue.add(new TrigramIndex(entityClass,
+                            fieldName));
+                }catch(IllegalArgumentException ex) {
+                    //the field has been removed from the entity class since
+                    //the index has been built
+                    LOGGER.warn(String.format("field %s of entity class %s has a trigram index, but can't be indexed, skipping",
+                            fieldName,
+                            entityClass.getName()),
+                            ex);
+                }
+            }
+        }
+        return retValue;
     }
 
     @Override
@@ -364,19 +952,38 @@ public abstract class AbstractPersistenceStorage<C extends AbstractPersistenceSt
     }
 
     public void recreateEntityManager() throws StorageCreationException {
-        Map<String, String> properties = getEntityManagerProperties();
-        if(this.entityManagerFactory != null && this.entityManagerFactory.isOpen()) {
-            this.entityManagerFactory.close();
+        accessLock.writeLock().lock();
+        try {
+            Map<String, String> properties = getEntityManagerProperties();
+            if(this.entityManagerFactory != null && this.entityManagerFactory.isOpen()) {
+                this.entityManagerFactory.close();
+            }
+            stringFieldValueIndices.clear();
+            trigramIndices.clear();
+            maintainedTrigramIndices.clear();
+                //the database might have changed
+            //seems like properties need to be specified on EntityManagerFactory
+            //difference between setting on EMF and EntityManager unclear
+            this.entityManagerFactory = Persistence.createEntityManagerFactory(persistenceUnitName,
+                    properties //additional properties
+            );
+        }finally {
+            accessLock.writeLock().unlock();
         }
-        //seems like properties need to be specified on EntityManagerFactory
-        //difference between setting on EMF and EntityManager unclear
-        this.entityManagerFactory = Persistence.createEntityManagerFactory(persistenceUnitName,
-                properties //additional properties
-        );
     }
 
     @Override
     public C getStorageConf() {
         return storageConf;
     }
+
+    /**
+     * Handles a chunk of rows read by
+     * {@link #readFieldValues(javax.persistence.EntityManager, java.lang.Class, java.lang.String, de.richtercloud.reflection.form.builder.jpa.storage.AbstractPersistenceStorage.FieldValueChunkHandler) }.
+     */
+    @FunctionalInterface
+    private interface FieldValueChunkHandler {
+
+        void handle(List<Object[]> chunk) throws SQLException;
+    }
 }
@@ -28,6 +28,7 @@ import java.io.IOException;
 import java.net.Socket;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -413,8 +414,22 @@ public abstract class AbstractProcessPersistenceStorage<C extends AbstractNetwor
         this.sequenceManager.createSequence(sequenceName);
     }
 
+    @Override
+    public void createSequence(String sequenceName,
+            long initialValue) throws SequenceManagementException {
+        this.sequenceManager.createSequence(sequenceName,
+                initialValue);
+    }
+
     @Override
     public Long getNextSequenceValue(String sequenceName) throws SequenceManagementException {
         return this.sequenceManager.getNextSequenceValue(sequenceName);
     }
+
+    @Override
+    public List<Long> getNextSequenceValues(String sequenceName,
+            int count) throws SequenceManagementException {
+        return this.sequenceManager.getNextSequenceValues(sequenceName,
+                count);
+    }
 }
@@ -0,0 +1,226 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.storage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+internal implementation notes:
+- removing a node from a BK-tree requires reinserting its subtree, so removed
+values are only marked and the tree is rebuilt when more than half of its
+nodes are marked
+- not thread-safe, guarded by the lock of StringFieldValueIndex
+*/
+/**
+ * A BK-tree of strings with the Levenshtein distance as metric which allows
+ * finding the strings within a maximum edit distance of a text without
+ * comparing the text with all strings.
+ *
+ * @author richter
+ */
+final class BKTree {
+    /**
+     * The number of visited nodes after which the deadline of a search is
+     * checked.
+     */
+    private final static int DEADLINE_CHECK_INTERVAL = 64;
+    private Node root;
+    private int size;
+    private int removedCount;
+
+    /**
+     * Adds {@code value} unless it's already contained.
+     * @param value the value to add
+     */
+    void add(String value) {
+        if(root == null) {
+            root = new Node(value);
+            size += 1;
+            return;
+        }
+        Node node = root;
+        while(true) {
+            int distance = computeDistance(node.value,
+                    value);
+            if(distance == 0) {
+                if(node.removed) {
+                    node.removed = false;
+                    removedCount -= 1;
+                    size += 1;
+                }
+                return;
+            }
+            Node child = node.children.get(distance);
+            if(child == null) {
+                node.children.put(distance,
+                        new Node(value));
+                size += 1;
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Removes {@code value} if it's contained.
+     * @param value the value to remove
+     */
+    void remove(String value) {
+        Node node = root;
+        while(node != null) {
+            int distance = computeDistance(node.value,
+                    value);
+            if(distance == 0) {
+                if(!node.removed) {
+                    node.removed = true;
+                    removedCount += 1;
+                    size -= 1;
+                    if(removedCount > size) {
+                        rebuild();
+                    }
+                }
+                return;
+            }
+            node = node.children.get(distance);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void rebuild() {
+        List<String> values = new ArrayList<>(size);
+        Deque<Node> stack = new ArrayDeque<>();
+        if(root != null) {
+            stack.push(root);
+        }
+        while(!stack.isEmpty()) {
+            Node node = stack.pop();
+            if(!node.removed) {
+                values.add(node.value);
+            }
+            for(Node child : node.children.values()) {
+                stack.push(child);
+            }
+        }
+        root = null;
+        size = 0;
+        removedCount = 0;
+        for(String value : values) {
+            add(value);
+        }
+    }
+
+    /**
+     * Passes every value with a distance of at most {@code maxDistance} from
+     * {@code text} to {@code matchHandler} until {@code deadlineNanos} has
+     * passed.
+     * @param text the text to search
+     * @param maxDistance the maximum edit distance
+     * @param deadlineNanos the value of {@link System#nanoTime() } after which
+     *     the search is stopped
+     * @param matchHandler receives the matching values and their distance
+     * @return {@code true} if the search has been completed, {@code false} if
+     *     it has been stopped at the deadline
+     */
+    boolean search(String text,
+            int maxDistance,
+            long deadlineNanos,
+            MatchHandler matchHandler) {
+        if(root == null) {
+            return true;
+        }
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        int visitedCount = 0;
+        while(!stack.isEmpty()) {
+            visitedCount += 1;
+            if(visitedCount % DEADLINE_CHECK_INTERVAL == 0
+                    && System.nanoTime()-deadlineNanos > 0) {
+                return false;
+            }
+            Node node = stack.pop();
+            int distance = computeDistance(text,
+                    node.value);
+            if(distance <= maxDistance && !node.removed) {
+                matchHandler.handle(node.value,
+                        distance);
+            }
+            for(Map.Entry<Integer, Node> child : node.children.entrySet()) {
+                //triangle inequality: only children whose distance to node
+                //differs by at most maxDistance from distance can match
+                if(Math.abs(child.getKey()-distance) <= maxDistance) {
+                    stack.push(child.getValue());
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Computes the Levenshtein distance of {@code first} and {@code second}.
+     * @return the minimal number of insertions, deletions and substitutions
+     *     of characters which transform {@code first} into {@code second}
+     */
+    static int computeDistance(String first,
+            String second) {
+        int[] previous = new int[second.length()+1];
+        int[] current = new int[second.length()+1];
+        for(int j=0; j<=second.length(); j++) {
+            previous[j] = j;
+        }
+        for(int i=1; i<=first.length(); i++) {
+            current[0] = i;
+            char firstChar = first.charAt(i-1);
+            for(int j=1; j<=second.length(); j++) {
+                int substitutionCost = firstChar == second.charAt(j-1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j-1]+1,
+                        previous[j]+1),
+                        previous[j-1]+substitutionCost);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[second.length()];
+    }
+
+    /**
+     * Receives the values found by
+     * {@link BKTree#search(java.lang.String, int, long, de.richtercloud.reflection.form.builder.jpa.storage.BKTree.MatchHandler) }.
+     */
+    @FunctionalInterface
+    interface MatchHandler {
+
+        void handle(String value,
+                int distance);
+    }
+
+    private static class Node {
+        private final String value;
+        private final Map<Integer, Node> children = new HashMap<>(4);
+        private boolean removed;
+
+        Node(String value) {
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.storage;
+
+import java.sql.Connection;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import org.hibernate.Session;
+
+/*
+internal implementation notes:
+- EntityManager.unwrap(Connection.class) is supported by EclipseLink, but
+Hibernate only unwraps its Session from which the connection can be retrieved
+with doReturningWork; the delegate is checked rather than catching the
+PersistenceException of unwrap because the connection is retrieved for every
+change of entities with trigram indices
+*/
+/**
+ * Provides access to the JDBC connection of an {@link EntityManager} for
+ * native SQL which needs to run in its transaction.
+ *
+ * @author richter
+ */
+public final class ConnectionUtils {
+
+    /**
+     * Retrieves the JDBC connection of {@code entityManager}. The connection
+     * is owned by {@code entityManager} and must not be closed by the caller.
+     * It's only guaranteed to remain the same while a transaction of
+     * {@code entityManager} is active.
+     * @param entityManager the entity manager
+     * @return the connection of {@code entityManager}
+     * @throws PersistenceException if the JPA provider of
+     *     {@code entityManager} provides neither its connection nor a
+     *     Hibernate {@link Session}
+     */
+    public static Connection unwrapConnection(EntityManager entityManager) {
+        Object delegate = entityManager.getDelegate();
+        if(delegate instanceof Session) {
+            return ((Session) delegate).doReturningWork(connection -> connection);
+        }
+        return entityManager.unwrap(Connection.class);
+    }
+
+    private ConnectionUtils() {
+    }
+}
@@ -22,6 +22,7 @@ import de.richtercloud.reflection.form.builder.storage.StorageCreationException;
 import de.richtercloud.validation.tools.FieldRetriever;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -78,8 +79,22 @@ public class DerbyEmbeddedPersistenceStorage extends AbstractPersistenceStorage<
         this.sequenceManager.createSequence(sequenceName);
     }
 
+    @Override
+    public void createSequence(String sequenceName,
+            long initialValue) throws SequenceManagementException {
+        this.sequenceManager.createSequence(sequenceName,
+                initialValue);
+    }
+
     @Override
     public Long getNextSequenceValue(String sequenceName) throws SequenceManagementException {
         return this.sequenceManager.getNextSequenceValue(sequenceName);
     }
+
+    @Override
+    public List<Long> getNextSequenceValues(String sequenceName,
+            int count) throws SequenceManagementException {
+        return this.sequenceManager.getNextSequenceValues(sequenceName,
+                count);
+    }
 }
@@ -17,6 +17,7 @@ package de.richtercloud.reflection.form.builder.jpa.storage;
 import de.richtercloud.reflection.form.builder.jpa.sequence.SequenceManager;
 import de.richtercloud.reflection.form.builder.storage.Storage;
 import de.richtercloud.reflection.form.builder.storage.StorageException;
+import java.util.ArrayList;
 import java.util.List;
 import javax.persistence.EntityManager;
 
@@ -53,6 +54,46 @@ public interface PersistenceStorage<T> extends Storage<Object, AbstractPersisten
             Class<T> clazz,
             int queryLimit) throws StorageException;
 
+    /**
+     * Runs {@code queryString} and retrieves the results from position
+     * {@code firstResult} on which allows to page through large results.
+     *
+     * The default implementation retrieves the first
+     * {@code firstResult+maxResults} results with
+     * {@link #runQuery(java.lang.String, java.lang.Class, int) } and discards
+     * the ones before {@code firstResult}, implementations should override it
+     * in order to skip them in the database.
+     * @param <T> the type of the results
+     * @param queryString the JPQL query
+     * @param clazz the type of the results
+     * @param firstResult the position of the first result to retrieve
+     * @param maxResults the maximum number of results to retrieve
+     * @return the retrieved results
+     * @throws StorageException if the query fails
+     * @throws IllegalArgumentException if {@code firstResult} or
+     *     {@code maxResults} is negative
+     */
+    default <T> List<T> runQuery(String queryString,
+            Class<T> clazz,
+            int firstResult,
+            int maxResults) throws StorageException {
+        if(firstResult < 0) {
+            throw new IllegalArgumentException("firstResult mustn't be negative");
+        }
+        if(maxResults < 0) {
+            throw new IllegalArgumentException("maxResults mustn't be negative");
+        }
+        List<T> retValue = runQuery(queryString,
+                clazz,
+                (int) Math.min((long) firstResult+maxResults,
+                        Integer.MAX_VALUE));
+        if(retValue.size() <= firstResult) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(retValue.subList(firstResult,
+                retValue.size()));
+    }
+
     <T> List<T> runQuery(String attribueName,
             String attributeValue,
             Class<T> clazz) throws StorageException;
@@ -75,5 +116,85 @@ public interface PersistenceStorage<T> extends Storage<Object, AbstractPersisten
      */
     boolean isManaged(Object object);
 
+    /**
+     * Gets an in-memory index of the distinct values of the {@code String}
+     * field {@code fieldName} of {@code entityClass} which is kept current by
+     * the storage operations of this storage.
+     *
+     * The default implementation doesn't provide indices and returns
+     * {@code null}.
+     * @param entityClass the entity class
+     * @param fieldName the field name
+     * @return the loaded index or {@code null} if the storage doesn't provide
+     *     indices
+     * @throws StorageException if loading the index fails
+     */
+    default StringFieldValueIndex getStringFieldValueIndex(Class<?> entityClass,
+            String fieldName) throws StorageException {
+        return null;
+    }
+
+    /**
+     * Creates a trigram index of the {@code String} field {@code fieldName} of
+     * {@code entityClass} in the database unless it exists and maintains it in
+     * the storage operations of this storage. Intended for data sets which are
+     * too large for {@link #getStringFieldValueIndex(java.lang.Class, java.lang.String) }.
+     *
+     * The default implementation doesn't support trigram indices.
+     * @param entityClass the entity class
+     * @param fieldName the field name
+     * @throws StorageException if building the index fails
+     * @throws UnsupportedOperationException if the storage doesn't support
+     *     trigram indices
+     */
+    default void enableTrigramIndex(Class<?> entityClass,
+            String fieldName) throws StorageException {
+        throw new UnsupportedOperationException(String.format("%s doesn't support trigram indices",
+                getClass().getName()));
+    }
+
+    /**
+     * Checks whether
+     * {@link #enableTrigramIndex(java.lang.Class, java.lang.String) } has been
+     * called for {@code fieldName} of {@code entityClass}.
+     *
+     * The default implementation returns {@code false}.
+     * @param entityClass the entity class
+     * @param fieldName the field name
+     * @return {@code true} if the trigram index is enabled, {@code false}
+     *     otherwise
+     */
+    default boolean isTrigramIndexEnabled(Class<?> entityClass,
+            String fieldName) {
+        return false;
+    }
+
+    /**
+     * Finds the distinct values of {@code fieldName} of {@code entityClass}
+     * which contain {@code text} with the trigram index of the field.
+     *
+     * The default implementation falls back to a {@code LIKE '%text%'} query
+     * which causes a full table scan.
+     * @param entityClass the entity class
+     * @param fieldName the field name
+     * @param text the text to search
+     * @param limit the maximum number of values to return
+     * @return the matching values
+     * @throws StorageException if the query fails
+     */
+    default List<String> runTrigramIndexQuery(Class<?> entityClass,
+            String fieldName,
+            String text,
+            int limit) throws StorageException {
+        String queryString = String.format("SELECT DISTINCT e.%s FROM %s e WHERE e.%s LIKE '%s'",
+                fieldName,
+                entityClass.getSimpleName(),
+                fieldName,
+                "%"+text.replaceAll("'", "''")+"%");
+        return runQuery(queryString,
+                String.class,
+                limit);
+    }
+
     EntityManager retrieveEntityManager();
 }
@@ -20,6 +20,7 @@ import de.richtercloud.reflection.form.builder.jpa.sequence.SequenceManager;
 import de.richtercloud.reflection.form.builder.storage.StorageConfValidationException;
 import de.richtercloud.reflection.form.builder.storage.StorageCreationException;
 import de.richtercloud.validation.tools.FieldRetriever;
+import java.util.List;
 
 /**
  *
@@ -54,8 +55,22 @@ public class PostgresqlPersistenceStorage extends AbstractPersistenceStorage<Pos
         this.sequenceManager.createSequence(sequenceName);
     }
 
+    @Override
+    public void createSequence(String sequenceName,
+            long initialValue) throws SequenceManagementException {
+        this.sequenceManager.createSequence(sequenceName,
+                initialValue);
+    }
+
     @Override
     public Long getNextSequenceValue(String sequenceName) throws SequenceManagementException {
         return this.sequenceManager.getNextSequenceValue(sequenceName);
     }
+
+    @Override
+    public List<Long> getNextSequenceValues(String sequenceName,
+            int count) throws SequenceManagementException {
+        return this.sequenceManager.getNextSequenceValues(sequenceName,
+                count);
+    }
 }
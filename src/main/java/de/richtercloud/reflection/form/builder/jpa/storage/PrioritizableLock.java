@@ -0,0 +1,64 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.storage;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * A {@link Lock} which grants waiting lock requests in the order of their
+ * priority. The methods of {@link Lock} use
+ * {@link PrioritizableReentrantLock#PRIORITY_DEFAULT}.
+ *
+ * @author richter
+ */
+public interface PrioritizableLock extends Lock {
+
+    /**
+     * Waits until the lock has been acquired.
+     * @param priority the desired priority (higher values causes earlier
+     *     acquisition of lock)
+     * @throws IllegalArgumentException if {@code priority} is less than 0
+     */
+    void lock(int priority);
+
+    /**
+     * Waits until the lock has been acquired or the current thread is
+     * interrupted.
+     * @param priority the desired priority (higher values causes earlier
+     *     acquisition of lock)
+     * @throws InterruptedException if the current thread is interrupted while
+     *     waiting
+     * @throws IllegalArgumentException if {@code priority} is less than 0
+     */
+    void lockInterruptibly(int priority) throws InterruptedException;
+
+    /**
+     * Waits until the lock has been acquired, {@code time} elapsed or the
+     * current thread is interrupted.
+     * @param priority the desired priority (higher values causes earlier
+     *     acquisition of lock)
+     * @param time the maximum time to wait
+     * @param unit the unit of {@code time}
+     * @return {@code true} if the lock has been acquired, {@code false} if the
+     *     waiting time elapsed
+     * @throws InterruptedException if the current thread is interrupted while
+     *     waiting
+     * @throws IllegalArgumentException if {@code priority} is less than 0
+     */
+    boolean tryLock(int priority,
+            long time,
+            TimeUnit unit) throws InterruptedException;
+}
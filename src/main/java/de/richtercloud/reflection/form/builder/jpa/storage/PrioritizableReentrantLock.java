@@ -15,124 +15,152 @@
 package de.richtercloud.reflection.form.builder.jpa.storage;
 
 import de.richtercloud.message.handler.BugHandler;
-import de.richtercloud.message.handler.ExceptionMessage;
-import java.util.Objects;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.LockSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /*
 internal implementation notes:
-- see internal implementation notes of ManagerQueueEntry for choice of
-Lock/Condition/other monitor
-- need to use one condition per Thread, not per priority in order to avoid all
-priorities being executed at once
-- In order to allow any sorting between different priorities it's necessary to
-enqueue into the priority queue determining the thread with the highest priority
-before waiting.
+- the previous implementation routed every lock request through a
+PriorityBlockingQueue, a manager thread and one Condition per request which
+caused several context switches per acquisition -> ownership is now handed off
+directly from the releasing thread to the waiter with the highest priority
+- the owner is never set to null while there're waiters (except for the short
+time between release and handoff), so that the CAS fast path in tryAcquire
+can't be used to bypass waiters with a higher priority
+- releasing threads set the owner to null before checking waiterCount and
+enqueuing threads increment waiterCount before checking the owner (both
+volatile) so that at least one of them performs the handoff and no waiter is
+parked forever
+- the waiter queue is guarded by its own monitor which is only held for
+enqueuing, dequeuing and handoff, never while parking
+- Conditions aren't supported because waiting on them would require to
+reacquire the lock with a priority which can't be passed through the Condition
+interface
+- aging: the effective priority of a waiter is
+priority + waitingTime / agingInterval, the difference of the effective
+priorities of two waiters doesn't change over time which allows to order
+waiters by the static key priority * agingInterval - enqueueTime without
+reordering the queue
 */
 /**
- * Maps priorities passed in {@link #lock(int) } to separate locks which are
- * managed in a priority queue where the topmost/head lock will be notified
- * after the last priority lock has been freed.
+ * A reentrant mutual exclusion lock which grants the lock to waiting threads
+ * in the order of the priority passed to {@link #lock(int) } (higher values
+ * cause earlier acquisition). Acquisition of a free lock without waiters
+ * requires only one compare-and-set operation, a thread releasing the lock
+ * hands it directly to the waiter with the highest priority. Waiters with the
+ * same priority acquire the lock in the order of their requests.
+ *
+ * In order to avoid that a steady stream of requests with high priority
+ * starves requests with lower priority, an aging interval can be specified
+ * after which the effective priority of a waiter increases by 1. Wait times of
+ * lock acquisitions can be recorded per priority after
+ * {@link #setWaitTimeRecording(boolean) } in order to monitor tail latencies.
  *
  * @author richter
  */
-public class PrioritizableReentrantLock extends ReentrantLock {
-    private static final long serialVersionUID = 1L;
+public class PrioritizableReentrantLock implements PrioritizableLock {
     private final static Logger LOGGER = LoggerFactory.getLogger(PrioritizableReentrantLock.class);
     public final static int PRIORITY_DEFAULT = 10;
-    @SuppressWarnings("PMD.AccessorMethodGeneration")
-    private final PriorityBlockingQueue<ManagerQueueEntry> managerQueue = new PriorityBlockingQueue<>(100, (ManagerQueueEntry o1, ManagerQueueEntry o2) -> {
-        return o2.priority.compareTo(o1.priority);
-    });
-    private final Thread managerThread;
-    private final Lock conditionLock = new ReentrantLock();
-    private final Condition locked = conditionLock.newCondition();
-    private final BugHandler bugHandler;
+    private final AtomicReference<Thread> owner = new AtomicReference<>();
+    /**
+     * The number of holds of {@code owner}. Only accessed by the owner thread.
+     */
+    private int holdCount;
+    /**
+     * Waiters ordered by priority. Guarded by itself.
+     */
+    private final PriorityQueue<Waiter> waiters;
+    private final AtomicInteger waiterCount = new AtomicInteger();
+    /**
+     * Assigns increasing sequence numbers to waiters in order to allow FIFO
+     * order of waiters with the same priority.
+     */
+    private long waiterSequence;
+    /**
+     * The waiting time in nanoseconds after which the effective priority of a
+     * waiter increases by 1 or {@code 0} if aging is disabled.
+     */
+    private final long agingIntervalNanos;
+    /**
+     * The reference for enqueue times of waiters which keeps aging keys small.
+     */
+    private final long creationNanos = System.nanoTime();
+    private volatile boolean waitTimeRecording;
+    private final ConcurrentMap<Integer, WaitTimeHistogram> waitTimeHistograms = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a {@code PrioritizableReentrantLock} without aging.
+     */
+    public PrioritizableReentrantLock() {
+        this(0,
+                TimeUnit.NANOSECONDS);
+    }
 
     /**
-     * Creates a {@code PrioritizableReentrantLock} with unfair policy for lock
-     * requests with same priority.
+     * Creates a {@code PrioritizableReentrantLock} with aging.
      *
-     * @param bugHandler the {@link BugHandler} to use for exceptions in the
-     *     manager thread
+     * @param agingInterval the waiting time after which the effective priority
+     *     of a waiter increases by 1 ({@code 0} disables aging)
+     * @param unit the unit of {@code agingInterval}
+     * @throws IllegalArgumentException if {@code agingInterval} is less than 0
      */
+    public PrioritizableReentrantLock(long agingInterval,
+            TimeUnit unit) {
+        if(agingInterval < 0) {
+            throw new IllegalArgumentException("agingInterval has to be >= 0");
+        }
+        this.agingIntervalNanos = unit.toNanos(agingInterval);
+        Comparator<Waiter> comparator = (Waiter o1, Waiter o2) -> Long.compare(o2.key, o1.key);
+        comparator = comparator.thenComparing((Waiter o1, Waiter o2) -> Long.compare(o1.sequence, o2.sequence));
+        this.waiters = new PriorityQueue<>(16,
+                comparator);
+    }
+
+    /**
+     * Creates a {@code PrioritizableReentrantLock} without aging.
+     *
+     * @param bugHandler ignored since there's no manager thread anymore which
+     *     could report bugs
+     * @deprecated {@code bugHandler} is ignored, use
+     *     {@link #PrioritizableReentrantLock() } instead
+     */
+    @Deprecated
     public PrioritizableReentrantLock(BugHandler bugHandler) {
-        this(false,
-                bugHandler);
+        this();
     }
 
     /**
-     * Creates a {@code PrioritizableReentrantLock} with the given fairness
-     * policy for requests lock requests with the same priority.
+     * Creates a {@code PrioritizableReentrantLock} without aging.
      *
-     * @param fair {@code true} if this lock should use a fair ordering policy
-     * @param bugHandler the {@link BugHandler} to use for exceptions in the
-     *     manager thread
+     * @param fair ignored since requests with the same priority are always
+     *     granted in the order of their requests
+     * @param bugHandler ignored since there's no manager thread anymore which
+     *     could report bugs
+     * @deprecated {@code fair} and {@code bugHandler} are ignored, use
+     *     {@link #PrioritizableReentrantLock() } instead
      */
-    @SuppressWarnings({"PMD.AvoidCatchingThrowable",
-        "PMD.AccessorMethodGeneration"
-    })
+    @Deprecated
     public PrioritizableReentrantLock(boolean fair,
             BugHandler bugHandler) {
-        super(fair);
-        this.bugHandler = bugHandler;
-        this.managerThread = new Thread(() -> {
-            //can't control shutdown with boolean since managerQueue.take somehow
-            //has to be brought to return (Poison Pill Shutdown
-            //<ref>http://stackoverflow.com/questions/812342/how-to-interrupt-a-blockingqueue-which-is-blocking-on-take</ref>)
-            while(true) {
-                ManagerQueueEntry managerQueueHead;
-                try {
-                    managerQueueHead = managerQueue.take();
-                }catch(InterruptedException ex) {
-                    LOGGER.error("unexpected exception during dequeing element occured",
-                            ex);
-                    bugHandler.handleUnexpectedException(new ExceptionMessage(ex));
-                    return;
-                        //It's fine to return if the thread has been interrupted
-                        //which is an unexpected condition anyway and can't be
-                        //handled better than reporting an unexpected exception
-                }
-                if(managerQueueHead.condition == null) {
-                    LOGGER.trace(String.format("received %s with condition null, meaning shutdown requested", ManagerQueueEntry.class));
-                    break;
-                }
-                this.conditionLock.lock();
-                try {
-                    Condition managerQueueHeadCondition = managerQueueHead.condition;
-                    LOGGER.trace(String.format("signaling condition with priority %d", managerQueueHead.priority));
-                    managerQueueHeadCondition.signal();
-                    try {
-                        this.locked.await();
-                    }catch(InterruptedException ex) {
-                        LOGGER.error("unexpected exception during awaiting lock condition occured",
-                                ex);
-                        bugHandler.handleUnexpectedException(new ExceptionMessage(ex));
-                        return;
-                    }
-                }catch(Throwable ex) {
-                    LOGGER.error("unexpected exception during queue processing occured",
-                            ex);
-                    bugHandler.handleUnexpectedException(new ExceptionMessage(ex));
-                }finally {
-                    this.conditionLock.unlock();
-                }
-            }
-        },
-                "prioritizable-reentrant-lock-manager-thread");
-        this.managerThread.start();
+        this();
     }
 
+    /**
+     * There's nothing to shut down since there's no manager thread anymore.
+     * @throws Throwable if {@link Object#finalize() } throws it
+     */
     @Override
+    @SuppressWarnings({"PMD.UselessOverridingMethod", "deprecation"})
     protected void finalize() throws Throwable {
-        LOGGER.trace(String.format("sending %s with condition null to manager queue in order to request shutdown", ManagerQueueEntry.class));
-        managerQueue.offer(new ManagerQueueEntry(null, 0));
-        managerThread.join();
         super.finalize();
     }
 
@@ -141,123 +169,360 @@ public class PrioritizableReentrantLock extends ReentrantLock {
         lock(PRIORITY_DEFAULT);
     }
 
-    /*
-    internal implementation notes:
-    - There's no sense in waiting for anything other than the priority specific
-    condition, lock or whatever because otherwise all incoming locking requests
-    just end up waiting and no priorization can take place
-    */
     /**
-     * Waits for {@link ReentrantLock#lock() } until all locks with higher
-     * priority have been acquired.
+     * Waits until the lock is free and all waiting lock requests with higher
+     * priority have acquired and released the lock. Interrupting the waiting
+     * thread doesn't stop waiting, but the interrupt status is restored after
+     * the lock has been acquired.
      * @param priority the desired priority (higher values causes earlier
      *     acquisition of lock)
+     * @throws IllegalArgumentException if {@code priority} is less than 0
      */
-    @SuppressWarnings("PMD.AccessorMethodGeneration")
+    @Override
     public void lock(int priority) {
-        if(priority < 0) {
-            throw new IllegalArgumentException("priority has to be >= 0");
+        checkPriority(priority);
+        if(tryAcquire()) {
+            recordWaitTime(priority, 0);
+            return;
         }
-        LOGGER.trace(String.format("locking with priority %d requested", priority));
-        conditionLock.lock();
-        try {
-            //check whether a Condition already exists for the desired priority
-            //(needs to run after conditionLock.lock)
-            ManagerQueueEntry entry = new ManagerQueueEntry(conditionLock.newCondition(),
-                        priority);
-            managerQueue.offer(entry);
-            LOGGER.trace(String.format("signaling manager queue condition with priority %d", priority));
-            try {
-                LOGGER.trace(String.format("waiting for condition with priority %d", priority));
-                entry.condition.await();
-            } catch (InterruptedException ex) {
-                LOGGER.error("unexpected exception during awaiting lock condition occured",
-                        ex);
-                bugHandler.handleUnexpectedException(new ExceptionMessage(ex));
-                return;
-                    //It's fine to return if the thread has been interrupted
-                    //which is an unexpected condition anyway and can't be
-                    //handled better than reporting an unexpected exception
+        boolean interrupted = false;
+        Waiter waiter = enqueue(priority);
+        while(owner.get() != waiter.thread) {
+            LockSupport.park(this);
+            if(Thread.interrupted()) {
+                interrupted = true;
+            }
+        }
+        acquired(waiter);
+        if(interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        lockInterruptibly(PRIORITY_DEFAULT);
+    }
+
+    /**
+     * Like {@link #lock(int) }, but stops waiting if the current thread is
+     * interrupted.
+     * @param priority the desired priority (higher values causes earlier
+     *     acquisition of lock)
+     * @throws InterruptedException if the current thread is interrupted while
+     *     waiting
+     * @throws IllegalArgumentException if {@code priority} is less than 0
+     */
+    @Override
+    public void lockInterruptibly(int priority) throws InterruptedException {
+        checkPriority(priority);
+        if(Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if(tryAcquire()) {
+            recordWaitTime(priority, 0);
+            return;
+        }
+        Waiter waiter = enqueue(priority);
+        while(owner.get() != waiter.thread) {
+            LockSupport.park(this);
+            if(Thread.interrupted()) {
+                if(cancel(waiter)) {
+                    throw new InterruptedException();
+                }
+                //the lock has been handed to the waiter in the meantime ->
+                //keep it and restore the interrupt status
+                Thread.currentThread().interrupt();
             }
-            LOGGER.trace(String.format("locking with priority %d", priority));
-            LOGGER.trace("locking thread");
-            super.lock();
-            LOGGER.trace("locked thread");
-        }finally {
-            conditionLock.unlock();
         }
+        acquired(waiter);
+    }
+
+    /**
+     * Acquires the lock only if it's free and there're no waiters or if it's
+     * already held by the current thread.
+     * @return {@code true} if the lock has been acquired, {@code false}
+     *     otherwise
+     */
+    @Override
+    public boolean tryLock() {
+        return tryAcquire();
     }
 
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        return tryLock(PRIORITY_DEFAULT,
+                time,
+                unit);
+    }
+
+    /**
+     * Like {@link #lockInterruptibly(int) }, but stops waiting after
+     * {@code time}.
+     * @param priority the desired priority (higher values causes earlier
+     *     acquisition of lock)
+     * @param time the maximum time to wait
+     * @param unit the unit of {@code time}
+     * @return {@code true} if the lock has been acquired, {@code false} if the
+     *     waiting time elapsed
+     * @throws InterruptedException if the current thread is interrupted while
+     *     waiting
+     * @throws IllegalArgumentException if {@code priority} is less than 0
+     */
+    @Override
+    public boolean tryLock(int priority,
+            long time,
+            TimeUnit unit) throws InterruptedException {
+        checkPriority(priority);
+        if(Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if(tryAcquire()) {
+            recordWaitTime(priority, 0);
+            return true;
+        }
+        long deadline = System.nanoTime()+unit.toNanos(time);
+        Waiter waiter = enqueue(priority);
+        while(owner.get() != waiter.thread) {
+            long remaining = deadline-System.nanoTime();
+            if(remaining <= 0) {
+                if(cancel(waiter)) {
+                    return false;
+                }
+                continue;
+                    //lock has been handed to the waiter in the meantime
+            }
+            LockSupport.parkNanos(this, remaining);
+            if(Thread.interrupted()) {
+                if(cancel(waiter)) {
+                    throw new InterruptedException();
+                }
+                Thread.currentThread().interrupt();
+            }
+        }
+        acquired(waiter);
+        return true;
+    }
+
+    /**
+     * Releases one hold of the lock and hands the lock to the waiter with the
+     * highest priority after the last hold has been released.
+     * @throws IllegalMonitorStateException if the current thread doesn't hold
+     *     the lock
+     */
     @Override
     public void unlock() {
-        super.unlock();
-        LOGGER.trace("unlocked from thread");
-        conditionLock.lock();
+        if(owner.get() != Thread.currentThread()) {
+            throw new IllegalMonitorStateException();
+        }
+        holdCount -= 1;
+        if(holdCount > 0) {
+            return;
+        }
+        owner.set(null);
+        if(waiterCount.get() > 0) {
+            synchronized(waiters) {
+                handoff();
+            }
+        }
+    }
+
+    /**
+     * Not supported.
+     * @return nothing
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public Condition newCondition() {
+        throw new UnsupportedOperationException("conditions aren't supported");
+    }
+
+    public boolean isLocked() {
+        return owner.get() != null;
+    }
+
+    public boolean isHeldByCurrentThread() {
+        return owner.get() == Thread.currentThread();
+    }
+
+    public int getHoldCount() {
+        return isHeldByCurrentThread() ? holdCount : 0;
+    }
+
+    /**
+     * Gets an estimate of the number of threads waiting for the lock.
+     * @return the number of waiting threads
+     */
+    public int getQueueLength() {
+        return waiterCount.get();
+    }
+
+    /**
+     * Enables or disables recording of wait times (disabled by default in
+     * order to keep uncontended acquisition as cheap as possible).
+     * @param waitTimeRecording whether to record wait times
+     */
+    public void setWaitTimeRecording(boolean waitTimeRecording) {
+        this.waitTimeRecording = waitTimeRecording;
+    }
+
+    /**
+     * Gets the wait times of acquisitions with {@code priority} recorded since
+     * wait time recording has been enabled.
+     * @param priority the priority
+     * @return the histogram of recorded wait times (empty if none have been
+     *     recorded)
+     */
+    public WaitTimeHistogram getWaitTimeHistogram(int priority) {
+        WaitTimeHistogram retValue = waitTimeHistograms.get(priority);
+        if(retValue == null) {
+            return new WaitTimeHistogram();
+        }
+        return retValue;
+    }
+
+    private void recordWaitTime(int priority, long waitTimeNanos) {
+        if(!waitTimeRecording) {
+            return;
+        }
+        waitTimeHistograms.computeIfAbsent(priority,
+                key -> new WaitTimeHistogram()).record(waitTimeNanos);
+    }
+
+    private void acquired(Waiter waiter) {
+        holdCount = 1;
+        recordWaitTime(waiter.priority,
+                System.nanoTime()-waiter.enqueueNanos);
+    }
+
+    private void checkPriority(int priority) {
+        if(priority < 0) {
+            throw new IllegalArgumentException("priority has to be >= 0");
+        }
+    }
+
+    /**
+     * Acquires the lock if it's already held by the current thread or if it's
+     * free and there're no waiters.
+     * @return {@code true} if the lock has been acquired
+     */
+    private boolean tryAcquire() {
+        Thread current = Thread.currentThread();
+        if(owner.get() == current) {
+            holdCount += 1;
+            return true;
+        }
+        if(waiterCount.get() == 0 && owner.compareAndSet(null, current)) {
+            holdCount = 1;
+            return true;
+        }
+        return false;
+    }
+
+    private Waiter enqueue(int priority) {
+        synchronized(waiters) {
+            long enqueueNanos = System.nanoTime();
+            Waiter waiter = new Waiter(Thread.currentThread(),
+                    priority,
+                    agingKey(priority, enqueueNanos),
+                    enqueueNanos,
+                    waiterSequence++);
+            waiters.add(waiter);
+            waiterCount.incrementAndGet();
+            LOGGER.trace(String.format("waiting with priority %d behind %d other waiters",
+                    priority,
+                    waiterCount.get()-1));
+            handoff();
+                //the lock might have been released after tryAcquire
+            return waiter;
+        }
+    }
+
+    /**
+     * Removes {@code waiter} from the waiters.
+     * @param waiter the waiter to remove
+     * @return {@code true} if {@code waiter} has been removed, {@code false} if
+     *     the lock has already been handed to it
+     */
+    private boolean cancel(Waiter waiter) {
+        synchronized(waiters) {
+            if(!waiters.remove(waiter)) {
+                return false;
+            }
+            waiterCount.decrementAndGet();
+            return true;
+        }
+    }
+
+    /**
+     * Calculates the key which orders waiters by effective priority.
+     * @param priority the priority of the waiter
+     * @param enqueueNanos the time the waiter has been enqueued
+     * @return the priority if aging is disabled,
+     *     {@code priority * agingInterval - enqueueTime} otherwise (saturated
+     *     at {@link Long#MAX_VALUE})
+     */
+    private long agingKey(int priority, long enqueueNanos) {
+        if(agingIntervalNanos == 0) {
+            return priority;
+        }
+        long priorityNanos;
         try {
-            LOGGER.trace("signaling manager queue condition");
-            locked.signal();
-        }finally {
-            conditionLock.unlock();
+            priorityNanos = Math.multiplyExact(priority, agingIntervalNanos);
+        }catch(ArithmeticException ex) {
+            return Long.MAX_VALUE;
         }
+        return priorityNanos-(enqueueNanos-creationNanos);
     }
 
-    /*
-    Internal implementation notes:
-    - Using a Lock for the mapping to priority doesn't make sense because it's
-    difficult to guarantee that the managerThread with successfully lock before
-    threads invoking PrioritizableReentrantLock.lock(int) will -> need to use a
-    Condition
-    */
     /**
-     * Encapsulates priority and an object to wait for in {@code managerQueue}.
+     * Hands the lock to the waiter with the highest priority if the lock is
+     * free. Needs to be called with the monitor of {@code waiters} held.
      */
-    private class ManagerQueueEntry {
-        private final Condition condition;
+    private void handoff() {
+        assert Thread.holdsLock(waiters);
+        if(owner.get() != null) {
+            return;
+        }
+        Waiter head = waiters.peek();
+        if(head == null) {
+            return;
+        }
+        if(owner.compareAndSet(null, head.thread)) {
+            waiters.poll();
+            waiterCount.decrementAndGet();
+            LockSupport.unpark(head.thread);
+        }
+    }
+
+    /**
+     * A thread waiting for the lock.
+     */
+    private static class Waiter {
+        private final Thread thread;
         /**
          * Higher values cause higher priority, i.e. a place closer to the
          * queue's head.
          */
-        private final Integer priority;
-
-        /*
-        internal implementation notes:
-        - setting minimum of priority to 0 is for convenience (avoids
-        confusion of relation to negative and positive priority values)
-        */
+        private final int priority;
         /**
-         *
-         * @param condition the condition to wait for
-         * @param priority the priority
-         * @throws IllegalArgumentException if {@code priority} is less than 0
+         * The effective priority key (see agingKey).
          */
-        protected ManagerQueueEntry(Condition condition, int priority) {
-            //needs to allow condition == null for Poison Pill Shutdown (see
-            //comment in managerThread)
+        private final long key;
+        private final long enqueueNanos;
+        private final long sequence;
+
+        Waiter(Thread thread,
+                int priority,
+                long key,
+                long enqueueNanos,
+                long sequence) {
             assert priority >= 0;
-            this.condition = condition;
+            this.thread = thread;
             this.priority = priority;
-        }
-
-        @Override
-        public int hashCode() {
-            int hash = 7;
-            hash = 23 * hash + Objects.hashCode(this.condition);
-            return hash;
-        }
-
-        @Override
-        public boolean equals(Object obj) {
-            if (this == obj) {
-                return true;
-            }
-            if (obj == null) {
-                return false;
-            }
-            if (getClass() != obj.getClass()) {
-                return false;
-            }
-            final ManagerQueueEntry other = (ManagerQueueEntry) obj;
-            return Objects.equals(this.condition, other.condition);
+            this.key = key;
+            this.enqueueNanos = enqueueNanos;
+            this.sequence = sequence;
         }
     }
 }
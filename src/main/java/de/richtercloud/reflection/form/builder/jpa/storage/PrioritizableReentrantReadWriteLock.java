@@ -0,0 +1,425 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.storage;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/*
+internal implementation notes:
+- all state is guarded by the monitor of waiters which is never held while
+parking; waiters are granted by the releasing thread (handoff) like in
+PrioritizableReentrantLock
+- invariant after every state change: the head of waiters can't be granted,
+i.e. if there're waiters and no writer, the head is a write request blocked by
+readers -> a new read request can be granted immediately if there's no writer
+and the head has a lower priority
+- read holds per thread are kept in a ThreadLocal which is only modified by
+the owning thread, the total number of read holds is kept in readHolds
+- upgrading from read to write lock isn't supported because two upgrading
+threads would deadlock
+*/
+/**
+ * A reentrant read/write lock which grants waiting read and write requests in
+ * the order of their priority (and in the order of their requests for the
+ * same priority). Read requests with a lower priority than a waiting write
+ * request have to wait until the write request has been granted and released,
+ * so that a write request with high priority drains the current readers
+ * instead of being starved by new ones.
+ *
+ * A thread holding the write lock may acquire the read lock, a thread holding
+ * the read lock may not acquire the write lock.
+ *
+ * @author richter
+ */
+public class PrioritizableReentrantReadWriteLock implements ReadWriteLock {
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>(16,
+            Comparator.comparingInt((Waiter waiter) -> -waiter.priority)
+                    .thenComparingLong(waiter -> waiter.sequence));
+    private long waiterSequence;
+    private Thread writer;
+    private int writeHolds;
+    /**
+     * The total number of read holds of all threads.
+     */
+    private int readHolds;
+    private final ThreadLocal<int[]> threadReadHolds = ThreadLocal.withInitial(() -> new int[1]);
+    private final PrioritizableLock readLock = new ReadLock();
+    private final PrioritizableLock writeLock = new WriteLock();
+
+    @Override
+    public PrioritizableLock readLock() {
+        return readLock;
+    }
+
+    @Override
+    public PrioritizableLock writeLock() {
+        return writeLock;
+    }
+
+    /**
+     * Gets the total number of read holds of all threads.
+     * @return the number of read holds
+     */
+    public int getReadLockCount() {
+        synchronized(waiters) {
+            return readHolds;
+        }
+    }
+
+    public boolean isWriteLocked() {
+        synchronized(waiters) {
+            return writer != null;
+        }
+    }
+
+    public boolean isWriteLockedByCurrentThread() {
+        synchronized(waiters) {
+            return writer == Thread.currentThread();
+        }
+    }
+
+    /**
+     * Gets the number of threads waiting for the read or the write lock.
+     * @return the number of waiting threads
+     */
+    public int getQueueLength() {
+        synchronized(waiters) {
+            return waiters.size();
+        }
+    }
+
+    /**
+     * Acquires the read or the write lock.
+     * @param exclusive whether to acquire the write lock
+     * @param priority the priority
+     * @param interruptible whether to stop waiting when interrupted
+     * @param timeoutNanos the maximum time to wait or a negative value to wait
+     *     without timeout
+     * @return {@code true} if the lock has been acquired, {@code false} if the
+     *     timeout elapsed
+     * @throws InterruptedException if {@code interruptible} is {@code true}
+     *     and the current thread is interrupted while waiting
+     */
+    private boolean acquire(boolean exclusive,
+            int priority,
+            boolean interruptible,
+            long timeoutNanos) throws InterruptedException {
+        if(priority < 0) {
+            throw new IllegalArgumentException("priority has to be >= 0");
+        }
+        if(interruptible && Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        Thread current = Thread.currentThread();
+        Waiter waiter;
+        synchronized(waiters) {
+            if(exclusive && writer != current && threadReadHolds.get()[0] > 0) {
+                throw new IllegalStateException("upgrading a read lock to a "
+                        + "write lock isn't supported");
+            }
+            if(tryAcquire(exclusive, priority, current)) {
+                return true;
+            }
+            if(timeoutNanos == 0) {
+                return false;
+            }
+            waiter = new Waiter(current,
+                    exclusive,
+                    priority,
+                    waiterSequence++);
+            waiters.add(waiter);
+        }
+        long deadline = System.nanoTime()+timeoutNanos;
+        boolean interrupted = false;
+        while(!waiter.granted) {
+            if(timeoutNanos > 0) {
+                long remaining = deadline-System.nanoTime();
+                if(remaining <= 0) {
+                    if(cancel(waiter)) {
+                        return false;
+                    }
+                    continue;
+                        //granted in the meantime
+                }
+                LockSupport.parkNanos(this, remaining);
+            }else {
+                LockSupport.park(this);
+            }
+            if(Thread.interrupted()) {
+                if(!interruptible) {
+                    interrupted = true;
+                }else if(cancel(waiter)) {
+                    throw new InterruptedException();
+                }else {
+                    //granted in the meantime -> keep the lock and restore
+                    //interrupt status
+                    interrupted = true;
+                }
+            }
+        }
+        if(!exclusive) {
+            threadReadHolds.get()[0] += 1;
+        }
+        if(interrupted) {
+            current.interrupt();
+        }
+        return true;
+    }
+
+    /**
+     * Acquires the lock without waiting if that's possible without bypassing
+     * waiters with the same or a higher priority. Needs to be called with the
+     * monitor of {@code waiters} held.
+     */
+    private boolean tryAcquire(boolean exclusive,
+            int priority,
+            Thread current) {
+        assert Thread.holdsLock(waiters);
+        if(exclusive) {
+            if(writer == current) {
+                writeHolds += 1;
+                return true;
+            }
+            if(writer == null && readHolds == 0 && waiters.isEmpty()) {
+                writer = current;
+                writeHolds = 1;
+                return true;
+            }
+            return false;
+        }
+        int[] currentReadHolds = threadReadHolds.get();
+        Waiter head = waiters.peek();
+        if(writer == current
+                || currentReadHolds[0] > 0
+                    //reentrant read acquisition mustn't wait for queued
+                    //writers which wait for the current thread
+                || writer == null && (head == null || head.priority < priority)) {
+            readHolds += 1;
+            currentReadHolds[0] += 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes {@code waiter} from the waiters.
+     * @return {@code true} if {@code waiter} has been removed, {@code false} if
+     *     the lock has already been granted to it
+     */
+    private boolean cancel(Waiter waiter) {
+        synchronized(waiters) {
+            if(!waiters.remove(waiter)) {
+                return false;
+            }
+            grant();
+                //removing a waiting writer might allow readers behind it to
+                //proceed
+            return true;
+        }
+    }
+
+    private void releaseShared() {
+        synchronized(waiters) {
+            int[] currentReadHolds = threadReadHolds.get();
+            if(currentReadHolds[0] == 0) {
+                throw new IllegalMonitorStateException();
+            }
+            currentReadHolds[0] -= 1;
+            readHolds -= 1;
+            if(readHolds == 0) {
+                grant();
+            }
+        }
+    }
+
+    private void releaseExclusive() {
+        synchronized(waiters) {
+            if(writer != Thread.currentThread()) {
+                throw new IllegalMonitorStateException();
+            }
+            writeHolds -= 1;
+            if(writeHolds == 0) {
+                writer = null;
+                grant();
+            }
+        }
+    }
+
+    /**
+     * Grants the lock to the waiters at the head of the queue as long as
+     * that's possible. Needs to be called with the monitor of {@code waiters}
+     * held.
+     */
+    private void grant() {
+        assert Thread.holdsLock(waiters);
+        while(writer == null) {
+            Waiter head = waiters.peek();
+            if(head == null) {
+                return;
+            }
+            if(head.exclusive) {
+                if(readHolds == 0) {
+                    waiters.poll();
+                    writer = head.thread;
+                    writeHolds = 1;
+                    head.granted = true;
+                    LockSupport.unpark(head.thread);
+                }
+                return;
+            }
+            waiters.poll();
+            readHolds += 1;
+                //the thread specific holds are incremented by the waiting
+                //thread
+            head.granted = true;
+            LockSupport.unpark(head.thread);
+        }
+    }
+
+    /**
+     * A thread waiting for the read or write lock.
+     */
+    private static class Waiter {
+        private final Thread thread;
+        private final boolean exclusive;
+        private final int priority;
+        private final long sequence;
+        private volatile boolean granted;
+
+        Waiter(Thread thread,
+                boolean exclusive,
+                int priority,
+                long sequence) {
+            this.thread = thread;
+            this.exclusive = exclusive;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Base class for the read and the write lock views.
+     */
+    private abstract class AbstractLockView implements PrioritizableLock {
+        private final boolean exclusive;
+
+        AbstractLockView(boolean exclusive) {
+            this.exclusive = exclusive;
+        }
+
+        @Override
+        public void lock() {
+            lock(PrioritizableReentrantLock.PRIORITY_DEFAULT);
+        }
+
+        @Override
+        public void lock(int priority) {
+            try {
+                acquire(exclusive,
+                        priority,
+                        false, //interruptible
+                        -1 //timeoutNanos
+                );
+            } catch (InterruptedException ex) {
+                //can't happen if not interruptible
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            lockInterruptibly(PrioritizableReentrantLock.PRIORITY_DEFAULT);
+        }
+
+        @Override
+        public void lockInterruptibly(int priority) throws InterruptedException {
+            acquire(exclusive,
+                    priority,
+                    true, //interruptible
+                    -1 //timeoutNanos
+            );
+        }
+
+        @Override
+        public boolean tryLock() {
+            try {
+                return acquire(exclusive,
+                        PrioritizableReentrantLock.PRIORITY_DEFAULT,
+                        false, //interruptible
+                        0 //timeoutNanos
+                );
+            } catch (InterruptedException ex) {
+                //can't happen if not interruptible
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            return tryLock(PrioritizableReentrantLock.PRIORITY_DEFAULT,
+                    time,
+                    unit);
+        }
+
+        @Override
+        public boolean tryLock(int priority,
+                long time,
+                TimeUnit unit) throws InterruptedException {
+            return acquire(exclusive,
+                    priority,
+                    true, //interruptible
+                    Math.max(0, unit.toNanos(time)));
+        }
+
+        /**
+         * Not supported.
+         * @return nothing
+         * @throws UnsupportedOperationException always
+         */
+        @Override
+        public Condition newCondition() {
+            throw new UnsupportedOperationException("conditions aren't supported");
+        }
+    }
+
+    private class ReadLock extends AbstractLockView {
+
+        ReadLock() {
+            super(false);
+        }
+
+        @Override
+        public void unlock() {
+            releaseShared();
+        }
+    }
+
+    private class WriteLock extends AbstractLockView {
+
+        WriteLock() {
+            super(true);
+        }
+
+        @Override
+        public void unlock() {
+            releaseExclusive();
+        }
+    }
+}
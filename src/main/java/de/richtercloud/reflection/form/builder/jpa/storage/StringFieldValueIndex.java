@@ -0,0 +1,470 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.storage;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+internal implementation notes:
+- the sorted distinct values serve prefix matches with a range scan, the n-gram
+postings serve substring matches: every substring of a value with a length of
+at most MAX_GRAM_LENGTH is indexed, so that shorter search texts are answered by
+the postings of the text itself and longer ones by verifying the values of the
+smallest posting of their n-grams
+- values are referenced by the ID of their entity in order to be able to remove
+the old value on update and delete and the distinct values are reference
+counted
+- matching is case sensitive and doesn't interpret LIKE wildcards which matches
+the LIKE queries it replaces on case sensitive databases (like Apache Derby)
+- the BK-tree for similarity searches contains the distinct values, the number
+of entities referencing a value is used as its usage when ranking similar
+values
+- the BK-tree is built from the distinct values on the first similarity search
+because every insertion computes edit distances along a path of the tree which
+would slow down loading of indices which are never searched for similar values;
+the read lock can't be upgraded, so it's released, the tree is built with the
+write lock held and the write lock is downgraded to the read lock for the
+search
+- ids which are removed during loading are remembered in order to not add them
+back if the loading query has read them before they've been removed
+*/
+/**
+ * An in-memory index of the distinct values of a {@code String} field of an
+ * entity class which serves substring and prefix matches without querying the
+ * database. Instances are created, loaded and kept current by
+ * {@link AbstractPersistenceStorage}.
+ *
+ * @author richter
+ */
+public class StringFieldValueIndex {
+    private final static Logger LOGGER = LoggerFactory.getLogger(StringFieldValueIndex.class);
+    /**
+     * The maximum length of indexed n-grams.
+     */
+    private final static int MAX_GRAM_LENGTH = 3;
+    private final Class<?> entityClass;
+    private final String fieldName;
+    private final Field field;
+    private final Map<Object, String> values = new HashMap<>();
+    /**
+     * The distinct values and the number of entities referencing them.
+     */
+    private final TreeMap<String, Integer> distinctValues = new TreeMap<>();
+    private final Map<String, Set<String>> grams = new HashMap<>();
+    /**
+     * The BK-tree of the distinct values ({@code null} until the first
+     * similarity search). Guarded by {@code lock}.
+     */
+    private BKTree bkTree;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Set<Object> removedDuringLoad;
+    private volatile boolean loaded;
+    /**
+     * Incremented for every change of the indexed values which allows callers
+     * to invalidate results they've derived from the index.
+     */
+    private volatile long modificationCount;
+
+    /**
+     * Creates a new index.
+     * @param entityClass the entity class
+     * @param fieldName the name of a {@code String} field declared by
+     *     {@code entityClass} or one of its superclasses
+     * @throws IllegalArgumentException if {@code entityClass} doesn't have a
+     *     {@code String} field named {@code fieldName}
+     */
+    public StringFieldValueIndex(Class<?> entityClass,
+            String fieldName) {
+        this.entityClass = entityClass;
+        this.fieldName = fieldName;
+        this.field = retrieveField(entityClass,
+                fieldName);
+        this.field.setAccessible(true);
+    }
+
+    static Field retrieveField(Class<?> entityClass,
+            String fieldName) {
+        Class<?> clazz = entityClass;
+        while(clazz != null) {
+            for(Field declaredField : clazz.getDeclaredFields()) {
+                if(declaredField.getName().equals(fieldName)) {
+                    if(declaredField.getType() != String.class) {
+                        throw new IllegalArgumentException(String.format("field '%s' of class %s isn't a String field",
+                                fieldName,
+                                clazz.getName()));
+                    }
+                    return declaredField;
+                }
+            }
+            clazz = clazz.getSuperclass();
+        }
+        throw new IllegalArgumentException(String.format("class %s doesn't have a field '%s'",
+                entityClass.getName(),
+                fieldName));
+    }
+
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    /**
+     * Whether {@link #endLoad() } has been called.
+     * @return {@code true} if the index has been loaded, {@code false}
+     *     otherwise
+     */
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Gets the number of changes of the indexed values. Results of
+     * {@link #find(java.lang.String, int) } are up to date as long as the
+     * modification count retrieved before searching doesn't change.
+     * @return the modification count
+     */
+    public long getModificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * Gets the number of distinct values.
+     * @return the number of distinct values
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return distinctValues.size();
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads the value of the indexed field from {@code entity}.
+     * @param entity an instance of the entity class
+     * @return the field value
+     */
+    String getValue(Object entity) {
+        try {
+            return (String) field.get(entity);
+        } catch (IllegalAccessException ex) {
+            //field is accessible
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Starts loading the index. {@link #put(java.lang.Object, java.lang.String) }
+     * and {@link #remove(java.lang.Object) } can be called during loading.
+     */
+    void beginLoad() {
+        lock.writeLock().lock();
+        try {
+            removedDuringLoad = new HashSet<>();
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Adds a value read by the loading query unless the entity with the ID
+     * {@code id} has been changed or removed since loading started.
+     * @param id the entity ID
+     * @param value the field value
+     */
+    void load(Object id,
+            String value) {
+        lock.writeLock().lock();
+        try {
+            if(values.containsKey(id) || removedDuringLoad.contains(id)) {
+                return;
+            }
+            add(id,
+                    value);
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void endLoad() {
+        lock.writeLock().lock();
+        try {
+            removedDuringLoad = null;
+            loaded = true;
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the value of the entity with the ID {@code id}.
+     * @param id the entity ID
+     * @param value the new field value or {@code null}
+     */
+    void put(Object id,
+            String value) {
+        lock.writeLock().lock();
+        try {
+            removeValue(id);
+            if(value == null) {
+                //can't be matched by LIKE
+                if(removedDuringLoad != null) {
+                    removedDuringLoad.add(id);
+                }
+                return;
+            }
+            add(id,
+                    value);
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes the value of the entity with the ID {@code id}.
+     * @param id the entity ID
+     */
+    void remove(Object id) {
+        lock.writeLock().lock();
+        try {
+            removeValue(id);
+            if(removedDuringLoad != null) {
+                removedDuringLoad.add(id);
+            }
+        }finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void add(Object id,
+            String value) {
+        modificationCount++;
+            //only written with the write lock held
+        values.put(id,
+                value);
+        Integer count = distinctValues.get(value);
+        if(count != null) {
+            distinctValues.put(value,
+                    count+1);
+            return;
+        }
+        distinctValues.put(value,
+                1);
+        if(bkTree != null) {
+            bkTree.add(value);
+        }
+        for(String gram : generateGrams(value)) {
+            grams.computeIfAbsent(gram,
+                    key -> new HashSet<>()).add(value);
+        }
+    }
+
+    private void removeValue(Object id) {
+        String value = values.remove(id);
+        if(value == null) {
+            return;
+        }
+        modificationCount++;
+        int count = distinctValues.get(value);
+        if(count > 1) {
+            distinctValues.put(value,
+                    count-1);
+            return;
+        }
+        distinctValues.remove(value);
+        if(bkTree != null) {
+            bkTree.remove(value);
+        }
+        for(String gram : generateGrams(value)) {
+            Set<String> posting = grams.get(gram);
+            posting.remove(value);
+            if(posting.isEmpty()) {
+                grams.remove(gram);
+            }
+        }
+    }
+
+    private static Set<String> generateGrams(String value) {
+        Set<String> retValue = new HashSet<>();
+        for(int length=1; length<=MAX_GRAM_LENGTH; length++) {
+            for(int i=0; i+length<=value.length(); i++) {
+                retValue.add(value.substring(i, i+length));
+            }
+        }
+        return retValue;
+    }
+
+    /**
+     * Finds the distinct values which contain {@code text}. Values which start
+     * with {@code text} are returned first, values are sorted in their natural
+     * order otherwise.
+     * @param text the text to search
+     * @param limit the maximum number of values to return
+     * @return the matching values
+     */
+    public List<String> find(String text,
+            int limit) {
+        if(limit <= 0) {
+            throw new IllegalArgumentException("limit has to be > 0");
+        }
+        lock.readLock().lock();
+        try {
+            List<String> retValue = new ArrayList<>(Math.min(limit,
+                    distinctValues.size()));
+            for(String prefixMatch : distinctValues.subMap(text, true,
+                    text+Character.MAX_VALUE, false).keySet()) {
+                if(retValue.size() == limit) {
+                    return retValue;
+                }
+                retValue.add(prefixMatch);
+            }
+            if(text.isEmpty() || retValue.size() == limit) {
+                return retValue;
+            }
+            Set<String> candidates = retrieveCandidates(text);
+            int remaining = limit-retValue.size();
+            PriorityQueue<String> substringMatches = new PriorityQueue<>(remaining+1,
+                    Collections.reverseOrder());
+                //the head is the greatest value which is removed if there're
+                //more than remaining values
+            for(String candidate : candidates) {
+                if(candidate.startsWith(text)
+                        || text.length() > MAX_GRAM_LENGTH && !candidate.contains(text)) {
+                    continue;
+                }
+                substringMatches.add(candidate);
+                if(substringMatches.size() > remaining) {
+                    substringMatches.poll();
+                }
+            }
+            List<String> sortedSubstringMatches = new ArrayList<>(substringMatches);
+            Collections.sort(sortedSubstringMatches);
+            retValue.addAll(sortedSubstringMatches);
+            return retValue;
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the values which might contain {@code text}, i.e. the values
+     * which contain {@code text} if it's not longer than
+     * {@link #MAX_GRAM_LENGTH} and the smallest posting of the n-grams of
+     * {@code text} otherwise.
+     */
+    private Set<String> retrieveCandidates(String text) {
+        if(text.length() <= MAX_GRAM_LENGTH) {
+            return grams.getOrDefault(text,
+                    Collections.emptySet());
+        }
+        Set<String> retValue = null;
+        for(int i=0; i+MAX_GRAM_LENGTH<=text.length(); i++) {
+            Set<String> posting = grams.get(text.substring(i, i+MAX_GRAM_LENGTH));
+            if(posting == null) {
+                return Collections.emptySet();
+            }
+            if(retValue == null || posting.size() < retValue.size()) {
+                retValue = posting;
+            }
+        }
+        return retValue;
+    }
+
+    /**
+     * Finds the distinct values with a Levenshtein distance of at most
+     * {@code maxDistance} from {@code text} which allows suggesting values
+     * despite typos. The BK-tree which is used for the search is built on the
+     * first invocation.
+     * @param text the text to search
+     * @param maxDistance the maximum edit distance
+     * @param limit the maximum number of values to return
+     * @param latencyBudgetNanos the time in nanoseconds after which the search
+     *     is stopped and the values found so far are returned
+     * @return the values sorted by their distance, then by the number of
+     *     entities referencing them (descending) and then in their natural
+     *     order
+     */
+    public List<String> findSimilar(String text,
+            int maxDistance,
+            int limit,
+            long latencyBudgetNanos) {
+        if(maxDistance < 0) {
+            throw new IllegalArgumentException("maxDistance mustn't be negative");
+        }
+        if(limit <= 0) {
+            throw new IllegalArgumentException("limit has to be > 0");
+        }
+        long deadlineNanos = System.nanoTime()+latencyBudgetNanos;
+        lock.readLock().lock();
+        if(bkTree == null) {
+            lock.readLock().unlock();
+            lock.writeLock().lock();
+            try {
+                if(bkTree == null) {
+                    //not built by another thread in the meantime
+                    BKTree bkTree0 = new BKTree();
+                    for(String value : distinctValues.keySet()) {
+                        bkTree0.add(value);
+                    }
+                    bkTree = bkTree0;
+                }
+                lock.readLock().lock();
+            }finally {
+                lock.writeLock().unlock();
+            }
+        }
+        try {
+            Map<String, Integer> distances = new HashMap<>();
+            boolean completed = bkTree.search(text,
+                    maxDistance,
+                    deadlineNanos,
+                    distances::put);
+            if(!completed) {
+                LOGGER.debug(String.format("similarity search for '%s' stopped after latency budget of %d ns with %d matches",
+                        text,
+                        latencyBudgetNanos,
+                        distances.size()));
+            }
+            List<String> retValue = new ArrayList<>(distances.keySet());
+            retValue.sort(Comparator.comparingInt((String value) -> distances.get(value))
+                    .thenComparing(Comparator.comparingInt((String value) -> distinctValues.get(value)).reversed())
+                    .thenComparing(Comparator.naturalOrder()));
+            if(retValue.size() > limit) {
+                retValue = retValue.subList(0, limit);
+            }
+            return retValue;
+        }finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,482 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.storage;
+
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+internal implementation notes:
+- the values are copied into a side table together with the ID of their entity
+because the table and column names of entities depend on the naming strategy of
+the JPA provider and can't be used in native queries portably; lookups join
+the side table with the entity IDs which contain all trigrams of the search
+text and verify the candidates with LIKE, so that the LIKE is only evaluated on
+rows which have been found through the primary key of the trigram table
+- the key of an index is a hash of the entity class name and the field name in
+order to keep the primary keys short enough for MySQL
+- trigrams are stored in lower case so that the candidates are a superset of
+the matches on databases with case insensitive collations (like MySQL), the
+LIKE on the value decides whether a candidate matches according to the
+collation of the database like the LIKE queries on the entity table did
+- the trigram table doesn't have a primary key because trigrams which differ
+in Java might be equal in the collation of the database (e.g. accents in
+MySQL)
+- values longer than VALUE_LENGTH_MAX aren't indexed
+- MERGE and upserts aren't portable between Derby, PostgreSQL and MySQL (see
+DatabaseQueryHistoryEntryStorage), so changing a value deletes and inserts its
+rows
+- the index table contains the entity class and field name of every built index
+so that storages can maintain indices which they haven't enabled themselves
+(otherwise changes made without enabling the index would leave it stale
+forever)
+*/
+/**
+ * A trigram index of the values of a {@code String} field of an entity class
+ * which is stored in side tables of the database of an
+ * {@link AbstractPersistenceStorage} and which is maintained in the
+ * transactions of {@link AbstractPersistenceStorage#store(java.lang.Object) },
+ * {@link AbstractPersistenceStorage#update(java.lang.Object) } and
+ * {@link AbstractPersistenceStorage#delete(java.lang.Object) } of every
+ * storage using the database once it has been built. Allows
+ * substring matches without scanning the entity table for data sets which are
+ * too large to be kept in a {@link StringFieldValueIndex}.
+ *
+ * @author richter
+ */
+final class TrigramIndex {
+    private final static Logger LOGGER = LoggerFactory.getLogger(TrigramIndex.class);
+    public final static String INDEX_TABLE_NAME = "STRING_FIELD_INDEX";
+    public final static String VALUE_TABLE_NAME = "STRING_FIELD_VALUE";
+    public final static String TRIGRAM_TABLE_NAME = "STRING_FIELD_TRIGRAM";
+    /**
+     * The maximum length of values which are indexed.
+     */
+    public final static int VALUE_LENGTH_MAX = 4000;
+    /**
+     * The maximum length of the string representation of entity IDs.
+     */
+    public final static int ENTITY_ID_LENGTH_MAX = 128;
+    /**
+     * The maximum length of entity class and field names.
+     */
+    public final static int NAME_LENGTH_MAX = 255;
+    private final static int GRAM_LENGTH = 3;
+    private final static char LIKE_ESCAPE = '!';
+    private final Class<?> entityClass;
+    private final String fieldName;
+    private final Field field;
+    private final String key;
+
+    TrigramIndex(Class<?> entityClass,
+            String fieldName) {
+        this.entityClass = entityClass;
+        this.fieldName = fieldName;
+        this.field = StringFieldValueIndex.retrieveField(entityClass,
+                fieldName);
+        this.field.setAccessible(true);
+        this.key = createKey(entityClass,
+                fieldName);
+    }
+
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    /**
+     * Reads the value of the indexed field from {@code entity}.
+     * @param entity an instance of the entity class
+     * @return the field value
+     */
+    String getValue(Object entity) {
+        try {
+            return (String) field.get(entity);
+        } catch (IllegalAccessException ex) {
+            //field is accessible
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Creates the key of the index of {@code fieldName} of
+     * {@code entityClass}.
+     * @return the hexadecimal SHA-1 hash of the class name and the field name
+     */
+    private static String createKey(Class<?> entityClass,
+            String fieldName) {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException ex) {
+            //every Java platform is required to support SHA-1
+            throw new IllegalStateException(ex);
+        }
+        messageDigest.update(entityClass.getName().getBytes(StandardCharsets.UTF_8));
+        messageDigest.update((byte) 0);
+        byte[] digest = messageDigest.digest(fieldName.getBytes(StandardCharsets.UTF_8));
+        StringBuilder retValue = new StringBuilder(digest.length*2);
+        for(byte digestByte : digest) {
+            retValue.append(String.format("%02x", digestByte));
+        }
+        return retValue.toString();
+    }
+
+    /**
+     * Creates the side tables if they don't exist.
+     * @param connection the connection to use
+     * @throws SQLException if an exception occurs during the creation
+     */
+    static void createTablesIfNotExist(Connection connection) throws SQLException {
+        createTableIfNotExists(connection,
+                INDEX_TABLE_NAME,
+                String.format("CREATE TABLE %s ("
+                        + "INDEX_KEY CHAR(40) NOT NULL, "
+                        + "ENTITY_CLASS VARCHAR(%d) NOT NULL, "
+                        + "FIELD_NAME VARCHAR(%d) NOT NULL, "
+                        + "PRIMARY KEY (INDEX_KEY))",
+                        INDEX_TABLE_NAME,
+                        NAME_LENGTH_MAX,
+                        NAME_LENGTH_MAX),
+                String.format("CREATE INDEX %s_ENTITY_CLASS ON %s (ENTITY_CLASS)",
+                        INDEX_TABLE_NAME,
+                        INDEX_TABLE_NAME));
+        createTableIfNotExists(connection,
+                VALUE_TABLE_NAME,
+                String.format("CREATE TABLE %s ("
+                        + "INDEX_KEY CHAR(40) NOT NULL, "
+                        + "ENTITY_ID VARCHAR(%d) NOT NULL, "
+                        + "FIELD_VALUE VARCHAR(%d) NOT NULL, "
+                        + "PRIMARY KEY (INDEX_KEY, ENTITY_ID))",
+                        VALUE_TABLE_NAME,
+                        ENTITY_ID_LENGTH_MAX,
+                        VALUE_LENGTH_MAX));
+        createTableIfNotExists(connection,
+                TRIGRAM_TABLE_NAME,
+                String.format("CREATE TABLE %s ("
+                        + "INDEX_KEY CHAR(40) NOT NULL, "
+                        + "TRIGRAM VARCHAR(%d) NOT NULL, "
+                        + "ENTITY_ID VARCHAR(%d) NOT NULL)",
+                        TRIGRAM_TABLE_NAME,
+                        GRAM_LENGTH,
+                        ENTITY_ID_LENGTH_MAX),
+                String.format("CREATE INDEX %s_TRIGRAM ON %s (INDEX_KEY, TRIGRAM, ENTITY_ID)",
+                        TRIGRAM_TABLE_NAME,
+                        TRIGRAM_TABLE_NAME),
+                String.format("CREATE INDEX %s_ENTITY_ID ON %s (INDEX_KEY, ENTITY_ID)",
+                        TRIGRAM_TABLE_NAME,
+                        TRIGRAM_TABLE_NAME));
+    }
+
+    private static void createTableIfNotExists(Connection connection,
+            String tableName,
+            String... createStatements) throws SQLException {
+        if(checkTableExists(connection, tableName)) {
+            return;
+        }
+        try (Statement statement = connection.createStatement()) {
+            for(String createStatement : createStatements) {
+                statement.executeUpdate(createStatement);
+            }
+        } catch(SQLException ex) {
+            if(!checkTableExists(connection, tableName)) {
+                throw ex;
+            }
+            //created by another instance in the meantime
+            LOGGER.debug(String.format("table %s has been created concurrently",
+                    tableName),
+                    ex);
+        }
+    }
+
+    /**
+     * Checks whether the side tables have been created.
+     * @param connection the connection to use
+     * @return {@code true} if the tables exist, {@code false} otherwise
+     * @throws SQLException if an exception occurs during the check
+     */
+    static boolean checkTablesExist(Connection connection) throws SQLException {
+        return checkTableExists(connection,
+                INDEX_TABLE_NAME);
+            //the index table is only filled after all tables have been
+            //created
+    }
+
+    /**
+     * Checks whether the table exists in upper or lower case because
+     * databases differ in the case they use for unquoted identifiers.
+     */
+    private static boolean checkTableExists(Connection connection,
+            String tableName) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        for(String tableNameCase : new String[] {tableName,
+                tableName.toLowerCase(Locale.ROOT)}) {
+            try (ResultSet resultSet = metaData.getTables(null,
+                    null,
+                    tableNameCase,
+                    new String[] {"TABLE"})) {
+                if(resultSet.next()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the index has been built completely.
+     * @param connection the connection to use
+     * @return {@code true} if the index has been built, {@code false}
+     *     otherwise
+     * @throws SQLException if an exception occurs during the query
+     */
+    boolean isBuilt(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(String.format("SELECT INDEX_KEY FROM %s WHERE INDEX_KEY = ?",
+                INDEX_TABLE_NAME))) {
+            statement.setString(1, key);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next();
+            }
+        }
+    }
+
+    /**
+     * Removes the rows of an incomplete build.
+     * @param connection the connection to use
+     * @throws SQLException if an exception occurs during the removal
+     */
+    void clear(Connection connection) throws SQLException {
+        for(String tableName : new String[] {VALUE_TABLE_NAME,
+                TRIGRAM_TABLE_NAME}) {
+            try (PreparedStatement statement = connection.prepareStatement(String.format("DELETE FROM %s WHERE INDEX_KEY = ?",
+                    tableName))) {
+                statement.setString(1, key);
+                statement.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Marks the index as built.
+     * @param connection the connection to use
+     * @throws SQLException if an exception occurs during the insertion
+     */
+    void markBuilt(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(String.format("INSERT INTO %s (INDEX_KEY, ENTITY_CLASS, FIELD_NAME) VALUES (?, ?, ?)",
+                INDEX_TABLE_NAME))) {
+            statement.setString(1, key);
+            statement.setString(2, entityClass.getName());
+            statement.setString(3, fieldName);
+            statement.executeUpdate();
+        }
+    }
+
+    /**
+     * Retrieves the names of the fields which have a built index by the name
+     * of their entity class.
+     * @param connection the connection to use
+     * @param entityClassNames the names of the entity classes to retrieve
+     *     the indexed fields of
+     * @return the indexed field names by entity class name, entity classes
+     *     without built index are omitted
+     * @throws SQLException if an exception occurs during the query
+     */
+    static Map<String, List<String>> retrieveBuiltFieldNames(Connection connection,
+            Collection<String> entityClassNames) throws SQLException {
+        StringBuilder query = new StringBuilder(128);
+        query.append(String.format("SELECT ENTITY_CLASS, FIELD_NAME FROM %s WHERE ENTITY_CLASS IN (",
+                INDEX_TABLE_NAME));
+        for(int i=0; i<entityClassNames.size(); i++) {
+            query.append(i == 0 ? "?" : ", ?");
+        }
+        query.append(')');
+        Map<String, List<String>> retValue = new HashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(query.toString())) {
+            int parameterIndex = 1;
+            for(String entityClassName : entityClassNames) {
+                statement.setString(parameterIndex++, entityClassName);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while(resultSet.next()) {
+                    retValue.computeIfAbsent(resultSet.getString(1),
+                            key -> new ArrayList<>())
+                            .add(resultSet.getString(2));
+                }
+            }
+        }
+        return retValue;
+    }
+
+    /**
+     * Removes the value of the entity with the ID {@code id}.
+     * @param connection the connection to use
+     * @param id the entity ID
+     * @throws SQLException if an exception occurs during the removal
+     */
+    void remove(Connection connection,
+            Object id) throws SQLException {
+        String entityId = String.valueOf(id);
+        for(String tableName : new String[] {VALUE_TABLE_NAME,
+                TRIGRAM_TABLE_NAME}) {
+            try (PreparedStatement statement = connection.prepareStatement(String.format("DELETE FROM %s WHERE INDEX_KEY = ? AND ENTITY_ID = ?",
+                    tableName))) {
+                statement.setString(1, key);
+                statement.setString(2, entityId);
+                statement.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Adds the values of several entities in batches.
+     * @param connection the connection to use
+     * @param ids the entity IDs
+     * @param values the field values of the entities with {@code ids} which
+     *     might be {@code null}
+     * @throws SQLException if an exception occurs during the insertion
+     */
+    void add(Connection connection,
+            List<?> ids,
+            List<String> values) throws SQLException {
+        try (PreparedStatement valueStatement = connection.prepareStatement(String.format("INSERT INTO %s (INDEX_KEY, ENTITY_ID, FIELD_VALUE) VALUES (?, ?, ?)",
+                        VALUE_TABLE_NAME));
+                PreparedStatement trigramStatement = connection.prepareStatement(String.format("INSERT INTO %s (INDEX_KEY, TRIGRAM, ENTITY_ID) VALUES (?, ?, ?)",
+                        TRIGRAM_TABLE_NAME))) {
+            for(int i=0; i<ids.size(); i++) {
+                String value = values.get(i);
+                if(value == null || value.length() > VALUE_LENGTH_MAX) {
+                    //null values can't be matched by LIKE
+                    continue;
+                }
+                String entityId = String.valueOf(ids.get(i));
+                if(entityId.length() > ENTITY_ID_LENGTH_MAX) {
+                    throw new IllegalArgumentException(String.format("string representation of ID %s is longer than %d characters",
+                            entityId,
+                            ENTITY_ID_LENGTH_MAX));
+                }
+                valueStatement.setString(1, key);
+                valueStatement.setString(2, entityId);
+                valueStatement.setString(3, value);
+                valueStatement.addBatch();
+                for(String trigram : generateTrigrams(value)) {
+                    trigramStatement.setString(1, key);
+                    trigramStatement.setString(2, trigram);
+                    trigramStatement.setString(3, entityId);
+                    trigramStatement.addBatch();
+                }
+            }
+            valueStatement.executeBatch();
+            trigramStatement.executeBatch();
+        }
+    }
+
+    private static Set<String> generateTrigrams(String value) {
+        String lowerCaseValue = value.toLowerCase(Locale.ROOT);
+            //lower case before splitting in order to not change the length of
+            //trigrams
+        Set<String> retValue = new LinkedHashSet<>();
+        for(int i=0; i+GRAM_LENGTH<=lowerCaseValue.length(); i++) {
+            retValue.add(lowerCaseValue.substring(i, i+GRAM_LENGTH));
+        }
+        return retValue;
+    }
+
+    private static String escapeLike(String text) {
+        StringBuilder retValue = new StringBuilder(text.length()+2);
+        for(char character : text.toCharArray()) {
+            if(character == LIKE_ESCAPE || character == '%' || character == '_') {
+                retValue.append(LIKE_ESCAPE);
+            }
+            retValue.append(character);
+        }
+        return retValue.toString();
+    }
+
+    /**
+     * Finds the distinct values which contain {@code text}. Texts shorter than
+     * a trigram are matched with a {@code LIKE} on the values of this index.
+     * @param connection the connection to use
+     * @param text the text to search
+     * @param limit the maximum number of values to return
+     * @return the values in their natural order with values starting with
+     *     {@code text} first
+     * @throws SQLException if an exception occurs during the query
+     */
+    List<String> find(Connection connection,
+            String text,
+            int limit) throws SQLException {
+        Set<String> trigrams = generateTrigrams(text);
+        StringBuilder query = new StringBuilder(256);
+        query.append(String.format("SELECT DISTINCT v.FIELD_VALUE FROM %s v ",
+                VALUE_TABLE_NAME));
+        if(!trigrams.isEmpty()) {
+            query.append(String.format("JOIN (SELECT t.ENTITY_ID FROM %s t "
+                    + "WHERE t.INDEX_KEY = ? AND t.TRIGRAM IN (",
+                    TRIGRAM_TABLE_NAME));
+            for(int i=0; i<trigrams.size(); i++) {
+                query.append(i == 0 ? "?" : ", ?");
+            }
+            query.append(") GROUP BY t.ENTITY_ID HAVING COUNT(DISTINCT t.TRIGRAM) = ?) c "
+                    + "ON c.ENTITY_ID = v.ENTITY_ID ");
+        }
+        query.append(String.format("WHERE v.INDEX_KEY = ? AND v.FIELD_VALUE LIKE ? ESCAPE '%c' "
+                + "ORDER BY v.FIELD_VALUE",
+                LIKE_ESCAPE));
+        try (PreparedStatement statement = connection.prepareStatement(query.toString())) {
+            int parameterIndex = 1;
+            if(!trigrams.isEmpty()) {
+                statement.setString(parameterIndex++, key);
+                for(String trigram : trigrams) {
+                    statement.setString(parameterIndex++, trigram);
+                }
+                statement.setInt(parameterIndex++, trigrams.size());
+            }
+            statement.setString(parameterIndex++, key);
+            statement.setString(parameterIndex, "%"+escapeLike(text)+"%");
+            statement.setMaxRows(limit);
+            List<String> retValue = new ArrayList<>(limit);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while(resultSet.next()) {
+                    retValue.add(resultSet.getString(1));
+                }
+            }
+            retValue.sort(Comparator.comparing((String value) -> !value.startsWith(text)));
+                //stable, i.e. keeps the natural order otherwise
+            return retValue;
+        }
+    }
+}
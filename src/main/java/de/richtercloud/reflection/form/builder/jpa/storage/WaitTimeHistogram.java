@@ -0,0 +1,91 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.storage;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe histogram of wait times with buckets of exponentially growing
+ * size. Bucket {@code 0} counts wait times below one microsecond, bucket
+ * {@code i} counts wait times between 2<sup>i-1</sup> (inclusive) and
+ * 2<sup>i</sup> (exclusive) microseconds.
+ *
+ * @author richter
+ */
+public class WaitTimeHistogram {
+    private final static int BUCKET_COUNT = 48;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records a wait time.
+     * @param waitTimeNanos the wait time in nanoseconds
+     */
+    public void record(long waitTimeNanos) {
+        long micros = Math.max(0, waitTimeNanos)/1000;
+        int bucket = Math.min(64-Long.numberOfLeadingZeros(micros),
+                BUCKET_COUNT-1);
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        long max = maxNanos.get();
+        while(waitTimeNanos > max && !maxNanos.compareAndSet(max, waitTimeNanos)) {
+            max = maxNanos.get();
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Gets an upper bound of the wait time below which {@code percentile}
+     * percent of the recorded wait times lie.
+     * @param percentile the percentile between {@code 0} and {@code 100}
+     * @return the upper bound in nanoseconds of the bucket containing the
+     *     percentile (limited by the maximum recorded wait time) or {@code 0}
+     *     if nothing has been recorded
+     * @throws IllegalArgumentException if {@code percentile} is out of range
+     */
+    public long getPercentileNanos(double percentile) {
+        if(percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile has to be between 0 and 100");
+        }
+        long total = 0;
+        long[] snapshot = new long[BUCKET_COUNT];
+        for(int i=0; i<BUCKET_COUNT; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if(total == 0) {
+            return 0;
+        }
+        long threshold = (long) Math.ceil(total*percentile/100);
+        long cumulated = 0;
+        for(int i=0; i<BUCKET_COUNT; i++) {
+            cumulated += snapshot[i];
+            if(cumulated >= threshold && snapshot[i] > 0) {
+                return Math.min((1L << i)*1000,
+                        getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class MemorySequentialIdGeneratorTest {
+    private final static int THREAD_COUNT = 8;
+    private final static int ID_COUNT = 10000;
+    private final static List<Object> BATCH = Collections.nCopies(5, new Object());
+
+    /**
+     * Tests that IDs requested concurrently through
+     * {@link MemorySequentialIdGenerator#getNextId(java.lang.Object) } and
+     * {@link MemorySequentialIdGenerator#getNextIds(java.util.List) } are
+     * unique.
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testGetNextIdConcurrent() throws Exception {
+        File checkpointFile = File.createTempFile(MemorySequentialIdGeneratorTest.class.getSimpleName(), null);
+        try (MemorySequentialIdGenerator instance = new MemorySequentialIdGenerator(checkpointFile,
+                16, //blockSize
+                100 //checkpointInterval
+        )) {
+            ExecutorService executorService = Executors.newFixedThreadPool(THREAD_COUNT);
+            List<Future<List<Long>>> futures = new LinkedList<>();
+            for(int i=0; i<THREAD_COUNT; i++) {
+                futures.add(executorService.submit(() -> {
+                    List<Long> ids = new ArrayList<>(ID_COUNT+BATCH.size()*ID_COUNT/100);
+                    for(int j=0; j<ID_COUNT; j++) {
+                        ids.add(instance.getNextId(null));
+                        if(j % 100 == 0) {
+                            ids.addAll(instance.getNextIds(BATCH));
+                        }
+                    }
+                    return ids;
+                }));
+            }
+            executorService.shutdown();
+            Set<Long> ids = new HashSet<>();
+            int count = 0;
+            for(Future<List<Long>> future : futures) {
+                List<Long> threadIds = future.get();
+                count += threadIds.size();
+                ids.addAll(threadIds);
+            }
+            assertEquals(count, ids.size());
+        }finally {
+            checkpointFile.delete();
+        }
+    }
+
+    /**
+     * Tests that a generator which hasn't been closed (e.g. because the JVM
+     * crashed) doesn't reissue IDs after a restart.
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testRestartFromCheckpoint() throws Exception {
+        File checkpointFile = File.createTempFile(MemorySequentialIdGeneratorTest.class.getSimpleName(), null);
+        try {
+            MemorySequentialIdGenerator instance = new MemorySequentialIdGenerator(checkpointFile,
+                    16, //blockSize
+                    100 //checkpointInterval
+            );
+            long max = 0;
+            for(int i=0; i<1000; i++) {
+                max = Math.max(max, instance.getNextId(null));
+            }
+            for(Long id : instance.getNextIds(BATCH)) {
+                max = Math.max(max, id);
+            }
+            //not closed
+            MemorySequentialIdGenerator restarted = new MemorySequentialIdGenerator(checkpointFile,
+                    16, //blockSize
+                    100 //checkpointInterval
+            );
+            long first = restarted.getNextId(null);
+            assertTrue(first > max);
+            for(Long id : restarted.getNextIds(BATCH)) {
+                assertTrue(id > max);
+            }
+            //IDs between the high-water mark and the checkpoint are skipped,
+            //but not more than the checkpoint interval
+            assertTrue(first <= max+100+16);
+            restarted.close();
+        }finally {
+            checkpointFile.delete();
+        }
+    }
+
+    /**
+     * Tests that {@link MemorySequentialIdGenerator#close() } writes the exact
+     * high-water mark so that no IDs are skipped after a restart and that
+     * uncovered IDs can't be requested after closing.
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testClose() throws Exception {
+        File checkpointFile = File.createTempFile(MemorySequentialIdGeneratorTest.class.getSimpleName(), null);
+        try {
+            MemorySequentialIdGenerator instance = new MemorySequentialIdGenerator(checkpointFile,
+                    1, //blockSize
+                    100 //checkpointInterval
+            );
+            List<Long> ids = instance.getNextIds(BATCH);
+            long last = ids.get(ids.size()-1);
+            instance.close();
+            instance.close();
+            //closing twice has no effect
+            try {
+                instance.getNextIds(BATCH);
+                fail("IllegalStateException expected");
+            }catch(IllegalStateException expected) {
+                //expected
+            }
+            try (MemorySequentialIdGenerator restarted = new MemorySequentialIdGenerator(checkpointFile,
+                    1, //blockSize
+                    100 //checkpointInterval
+            )) {
+                assertEquals(Long.valueOf(last+1),
+                        restarted.getNextId(null));
+            }
+        }finally {
+            checkpointFile.delete();
+        }
+    }
+
+    @Test
+    public void testCloseInstance() {
+        //the instance without checkpoint can't be closed
+        MemorySequentialIdGenerator.getInstance().close();
+        assertNotNull(MemorySequentialIdGenerator.getInstance().getNextId(null));
+    }
+}
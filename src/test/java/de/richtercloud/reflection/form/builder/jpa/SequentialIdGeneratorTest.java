@@ -0,0 +1,106 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa;
+
+import de.richtercloud.reflection.form.builder.jpa.storage.PersistenceStorage;
+import javax.persistence.Entity;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import static org.mockito.Mockito.anyLong;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ * @author richter
+ */
+public class SequentialIdGeneratorTest {
+
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testPerEntityHierarchySequenceName() {
+        assertEquals("sequential-id-root",
+                SequentialIdGenerator.perEntityHierarchySequenceName(Root.class));
+        assertEquals("sequential-id-root",
+                SequentialIdGenerator.perEntityHierarchySequenceName(SubEntity.class));
+        assertEquals("sequential-id-root",
+                SequentialIdGenerator.perEntityHierarchySequenceName(NonEntitySub.class));
+        //same simple name in another class
+        assertEquals("sequential-id-otherroot",
+                SequentialIdGenerator.perEntityHierarchySequenceName(Other.Root.class));
+    }
+
+    /**
+     * Tests that a mapped sequence continues the values of
+     * {@link SequentialIdGenerator#SEQUENCE_NAME_DEFAULT} so that its IDs
+     * don't collide with the ones of persisted entities.
+     * @throws Exception if an unexpected exception occurs
+     */
+    @Test
+    public void testGetNextIdSeeded() throws Exception {
+        PersistenceStorage<Long> storage = mock(PersistenceStorage.class);
+        when(storage.checkSequenceExists(SequentialIdGenerator.SEQUENCE_NAME_DEFAULT)).thenReturn(true);
+        when(storage.checkSequenceExists("sequential-id-root")).thenReturn(false);
+        when(storage.getNextSequenceValue(SequentialIdGenerator.SEQUENCE_NAME_DEFAULT)).thenReturn(42L);
+        when(storage.getNextSequenceValue("sequential-id-root")).thenReturn(42L);
+        SequentialIdGenerator instance = new SequentialIdGenerator(storage,
+                SequentialIdGenerator::perEntityHierarchySequenceName);
+        Long result = instance.getNextId(new SubEntity());
+        assertEquals(Long.valueOf(42L), result);
+        verify(storage).createSequence("sequential-id-root",
+                42L);
+        verify(storage, never()).createSequence(anyString());
+    }
+
+    /**
+     * Tests that a mapped sequence starts at the default initial value if
+     * there's no {@link SequentialIdGenerator#SEQUENCE_NAME_DEFAULT} to
+     * continue.
+     * @throws Exception if an unexpected exception occurs
+     */
+    @Test
+    public void testGetNextIdNotSeeded() throws Exception {
+        PersistenceStorage<Long> storage = mock(PersistenceStorage.class);
+        when(storage.checkSequenceExists(anyString())).thenReturn(false);
+        when(storage.getNextSequenceValue("sequential-id-root")).thenReturn(1L);
+        SequentialIdGenerator instance = new SequentialIdGenerator(storage,
+                SequentialIdGenerator::perEntityHierarchySequenceName);
+        instance.getNextId(new Root());
+        verify(storage).createSequence("sequential-id-root");
+        verify(storage, never()).createSequence(anyString(), anyLong());
+        verify(storage, never()).getNextSequenceValue(SequentialIdGenerator.SEQUENCE_NAME_DEFAULT);
+    }
+
+    @Entity
+    public static class Root {
+    }
+
+    @Entity
+    public static class SubEntity extends Root {
+    }
+
+    public static class NonEntitySub extends Root {
+    }
+
+    public static class Other {
+
+        @Entity(name = "OtherRoot")
+        public static class Root {
+        }
+    }
+}
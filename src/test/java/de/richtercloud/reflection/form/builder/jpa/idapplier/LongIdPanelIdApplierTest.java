@@ -0,0 +1,126 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.idapplier;
+
+import de.richtercloud.message.handler.MessageHandler;
+import de.richtercloud.reflection.form.builder.jpa.SequentialIdGenerator;
+import de.richtercloud.reflection.form.builder.jpa.panels.LongIdPanel;
+import de.richtercloud.reflection.form.builder.jpa.storage.PersistenceStorage;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import static org.mockito.Mockito.anyInt;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ *
+ * @author richter
+ */
+public class LongIdPanelIdApplierTest {
+
+    /**
+     * Tests that the IDs of all entities without an ID are reserved with one
+     * sequence round trip.
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testApplyIds() throws Exception {
+        PersistenceStorage<Long> storage = mock(PersistenceStorage.class);
+        when(storage.checkSequenceExists(anyString())).thenReturn(true);
+        when(storage.getNextSequenceValues(anyString(), anyInt())).thenReturn(new LinkedList<>(Arrays.asList(10L, 11L, 12L)));
+        SequentialIdGenerator idGenerator = new SequentialIdGenerator(storage);
+        LongIdPanelIdApplier instance = new LongIdPanelIdApplier(idGenerator);
+        MessageHandler messageHandler = mock(MessageHandler.class);
+        Map<Object, Set<LongIdPanel>> idFieldComponents = new HashMap<>();
+        List<LongIdPanel> components = new LinkedList<>();
+        for(int i=0; i<3; i++) {
+            LongIdPanel component = new LongIdPanel(new Object(),
+                    null, //initialValue
+                    messageHandler,
+                    false, //readOnly
+                    instance);
+            components.add(component);
+            idFieldComponents.put(new Object(),
+                    new HashSet<>(Arrays.asList(component)));
+        }
+        LongIdPanel assignedComponent = new LongIdPanel(new Object(),
+                1L, //initialValue
+                messageHandler,
+                false, //readOnly
+                instance);
+        idFieldComponents.put(new Object(),
+                new HashSet<>(Arrays.asList(assignedComponent)));
+        instance.applyIds(idFieldComponents);
+        verify(storage, times(1)).getNextSequenceValues(SequentialIdGenerator.SEQUENCE_NAME_DEFAULT,
+                3);
+        verify(storage, never()).getNextSequenceValue(anyString());
+        Set<Long> expResult = new HashSet<>(Arrays.asList(10L, 11L, 12L));
+        Set<Long> result = new HashSet<>();
+        for(LongIdPanel component : components) {
+            result.add(component.getValue());
+        }
+        assertEquals(expResult, result);
+        assertEquals(Long.valueOf(1L), assignedComponent.getValue());
+    }
+
+    /**
+     * Tests that no sequence round trip happens if all entities already have
+     * an ID.
+     */
+    @Test
+    public void testApplyIdsAssigned() throws Exception {
+        PersistenceStorage<Long> storage = mock(PersistenceStorage.class);
+        when(storage.checkSequenceExists(anyString())).thenReturn(true);
+        SequentialIdGenerator idGenerator = new SequentialIdGenerator(storage);
+        LongIdPanelIdApplier instance = new LongIdPanelIdApplier(idGenerator);
+        LongIdPanel component = new LongIdPanel(new Object(),
+                1L, //initialValue
+                mock(MessageHandler.class),
+                false, //readOnly
+                instance);
+        instance.applyIds(Collections.singletonMap(new Object(),
+                new HashSet<>(Arrays.asList(component))));
+        verify(storage, never()).getNextSequenceValues(anyString(), anyInt());
+        verify(storage, never()).getNextSequenceValue(anyString());
+    }
+
+    /**
+     * Tests that the default implementation applies the ID of every entity.
+     */
+    @Test
+    public void testApplyIdsDefault() throws IdApplicationException {
+        Map<Object, Set<LongIdPanel>> applied = new HashMap<>();
+        IdApplier<LongIdPanel> instance = applied::put;
+        Object entity1 = new Object();
+        Object entity2 = new Object();
+        Map<Object, Set<LongIdPanel>> idFieldComponents = new HashMap<>();
+        idFieldComponents.put(entity1, new HashSet<>());
+        idFieldComponents.put(entity2, new HashSet<>());
+        instance.applyIds(idFieldComponents);
+        assertEquals(idFieldComponents, applied);
+    }
+}
@@ -16,8 +16,16 @@ package de.richtercloud.reflection.form.builder.jpa.panels;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
 import org.junit.Test;
 
 /**
@@ -35,7 +43,126 @@ public class AbstractFileQueryHistoryEntryStorageTest {
         instance.shutdown();
     }
 
+    /**
+     * Tests that many rapid stores are persisted with few writes and that the
+     * last state is persisted.
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testStoreDebounced() throws Exception {
+        File file = File.createTempFile(AbstractFileQueryHistoryEntryStorageTest.class.getSimpleName(), null);
+        AbstractFileQueryHistoryEntryStorageImpl instance = new AbstractFileQueryHistoryEntryStorageImpl(file,
+                200 //debounceInterval
+        );
+        try {
+            for(int i=0; i<100; i++) {
+                instance.store(Object.class,
+                        new QueryHistoryEntry(String.format("query %d", i),
+                                1, //usageCount
+                                new Date() //lastUsage
+                        ));
+            }
+            long deadline = System.nanoTime()+TimeUnit.SECONDS.toNanos(10);
+            while(instance.storeCount.get() == 0) {
+                assertTrue(System.nanoTime() < deadline);
+                Thread.sleep(10);
+            }
+            Thread.sleep(400);
+                //two debounce intervals
+            assertTrue(instance.storeCount.get() <= 2);
+            assertTrue(instance.lastHead.get(Object.class).contains(new QueryHistoryEntry("query 99")));
+            int storeCount = instance.storeCount.get();
+            Thread.sleep(400);
+            assertEquals("nothing ought to be stored without changes",
+                    storeCount,
+                    instance.storeCount.get());
+        }finally {
+            instance.shutdown();
+            file.delete();
+        }
+        assertTrue(instance.lastHead.get(Object.class).contains(new QueryHistoryEntry("query 99")));
+    }
+
+    /**
+     * Tests that changes during the debounce interval are stored at shutdown
+     * without waiting and that nothing is stored if nothing changed.
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testShutdownStoresPending() throws Exception {
+        File file = File.createTempFile(AbstractFileQueryHistoryEntryStorageTest.class.getSimpleName(), null);
+        AbstractFileQueryHistoryEntryStorageImpl instance = new AbstractFileQueryHistoryEntryStorageImpl(file,
+                60000 //debounceInterval
+        );
+        instance.shutdown();
+        assertEquals(0, instance.storeCount.get());
+        instance = new AbstractFileQueryHistoryEntryStorageImpl(file,
+                60000 //debounceInterval
+        );
+        for(int i=0; i<10; i++) {
+            instance.store(Object.class,
+                    new QueryHistoryEntry(String.format("query %d", i),
+                            1, //usageCount
+                            new Date() //lastUsage
+                    ));
+        }
+        long start = System.nanoTime();
+        instance.shutdown();
+        assertTrue(System.nanoTime()-start < TimeUnit.SECONDS.toNanos(10));
+        assertEquals(1, instance.storeCount.get());
+        assertEquals(10, instance.lastHead.get(Object.class).size());
+        file.delete();
+    }
+
+    /**
+     * Tests that scheduled copies are coalesced to the latest one and that
+     * scheduling doesn't block if the bounded queue is full while the file
+     * store thread is busy.
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testScheduleStoreCoalesced() throws Exception {
+        File file = File.createTempFile(AbstractFileQueryHistoryEntryStorageTest.class.getSimpleName(), null);
+        AbstractFileQueryHistoryEntryStorageImpl instance = new AbstractFileQueryHistoryEntryStorageImpl(file,
+                0 //debounceInterval
+        );
+        instance.storeBlock = new CountDownLatch(1);
+        try {
+            instance.scheduleStore(createHead(0));
+            long deadline = System.nanoTime()+TimeUnit.SECONDS.toNanos(10);
+            while(instance.storeCount.get() == 0) {
+                assertTrue(System.nanoTime() < deadline);
+                Thread.sleep(10);
+            }
+            //the file store thread is blocked in store now
+            for(int i=1; i<=100; i++) {
+                instance.scheduleStore(createHead(i));
+                    //more than the capacity of the queue, mustn't block
+            }
+            instance.storeBlock.countDown();
+        }finally {
+            instance.shutdown();
+            file.delete();
+        }
+        assertEquals(2, instance.storeCount.get());
+            //the first copy and the latest of the coalesced ones
+        assertEquals(createHead(100), instance.lastHead);
+    }
+
+    private static Map<Class<?>, List<QueryHistoryEntry>> createHead(int i) {
+        Map<Class<?>, List<QueryHistoryEntry>> retValue = new HashMap<>();
+        retValue.put(Object.class,
+                new LinkedList<>(Collections.singletonList(new QueryHistoryEntry(String.format("query %d", i)))));
+        return retValue;
+    }
+
     private class AbstractFileQueryHistoryEntryStorageImpl extends AbstractFileQueryHistoryEntryStorage {
+        private final AtomicInteger storeCount = new AtomicInteger();
+        private volatile Map<Class<?>, List<QueryHistoryEntry>> lastHead;
+        private volatile CountDownLatch storeBlock;
 
         protected AbstractFileQueryHistoryEntryStorageImpl(File file) throws ClassNotFoundException,
                 IOException {
@@ -44,9 +171,25 @@ public class AbstractFileQueryHistoryEntryStorageTest {
             );
         }
 
+        protected AbstractFileQueryHistoryEntryStorageImpl(File file,
+                long debounceInterval) throws ClassNotFoundException,
+                IOException {
+            super(file,
+                    null, //messageHandler
+                    debounceInterval);
+        }
+
         @Override
         public void store(Map<Class<?>, List<QueryHistoryEntry>> head) throws IOException {
-            //do nothing
+            lastHead = head;
+            storeCount.incrementAndGet();
+            if(storeBlock != null) {
+                try {
+                    storeBlock.await();
+                } catch (InterruptedException ex) {
+                    throw new IOException(ex);
+                }
+            }
         }
 
         @Override
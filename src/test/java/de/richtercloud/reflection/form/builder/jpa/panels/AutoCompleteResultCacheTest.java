@@ -0,0 +1,154 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.panels;
+
+import de.richtercloud.reflection.form.builder.jpa.storage.StringFieldValueIndex;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class AutoCompleteResultCacheTest {
+
+    /**
+     * Test of find method, of class AutoCompleteResultCache.
+     */
+    @Test
+    public void testFindRefinement() {
+        CountingIndex index = new CountingIndex(Arrays.asList("Mueller", "Muell", "Amuel", "Mueh"));
+        AutoCompleteResultCache instance = new AutoCompleteResultCache();
+        assertEquals(Arrays.asList("Mueh", "Muell", "Mueller"),
+                instance.find(index, "Mue", 10));
+        assertEquals(1, index.findCount);
+        assertEquals(Arrays.asList("Muell", "Mueller"),
+                instance.find(index, "Muel", 10));
+        assertEquals(Arrays.asList("Mueller"),
+                instance.find(index, "Mueller", 10));
+        assertEquals(Arrays.asList("Muell", "Mueller"),
+                instance.find(index, "Muel", 10));
+        assertEquals(1, index.findCount);
+        assertEquals(3, instance.getHitCount());
+        assertEquals(2, instance.getRefinementHitCount());
+        assertEquals(1, instance.getMissCount());
+        assertEquals(0.75, instance.getHitRatio(), 0.0);
+    }
+
+    /**
+     * Tests that truncated results aren't used for refinements.
+     */
+    @Test
+    public void testFindTruncated() {
+        CountingIndex index = new CountingIndex(Arrays.asList("ab", "abc", "abcd"));
+        AutoCompleteResultCache instance = new AutoCompleteResultCache();
+        assertEquals(Arrays.asList("ab", "abc"),
+                instance.find(index, "a", 2));
+        assertEquals(Arrays.asList("abc", "abcd"),
+                instance.find(index, "abc", 2));
+        assertEquals(2, index.findCount);
+        assertEquals(Arrays.asList("ab", "abc"),
+                instance.find(index, "a", 2));
+        assertEquals(2, index.findCount);
+    }
+
+    /**
+     * Tests that changes of the index invalidate the cached results.
+     */
+    @Test
+    public void testFindInvalidation() {
+        CountingIndex index = new CountingIndex(Arrays.asList("ab"));
+        AutoCompleteResultCache instance = new AutoCompleteResultCache();
+        assertEquals(Arrays.asList("ab"),
+                instance.find(index, "a", 10));
+        index.modificationCount += 1;
+        index.values.add("abc");
+        assertEquals(Arrays.asList("ab", "abc"),
+                instance.find(index, "ab", 10));
+        assertEquals(2, index.findCount);
+        assertEquals(1, instance.getInvalidationCount());
+    }
+
+    /**
+     * Tests that results of a lookup function are cached and invalidated by
+     * the passed modification count.
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testFindLookup() {
+        List<String> lookups = new ArrayList<>();
+        AutoCompleteResultCache.ValueLookup<RuntimeException> lookup = (text, limit) -> {
+            lookups.add(text);
+            return Arrays.asList("abc", "xabc");
+        };
+        Object source = new Object();
+        AutoCompleteResultCache instance = new AutoCompleteResultCache();
+        assertEquals(Arrays.asList("abc", "xabc"),
+                instance.find(source, 0, lookup, "ab", 10));
+        assertEquals(Arrays.asList("abc", "xabc"),
+                instance.find(source, 0, lookup, "abc", 10));
+        assertEquals(Arrays.asList("ab"), lookups);
+        assertEquals(Arrays.asList("abc", "xabc"),
+                instance.find(source, 1, lookup, "abc", 10));
+        assertEquals(Arrays.asList("ab", "abc"), lookups);
+        assertEquals(1, instance.getInvalidationCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new AutoCompleteResultCache(0);
+    }
+
+    /**
+     * An index which matches a fixed list of values and counts searches.
+     */
+    private static class CountingIndex extends StringFieldValueIndex {
+        private final List<String> values;
+        private int findCount;
+        private long modificationCount;
+
+        CountingIndex(List<String> values) {
+            super(IndexedEntity.class,
+                    "name");
+            this.values = new ArrayList<>(values);
+        }
+
+        @Override
+        public long getModificationCount() {
+            return modificationCount;
+        }
+
+        @Override
+        public List<String> find(String text,
+                int limit) {
+            findCount += 1;
+            List<String> retValue = new ArrayList<>();
+            for(String value : values) {
+                if(value.contains(text)) {
+                    retValue.add(value);
+                }
+            }
+            retValue.sort(null);
+            return retValue.subList(0, Math.min(limit, retValue.size()));
+        }
+    }
+
+    private static class IndexedEntity {
+        private String name;
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.panels;
+
+import de.richtercloud.message.handler.IssueHandler;
+import de.richtercloud.reflection.form.builder.jpa.entities.EntityA;
+import de.richtercloud.reflection.form.builder.jpa.entities.EntityB;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import static org.mockito.Mockito.mock;
+
+/**
+ *
+ * @author richter
+ */
+public class BinaryFileQueryHistoryEntryStorageTest {
+
+    /**
+     * Tests that entries survive a restart including entries of classes which
+     * haven't been accessed before the restart.
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testStore() throws IOException,
+            ClassNotFoundException,
+            QueryHistoryEntryStorageException {
+        File file = File.createTempFile(BinaryFileQueryHistoryEntryStorageTest.class.getSimpleName(), null);
+        IssueHandler issueHandler = mock(IssueHandler.class);
+        QueryHistoryEntry entry0 = new QueryHistoryEntry("a", 1, new Date(1));
+        QueryHistoryEntry entry1 = new QueryHistoryEntry("b", 2, null);
+        QueryHistoryEntry entry2 = new QueryHistoryEntry("c", 3, new Date(3));
+        BinaryFileQueryHistoryEntryStorage instance = new BinaryFileQueryHistoryEntryStorage(file,
+                issueHandler);
+        instance.store(EntityA.class, entry0);
+        instance.store(EntityA.class, entry1);
+        instance.store(EntityB.class, entry2);
+        instance.shutdown();
+        instance = new BinaryFileQueryHistoryEntryStorage(file,
+                issueHandler);
+        QueryHistoryEntry entry3 = new QueryHistoryEntry("d");
+        instance.store(EntityB.class, entry3);
+        instance.shutdown();
+        instance = new BinaryFileQueryHistoryEntryStorage(file,
+                issueHandler);
+        List<QueryHistoryEntry> result = instance.retrieve(EntityA.class);
+        assertEquals(new LinkedList<>(Arrays.asList(entry0, entry1)), result);
+        assertEquals(new Date(1), result.get(0).getLastUsage());
+        assertNull(result.get(1).getLastUsage());
+        assertEquals(2, result.get(1).getUsageCount());
+        assertEquals(new LinkedList<>(Arrays.asList(entry2, entry3)),
+                instance.retrieve(EntityB.class));
+        assertEquals(entry3, instance.getInitialEntry(EntityB.class));
+            //used recently which outweighs the more frequent usage of entry2
+            //at the epoch
+        instance.shutdown();
+    }
+
+    @Test
+    public void testConvertToBinary() throws IOException,
+            ClassNotFoundException {
+        File source = File.createTempFile(BinaryFileQueryHistoryEntryStorageTest.class.getSimpleName(), null);
+        File target = File.createTempFile(BinaryFileQueryHistoryEntryStorageTest.class.getSimpleName(), null);
+        IssueHandler issueHandler = mock(IssueHandler.class);
+        Map<Class<?>, List<QueryHistoryEntry>> expResult = new HashMap<>();
+        expResult.put(EntityA.class, new LinkedList<>(Arrays.asList(new QueryHistoryEntry("a"),
+                new QueryHistoryEntry("b"))));
+        try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(Files.newOutputStream(source.toPath()))) {
+            objectOutputStream.writeObject(expResult);
+        }
+        QueryHistoryEntryFileConverter.convertToBinary(source,
+                target);
+        BinaryFileQueryHistoryEntryStorage instance = new BinaryFileQueryHistoryEntryStorage(target,
+                issueHandler);
+        assertEquals(expResult.get(EntityA.class),
+                instance.retrieve(EntityA.class));
+        instance.shutdown();
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.panels;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class ClassQueryHistoryTest {
+
+    @Test
+    public void testStoreEvictsLowestRanked() {
+        QueryHistoryEntry entry0 = new QueryHistoryEntry("a", 2, null);
+        QueryHistoryEntry entry1 = new QueryHistoryEntry("b", 1, null);
+        QueryHistoryEntry entry2 = new QueryHistoryEntry("c", 1, null);
+        QueryHistoryEntry entry3 = new QueryHistoryEntry("d", 3, null);
+        ClassQueryHistory instance = new ClassQueryHistory(2,
+                Arrays.asList(entry0, entry1, entry2));
+        instance.store(entry3);
+        assertEquals(Arrays.asList(entry0, entry1, entry3),
+                instance.getEntries());
+        assertSame(entry3,
+                instance.getMostUsed());
+    }
+
+    /**
+     * Tests that storing an entry with the same text replaces the existing
+     * entry with its new usage count instead of evicting another entry.
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testStoreReplaces() {
+        QueryHistoryEntry entry0 = new QueryHistoryEntry("a", 1, null);
+        QueryHistoryEntry entry1 = new QueryHistoryEntry("b", 1, null);
+        QueryHistoryEntry entry2 = new QueryHistoryEntry("c", 1, null);
+        ClassQueryHistory instance = new ClassQueryHistory(2,
+                Arrays.asList(entry0, entry1, entry2));
+        assertSame(entry0,
+                instance.getMostUsed());
+        QueryHistoryEntry entry3 = new QueryHistoryEntry("b", 2, null);
+        instance.store(entry3);
+        List<QueryHistoryEntry> result = instance.getEntries();
+        assertEquals(3,
+                result.size());
+        assertSame(entry3,
+                result.get(2));
+        assertSame(entry3,
+                instance.getMostUsed());
+    }
+
+    @Test
+    public void testGetEntriesSnapshot() {
+        QueryHistoryEntry entry0 = new QueryHistoryEntry("a", 1, null);
+        ClassQueryHistory instance = new ClassQueryHistory(2);
+        List<QueryHistoryEntry> snapshot = instance.getEntries();
+        instance.store(entry0);
+        assertTrue(snapshot.isEmpty());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testGetEntriesUnmodifiable() {
+        ClassQueryHistory instance = new ClassQueryHistory(2);
+        instance.store(new QueryHistoryEntry("a", 1, null));
+        instance.getEntries().add(new QueryHistoryEntry("b", 1, null));
+    }
+
+    /**
+     * Tests that matches are ranked by exact match, prefix match and usage
+     * count and that texts shorter and longer than the indexed n-grams are
+     * found.
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testFind() {
+        QueryHistoryEntry entry0 = new QueryHistoryEntry("SELECT a FROM A a", 1, null);
+        QueryHistoryEntry entry1 = new QueryHistoryEntry("SELECT a FROM A a WHERE a.id = 1", 3, null);
+        QueryHistoryEntry entry2 = new QueryHistoryEntry("select b from A b", 2, null);
+        QueryHistoryEntry entry3 = new QueryHistoryEntry("SELECT a FROM A a ORDER BY a.id", 4, null);
+        ClassQueryHistory instance = new ClassQueryHistory(10,
+                Arrays.asList(entry0, entry1, entry2));
+        assertEquals(Arrays.asList(entry0, entry1),
+                instance.find("SELECT a FROM A a", 10));
+        assertEquals(Arrays.asList(entry1, entry2, entry0),
+                instance.find("sel", 10));
+        assertEquals(Arrays.asList(entry1),
+                instance.find("a.id", 10));
+        assertEquals(Arrays.asList(entry1, entry2),
+                instance.find("", 2));
+        assertTrue(instance.find("DELETE", 10).isEmpty());
+        instance.store(entry3);
+        assertEquals(Arrays.asList(entry3, entry1),
+                instance.find("A.ID", 10));
+        assertEquals(Arrays.asList(entry3),
+                instance.find("sel", 1));
+    }
+
+    /**
+     * Tests that recent uses outweigh frequent uses a long time ago and that
+     * uses are added to the score of a stored entry incrementally.
+     */
+    @Test
+    public void testStoreDecaysUsage() {
+        long now = System.currentTimeMillis();
+        QueryHistoryEntry entry0 = new QueryHistoryEntry("a", 100, new Date(now-10*ClassQueryHistory.HALF_LIFE));
+        QueryHistoryEntry entry1 = new QueryHistoryEntry("b", 1, new Date(now));
+        QueryHistoryEntry entry2 = new QueryHistoryEntry("c", 1, new Date(now));
+        ClassQueryHistory instance = new ClassQueryHistory(10,
+                Arrays.asList(entry0, entry1, entry2));
+        assertSame(entry1,
+                instance.getMostUsed());
+        assertEquals(Arrays.asList(entry1, entry2, entry0),
+                instance.find("", 10));
+        QueryHistoryEntry entry3 = new QueryHistoryEntry("c", 2, new Date(now));
+        instance.store(entry3);
+        assertEquals(Arrays.asList(entry3, entry1, entry0),
+                instance.find("", 10));
+    }
+
+    /**
+     * Tests that {@link ClassQueryHistory#SCORE_COMPARATOR} ranks by decayed
+     * usage while the natural ordering of entries remains the usage count.
+     */
+    @Test
+    public void testScoreComparator() {
+        long now = System.currentTimeMillis();
+        QueryHistoryEntry entry0 = new QueryHistoryEntry("a", 100, new Date(now-10*ClassQueryHistory.HALF_LIFE));
+        QueryHistoryEntry entry1 = new QueryHistoryEntry("b", 1, new Date(now));
+        assertTrue(ClassQueryHistory.SCORE_COMPARATOR.compare(entry0, entry1) < 0);
+        assertTrue(entry0.compareTo(entry1) > 0);
+    }
+}
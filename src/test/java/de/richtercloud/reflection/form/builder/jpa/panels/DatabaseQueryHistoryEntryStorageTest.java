@@ -0,0 +1,267 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.panels;
+
+import de.richtercloud.message.handler.IssueHandler;
+import de.richtercloud.message.handler.Message;
+import de.richtercloud.reflection.form.builder.jpa.storage.ConnectionUtils;
+import de.richtercloud.reflection.form.builder.jpa.storage.DerbyEmbeddedPersistenceStorage;
+import de.richtercloud.reflection.form.builder.jpa.storage.PersistenceStorage;
+import de.richtercloud.reflection.form.builder.jpa.storage.TestEntity;
+import de.richtercloud.reflection.form.builder.jpa.storage.TestStorages;
+import de.richtercloud.reflection.form.builder.storage.StorageCreationException;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyString;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests {@link DatabaseQueryHistoryEntryStorage} against an embedded Derby
+ * database.
+ *
+ * @author richter
+ */
+public class DatabaseQueryHistoryEntryStorageTest {
+    private DerbyEmbeddedPersistenceStorage storage;
+    private IssueHandler issueHandler;
+
+    @Before
+    public void setUp() throws IOException,
+            StorageCreationException {
+        issueHandler = mock(IssueHandler.class);
+        storage = TestStorages.createDerbyEmbeddedStorage();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        TestStorages.shutdownDerbyEmbeddedStorage(storage);
+    }
+
+    private DatabaseQueryHistoryEntryStorage createInstance() throws QueryHistoryEntryStorageException {
+        return new DatabaseQueryHistoryEntryStorage(storage,
+                issueHandler,
+                0 //flushInterval
+        );
+    }
+
+    /**
+     * Reads the usage count of the entry with {@code text} directly from the
+     * database because entries outside the most used ones aren't loaded.
+     */
+    private int retrieveUsageCount(String text) throws SQLException {
+        EntityManager entityManager = storage.retrieveEntityManager();
+        try {
+            entityManager.getTransaction().begin();
+            Connection connection = ConnectionUtils.unwrapConnection(entityManager);
+            try (PreparedStatement statement = connection.prepareStatement(String.format("SELECT USAGE_COUNT FROM %s WHERE QUERY_TEXT = ?",
+                    DatabaseQueryHistoryEntryStorage.TABLE_NAME))) {
+                statement.setString(1, text);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    assertTrue(resultSet.next());
+                    int retValue = resultSet.getInt(1);
+                    assertFalse(resultSet.next());
+                    return retValue;
+                }
+            }finally {
+                entityManager.getTransaction().commit();
+            }
+        }finally {
+            entityManager.close();
+        }
+    }
+
+    /**
+     * Tests that stored entries are read by a new instance.
+     * @throws Exception if an unexpected exception occurs
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testStoreRetrieve() throws Exception {
+        DatabaseQueryHistoryEntryStorage instance = createInstance();
+        instance.store(TestEntity.class,
+                new QueryHistoryEntry("query 0", 1, new Date(1000)));
+        instance.store(TestEntity.class,
+                new QueryHistoryEntry("query 1", 1, new Date(2000)));
+        instance.store(TestEntity.class,
+                new QueryHistoryEntry("query 1", 2, new Date(3000)));
+        instance.shutdown();
+        instance = createInstance();
+        List<QueryHistoryEntry> result = instance.retrieve(TestEntity.class);
+        instance.shutdown();
+        assertEquals(2, result.size());
+        assertEquals("query 0", result.get(0).getText());
+        assertEquals(1, result.get(0).getUsageCount());
+        assertEquals(new Date(1000), result.get(0).getLastUsage());
+        assertEquals("query 1", result.get(1).getText());
+        assertEquals(2, result.get(1).getUsageCount());
+        assertEquals(new Date(3000), result.get(1).getLastUsage());
+        verify(issueHandler, never()).handle(any(Message.class));
+    }
+
+    /**
+     * Tests that the usage of instances sharing the database adds up instead
+     * of overwriting each other.
+     * @throws Exception if an unexpected exception occurs
+     */
+    @Test
+    public void testStoreShared() throws Exception {
+        DatabaseQueryHistoryEntryStorage instance0 = createInstance();
+        DatabaseQueryHistoryEntryStorage instance1 = createInstance();
+        instance0.store(TestEntity.class,
+                new QueryHistoryEntry("query", 1, new Date()));
+        instance0.shutdown();
+        instance1.store(TestEntity.class,
+                new QueryHistoryEntry("query", 1, new Date()));
+        instance1.shutdown();
+        assertEquals(2, retrieveUsageCount("query"));
+        verify(issueHandler, never()).handle(any(Message.class));
+    }
+
+    /**
+     * Tests that storing an entry which has been evicted from the cache only
+     * adds the increase of its usage count.
+     * @throws Exception if an unexpected exception occurs
+     */
+    @Test
+    public void testStoreEvicted() throws Exception {
+        DatabaseQueryHistoryEntryStorage instance = createInstance();
+        QueryHistoryEntry evicted = new QueryHistoryEntry("evicted", 1, new Date(0));
+        instance.store(TestEntity.class,
+                evicted);
+        for(int i=0; i<30; i++) {
+            instance.store(TestEntity.class,
+                    new QueryHistoryEntry("query "+i, 5, new Date()));
+        }
+        for(QueryHistoryEntry entry : instance.retrieve(TestEntity.class)) {
+            assertNotEquals("evicted", entry.getText());
+        }
+        instance.store(TestEntity.class,
+                new QueryHistoryEntry("evicted", 2, new Date()));
+        instance.shutdown();
+        assertEquals(2, retrieveUsageCount("evicted"));
+    }
+
+    /**
+     * Tests that instances which insert the same entries concurrently don't
+     * lose usage.
+     * @throws Exception if an unexpected exception occurs
+     */
+    @Test
+    public void testStoreConcurrentInsert() throws Exception {
+        int entryCount = 50;
+        DatabaseQueryHistoryEntryStorage instance0 = createInstance();
+        DatabaseQueryHistoryEntryStorage instance1 = createInstance();
+        List<Thread> threads = new LinkedList<>();
+        List<Throwable> exceptions = new LinkedList<>();
+        for(DatabaseQueryHistoryEntryStorage instance : new DatabaseQueryHistoryEntryStorage[] {instance0, instance1}) {
+            threads.add(new Thread(() -> {
+                try {
+                    for(int i=0; i<entryCount; i++) {
+                        instance.store(TestEntity.class,
+                                new QueryHistoryEntry("query "+i, 1, new Date()));
+                    }
+                } catch (QueryHistoryEntryStorageException ex) {
+                    synchronized(exceptions) {
+                        exceptions.add(ex);
+                    }
+                }
+            }));
+        }
+        for(Thread thread : threads) {
+            thread.start();
+        }
+        for(Thread thread : threads) {
+            thread.join();
+        }
+        instance0.shutdown();
+        instance1.shutdown();
+        assertTrue(exceptions.isEmpty());
+        verify(issueHandler, never()).handle(any(Message.class));
+        for(int i=0; i<entryCount; i++) {
+            assertEquals(2, retrieveUsageCount("query "+i));
+        }
+    }
+
+    /**
+     * Tests that updates are repeated with single statements if the driver
+     * doesn't report update counts of batched statements.
+     * @throws Exception if an unexpected exception occurs
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testFlushSuccessNoInfo() throws Exception {
+        PersistenceStorage<?> storage = mock(PersistenceStorage.class);
+        EntityManager entityManager = mock(EntityManager.class);
+        when(storage.retrieveEntityManager()).thenReturn(entityManager);
+        when(entityManager.getTransaction()).thenReturn(mock(EntityTransaction.class));
+        Connection connection = mock(Connection.class);
+        when(entityManager.unwrap(Connection.class)).thenReturn(connection);
+        DatabaseMetaData metaData = mock(DatabaseMetaData.class);
+        when(connection.getMetaData()).thenReturn(metaData);
+        ResultSet tablesResultSet = mock(ResultSet.class);
+        when(tablesResultSet.next()).thenReturn(true);
+        when(metaData.getTables(any(), any(), anyString(), any())).thenReturn(tablesResultSet);
+        ResultSet selectResultSet = mock(ResultSet.class);
+        PreparedStatement selectStatement = mock(PreparedStatement.class);
+        when(selectStatement.executeQuery()).thenReturn(selectResultSet);
+        PreparedStatement updateStatement = mock(PreparedStatement.class);
+        when(updateStatement.executeBatch()).thenReturn(new int[] {Statement.SUCCESS_NO_INFO});
+        when(updateStatement.executeUpdate()).thenReturn(0);
+        PreparedStatement insertStatement = mock(PreparedStatement.class);
+        when(insertStatement.executeBatch()).thenReturn(new int[] {1});
+        when(connection.prepareStatement(anyString())).thenAnswer(invocation -> {
+            String sql = (String) invocation.getArguments()[0];
+            if(sql.startsWith("SELECT")) {
+                return selectStatement;
+            }
+            if(sql.startsWith("UPDATE")) {
+                return updateStatement;
+            }
+            return insertStatement;
+        });
+        DatabaseQueryHistoryEntryStorage instance = new DatabaseQueryHistoryEntryStorage(storage,
+                issueHandler,
+                0 //flushInterval
+        );
+        instance.store(TestEntity.class,
+                new QueryHistoryEntry("query", 1, new Date()));
+        instance.shutdown();
+        verify(updateStatement, times(1)).executeBatch();
+        verify(updateStatement, times(1)).executeUpdate();
+        verify(insertStatement, times(1)).executeBatch();
+        verify(issueHandler, never()).handle(any(Message.class));
+        verify(entityManager, atLeastOnce()).close();
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.panels;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class FieldAccessorTest {
+
+    @Test
+    public void testGetSet() throws NoSuchFieldException {
+        FieldAccessor nameAccessor = new FieldAccessor(Embeddable.class.getDeclaredField("name"),
+                true //writable
+        );
+        FieldAccessor countAccessor = new FieldAccessor(Embeddable.class.getDeclaredField("count"),
+                true //writable
+        );
+        Embeddable embeddable = new Embeddable();
+        nameAccessor.set(embeddable, "a");
+        countAccessor.set(embeddable, 2);
+        assertEquals("a", nameAccessor.get(embeddable));
+        assertEquals(2, countAccessor.get(embeddable));
+        SubEmbeddable subEmbeddable = new SubEmbeddable();
+        nameAccessor.set(subEmbeddable, "b");
+        assertEquals("b", nameAccessor.get(subEmbeddable));
+            //inherited fields
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetWrongTarget() throws NoSuchFieldException {
+        new FieldAccessor(Embeddable.class.getDeclaredField("name"),
+                false //writable
+        ).get("a");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetWrongValue() throws NoSuchFieldException {
+        new FieldAccessor(Embeddable.class.getDeclaredField("name"),
+                true //writable
+        ).set(new Embeddable(), 1);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testSetNotWritable() throws NoSuchFieldException {
+        new FieldAccessor(Embeddable.class.getDeclaredField("name"),
+                false //writable
+        ).set(new Embeddable(), "a");
+    }
+
+    /**
+     * Tests that final fields can be written.
+     */
+    @Test
+    public void testSetFinalField() throws NoSuchFieldException {
+        FieldAccessor instance = new FieldAccessor(FinalEmbeddable.class.getDeclaredField("name"),
+                true //writable
+        );
+        FinalEmbeddable embeddable = new FinalEmbeddable();
+        instance.set(embeddable, "a");
+        assertEquals("a", instance.get(embeddable));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStaticField() throws NoSuchFieldException {
+        new FieldAccessor(Embeddable.class.getDeclaredField("CONSTANT"),
+                false //writable
+        );
+    }
+
+    private static class Embeddable {
+        private final static String CONSTANT = "c";
+        private String name;
+        private int count;
+    }
+
+    private static class SubEmbeddable extends Embeddable {
+    }
+
+    private static class FinalEmbeddable {
+        private final String name;
+
+        FinalEmbeddable() {
+            this.name = null;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.panels;
+
+import de.richtercloud.message.handler.IssueHandler;
+import de.richtercloud.reflection.form.builder.jpa.entities.EntityA;
+import de.richtercloud.reflection.form.builder.jpa.entities.EntityB;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import static org.mockito.Mockito.mock;
+
+/**
+ *
+ * @author richter
+ */
+public class JournalFileQueryHistoryEntryStorageTest {
+
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testShutdown() throws IOException,
+            ClassNotFoundException,
+            QueryHistoryEntryStorageException {
+        File file = File.createTempFile(JournalFileQueryHistoryEntryStorageTest.class.getSimpleName(), null);
+        IssueHandler issueHandler = mock(IssueHandler.class);
+        JournalFileQueryHistoryEntryStorage instance = new JournalFileQueryHistoryEntryStorage(file,
+                issueHandler);
+        QueryHistoryEntry entry0 = new QueryHistoryEntry("a", 1, new Date(1));
+        QueryHistoryEntry entry1 = new QueryHistoryEntry("b", 2, new Date(2));
+        QueryHistoryEntry entry2 = new QueryHistoryEntry("c", 3, null);
+        instance.store(EntityA.class, entry0);
+        instance.store(EntityA.class, entry1);
+        instance.store(EntityB.class, entry2);
+        entry0.setUsageCount(5);
+        instance.store(EntityA.class, entry0);
+        assertTrue(instance.getJournalFile().length() > 0);
+        instance.shutdown();
+        assertFalse(instance.getJournalFile().exists());
+        JournalFileQueryHistoryEntryStorage instance1 = new JournalFileQueryHistoryEntryStorage(file,
+                issueHandler);
+        List<QueryHistoryEntry> result = instance1.retrieve(EntityA.class);
+        assertEquals(new LinkedList<>(Arrays.asList(entry1, entry0)), result);
+        assertEquals(5, result.get(1).getUsageCount());
+        assertEquals(new Date(1), result.get(1).getLastUsage());
+        result = instance1.retrieve(EntityB.class);
+        assertEquals(new LinkedList<>(Arrays.asList(entry2)), result);
+        assertNull(result.get(0).getLastUsage());
+        instance1.shutdown();
+    }
+
+    /**
+     * Tests that the journal is replayed if the storage hasn't been shut down
+     * and that an incomplete record at its end is ignored and removed.
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testReplayJournal() throws IOException,
+            ClassNotFoundException,
+            QueryHistoryEntryStorageException {
+        File file = File.createTempFile(JournalFileQueryHistoryEntryStorageTest.class.getSimpleName(), null);
+        IssueHandler issueHandler = mock(IssueHandler.class);
+        JournalFileQueryHistoryEntryStorage instance = new JournalFileQueryHistoryEntryStorage(file,
+                issueHandler);
+        QueryHistoryEntry entry0 = new QueryHistoryEntry("a");
+        QueryHistoryEntry entry1 = new QueryHistoryEntry("b");
+        instance.store(EntityA.class, entry0);
+        instance.store(EntityA.class, entry1);
+        long journalLength = instance.getJournalFile().length();
+        Files.write(instance.getJournalFile().toPath(),
+                new byte[] {0, 0, 0, 10, 1, 2},
+                StandardOpenOption.APPEND);
+        JournalFileQueryHistoryEntryStorage instance1 = new JournalFileQueryHistoryEntryStorage(file,
+                issueHandler);
+        assertEquals(new LinkedList<>(Arrays.asList(entry0, entry1)),
+                instance1.retrieve(EntityA.class));
+        assertEquals(journalLength, instance1.getJournalFile().length());
+        instance1.shutdown();
+        instance.shutdown();
+    }
+
+    /**
+     * Tests that the journal is replayed if the snapshot file is missing.
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testReplayJournalWithoutSnapshot() throws IOException,
+            ClassNotFoundException,
+            QueryHistoryEntryStorageException {
+        File file = File.createTempFile(JournalFileQueryHistoryEntryStorageTest.class.getSimpleName(), null);
+        IssueHandler issueHandler = mock(IssueHandler.class);
+        JournalFileQueryHistoryEntryStorage instance = new JournalFileQueryHistoryEntryStorage(file,
+                issueHandler);
+        QueryHistoryEntry entry0 = new QueryHistoryEntry("a");
+        QueryHistoryEntry entry1 = new QueryHistoryEntry("b");
+        instance.store(EntityA.class, entry0);
+        instance.store(EntityA.class, entry1);
+        assertTrue(file.delete());
+        assertTrue(instance.getJournalFile().exists());
+        JournalFileQueryHistoryEntryStorage instance1 = new JournalFileQueryHistoryEntryStorage(file,
+                issueHandler);
+        assertEquals(new LinkedList<>(Arrays.asList(entry0, entry1)),
+                instance1.retrieve(EntityA.class));
+        instance1.shutdown();
+        instance.shutdown();
+    }
+
+    /**
+     * Tests that storing after {@link JournalFileQueryHistoryEntryStorage#shutdown() }
+     * fails instead of writing to the closed journal and that shutting down
+     * twice has no effect.
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testStoreAfterShutdown() throws IOException,
+            ClassNotFoundException,
+            QueryHistoryEntryStorageException {
+        File file = File.createTempFile(JournalFileQueryHistoryEntryStorageTest.class.getSimpleName(), null);
+        IssueHandler issueHandler = mock(IssueHandler.class);
+        JournalFileQueryHistoryEntryStorage instance = new JournalFileQueryHistoryEntryStorage(file,
+                issueHandler);
+        QueryHistoryEntry entry0 = new QueryHistoryEntry("a");
+        instance.store(EntityA.class, entry0);
+        instance.shutdown();
+        try {
+            instance.store(EntityA.class, new QueryHistoryEntry("b"));
+            fail("IllegalStateException expected");
+        }catch(IllegalStateException expected) {
+            //expected
+        }
+        assertFalse(instance.getJournalFile().exists());
+        instance.shutdown();
+        JournalFileQueryHistoryEntryStorage instance1 = new JournalFileQueryHistoryEntryStorage(file,
+                issueHandler);
+        assertEquals(new LinkedList<>(Arrays.asList(entry0)),
+                instance1.retrieve(EntityA.class));
+        instance1.shutdown();
+    }
+}
@@ -0,0 +1,170 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.panels;
+
+import de.richtercloud.message.handler.IssueHandler;
+import de.richtercloud.message.handler.Message;
+import de.richtercloud.reflection.form.builder.jpa.storage.FieldInitializer;
+import de.richtercloud.reflection.form.builder.jpa.storage.PersistenceStorage;
+import de.richtercloud.validation.tools.FieldRetriever;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.persistence.Id;
+import javax.swing.SwingUtilities;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import static org.mockito.Mockito.*;
+
+/**
+ *
+ * @author richter
+ */
+public class PagedEntityTableModelTest {
+    private final static int RESULT_COUNT = 1000000;
+    private final static int PAGE_SIZE = 1000;
+    private final static int PAGE_CACHE_SIZE = 4;
+
+    /**
+     * Tests that browsing all rows of a large result loads every page once
+     * and never keeps more than the page cache size of pages.
+     * @throws Exception if an unexpected exception occurs
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testBrowse() throws Exception {
+        PersistenceStorage storage = mock(PersistenceStorage.class);
+        Set<String> queryTexts = ConcurrentHashMap.newKeySet();
+        when(storage.runQuery(anyString(), any(), anyInt(), anyInt())).thenAnswer(invocation -> {
+            queryTexts.add((String) invocation.getArguments()[0]);
+            int firstResult = (int) invocation.getArguments()[2];
+            int maxResults = (int) invocation.getArguments()[3];
+            List<Entity> retValue = new ArrayList<>(maxResults);
+            for(int i=firstResult; i<Math.min(RESULT_COUNT, firstResult+maxResults); i++) {
+                retValue.add(new Entity(i));
+            }
+            return retValue;
+        });
+        FieldRetriever fieldRetriever = mock(FieldRetriever.class);
+        when(fieldRetriever.retrieveRelevantFields(any())).thenReturn(Arrays.asList(Entity.class.getDeclaredField("value")));
+        AtomicReference<PagedEntityTableModel<Entity>> instanceReference = new AtomicReference<>();
+        SwingUtilities.invokeAndWait(() -> {
+            PagedEntityTableModel<Entity> instance = new PagedEntityTableModel<>(storage,
+                    Entity.class,
+                    fieldRetriever,
+                    mock(FieldInitializer.class),
+                    mock(IssueHandler.class),
+                    PAGE_SIZE,
+                    PAGE_CACHE_SIZE);
+            assertEquals(1, instance.getColumnCount());
+            assertEquals("value", instance.getColumnName(0));
+            instance.setQuery("SELECT e FROM Entity e");
+            instanceReference.set(instance);
+        });
+        PagedEntityTableModel<Entity> instance = instanceReference.get();
+        for(int row=0; row<RESULT_COUNT; row+=PAGE_SIZE/2) {
+            int visibleRow = row;
+            Object value = null;
+            long deadline = System.nanoTime()+TimeUnit.SECONDS.toNanos(10);
+            while(value == null) {
+                assertTrue(System.nanoTime() < deadline);
+                AtomicReference<Object> valueReference = new AtomicReference<>();
+                SwingUtilities.invokeAndWait(() -> {
+                    if(instance.getRowCount() <= visibleRow) {
+                        //the previous page is being loaded
+                        return;
+                    }
+                    instance.setVisibleRows(visibleRow,
+                            visibleRow+PAGE_SIZE/2-1);
+                    valueReference.set(instance.getValueAt(visibleRow, 0));
+                    assertTrue(instance.getLoadedPageCount() <= PAGE_CACHE_SIZE);
+                });
+                value = valueReference.get();
+            }
+            assertEquals(visibleRow, value);
+        }
+        //the last page is complete, so the row count includes one more page
+        //until it's been loaded and turned out empty
+        AtomicReference<Integer> rowCountReference = new AtomicReference<>();
+        long deadline = System.nanoTime()+TimeUnit.SECONDS.toNanos(10);
+        do {
+            assertTrue(System.nanoTime() < deadline);
+            SwingUtilities.invokeAndWait(() -> {
+                assertNull(instance.getEntity(RESULT_COUNT));
+                rowCountReference.set(instance.getRowCount());
+            });
+        }while(rowCountReference.get() != RESULT_COUNT);
+        SwingUtilities.invokeAndWait(() -> {
+            assertEquals(RESULT_COUNT/PAGE_SIZE+1, instance.getPageLoadCount());
+            assertNull(instance.getEntity(RESULT_COUNT-1-PAGE_SIZE*PAGE_CACHE_SIZE));
+                //evicted
+        });
+        assertEquals(Collections.singleton("SELECT e FROM Entity e ORDER BY e.value"),
+                queryTexts);
+    }
+
+    /**
+     * Tests that a query without {@code ORDER BY} clause which can't be
+     * ordered by the ID is rejected instead of being paged in an unstable
+     * order.
+     * @throws Exception if an unexpected exception occurs
+     */
+    @Test
+    public void testUnorderableQuery() throws Exception {
+        PersistenceStorage storage = mock(PersistenceStorage.class);
+        IssueHandler issueHandler = mock(IssueHandler.class);
+        FieldRetriever fieldRetriever = mock(FieldRetriever.class);
+        when(fieldRetriever.retrieveRelevantFields(any())).thenReturn(Arrays.asList(Entity.class.getDeclaredField("value")));
+        SwingUtilities.invokeAndWait(() -> {
+            PagedEntityTableModel<Entity> instance = new PagedEntityTableModel<>(storage,
+                    Entity.class,
+                    fieldRetriever,
+                    mock(FieldInitializer.class),
+                    issueHandler,
+                    PAGE_SIZE,
+                    PAGE_CACHE_SIZE);
+            instance.setQuery("SELECT e FROM Entity e GROUP BY e");
+            assertEquals(0, instance.getRowCount());
+            assertNull(instance.getEntity(0));
+        });
+        verify(issueHandler).handle(any(Message.class));
+        verify(storage, never()).runQuery(anyString(), any(), anyInt(), anyInt());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPageCacheSize() {
+        new PagedEntityTableModel<>(mock(PersistenceStorage.class),
+                Entity.class,
+                mock(FieldRetriever.class),
+                mock(FieldInitializer.class),
+                mock(IssueHandler.class),
+                PAGE_SIZE,
+                2);
+    }
+
+    private static class Entity {
+        @Id
+        private final int value;
+
+        Entity(int value) {
+            this.value = value;
+        }
+    }
+}
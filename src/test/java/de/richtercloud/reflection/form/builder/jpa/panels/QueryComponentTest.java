@@ -0,0 +1,267 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.panels;
+
+import de.richtercloud.message.handler.ExceptionMessage;
+import de.richtercloud.message.handler.IssueHandler;
+import de.richtercloud.message.handler.Message;
+import de.richtercloud.reflection.form.builder.jpa.storage.PersistenceStorage;
+import java.io.File;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import static org.mockito.Mockito.*;
+
+/**
+ *
+ * @author richter
+ */
+public class QueryComponentTest {
+
+    /**
+     * Tests that the part of an asynchronous query which runs on the EDT
+     * doesn't access the query results, i.e. that the time spent on the EDT
+     * doesn't grow with the number of results because subtype checks and
+     * history bookkeeping run on the query executor.
+     * @throws Exception if an unexpected exception occurs
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testAsyncQueryEDTIndependentOfResultSize() throws Exception {
+        File entryStorageFile = File.createTempFile(QueryComponentTest.class.getSimpleName(), null);
+        IssueHandler issueHandler = mock(IssueHandler.class);
+        QueryHistoryEntryStorage entryStorage = new XMLFileQueryHistoryEntryStorage(entryStorageFile,
+                issueHandler);
+        try {
+            PersistenceStorage storage = mock(PersistenceStorage.class);
+            when(storage.isClassSupported(any())).thenReturn(true);
+            AtomicReference<List<Entity>> queryResults = new AtomicReference<>();
+            when(storage.runQuery(anyString(), any(), anyInt())).thenAnswer(invocation -> queryResults.get());
+            AtomicReference<QueryComponent<Entity>> instanceReference = new AtomicReference<>();
+            BlockingQueue<List<Entity>> executedResults = new LinkedBlockingQueue<>();
+            SwingUtilities.invokeAndWait(() -> {
+                QueryComponent<Entity> instance = new QueryComponent<>(storage,
+                        Entity.class,
+                        issueHandler,
+                        QueryComponent.INITIAL_QUERY_LIMIT_DEFAULT,
+                        true, //async
+                        entryStorage);
+                instance.addListener(event -> executedResults.add(event.getQueryResults()));
+                instanceReference.set(instance);
+            });
+            QueryComponent<Entity> instance = instanceReference.get();
+            String queryText = "SELECT e FROM Entity e";
+            List<QueryHistoryEntry> modelItems = new ArrayList<>();
+            for(int resultCount : new int[] {10, 100000}) {
+                EDTAccessCountingList results = new EDTAccessCountingList(resultCount);
+                queryResults.set(results);
+                SwingUtilities.invokeAndWait(() -> instance.runQuery(queryText,
+                        true, //async
+                        false //skipHistoryEntryUsageCountIncrement
+                ));
+                List<Entity> executed = executedResults.poll(30, TimeUnit.SECONDS);
+                assertNotNull(executed);
+                assertEquals(resultCount, executed.size());
+                assertEquals(resultCount, results.getWorkerAccessCount());
+                    //subtype checks on the worker
+                assertEquals(0, results.getEDTAccessCount());
+                SwingUtilities.invokeAndWait(() -> modelItems.add(instance.getQueryComboBoxModel().getElementAt(0)));
+            }
+            List<QueryHistoryEntry> history = entryStorage.retrieve(Entity.class);
+            assertEquals(1, history.size());
+            assertEquals(queryText, history.get(0).getText());
+            assertEquals(2, history.get(0).getUsageCount());
+            SwingUtilities.invokeAndWait(() -> {
+                assertEquals(1, instance.getQueryComboBoxModel().getSize());
+                assertEquals(history.get(0), instance.getQueryComboBox().getSelectedItem());
+                assertEquals(2, instance.getQueryComboBoxModel().getElementAt(0).getUsageCount());
+            });
+            //the item of the first query has been replaced rather than
+            //updated off the EDT
+            assertNotSame(modelItems.get(0), modelItems.get(1));
+            assertEquals(1, modelItems.get(0).getUsageCount());
+        }finally {
+            entryStorage.shutdown();
+            assertTrue(entryStorageFile.delete());
+        }
+    }
+
+    /**
+     * Tests that an unexpected exception of an asynchronous query (e.g. the
+     * {@link IllegalArgumentException} thrown for invalid JPQL) is reported
+     * and doesn't leave the component disabled.
+     * @throws Exception if an unexpected exception occurs
+     */
+    @Test
+    public void testAsyncQueryRuntimeException() throws Exception {
+        IssueHandler issueHandler = mock(IssueHandler.class);
+        QueryHistoryEntryStorage entryStorage = mock(QueryHistoryEntryStorage.class);
+        PersistenceStorage storage = mock(PersistenceStorage.class);
+        when(storage.isClassSupported(any())).thenReturn(true);
+        when(storage.runQuery(anyString(), any(), anyInt())).thenThrow(new IllegalArgumentException("invalid query"));
+        AtomicReference<QueryComponent<Entity>> instanceReference = new AtomicReference<>();
+        SwingUtilities.invokeAndWait(() -> {
+            QueryComponent<Entity> instance = new QueryComponent<>(storage,
+                    Entity.class,
+                    issueHandler,
+                    QueryComponent.INITIAL_QUERY_LIMIT_DEFAULT,
+                    true, //async
+                    entryStorage);
+            instanceReference.set(instance);
+            instance.runQuery("SELECT e FROM",
+                    true, //async
+                    false //skipHistoryEntryUsageCountIncrement
+            );
+        });
+        verify(issueHandler, timeout(30000)).handleUnexpectedException(any(ExceptionMessage.class));
+        SwingUtilities.invokeAndWait(() -> assertTrue(instanceReference.get().isEnabled()));
+    }
+
+    /**
+     * Tests that a query which retrieves subtypes of the entity class fails
+     * if subtypes are forbidden rather than being restricted to the exact type
+     * like a query which filters subtypes.
+     * @throws Exception if an unexpected exception occurs
+     */
+    @Test
+    public void testForbidSubtypes() throws Exception {
+        IssueHandler issueHandler = mock(IssueHandler.class);
+        QueryHistoryEntryStorage entryStorage = mock(QueryHistoryEntryStorage.class);
+        PersistenceStorage storage = mock(PersistenceStorage.class);
+        when(storage.isClassSupported(any())).thenReturn(true);
+        Entity entity = new Entity();
+        when(storage.runQuery(anyString(), any(), anyInt())).thenAnswer(invocation -> {
+            String queryText = (String) invocation.getArguments()[0];
+            return queryText.contains("TYPE(")
+                    ? new ArrayList<>(Arrays.asList(entity))
+                    : new ArrayList<>(Arrays.asList(entity,
+                            new SubEntity()));
+        });
+        List<List<Entity>> executedResults = new ArrayList<>();
+        SwingUtilities.invokeAndWait(() -> {
+            QueryComponent<Entity> instance = new QueryComponent<>(storage,
+                    Entity.class,
+                    issueHandler,
+                    QueryComponent.INITIAL_QUERY_LIMIT_DEFAULT,
+                    false, //async
+                    entryStorage);
+            instance.addListener(event -> executedResults.add(event.getQueryResults()));
+            instance.getSubtypeComboBox().setSelectedItem(QueryComponent.SUBTYPES_FORBID);
+            instance.runQuery("SELECT e FROM Entity e",
+                    false, //async
+                    false //skipHistoryEntryUsageCountIncrement
+            );
+        });
+        verify(issueHandler).handle(any(Message.class));
+        assertTrue(executedResults.isEmpty());
+    }
+
+    /**
+     * Tests that the text typed into the query combo box editor is used to
+     * find suggestions in the entry storage and that accepting a suggestion
+     * selects it.
+     * @throws Exception if an unexpected exception occurs
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testQuerySuggestions() throws Exception {
+        IssueHandler issueHandler = mock(IssueHandler.class);
+        QueryHistoryEntryStorage entryStorage = mock(QueryHistoryEntryStorage.class);
+        PersistenceStorage storage = mock(PersistenceStorage.class);
+        when(storage.isClassSupported(any())).thenReturn(true);
+        QueryHistoryEntry entry = new QueryHistoryEntry("SELECT e FROM Entity e WHERE e.id = 1");
+        when(entryStorage.find(any(), anyString(), anyInt())).thenAnswer(invocation -> {
+            String text = (String) invocation.getArguments()[1];
+            return !text.isEmpty() && entry.getText().contains(text)
+                    ? new ArrayList<>(Arrays.asList(entry))
+                    : new ArrayList<>();
+        });
+        SwingUtilities.invokeAndWait(() -> {
+            QueryComponent<Entity> instance = new QueryComponent<>(storage,
+                    Entity.class,
+                    issueHandler,
+                    QueryComponent.INITIAL_QUERY_LIMIT_DEFAULT,
+                    false, //async
+                    entryStorage);
+            QueryHistorySuggestionPopup suggestionPopup = instance.getQuerySuggestionPopup();
+            ((JTextField) instance.getQueryComboBox().getEditor().getEditorComponent()).setText("e.id =");
+            suggestionPopup.update();
+            assertEquals(Arrays.asList(entry),
+                    suggestionPopup.getSuggestions());
+            suggestionPopup.accept(0);
+            assertEquals(entry,
+                    instance.getQueryComboBox().getSelectedItem());
+            ((JTextField) instance.getQueryComboBox().getEditor().getEditorComponent()).setText("no match");
+            suggestionPopup.update();
+            assertTrue(suggestionPopup.getSuggestions().isEmpty());
+        });
+    }
+
+    /**
+     * A list of results which counts the accesses of its elements on and off
+     * the EDT.
+     */
+    private static class EDTAccessCountingList extends AbstractList<Entity> {
+        private final List<Entity> elements;
+        private final AtomicInteger edtAccessCount = new AtomicInteger();
+        private final AtomicInteger workerAccessCount = new AtomicInteger();
+
+        EDTAccessCountingList(int size) {
+            this.elements = new ArrayList<>(size);
+            for(int i=0; i<size; i++) {
+                elements.add(new Entity());
+            }
+        }
+
+        @Override
+        public Entity get(int index) {
+            if(SwingUtilities.isEventDispatchThread()) {
+                edtAccessCount.incrementAndGet();
+            }else {
+                workerAccessCount.incrementAndGet();
+            }
+            return elements.get(index);
+        }
+
+        @Override
+        public int size() {
+            return elements.size();
+        }
+
+        public int getEDTAccessCount() {
+            return edtAccessCount.get();
+        }
+
+        public int getWorkerAccessCount() {
+            return workerAccessCount.get();
+        }
+    }
+
+    private static class Entity {
+    }
+
+    private static class SubEntity extends Entity {
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.panels;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class QueryExecutorTest {
+
+    /**
+     * Test of cancel method, of class QueryExecutor.
+     * @throws Exception if an unexpected exception occurs
+     */
+    @Test
+    public void testCancel() throws Exception {
+        QueryExecutor instance = new QueryExecutor(1, //threadCount
+                "test-query-thread");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<?> blocking = instance.submit(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        AtomicBoolean cancelledRan = new AtomicBoolean();
+        Future<?> cancelled = instance.submit(() -> cancelledRan.set(true));
+        Future<?> last = instance.submit(() -> {
+        });
+        assertEquals(2, instance.getQueueDepth());
+        assertTrue(instance.cancel(cancelled));
+        assertEquals(1, instance.getQueueDepth());
+        assertFalse(instance.cancel(blocking));
+            //running tasks aren't cancelled
+        release.countDown();
+        last.get(10, TimeUnit.SECONDS);
+        assertFalse(cancelledRan.get());
+        assertEquals(0, instance.getQueueDepth());
+        assertEquals(2, instance.getWaitTimeHistogram().getCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidThreadCount() {
+        new QueryExecutor(0,
+                "test-query-thread");
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.panels;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class QueryHistoryEntryStorageTest {
+
+    /**
+     * Tests the default implementation of
+     * {@link QueryHistoryEntryStorage#find(java.lang.Class, java.lang.String, int) }.
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testFind() {
+        QueryHistoryEntry entry0 = new QueryHistoryEntry("select b from A a", 3, new Date());
+        QueryHistoryEntry entry1 = new QueryHistoryEntry("Select a from A a", 2, new Date());
+        QueryHistoryEntry entry2 = new QueryHistoryEntry("select", 1, new Date());
+        QueryHistoryEntry entry3 = new QueryHistoryEntry("from A a", 1, new Date());
+        List<QueryHistoryEntry> entries = Arrays.asList(entry0,
+                entry1,
+                entry2,
+                entry3);
+        QueryHistoryEntryStorage instance = new QueryHistoryEntryStorage() {
+            @Override
+            public void store(Class<?> clazz, QueryHistoryEntry entry) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public List<QueryHistoryEntry> retrieve(Class<?> clazz) {
+                return entries;
+            }
+
+            @Override
+            public QueryHistoryEntry getInitialEntry(Class<?> clazz) {
+                return entries.get(0);
+            }
+
+            @Override
+            public void shutdown() {
+                //nothing to do
+            }
+        };
+        assertEquals(Arrays.asList(entry2, entry0, entry1),
+                instance.find(Object.class, "select", 10));
+        assertEquals(Arrays.asList(entry3, entry0, entry1),
+                instance.find(Object.class, "FROM a", 10));
+        assertEquals(Arrays.asList(entry0, entry1),
+                instance.find(Object.class, "", 2));
+        assertTrue(instance.find(Object.class, "update", 10).isEmpty());
+        assertTrue(instance.find(Object.class, "select", 0).isEmpty());
+    }
+}
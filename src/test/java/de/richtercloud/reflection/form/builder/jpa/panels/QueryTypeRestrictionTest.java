@@ -0,0 +1,86 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.panels;
+
+import java.util.Arrays;
+import java.util.Collections;
+import javax.persistence.Entity;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class QueryTypeRestrictionTest {
+
+    @Test
+    public void testRestrictToType() {
+        assertEquals("SELECT e FROM EntityA e WHERE TYPE(e) = EntityA",
+                QueryTypeRestriction.restrictToType("SELECT e FROM EntityA e",
+                        EntityA.class));
+        assertEquals("select distinct e from EntityA as e WHERE TYPE(e) = EntityA order by e.id",
+                QueryTypeRestriction.restrictToType("select distinct e from EntityA as e order by e.id",
+                        EntityA.class));
+        assertEquals("SELECT e FROM EntityA e WHERE TYPE(e) = EntityA AND (e.a = 'x OR 1=1' OR e.b IN (SELECT b.id FROM EntityA b WHERE b.c = 1)) ORDER BY e.id",
+                QueryTypeRestriction.restrictToType("SELECT e FROM EntityA e WHERE e.a = 'x OR 1=1' OR e.b IN (SELECT b.id FROM EntityA b WHERE b.c = 1) ORDER BY e.id",
+                        EntityA.class));
+        assertEquals("SELECT e FROM EntityA e WHERE TYPE(e) = Named",
+                QueryTypeRestriction.restrictToType("SELECT e FROM EntityA e",
+                        NamedEntity.class));
+    }
+
+    @Test
+    public void testRestrictToTypeUnsupported() {
+        assertNull(QueryTypeRestriction.restrictToType("SELECT e.name FROM EntityA e",
+                EntityA.class));
+        assertNull(QueryTypeRestriction.restrictToType("SELECT b FROM EntityA e JOIN e.bs b",
+                EntityA.class));
+        assertNull(QueryTypeRestriction.restrictToType("SELECT e FROM EntityA e WHERE e.a = 'x",
+                EntityA.class));
+        assertNull(QueryTypeRestriction.restrictToType("UPDATE EntityA e SET e.a = 1",
+                EntityA.class));
+    }
+
+    @Test
+    public void testOrderBy() {
+        assertEquals("SELECT e FROM EntityA e ORDER BY e.id",
+                QueryTypeRestriction.orderBy("SELECT e FROM EntityA e ",
+                        Arrays.asList("id")));
+        assertEquals("SELECT e FROM EntityA e WHERE e.a = 'order by' ORDER BY e.id1, e.id2",
+                QueryTypeRestriction.orderBy("SELECT e FROM EntityA e WHERE e.a = 'order by'",
+                        Arrays.asList("id1", "id2")));
+        assertEquals("SELECT e FROM EntityA e ORDER BY e.a",
+                QueryTypeRestriction.orderBy("SELECT e FROM EntityA e ORDER BY e.a",
+                        Arrays.asList("id")));
+    }
+
+    @Test
+    public void testOrderByUnsupported() {
+        assertNull(QueryTypeRestriction.orderBy("SELECT e FROM EntityA e",
+                Collections.emptyList()));
+        assertNull(QueryTypeRestriction.orderBy("SELECT e.name FROM EntityA e",
+                Arrays.asList("id")));
+        assertNull(QueryTypeRestriction.orderBy("SELECT e FROM EntityA e GROUP BY e",
+                Arrays.asList("id")));
+    }
+
+    private static class EntityA {
+    }
+
+    @Entity(name = "Named")
+    private static class NamedEntity {
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.panels;
+
+import de.richtercloud.message.handler.IssueHandler;
+import de.richtercloud.reflection.form.builder.jpa.storage.PersistenceStorage;
+import de.richtercloud.validation.tools.FieldRetriever;
+import java.awt.event.KeyEvent;
+import java.awt.event.KeyListener;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import static org.mockito.Mockito.*;
+
+/**
+ *
+ * @author richter
+ */
+public class StringAutoCompletePanelTest {
+    private final static String WORD = "abcdefghijklmnopqrst";
+
+    /**
+     * Tests that typing a word with short pauses causes far less checks than
+     * key events and that the complete word is checked last.
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testCheckDebounced() throws Exception {
+        AtomicInteger queryCount = new AtomicInteger();
+        AtomicReference<String> lastQueryText = new AtomicReference<>();
+        PersistenceStorage storage = mockStorage(queryCount,
+                lastQueryText,
+                null //block
+        );
+        StringAutoCompletePanel instance = createPanel(storage);
+        for(int i=0; i<WORD.length(); i++) {
+            type(instance,
+                    WORD.substring(0, i+1));
+            Thread.sleep(i % 7 == 6
+                    ? 300 //pause longer than the debounce delay
+                    : 60);
+        }
+        long deadline = System.nanoTime()+TimeUnit.SECONDS.toNanos(10);
+        while(!WORD.equals(lastQueryText.get())) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+        assertTrue(String.format("%d queries for %d key events",
+                        queryCount.get(),
+                        WORD.length()),
+                queryCount.get() <= 5);
+    }
+
+    /**
+     * Tests that a check which is blocked in the storage doesn't delay the
+     * check of another panel.
+     * @throws Exception if an exception occurs
+     */
+    @Test
+    public void testCheckNotBlockedByOtherPanel() throws Exception {
+        CountDownLatch block = new CountDownLatch(1);
+        AtomicReference<String> blockedQueryText = new AtomicReference<>();
+        StringAutoCompletePanel blockedInstance = createPanel(mockStorage(new AtomicInteger(),
+                blockedQueryText,
+                block));
+        AtomicReference<String> lastQueryText = new AtomicReference<>();
+        StringAutoCompletePanel instance = createPanel(mockStorage(new AtomicInteger(),
+                lastQueryText,
+                null //block
+        ));
+        try {
+            type(blockedInstance,
+                    "a");
+            long deadline = System.nanoTime()+TimeUnit.SECONDS.toNanos(10);
+            while(blockedQueryText.get() == null) {
+                assertTrue(System.nanoTime() < deadline);
+                Thread.sleep(10);
+            }
+            type(instance,
+                    "b");
+            while(!"b".equals(lastQueryText.get())) {
+                assertTrue("check blocked by the check of another panel",
+                        System.nanoTime() < deadline);
+                Thread.sleep(10);
+            }
+        }finally {
+            block.countDown();
+        }
+    }
+
+    private static PersistenceStorage mockStorage(AtomicInteger queryCount,
+            AtomicReference<String> lastQueryText,
+            CountDownLatch block) throws Exception {
+        PersistenceStorage storage = mock(PersistenceStorage.class);
+        when(storage.isTrigramIndexEnabled(any(), anyString())).thenReturn(true);
+        when(storage.runTrigramIndexQuery(any(), anyString(), anyString(), anyInt())).thenAnswer(invocation -> {
+            String text = (String) invocation.getArguments()[2];
+            queryCount.incrementAndGet();
+            lastQueryText.set(text);
+            if(block != null) {
+                block.await();
+            }
+            Thread.sleep(30);
+                //a slow query
+            return Collections.singletonList(text);
+        });
+        return storage;
+    }
+
+    private static StringAutoCompletePanel createPanel(PersistenceStorage storage) throws Exception {
+        FieldRetriever fieldRetriever = mock(FieldRetriever.class);
+        when(fieldRetriever.retrieveRelevantFields(any())).thenReturn(Arrays.asList(Entity.class.getDeclaredField("name")));
+        AtomicReference<StringAutoCompletePanel> instance = new AtomicReference<>();
+        SwingUtilities.invokeAndWait(() -> instance.set(new StringAutoCompletePanel(storage,
+                "", //initialValue
+                Entity.class,
+                "name",
+                10, //initialQueryLimit
+                fieldRetriever,
+                mock(IssueHandler.class))));
+        return instance.get();
+    }
+
+    /**
+     * Sets {@code text} in the editor of {@code instance} and notifies the
+     * key listeners like typing the last character does.
+     */
+    private static void type(StringAutoCompletePanel instance,
+            String text) throws Exception {
+        SwingUtilities.invokeAndWait(() -> {
+            JTextField textField = (JTextField) instance.getComboBox().getEditor().getEditorComponent();
+            textField.setText(text);
+            KeyEvent keyEvent = new KeyEvent(textField,
+                    KeyEvent.KEY_RELEASED,
+                    System.currentTimeMillis(),
+                    0, //modifiers
+                    KeyEvent.VK_UNDEFINED,
+                    text.charAt(text.length()-1));
+            for(KeyListener keyListener : textField.getKeyListeners()) {
+                keyListener.keyReleased(keyEvent);
+            }
+        });
+    }
+
+    private static class Entity {
+        private String name;
+    }
+}
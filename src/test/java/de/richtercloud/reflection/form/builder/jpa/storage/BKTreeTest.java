@@ -0,0 +1,129 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.storage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class BKTreeTest {
+
+    /**
+     * Test of computeDistance method, of class BKTree.
+     */
+    @Test
+    public void testComputeDistance() {
+        assertEquals(0, BKTree.computeDistance("", ""));
+        assertEquals(3, BKTree.computeDistance("", "abc"));
+        assertEquals(1, BKTree.computeDistance("Müller", "Mülller"));
+        assertEquals(3, BKTree.computeDistance("kitten", "sitting"));
+    }
+
+    /**
+     * Test of search method, of class BKTree, compares the result with the
+     * distances of all values.
+     */
+    @Test
+    public void testSearch() {
+        Random random = new Random(1L);
+        BKTree instance = new BKTree();
+        List<String> values = new ArrayList<>();
+        for(int i=0; i<500; i++) {
+            StringBuilder value = new StringBuilder();
+            int length = 1+random.nextInt(6);
+            for(int j=0; j<length; j++) {
+                value.append((char) ('a'+random.nextInt(4)));
+            }
+            values.add(value.toString());
+            instance.add(value.toString());
+        }
+        for(int i=0; i<values.size(); i+=3) {
+            instance.remove(values.get(i));
+        }
+        Map<String, Integer> expected = new HashMap<>();
+        for(String value : values) {
+            int distance = BKTree.computeDistance("abca", value);
+            if(distance <= 2) {
+                expected.put(value, distance);
+            }
+        }
+        for(int i=0; i<values.size(); i+=3) {
+            expected.remove(values.get(i));
+                //the tree contains distinct values, so duplicates of removed
+                //values are removed as well
+        }
+        Map<String, Integer> result = new HashMap<>();
+        assertTrue(instance.search("abca",
+                2, //maxDistance
+                Long.MAX_VALUE, //deadlineNanos
+                result::put));
+        assertEquals(expected,
+                result);
+    }
+
+    /**
+     * Tests that the tree is rebuilt after removing most values.
+     */
+    @Test
+    public void testRemoveRebuild() {
+        BKTree instance = new BKTree();
+        for(int i=0; i<100; i++) {
+            instance.add(String.valueOf(i));
+        }
+        for(int i=0; i<90; i++) {
+            instance.remove(String.valueOf(i));
+        }
+        assertEquals(10, instance.size());
+        instance.add("5");
+        Map<String, Integer> result = new HashMap<>();
+        instance.search("5",
+                0, //maxDistance
+                Long.MAX_VALUE, //deadlineNanos
+                result::put);
+        assertEquals(1, result.size());
+        result.clear();
+        instance.search("9",
+                1, //maxDistance
+                Long.MAX_VALUE, //deadlineNanos
+                result::put);
+        assertEquals(11, result.size());
+            //5 and 90 to 99
+    }
+
+    /**
+     * Tests that a search stops after the deadline.
+     */
+    @Test
+    public void testSearchDeadline() {
+        BKTree instance = new BKTree();
+        for(int i=0; i<1000; i++) {
+            instance.add(String.valueOf(i));
+        }
+        Map<String, Integer> result = new HashMap<>();
+        assertFalse(instance.search("1",
+                10, //maxDistance
+                System.nanoTime()-1, //deadlineNanos
+                result::put));
+        assertTrue(result.size() < 1000);
+    }
+}
@@ -17,6 +17,7 @@ package de.richtercloud.reflection.form.builder.jpa.storage;
 import de.richtercloud.message.handler.BugHandler;
 import java.util.LinkedList;
 import java.util.Queue;
+import java.util.concurrent.TimeUnit;
 import static org.junit.Assert.*;
 import org.junit.Test;
 import static org.mockito.Mockito.mock;
@@ -129,6 +130,53 @@ public class PrioritizableReentrantLockTest {
         assertTrue(priorityThread2OrderIndex < threadOrderQueue.size()-1);
     }
 
+    /**
+     * Tests that a waiter with low priority which waited long enough acquires
+     * the lock before a waiter with higher priority which just started waiting
+     * and that the wait times are recorded.
+     * @throws InterruptedException if an interruption occurs while waiting
+     *     for the test threads
+     */
+    @Test
+    public void testLockAging() throws InterruptedException {
+        PrioritizableReentrantLock instance = new PrioritizableReentrantLock(10,
+                TimeUnit.MILLISECONDS);
+        instance.setWaitTimeRecording(true);
+        LinkedList<Thread> threadOrderQueue = new LinkedList<>();
+        instance.lock(PrioritizableReentrantLock.PRIORITY_DEFAULT);
+        Thread lowPriorityThread = new TestThread(instance,
+                0,
+                threadOrderQueue,
+                "low-priority-thread",
+                0 //sleepMillis
+        );
+        lowPriorityThread.start();
+        while(instance.getQueueLength() < 1) {
+            Thread.sleep(1);
+        }
+        Thread.sleep(100);
+            //low priority thread's effective priority is 10 after 100 ms
+        Thread highPriorityThread = new TestThread(instance,
+                5,
+                threadOrderQueue,
+                "high-priority-thread",
+                0 //sleepMillis
+        );
+        highPriorityThread.start();
+        while(instance.getQueueLength() < 2) {
+            Thread.sleep(1);
+        }
+        instance.unlock();
+        lowPriorityThread.join();
+        highPriorityThread.join();
+        assertEquals(lowPriorityThread, threadOrderQueue.get(0));
+        assertEquals(highPriorityThread, threadOrderQueue.get(1));
+        WaitTimeHistogram lowPriorityHistogram = instance.getWaitTimeHistogram(0);
+        assertEquals(1, lowPriorityHistogram.getCount());
+        assertTrue(lowPriorityHistogram.getPercentileNanos(99) >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(1, instance.getWaitTimeHistogram(5).getCount());
+    }
+
     private class TestThread extends Thread {
         private final PrioritizableReentrantLock instance;
         private final int priority;
@@ -0,0 +1,306 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.storage;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class PrioritizableReentrantReadWriteLockTest {
+
+    private static void waitForQueueLength(PrioritizableReentrantReadWriteLock instance,
+            int queueLength) throws InterruptedException {
+        while(instance.getQueueLength() < queueLength) {
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Starts a thread which acquires {@code lock} with {@code priority},
+     * records itself in {@code order} and releases the lock.
+     */
+    private static Thread startLockThread(PrioritizableLock lock,
+            int priority,
+            List<Thread> order,
+            String name) {
+        Thread retValue = new Thread(() -> {
+            lock.lock(priority);
+            try {
+                synchronized(order) {
+                    order.add(Thread.currentThread());
+                }
+            }finally {
+                lock.unlock();
+            }
+        },
+                name);
+        retValue.start();
+        return retValue;
+    }
+
+    /**
+     * Tests that a thread holding the read lock can acquire it again while a
+     * writer is queued (which would otherwise wait for the thread forever).
+     * @throws InterruptedException if an interruption occurs while waiting
+     *     for the test threads
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testReentrantReadWithQueuedWriter() throws InterruptedException {
+        PrioritizableReentrantReadWriteLock instance = new PrioritizableReentrantReadWriteLock();
+        instance.readLock().lock();
+        List<Thread> order = new LinkedList<>();
+        Thread writerThread = startLockThread(instance.writeLock(),
+                PrioritizableReentrantLock.PRIORITY_DEFAULT,
+                order,
+                "writer-thread");
+        waitForQueueLength(instance, 1);
+        assertTrue(instance.readLock().tryLock(0, TimeUnit.MILLISECONDS));
+        assertEquals(2, instance.getReadLockCount());
+        instance.readLock().unlock();
+        instance.readLock().unlock();
+        writerThread.join();
+        assertEquals(Arrays.asList(writerThread), order);
+        assertEquals(0, instance.getReadLockCount());
+        assertFalse(instance.isWriteLocked());
+    }
+
+    /**
+     * Tests that the write lock can be downgraded to a read lock by acquiring
+     * the read lock before releasing the write lock.
+     * @throws InterruptedException if an interruption occurs while waiting
+     *     for the test threads
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testDowngrade() throws InterruptedException {
+        PrioritizableReentrantReadWriteLock instance = new PrioritizableReentrantReadWriteLock();
+        instance.writeLock().lock();
+        instance.readLock().lock();
+        instance.writeLock().unlock();
+        assertFalse(instance.isWriteLocked());
+        assertEquals(1, instance.getReadLockCount());
+        AtomicBoolean readAcquired = new AtomicBoolean();
+        AtomicBoolean writeAcquired = new AtomicBoolean(true);
+        Thread thread = new Thread(() -> {
+            readAcquired.set(instance.readLock().tryLock());
+            if(readAcquired.get()) {
+                instance.readLock().unlock();
+            }
+            writeAcquired.set(instance.writeLock().tryLock());
+        });
+        thread.start();
+        thread.join();
+        assertTrue(readAcquired.get());
+        assertFalse(writeAcquired.get());
+        instance.readLock().unlock();
+        assertEquals(0, instance.getReadLockCount());
+        assertTrue(instance.writeLock().tryLock());
+        instance.writeLock().unlock();
+    }
+
+    /**
+     * Tests that upgrading a read lock to a write lock is rejected instead of
+     * deadlocking.
+     */
+    @Test(expected = IllegalStateException.class)
+    public void testUpgrade() {
+        PrioritizableReentrantReadWriteLock instance = new PrioritizableReentrantReadWriteLock();
+        instance.readLock().lock();
+        instance.writeLock().lock();
+    }
+
+    /**
+     * Tests that waiting read and write requests are granted in the order of
+     * their priority and in the order of their requests for the same
+     * priority.
+     * @throws InterruptedException if an interruption occurs while waiting
+     *     for the test threads
+     */
+    @Test
+    public void testPriorityOrder() throws InterruptedException {
+        PrioritizableReentrantReadWriteLock instance = new PrioritizableReentrantReadWriteLock();
+        instance.writeLock().lock();
+        List<Thread> order = new LinkedList<>();
+        Thread lowWriterThread = startLockThread(instance.writeLock(),
+                1,
+                order,
+                "low-priority-writer-thread");
+        waitForQueueLength(instance, 1);
+        Thread midWriterThread0 = startLockThread(instance.writeLock(),
+                5,
+                order,
+                "mid-priority-writer-thread-0");
+        waitForQueueLength(instance, 2);
+        Thread midWriterThread1 = startLockThread(instance.writeLock(),
+                5,
+                order,
+                "mid-priority-writer-thread-1");
+        waitForQueueLength(instance, 3);
+        Thread highReaderThread = startLockThread(instance.readLock(),
+                10,
+                order,
+                "high-priority-reader-thread");
+        waitForQueueLength(instance, 4);
+        instance.writeLock().unlock();
+        for(Thread thread : new Thread[] {lowWriterThread, midWriterThread0, midWriterThread1, highReaderThread}) {
+            thread.join();
+        }
+        assertEquals(Arrays.asList(highReaderThread,
+                        midWriterThread0,
+                        midWriterThread1,
+                        lowWriterThread),
+                order);
+    }
+
+    /**
+     * Tests that a writer with high priority drains the current readers,
+     * i.e. that readers with a lower priority have to wait until it has been
+     * granted and released while readers with a higher priority don't.
+     * @throws InterruptedException if an interruption occurs while waiting
+     *     for the test threads
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testWriterDrainsReaders() throws InterruptedException {
+        PrioritizableReentrantReadWriteLock instance = new PrioritizableReentrantReadWriteLock();
+        instance.readLock().lock();
+        List<Thread> order = new LinkedList<>();
+        Thread writerThread = startLockThread(instance.writeLock(),
+                10,
+                order,
+                "writer-thread");
+        waitForQueueLength(instance, 1);
+        AtomicBoolean lowReadAcquired = new AtomicBoolean(true);
+        AtomicBoolean highReadAcquired = new AtomicBoolean();
+        Thread readerThread = new Thread(() -> {
+            try {
+                lowReadAcquired.set(instance.readLock().tryLock(5,
+                        0,
+                        TimeUnit.MILLISECONDS));
+                highReadAcquired.set(instance.readLock().tryLock(20,
+                        0,
+                        TimeUnit.MILLISECONDS));
+                if(highReadAcquired.get()) {
+                    instance.readLock().unlock();
+                }
+            } catch (InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        readerThread.start();
+        readerThread.join();
+        assertFalse(lowReadAcquired.get());
+        assertTrue(highReadAcquired.get());
+        assertTrue(order.isEmpty());
+        Thread lowReaderThread = startLockThread(instance.readLock(),
+                5,
+                order,
+                "low-priority-reader-thread");
+        waitForQueueLength(instance, 2);
+        instance.readLock().unlock();
+        writerThread.join();
+        lowReaderThread.join();
+        assertEquals(Arrays.asList(writerThread, lowReaderThread),
+                order);
+    }
+
+    /**
+     * Tests that a writer whose timeout elapses is removed from the queue and
+     * that the readers waiting behind it are granted.
+     * @throws InterruptedException if an interruption occurs while waiting
+     *     for the test threads
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testCancelOnTimeout() throws InterruptedException {
+        PrioritizableReentrantReadWriteLock instance = new PrioritizableReentrantReadWriteLock();
+        instance.readLock().lock();
+        AtomicReference<Boolean> writeAcquired = new AtomicReference<>();
+        Thread writerThread = new Thread(() -> {
+            try {
+                writeAcquired.set(instance.writeLock().tryLock(10,
+                        500,
+                        TimeUnit.MILLISECONDS));
+            } catch (InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        writerThread.start();
+        waitForQueueLength(instance, 1);
+        List<Thread> order = new LinkedList<>();
+        Thread readerThread = startLockThread(instance.readLock(),
+                5,
+                order,
+                "reader-thread");
+        waitForQueueLength(instance, 2);
+        writerThread.join();
+        assertEquals(Boolean.FALSE, writeAcquired.get());
+        //the reader is granted while the read lock is still held
+        readerThread.join();
+        assertEquals(Arrays.asList(readerThread), order);
+        assertEquals(0, instance.getQueueLength());
+        assertEquals(1, instance.getReadLockCount());
+        instance.readLock().unlock();
+    }
+
+    /**
+     * Tests that an interrupted writer is removed from the queue and that the
+     * readers waiting behind it are granted.
+     * @throws InterruptedException if an interruption occurs while waiting
+     *     for the test threads
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testCancelOnInterrupt() throws InterruptedException {
+        PrioritizableReentrantReadWriteLock instance = new PrioritizableReentrantReadWriteLock();
+        instance.readLock().lock();
+        AtomicBoolean writerInterrupted = new AtomicBoolean();
+        Thread writerThread = new Thread(() -> {
+            try {
+                instance.writeLock().lockInterruptibly(10);
+                instance.writeLock().unlock();
+            } catch (InterruptedException ex) {
+                writerInterrupted.set(true);
+            }
+        });
+        writerThread.start();
+        waitForQueueLength(instance, 1);
+        List<Thread> order = new LinkedList<>();
+        Thread readerThread = startLockThread(instance.readLock(),
+                5,
+                order,
+                "reader-thread");
+        waitForQueueLength(instance, 2);
+        writerThread.interrupt();
+        writerThread.join();
+        assertTrue(writerInterrupted.get());
+        readerThread.join();
+        assertEquals(Arrays.asList(readerThread), order);
+        assertEquals(0, instance.getQueueLength());
+        instance.readLock().unlock();
+        assertFalse(instance.isWriteLocked());
+        assertEquals(0, instance.getReadLockCount());
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.storage;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author richter
+ */
+public class StringFieldValueIndexTest {
+
+    private static StringFieldValueIndex createIndex() {
+        StringFieldValueIndex retValue = new StringFieldValueIndex(IndexedEntity.class,
+                "name");
+        retValue.beginLoad();
+        retValue.load(1L, "abcdef");
+        retValue.load(2L, "xabcd");
+        retValue.load(3L, "abc");
+        retValue.load(4L, "abc");
+        retValue.load(5L, "zzz");
+        retValue.endLoad();
+        return retValue;
+    }
+
+    /**
+     * Test of find method, of class StringFieldValueIndex.
+     */
+    @Test
+    public void testFind() {
+        StringFieldValueIndex instance = createIndex();
+        assertTrue(instance.isLoaded());
+        assertEquals(4, instance.size());
+        assertEquals(Arrays.asList("abc", "abcdef", "xabcd"),
+                instance.find("abc", 10));
+        assertEquals(Arrays.asList("abcdef", "xabcd"),
+                instance.find("bcd", 10));
+        assertEquals(Arrays.asList("abcdef"),
+                instance.find("bcde", 10));
+        assertEquals(Collections.emptyList(),
+                instance.find("bcdx", 10));
+        assertEquals(Arrays.asList("abc", "abcdef"),
+                instance.find("a", 2));
+        assertEquals(Arrays.asList("abc", "abcdef", "xabcd", "zzz"),
+                instance.find("", 10));
+    }
+
+    /**
+     * Test of put and remove methods, of class StringFieldValueIndex.
+     */
+    @Test
+    public void testPutRemove() {
+        StringFieldValueIndex instance = createIndex();
+        instance.remove(3L);
+        assertEquals(Arrays.asList("abc", "abcdef", "xabcd"),
+                instance.find("abc", 10));
+            //still referenced by 4
+        instance.put(4L, "other");
+        assertEquals(Arrays.asList("abcdef", "xabcd"),
+                instance.find("abc", 10));
+        assertEquals(Arrays.asList("other"),
+                instance.find("the", 10));
+        instance.put(4L, null);
+        assertEquals(Collections.emptyList(),
+                instance.find("the", 10));
+        assertEquals(3, instance.size());
+    }
+
+    /**
+     * Tests that changes during loading aren't overwritten by the values read
+     * by the loading query.
+     */
+    @Test
+    public void testChangesDuringLoad() {
+        StringFieldValueIndex instance = new StringFieldValueIndex(IndexedEntity.class,
+                "name");
+        instance.beginLoad();
+        instance.put(1L, "new");
+        instance.remove(2L);
+        instance.load(1L, "old");
+        instance.load(2L, "removed");
+        instance.endLoad();
+        List<String> result = instance.find("", 10);
+        assertEquals(Arrays.asList("new"),
+                result);
+    }
+
+    /**
+     * Test of findSimilar method, of class StringFieldValueIndex.
+     */
+    @Test
+    public void testFindSimilar() {
+        StringFieldValueIndex instance = new StringFieldValueIndex(IndexedEntity.class,
+                "name");
+        instance.beginLoad();
+        instance.load(1L, "Müller");
+        instance.load(2L, "Mülle");
+        instance.load(3L, "Mülle");
+        instance.load(4L, "Miller");
+        instance.load(5L, "Meier");
+        instance.endLoad();
+        assertEquals(Arrays.asList("Müller", "Mülle", "Miller"),
+                instance.findSimilar("Mülller", 2, 10, Long.MAX_VALUE/2));
+            //Mülle and Miller have the same distance, Mülle is used by two
+            //entities
+        assertEquals(Arrays.asList("Müller"),
+                instance.findSimilar("Mülller", 2, 1, Long.MAX_VALUE/2));
+        instance.remove(1L);
+        assertEquals(Arrays.asList("Mülle", "Miller"),
+                instance.findSimilar("Mülller", 2, 10, Long.MAX_VALUE/2));
+    }
+
+    /**
+     * Tests that changes before and after the first similarity search, which
+     * builds the BK-tree, are reflected by similarity searches.
+     */
+    @Test
+    public void testFindSimilarChanges() {
+        StringFieldValueIndex instance = new StringFieldValueIndex(IndexedEntity.class,
+                "name");
+        instance.beginLoad();
+        instance.load(1L, "Müller");
+        instance.load(2L, "Miller");
+        instance.endLoad();
+        instance.remove(2L);
+        instance.put(3L, "Mülle");
+        assertEquals(Arrays.asList("Müller", "Mülle"),
+                instance.findSimilar("Mülller", 2, 10, Long.MAX_VALUE/2));
+        instance.remove(1L);
+        instance.put(4L, "Miller");
+        assertEquals(Arrays.asList("Miller", "Mülle"),
+                instance.findSimilar("Mülller", 2, 10, Long.MAX_VALUE/2));
+            //same distance and usage
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonStringField() {
+        new StringFieldValueIndex(IndexedEntity.class,
+                "value");
+    }
+
+    @Test
+    public void testGetValue() {
+        StringFieldValueIndex instance = new StringFieldValueIndex(IndexedEntity.class,
+                "name");
+        assertEquals("a",
+                instance.getValue(new IndexedEntity("a", 1)));
+    }
+
+    private static class IndexedEntity {
+        private final String name;
+        private final int value;
+
+        IndexedEntity(String name,
+                int value) {
+            this.name = name;
+            this.value = value;
+        }
+    }
+}
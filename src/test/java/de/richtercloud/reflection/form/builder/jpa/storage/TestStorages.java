@@ -0,0 +1,128 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.storage;
+
+import de.richtercloud.reflection.form.builder.jpa.retriever.JPAOrderedCachedFieldRetriever;
+import de.richtercloud.reflection.form.builder.retriever.FieldOrderValidationException;
+import de.richtercloud.reflection.form.builder.storage.StorageConfValidationException;
+import de.richtercloud.reflection.form.builder.storage.StorageCreationException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Creates and removes the embedded Derby storages used in tests and
+ * benchmarks.
+ *
+ * @author richter
+ */
+public final class TestStorages {
+    public final static String PERSISTENCE_UNIT_NAME = "reflection-form-builder-jpa-test";
+
+    /**
+     * Creates and starts a {@link DerbyEmbeddedPersistenceStorage} in a new
+     * temporary directory.
+     * @return the started storage
+     * @throws IOException if the temporary directory can't be created
+     * @throws StorageCreationException if an exception occurs during creation
+     *     of the storage
+     */
+    public static DerbyEmbeddedPersistenceStorage createDerbyEmbeddedStorage() throws IOException,
+            StorageCreationException {
+        return createDerbyEmbeddedStorage(1 //parallelQueryCount
+        );
+    }
+
+    /**
+     * Creates and starts a {@link DerbyEmbeddedPersistenceStorage} in a new
+     * temporary directory.
+     * @param parallelQueryCount the number of parallel queries
+     * @return the started storage
+     * @throws IOException if the temporary directory can't be created
+     * @throws StorageCreationException if an exception occurs during creation
+     *     of the storage
+     */
+    public static DerbyEmbeddedPersistenceStorage createDerbyEmbeddedStorage(int parallelQueryCount) throws IOException,
+            StorageCreationException {
+        return createDerbyEmbeddedStorage(Files.createTempDirectory("reflection-form-builder-jpa-test").toFile(),
+                parallelQueryCount);
+    }
+
+    /**
+     * Creates and starts a {@link DerbyEmbeddedPersistenceStorage} on the
+     * database in {@code baseDir} which allows to open several storages on
+     * the same database.
+     * @param baseDir the directory containing the database
+     * @return the started storage
+     * @throws IOException if the scheme checksum file can't be accessed
+     * @throws StorageCreationException if an exception occurs during creation
+     *     of the storage
+     */
+    public static DerbyEmbeddedPersistenceStorage createDerbyEmbeddedStorage(File baseDir) throws IOException,
+            StorageCreationException {
+        return createDerbyEmbeddedStorage(baseDir,
+                1 //parallelQueryCount
+        );
+    }
+
+    private static DerbyEmbeddedPersistenceStorage createDerbyEmbeddedStorage(File baseDir,
+            int parallelQueryCount) throws IOException,
+            StorageCreationException {
+        Set<Class<?>> entityClasses = new HashSet<>();
+        entityClasses.add(TestEntity.class);
+        DerbyEmbeddedPersistenceStorage retValue;
+        try {
+            DerbyEmbeddedPersistenceStorageConf storageConf = new DerbyEmbeddedPersistenceStorageConf(entityClasses,
+                    new File(baseDir, "database").getAbsolutePath(),
+                    new File(baseDir, "scheme-checksum").getAbsoluteFile());
+            retValue = new DerbyEmbeddedPersistenceStorage(storageConf,
+                    PERSISTENCE_UNIT_NAME,
+                    parallelQueryCount,
+                    new JPAOrderedCachedFieldRetriever(entityClasses));
+        } catch (StorageConfValidationException | FieldOrderValidationException ex) {
+            throw new StorageCreationException(ex);
+        }
+        retValue.start();
+        return retValue;
+    }
+
+    /**
+     * Gets the directory containing the database of {@code storage}.
+     * @param storage the storage created with
+     *     {@link #createDerbyEmbeddedStorage() }
+     * @return the directory to pass to
+     *     {@link #createDerbyEmbeddedStorage(java.io.File) }
+     */
+    public static File getBaseDir(DerbyEmbeddedPersistenceStorage storage) {
+        return new File(storage.getStorageConf().getDatabaseName()).getParentFile();
+    }
+
+    /**
+     * Shuts down {@code storage} and removes its temporary directory.
+     * @param storage the storage created with
+     *     {@link #createDerbyEmbeddedStorage() }
+     * @throws IOException if the directory can't be removed
+     */
+    public static void shutdownDerbyEmbeddedStorage(DerbyEmbeddedPersistenceStorage storage) throws IOException {
+        storage.shutdown();
+        FileUtils.deleteDirectory(getBaseDir(storage));
+    }
+
+    private TestStorages() {
+    }
+}
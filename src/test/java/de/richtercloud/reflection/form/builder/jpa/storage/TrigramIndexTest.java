@@ -0,0 +1,170 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.richtercloud.reflection.form.builder.jpa.storage;
+
+import de.richtercloud.reflection.form.builder.storage.StorageCreationException;
+import de.richtercloud.reflection.form.builder.storage.StorageException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link TrigramIndex} through
+ * {@link AbstractPersistenceStorage#enableTrigramIndex(java.lang.Class, java.lang.String) }
+ * and
+ * {@link AbstractPersistenceStorage#runTrigramIndexQuery(java.lang.Class, java.lang.String, java.lang.String, int) }
+ * against an embedded Derby database which compares case sensitively.
+ *
+ * @author richter
+ */
+public class TrigramIndexTest {
+    private static final String FIELD_NAME = "name";
+    private DerbyEmbeddedPersistenceStorage storage;
+
+    @Before
+    public void setUp() throws IOException,
+            StorageCreationException {
+        storage = TestStorages.createDerbyEmbeddedStorage();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        TestStorages.shutdownDerbyEmbeddedStorage(storage);
+    }
+
+    private List<String> find(String text) throws StorageException {
+        return storage.runTrigramIndexQuery(TestEntity.class,
+                FIELD_NAME,
+                text,
+                10 //limit
+        );
+    }
+
+    /**
+     * Tests that an index built from existing entities finds values which
+     * contain texts of trigram length and longer, shorter texts, texts with
+     * {@code LIKE} wildcards and texts in the case of the values only.
+     * @throws Exception if an unexpected exception occurs
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testFind() throws Exception {
+        for(String name : new String[] {"Alpha beta",
+                "ALPHABET",
+                "xalphay",
+                "50% off",
+                "5000 off",
+                "a_b",
+                "axb",
+                "ab",
+                null}) {
+            storage.store(new TestEntity(name));
+        }
+        storage.enableTrigramIndex(TestEntity.class,
+                FIELD_NAME);
+        assertTrue(storage.isTrigramIndexEnabled(TestEntity.class,
+                FIELD_NAME));
+        //mixed case: trigrams are lower case, the LIKE decides
+        assertEquals(Arrays.asList("xalphay"),
+                find("alph"));
+        assertEquals(Arrays.asList("Alpha beta"),
+                find("Alph"));
+        assertEquals(Arrays.asList("ALPHABET"),
+                find("ALPH"));
+        //shorter than a trigram
+        assertEquals(Arrays.asList("ab"),
+                find("ab"));
+        assertEquals(Arrays.asList("a_b", "ab", "axb", "Alpha beta", "xalphay"),
+                find("a"));
+        //escaped wildcards
+        assertEquals(Arrays.asList("50% off"),
+                find("0%"));
+        assertEquals(Arrays.asList("50% off"),
+                find("50% o"));
+        assertEquals(Arrays.asList("a_b"),
+                find("_b"));
+        assertEquals(Arrays.asList("a_b"),
+                find("a_b"));
+        assertEquals(Collections.emptyList(),
+                find("alphx"));
+    }
+
+    /**
+     * Tests that the index is maintained by store, update and delete and that
+     * entities with IDs generated during the flush are indexed under their
+     * ID.
+     * @throws Exception if an unexpected exception occurs
+     */
+    @Test
+    @SuppressWarnings("PMD.JUnitTestContainsTooManyAsserts")
+    public void testMaintenance() throws Exception {
+        storage.enableTrigramIndex(TestEntity.class,
+                FIELD_NAME);
+        TestEntity entity0 = new TestEntity("delta one");
+        TestEntity entity1 = new TestEntity("delta two");
+        storage.store(entity0);
+        storage.store(entity1);
+        assertNotNull(entity0.getId());
+        assertEquals(Arrays.asList("delta one", "delta two"),
+                find("delta"));
+            //both would share the ID "null" if it was read before the ID is
+            //assigned
+        entity0.setName("epsilon");
+        storage.update(entity0);
+        assertEquals(Arrays.asList("delta two"),
+                find("delta"));
+        assertEquals(Arrays.asList("epsilon"),
+                find("epsil"));
+        storage.delete(entity0);
+        assertEquals(Collections.emptyList(),
+                find("epsil"));
+        assertEquals(Arrays.asList("delta two"),
+                find("delta"));
+    }
+
+    /**
+     * Tests that a storage which hasn't enabled the index maintains it once
+     * it has been built in the database by another storage.
+     * @throws Exception if an unexpected exception occurs
+     */
+    @Test
+    public void testMaintenanceWithoutEnabling() throws Exception {
+        storage.enableTrigramIndex(TestEntity.class,
+                FIELD_NAME);
+        DerbyEmbeddedPersistenceStorage storage1 = TestStorages.createDerbyEmbeddedStorage(TestStorages.getBaseDir(storage));
+        try {
+            assertFalse(storage1.isTrigramIndexEnabled(TestEntity.class,
+                    FIELD_NAME));
+            TestEntity entity0 = new TestEntity("zeta");
+            storage1.store(entity0);
+            assertEquals(Arrays.asList("zeta"),
+                    find("zet"));
+            entity0.setName("eta");
+            storage1.update(entity0);
+            assertEquals(Collections.emptyList(),
+                    find("zet"));
+            storage1.delete(entity0);
+            assertEquals(Collections.emptyList(),
+                    find("eta"));
+        }finally {
+            storage1.shutdown();
+        }
+    }
+}